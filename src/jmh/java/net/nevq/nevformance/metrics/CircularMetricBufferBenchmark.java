@@ -0,0 +1,86 @@
+package net.nevq.nevformance.metrics;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of recording into and reading from a series buffer, alone and
+ * with a collector recording while a web handler reads the same series
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CircularMetricBufferBenchmark {
+    // One hour of history at the default collection interval
+    private static final int CAPACITY = 3600;
+
+    @State(Scope.Group)
+    public static class Series {
+        final CircularMetricBuffer buffer = new CircularMetricBuffer(CAPACITY);
+        final long[] timestamps = new long[CAPACITY];
+        final double[] values = new double[CAPACITY];
+        long nextTimestamp;
+
+        @Setup
+        public void fill() {
+            for (int i = 0; i < CAPACITY; i++) {
+                record();
+            }
+        }
+
+        void record() {
+            long timestamp = nextTimestamp++;
+            buffer.add(timestamp * 1000, 20.0 - (timestamp & 7) * 0.01);
+        }
+    }
+
+    @Benchmark
+    @Group("record")
+    public void record(Series series) {
+        series.record();
+    }
+
+    @Benchmark
+    @Group("latest")
+    public MetricPoint latest(Series series) {
+        return series.buffer.getLatestPoint();
+    }
+
+    @Benchmark
+    @Group("copy")
+    public int copy(Series series) {
+        return series.buffer.copyPoints(series.timestamps, series.values);
+    }
+
+    @Benchmark
+    @Group("recordWhileReadingLatest")
+    @GroupThreads(1)
+    public void recordWithLatestReader(Series series) {
+        series.record();
+    }
+
+    @Benchmark
+    @Group("recordWhileReadingLatest")
+    @GroupThreads(1)
+    public MetricPoint readLatestWhileRecording(Series series) {
+        return series.buffer.getLatestPoint();
+    }
+
+    @Benchmark
+    @Group("recordWhileCopying")
+    @GroupThreads(1)
+    public void recordWithCopyingReader(Series series) {
+        series.record();
+    }
+
+    @Benchmark
+    @Group("recordWhileCopying")
+    @GroupThreads(1)
+    public void copyWhileRecording(Series series, Blackhole blackhole) {
+        blackhole.consume(series.buffer.copyPoints(series.timestamps, series.values));
+    }
+}
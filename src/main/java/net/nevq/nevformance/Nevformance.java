@@ -1,7 +1,9 @@
 package net.nevq.nevformance;
 
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 import net.minecraft.server.MinecraftServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,6 +11,12 @@ import org.slf4j.LoggerFactory;
 import net.nevq.nevformance.metrics.MetricsManager;
 import net.nevq.nevformance.web.WebServer;
 import net.nevq.nevformance.config.ConfigManager;
+import net.nevq.nevformance.instrumentation.ChunkGenerationTimings;
+import net.nevq.nevformance.instrumentation.ChunkLoadTimings;
+import net.nevq.nevformance.instrumentation.NetworkTraffic;
+import net.nevq.nevformance.instrumentation.PlayerChunkGeneration;
+import net.nevq.nevformance.instrumentation.RegionIoTimings;
+import net.nevq.nevformance.instrumentation.TickPhases;
 
 public class Nevformance implements ModInitializer {
 	// This logger is used to write text to the console and the log file.
@@ -38,6 +46,18 @@ public class Nevformance implements ModInitializer {
 	}
 
 	private void registerServerEvents() {
+		// Chunk loads complete the request-to-load latencies measured by the chunk loading mixin
+		ServerChunkEvents.CHUNK_LOAD.register(ChunkLoadTimings::loaded);
+		ServerChunkEvents.CHUNK_UNLOAD.register(ChunkLoadTimings::unloaded);
+
+		// Packets counted by the network mixins are attributed to players by connection address
+		ServerPlayConnectionEvents.JOIN.register((handler, sender, server) ->
+				NetworkTraffic.playerConnected(handler.getConnectionAddress(), handler.getPlayer().getGameProfile().getName()));
+		ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
+			NetworkTraffic.playerDisconnected(handler.getConnectionAddress());
+			PlayerChunkGeneration.playerDisconnected(handler.getPlayer().getUuid());
+		});
+
 		// Start the web server and metrics collection when the server starts
 		ServerLifecycleEvents.SERVER_STARTED.register(server -> {
 			LOGGER.info("Minecraft server started, initializing analytics components");
@@ -59,6 +79,14 @@ public class Nevformance implements ModInitializer {
 			}
 			metricsManager.stopCollection();
 		});
+
+		// Chunks are still unloaded while the server stops, so the load counters are dropped only once it has stopped
+		ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+			ChunkLoadTimings.clear();
+			ChunkGenerationTimings.clear();
+			TickPhases.clear();
+			RegionIoTimings.clear();
+		});
 	}
 
 	public static Nevformance getInstance() {
@@ -9,13 +9,20 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class ConfigManager {
     private static final Logger LOGGER = LoggerFactory.getLogger("nevformance");
     private static final String CONFIG_FILE = "nevformance.json";
 
+    // A persistence segment is mapped as one int-addressed buffer, so its size must stay below 2 GB
+    private static final int MIN_SEGMENT_SIZE_MB = 1;
+    private static final int MAX_SEGMENT_SIZE_MB = 1024;
+
     // Default configuration values
     private int webServerPort = 8080;
     private int metricCollectionIntervalMs = 1000; // 1 second by default
@@ -24,6 +31,44 @@ public class ConfigManager {
     private boolean collectChunkMetrics = true;
     private int metricsHistorySize = 3600; // Store 1 hour of data by default
 
+    // Downsampling tiers kept beyond the raw history, and the exact names of the series that get them.
+    // A bucket takes 40 bytes, so the default tiers cost about 2 MB per series once 30 days are filled
+    private List<RollupTierConfig> rollupTiers = defaultRollupTiers();
+    private List<String> rollupSeries = defaultRollupSeries();
+
+    // On-disk persistence of metric history in the world directory
+    private boolean persistenceEnabled = true;
+    private int persistenceSegmentSizeMb = 16;
+    private int persistenceRetentionHours = 24;
+    private int persistenceFlushIntervalSeconds = 10;
+    // History restored on startup, which delays the first collection cycle; the default matches the raw history
+    private int persistenceReplayHours = 1;
+
+    // Cardinality limits: total series budget and per-pattern quotas ('*' matches any characters)
+    private int maxSeries = 20000;
+    private Map<String, Integer> seriesQuotas = defaultSeriesQuotas();
+
+    // Time on average one in this many entity / block entity / scheduled ticks for the tick cost profiles (0 disables them)
+    private int entityTickSampleInterval = 16;
+    private int blockEntityTickSampleInterval = 8;
+    private int scheduledTickSampleInterval = 4;
+
+    // Sample the server thread stack every sample interval once a tick runs past the threshold (interval 0 disables it)
+    private int lagSpikeSampleThresholdMs = 100;
+    private int lagSpikeSampleIntervalMs = 5;
+
+    // Continuous profiler of the server and chunk worker threads (sample interval 0 disables it)
+    private int profilerSampleIntervalMs = 10;
+    private int profilerBucketSeconds = 10;
+    private int profilerRetentionMinutes = 30;
+
+    // JFR event streaming; lag spikes of at least jfrDumpThresholdMs write the recent recording to disk (0 disables dumps)
+    private boolean jfrEnabled = true;
+    private int jfrEventThresholdMs = 10;
+    private int jfrDumpThresholdMs = 500;
+    private int jfrDumpCooldownSeconds = 300;
+    private int jfrMaxDumps = 10;
+
     // Custom metrics to collect (class name -> enabled)
     private Map<String, Boolean> customMetrics = new HashMap<>();
 
@@ -51,6 +96,36 @@ public class ConfigManager {
                 this.collectChunkMetrics = configData.collectChunkMetrics;
                 this.metricsHistorySize = configData.metricsHistorySize;
 
+                this.persistenceEnabled = configData.persistenceEnabled;
+                this.persistenceSegmentSizeMb = clampSegmentSizeMb(configData.persistenceSegmentSizeMb);
+                this.persistenceRetentionHours = configData.persistenceRetentionHours;
+                this.persistenceFlushIntervalSeconds = clampFlushIntervalSeconds(configData.persistenceFlushIntervalSeconds);
+                this.persistenceReplayHours = Math.max(0, configData.persistenceReplayHours);
+                this.maxSeries = configData.maxSeries;
+                this.entityTickSampleInterval = configData.entityTickSampleInterval;
+                this.blockEntityTickSampleInterval = configData.blockEntityTickSampleInterval;
+                this.scheduledTickSampleInterval = configData.scheduledTickSampleInterval;
+                this.lagSpikeSampleThresholdMs = configData.lagSpikeSampleThresholdMs;
+                this.lagSpikeSampleIntervalMs = configData.lagSpikeSampleIntervalMs;
+                this.profilerSampleIntervalMs = configData.profilerSampleIntervalMs;
+                this.profilerBucketSeconds = configData.profilerBucketSeconds;
+                this.profilerRetentionMinutes = configData.profilerRetentionMinutes;
+                this.jfrEnabled = configData.jfrEnabled;
+                this.jfrEventThresholdMs = configData.jfrEventThresholdMs;
+                this.jfrDumpThresholdMs = configData.jfrDumpThresholdMs;
+                this.jfrDumpCooldownSeconds = configData.jfrDumpCooldownSeconds;
+                this.jfrMaxDumps = configData.jfrMaxDumps;
+
+                if (configData.seriesQuotas != null) {
+                    this.seriesQuotas = configData.seriesQuotas;
+                }
+                if (configData.rollupTiers != null) {
+                    this.rollupTiers = configData.rollupTiers;
+                }
+                if (configData.rollupSeries != null) {
+                    this.rollupSeries = configData.rollupSeries;
+                }
+
                 if (configData.customMetrics != null) {
                     this.customMetrics = configData.customMetrics;
                 }
@@ -81,6 +156,28 @@ public class ConfigManager {
                 configData.collectEntityMetrics = this.collectEntityMetrics;
                 configData.collectChunkMetrics = this.collectChunkMetrics;
                 configData.metricsHistorySize = this.metricsHistorySize;
+                configData.rollupTiers = this.rollupTiers;
+                configData.rollupSeries = this.rollupSeries;
+                configData.persistenceEnabled = this.persistenceEnabled;
+                configData.persistenceSegmentSizeMb = this.persistenceSegmentSizeMb;
+                configData.persistenceRetentionHours = this.persistenceRetentionHours;
+                configData.persistenceFlushIntervalSeconds = this.persistenceFlushIntervalSeconds;
+                configData.persistenceReplayHours = this.persistenceReplayHours;
+                configData.maxSeries = this.maxSeries;
+                configData.seriesQuotas = this.seriesQuotas;
+                configData.entityTickSampleInterval = this.entityTickSampleInterval;
+                configData.blockEntityTickSampleInterval = this.blockEntityTickSampleInterval;
+                configData.scheduledTickSampleInterval = this.scheduledTickSampleInterval;
+                configData.lagSpikeSampleThresholdMs = this.lagSpikeSampleThresholdMs;
+                configData.lagSpikeSampleIntervalMs = this.lagSpikeSampleIntervalMs;
+                configData.profilerSampleIntervalMs = this.profilerSampleIntervalMs;
+                configData.profilerBucketSeconds = this.profilerBucketSeconds;
+                configData.profilerRetentionMinutes = this.profilerRetentionMinutes;
+                configData.jfrEnabled = this.jfrEnabled;
+                configData.jfrEventThresholdMs = this.jfrEventThresholdMs;
+                configData.jfrDumpThresholdMs = this.jfrDumpThresholdMs;
+                configData.jfrDumpCooldownSeconds = this.jfrDumpCooldownSeconds;
+                configData.jfrMaxDumps = this.jfrMaxDumps;
                 configData.customMetrics = this.customMetrics;
 
                 gson.toJson(configData, writer);
@@ -116,6 +213,94 @@ public class ConfigManager {
         return metricsHistorySize;
     }
 
+    public List<RollupTierConfig> getRollupTiers() {
+        return rollupTiers;
+    }
+
+    public List<String> getRollupSeries() {
+        return rollupSeries;
+    }
+
+    public boolean isPersistenceEnabled() {
+        return persistenceEnabled;
+    }
+
+    public int getPersistenceSegmentSizeMb() {
+        return persistenceSegmentSizeMb;
+    }
+
+    public int getPersistenceRetentionHours() {
+        return persistenceRetentionHours;
+    }
+
+    public int getPersistenceFlushIntervalSeconds() {
+        return persistenceFlushIntervalSeconds;
+    }
+
+    public int getPersistenceReplayHours() {
+        return persistenceReplayHours;
+    }
+
+    public int getMaxSeries() {
+        return maxSeries;
+    }
+
+    public Map<String, Integer> getSeriesQuotas() {
+        return seriesQuotas;
+    }
+
+    public int getEntityTickSampleInterval() {
+        return entityTickSampleInterval;
+    }
+
+    public int getBlockEntityTickSampleInterval() {
+        return blockEntityTickSampleInterval;
+    }
+
+    public int getScheduledTickSampleInterval() {
+        return scheduledTickSampleInterval;
+    }
+
+    public int getLagSpikeSampleThresholdMs() {
+        return lagSpikeSampleThresholdMs;
+    }
+
+    public int getLagSpikeSampleIntervalMs() {
+        return lagSpikeSampleIntervalMs;
+    }
+
+    public int getProfilerSampleIntervalMs() {
+        return profilerSampleIntervalMs;
+    }
+
+    public int getProfilerBucketSeconds() {
+        return profilerBucketSeconds;
+    }
+
+    public int getProfilerRetentionMinutes() {
+        return profilerRetentionMinutes;
+    }
+
+    public boolean isJfrEnabled() {
+        return jfrEnabled;
+    }
+
+    public int getJfrEventThresholdMs() {
+        return jfrEventThresholdMs;
+    }
+
+    public int getJfrDumpThresholdMs() {
+        return jfrDumpThresholdMs;
+    }
+
+    public int getJfrDumpCooldownSeconds() {
+        return jfrDumpCooldownSeconds;
+    }
+
+    public int getJfrMaxDumps() {
+        return jfrMaxDumps;
+    }
+
     public Map<String, Boolean> getCustomMetrics() {
         return customMetrics;
     }
@@ -131,6 +316,65 @@ public class ConfigManager {
         saveConfig();
     }
 
+    private static int clampSegmentSizeMb(int sizeMb) {
+        int clamped = Math.max(MIN_SEGMENT_SIZE_MB, Math.min(MAX_SEGMENT_SIZE_MB, sizeMb));
+        if (clamped != sizeMb) {
+            LOGGER.warn("persistenceSegmentSizeMb must be between {} and {}, using {}",
+                    MIN_SEGMENT_SIZE_MB, MAX_SEGMENT_SIZE_MB, clamped);
+        }
+        return clamped;
+    }
+
+    private static int clampFlushIntervalSeconds(int seconds) {
+        if (seconds < 1) {
+            LOGGER.warn("persistenceFlushIntervalSeconds must be at least 1, using 1");
+            return 1;
+        }
+        return seconds;
+    }
+
+    private static List<RollupTierConfig> defaultRollupTiers() {
+        List<RollupTierConfig> tiers = new ArrayList<>();
+        tiers.add(new RollupTierConfig(10, 24 * 60 * 60)); // 10 s buckets for 24 hours
+        tiers.add(new RollupTierConfig(60, 30 * 24 * 60 * 60)); // 1 min buckets for 30 days
+        return tiers;
+    }
+
+    private static List<String> defaultRollupSeries() {
+        return new ArrayList<>(List.of(
+                "server.tps", "server.tick_time", "server.tick_time.p95", "server.tick_time.p99", "server.tick_time.max",
+                "memory.heap.used", "cpu.process", "chunks.loaded", "entities.total"));
+    }
+
+    private static Map<String, Integer> defaultSeriesQuotas() {
+        Map<String, Integer> quotas = new LinkedHashMap<>();
+        quotas.put("world.*.hotspot.", 2000);
+        quotas.put("world.*.active_chunk.", 2000);
+        quotas.put("world.*.block_entities.tick_cost.chunk.", 2000);
+        quotas.put("world.*.scheduled_ticks.chunk.", 2000);
+        quotas.put("threads.alloc.thread.", 200);
+        quotas.put("network.packets.", 800);
+        quotas.put("network.player.", 800);
+        quotas.put("players.", 1200);
+        return quotas;
+    }
+
+    /**
+     * A downsampling tier: buckets of {@code resolutionSeconds} kept for {@code retentionSeconds}
+     */
+    public static class RollupTierConfig {
+        public int resolutionSeconds;
+        public int retentionSeconds;
+
+        public RollupTierConfig() {
+        }
+
+        public RollupTierConfig(int resolutionSeconds, int retentionSeconds) {
+            this.resolutionSeconds = resolutionSeconds;
+            this.retentionSeconds = retentionSeconds;
+        }
+    }
+
     // Inner class for JSON serialization/deserialization
     private static class ConfigData {
         int webServerPort = 8080;
@@ -139,6 +383,28 @@ public class ConfigManager {
         boolean collectEntityMetrics = true;
         boolean collectChunkMetrics = true;
         int metricsHistorySize = 3600;
+        List<RollupTierConfig> rollupTiers = defaultRollupTiers();
+        List<String> rollupSeries = defaultRollupSeries();
+        boolean persistenceEnabled = true;
+        int persistenceSegmentSizeMb = 16;
+        int persistenceRetentionHours = 24;
+        int persistenceFlushIntervalSeconds = 10;
+        int persistenceReplayHours = 1;
+        int maxSeries = 20000;
+        Map<String, Integer> seriesQuotas = defaultSeriesQuotas();
+        int entityTickSampleInterval = 16;
+        int blockEntityTickSampleInterval = 8;
+        int scheduledTickSampleInterval = 4;
+        int lagSpikeSampleThresholdMs = 100;
+        int lagSpikeSampleIntervalMs = 5;
+        int profilerSampleIntervalMs = 10;
+        int profilerBucketSeconds = 10;
+        int profilerRetentionMinutes = 30;
+        boolean jfrEnabled = true;
+        int jfrEventThresholdMs = 10;
+        int jfrDumpThresholdMs = 500;
+        int jfrDumpCooldownSeconds = 300;
+        int jfrMaxDumps = 10;
         Map<String, Boolean> customMetrics = new HashMap<>();
     }
 }
\ No newline at end of file
@@ -0,0 +1,270 @@
+package net.nevq.nevformance.instrumentation;
+
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.registry.Registries;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Cost of ticking block entities, accumulated per block entity type and per
+ * chunk by the block entity tick mixin.
+ *
+ * Works like {@link EntityTickCosts}: every block entity tick is counted,
+ * on average one in {@link #setSampleInterval sampleInterval} is timed, and
+ * the counters of each interval are taken by the collector with
+ * {@link #requestInterval()}.
+ * Type counters are arrays indexed by the raw registry id; chunk counters are
+ * primitive maps keyed by the packed chunk position, kept per world. Timed
+ * ticks are also attributed to the chunk in {@link ChunkTickCosts}.
+ */
+public final class BlockEntityTickCosts {
+
+    /**
+     * Block entity tick counters of the chunks of one world
+     */
+    public static final class ChunkCosts {
+        private final Long2LongOpenHashMap calls = new Long2LongOpenHashMap();
+        private final Long2LongOpenHashMap sampledCalls = new Long2LongOpenHashMap();
+        private final Long2LongOpenHashMap sampledNanos = new Long2LongOpenHashMap();
+
+        /**
+         * @return Packed positions of the chunks whose block entities were ticked
+         */
+        public LongSet getChunks() {
+            return calls.keySet();
+        }
+
+        /**
+         * @return Number of block entity ticks in a chunk
+         */
+        public long getCalls(long chunkPos) {
+            return calls.get(chunkPos);
+        }
+
+        /**
+         * @return Estimated nanoseconds spent ticking the block entities of a
+         *         chunk, scaled up from the timed ticks
+         */
+        public double getEstimatedNanos(long chunkPos) {
+            long sampled = sampledCalls.get(chunkPos);
+            return sampled == 0 ? 0 : (double) sampledNanos.get(chunkPos) * calls.get(chunkPos) / sampled;
+        }
+
+        boolean isEmpty() {
+            return calls.isEmpty();
+        }
+
+        void clear() {
+            calls.clear();
+            sampledCalls.clear();
+            sampledNanos.clear();
+        }
+    }
+
+    /**
+     * Counters of one collection interval
+     */
+    public static final class Interval {
+        private long[] calls;
+        private long[] sampledCalls;
+        private long[] sampledNanos;
+        private final Reference2ObjectOpenHashMap<ServerWorld, ChunkCosts> chunkCosts = new Reference2ObjectOpenHashMap<>();
+        private long ticks;
+
+        private Interval(int size) {
+            calls = new long[size];
+            sampledCalls = new long[size];
+            sampledNanos = new long[size];
+        }
+
+        private void ensureCapacity(int rawId) {
+            if (rawId >= calls.length) {
+                int size = Math.max(rawId + 1, calls.length * 2);
+                calls = Arrays.copyOf(calls, size);
+                sampledCalls = Arrays.copyOf(sampledCalls, size);
+                sampledNanos = Arrays.copyOf(sampledNanos, size);
+            }
+        }
+
+        private ChunkCosts chunkCosts(ServerWorld world) {
+            ChunkCosts costs = chunkCosts.get(world);
+            if (costs == null) {
+                costs = new ChunkCosts();
+                chunkCosts.put(world, costs);
+            }
+            return costs;
+        }
+
+        private void clear() {
+            Arrays.fill(calls, 0);
+            Arrays.fill(sampledCalls, 0);
+            Arrays.fill(sampledNanos, 0);
+            // Worlds without block entity ticks are dropped so unloaded worlds are not kept alive
+            chunkCosts.values().removeIf(ChunkCosts::isEmpty);
+            chunkCosts.values().forEach(ChunkCosts::clear);
+            ticks = 0;
+        }
+
+        /**
+         * @return One more than the highest raw id that may have counters
+         */
+        public int size() {
+            return calls.length;
+        }
+
+        /**
+         * @return Number of server ticks covered by the interval
+         */
+        public long getTicks() {
+            return ticks;
+        }
+
+        /**
+         * @return Number of block entity ticks of a type
+         */
+        public long getCalls(int rawId) {
+            return calls[rawId];
+        }
+
+        /**
+         * @return Number of block entity ticks of a type that were timed
+         */
+        public long getSampledCalls(int rawId) {
+            return sampledCalls[rawId];
+        }
+
+        /**
+         * @return Nanoseconds spent in the timed block entity ticks of a type
+         */
+        public long getSampledNanos(int rawId) {
+            return sampledNanos[rawId];
+        }
+
+        /**
+         * @return Estimated nanoseconds spent ticking all block entities of a
+         *         type, scaled up from the timed ticks
+         */
+        public double getEstimatedNanos(int rawId) {
+            long sampled = sampledCalls[rawId];
+            return sampled == 0 ? 0 : (double) sampledNanos[rawId] * calls[rawId] / sampled;
+        }
+
+        /**
+         * @return Per-chunk counters of every world that ticked block entities
+         */
+        public Map<ServerWorld, ChunkCosts> getChunkCosts() {
+            return chunkCosts;
+        }
+    }
+
+    private static final IntervalExchange<Interval> EXCHANGE = new IntervalExchange<>(
+            () -> new Interval(Registries.BLOCK_ENTITY_TYPE.size()), Interval::clear);
+
+    // Written by the server thread only
+    private static int sampleCountdown = 1;
+    private static long sampleStart = 0;
+    private static int sampleRawId = -1;
+    private static long sampleChunk;
+    private static ChunkCosts sampleChunkCosts;
+    private static int sampleWeight;
+    private static ServerWorld sampleWorld;
+
+    // Chunk counters of the world ticked last, to skip the lookup for consecutive block entities
+    private static ServerWorld lastWorld;
+    private static Interval lastWorldInterval;
+    private static ChunkCosts lastWorldCosts;
+
+    private static volatile int sampleInterval = 8;
+
+    private BlockEntityTickCosts() {
+    }
+
+    /**
+     * Sets how many block entity ticks pass per timed tick; 0 disables timing
+     */
+    public static void setSampleInterval(int interval) {
+        sampleInterval = Math.max(0, interval);
+    }
+
+    public static int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * Called before the ticker of a block entity in a server world runs
+     */
+    public static void begin(ServerWorld world, BlockEntity blockEntity) {
+        int rawId = Registries.BLOCK_ENTITY_TYPE.getRawId(blockEntity.getType());
+        if (rawId < 0) {
+            return;
+        }
+        Interval interval = EXCHANGE.current();
+        interval.ensureCapacity(rawId);
+        interval.calls[rawId]++;
+
+        if (world != lastWorld || interval != lastWorldInterval) {
+            lastWorld = world;
+            lastWorldInterval = interval;
+            lastWorldCosts = interval.chunkCosts(world);
+        }
+        BlockPos pos = blockEntity.getPos();
+        long chunk = ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4);
+        lastWorldCosts.calls.addTo(chunk, 1);
+
+        int every = sampleInterval;
+        if (every > 0 && --sampleCountdown <= 0) {
+            // A random gap averaging 'every' keeps the fixed ticker order from timing the same block entities each tick
+            sampleCountdown = ThreadLocalRandom.current().nextInt(1, 2 * every);
+            sampleRawId = rawId;
+            sampleChunk = chunk;
+            sampleChunkCosts = lastWorldCosts;
+            sampleWeight = every;
+            sampleWorld = world;
+            sampleStart = System.nanoTime();
+        }
+    }
+
+    /**
+     * Called after the ticker of a block entity has run
+     */
+    public static void end() {
+        int rawId = sampleRawId;
+        if (rawId < 0) {
+            return;
+        }
+        long elapsed = System.nanoTime() - sampleStart;
+        sampleRawId = -1;
+
+        Interval interval = EXCHANGE.current();
+        interval.sampledCalls[rawId]++;
+        interval.sampledNanos[rawId] += elapsed;
+        sampleChunkCosts.sampledCalls.addTo(sampleChunk, 1);
+        sampleChunkCosts.sampledNanos.addTo(sampleChunk, elapsed);
+        ChunkTickCosts.add(sampleWorld, sampleChunk, ChunkTickCosts.Source.BLOCK_ENTITIES, elapsed * sampleWeight);
+    }
+
+    /**
+     * Called by the server thread at the end of every tick
+     */
+    public static void endTick() {
+        EXCHANGE.current().ticks++;
+        EXCHANGE.endTick();
+    }
+
+    /**
+     * Takes the counters handed over since the previous call and asks for the
+     * next. The returned counters stay valid until the next call.
+     * @return The completed interval, or null if none has been handed over yet
+     */
+    public static Interval requestInterval() {
+        return EXCHANGE.request();
+    }
+}
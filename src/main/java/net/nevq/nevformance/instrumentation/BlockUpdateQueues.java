@@ -0,0 +1,280 @@
+package net.nevq.nevformance.instrumentation;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.Map;
+
+/**
+ * Scheduled block and fluid ticks and neighbor updates of each world, measured
+ * by the world mixins.
+ *
+ * Per interval and world, this counts the scheduled ticks run and the time
+ * spent in each tick scheduler, the neighbor updates queued through the
+ * chain-restricted neighbor updater and the time spent running its queue, and
+ * the scheduled ticks run in each chunk. The number of ticks waiting in the
+ * schedulers is sampled every {@link #QUEUE_SAMPLE_TICKS} ticks, because
+ * counting it walks the scheduler of every loaded chunk. Everything is
+ * written by the server thread and handed to the collector through an
+ * {@link IntervalExchange}.
+ */
+public final class BlockUpdateQueues {
+
+    /**
+     * A world tick scheduler
+     */
+    public enum Scheduler {
+        BLOCK("block"),
+        FLUID("fluid");
+
+        private final String metricName;
+
+        Scheduler(String metricName) {
+            this.metricName = metricName;
+        }
+
+        public String getMetricName() {
+            return metricName;
+        }
+    }
+
+    private static final Scheduler[] SCHEDULERS = Scheduler.values();
+
+    // Ticks between two samples of the scheduler queue depths, once a second at 20 TPS
+    private static final int QUEUE_SAMPLE_TICKS = 20;
+
+    /**
+     * Counters of one world over one interval
+     */
+    public static final class WorldCounts {
+        private final long[] executed = new long[SCHEDULERS.length];
+        private final long[] nanos = new long[SCHEDULERS.length];
+        private final int[] queueDepth = new int[SCHEDULERS.length];
+        private final int[] maxQueueDepth = new int[SCHEDULERS.length];
+        private long neighborUpdates;
+        private long neighborUpdateNanos;
+        private final Long2IntOpenHashMap chunkTicks = new Long2IntOpenHashMap();
+
+        private WorldCounts() {
+            clear();
+        }
+
+        private void clear() {
+            for (int i = 0; i < SCHEDULERS.length; i++) {
+                executed[i] = 0;
+                nanos[i] = 0;
+                queueDepth[i] = -1;
+                maxQueueDepth[i] = -1;
+            }
+            neighborUpdates = 0;
+            neighborUpdateNanos = 0;
+            chunkTicks.clear();
+        }
+
+        /**
+         * @return Scheduled ticks run by a scheduler
+         */
+        public long getExecuted(Scheduler scheduler) {
+            return executed[scheduler.ordinal()];
+        }
+
+        /**
+         * @return Nanoseconds spent in a scheduler, running its ticks included
+         */
+        public long getNanos(Scheduler scheduler) {
+            return nanos[scheduler.ordinal()];
+        }
+
+        /**
+         * @return Ticks waiting in a scheduler at the latest sample, or -1 if none was taken
+         */
+        public int getQueueDepth(Scheduler scheduler) {
+            return queueDepth[scheduler.ordinal()];
+        }
+
+        /**
+         * @return Largest sampled number of ticks waiting in a scheduler, or -1 if none was taken
+         */
+        public int getMaxQueueDepth(Scheduler scheduler) {
+            return maxQueueDepth[scheduler.ordinal()];
+        }
+
+        /**
+         * @return Neighbor updates queued
+         */
+        public long getNeighborUpdates() {
+            return neighborUpdates;
+        }
+
+        /**
+         * @return Nanoseconds spent running neighbor update queues
+         */
+        public long getNeighborUpdateNanos() {
+            return neighborUpdateNanos;
+        }
+
+        /**
+         * @return Scheduled block and fluid ticks run, keyed by packed chunk position
+         */
+        public Long2IntOpenHashMap getChunkTicks() {
+            return chunkTicks;
+        }
+    }
+
+    /**
+     * Counters of every world over one collection interval
+     */
+    public static final class Interval {
+        private final Reference2ObjectOpenHashMap<ServerWorld, WorldCounts> worlds = new Reference2ObjectOpenHashMap<>();
+        private long ticks;
+
+        private WorldCounts world(ServerWorld world) {
+            WorldCounts counts = worlds.get(world);
+            if (counts == null) {
+                counts = new WorldCounts();
+                worlds.put(world, counts);
+            }
+            return counts;
+        }
+
+        private void clear() {
+            for (WorldCounts counts : worlds.values()) {
+                counts.clear();
+            }
+            ticks = 0;
+        }
+
+        /**
+         * @return Number of server ticks covered by the interval
+         */
+        public long getTicks() {
+            return ticks;
+        }
+
+        /**
+         * @return Counters of every world seen so far
+         */
+        public Map<ServerWorld, WorldCounts> getWorlds() {
+            return worlds;
+        }
+    }
+
+    private static final IntervalExchange<Interval> EXCHANGE = new IntervalExchange<>(Interval::new, Interval::clear);
+
+    // Written by the server thread only
+    private static final long[] schedulerStart = new long[SCHEDULERS.length];
+    private static long neighborUpdateStart = 0;
+    private static int ticksUntilQueueSample = 0;
+
+    // Counters of the world ticked last, to skip the lookup for consecutive additions
+    private static ServerWorld lastWorld;
+    private static Interval lastWorldInterval;
+    private static WorldCounts lastWorldCounts;
+
+    private BlockUpdateQueues() {
+    }
+
+    private static WorldCounts counts(ServerWorld world) {
+        Interval interval = EXCHANGE.current();
+        if (world != lastWorld || interval != lastWorldInterval) {
+            lastWorld = world;
+            lastWorldInterval = interval;
+            lastWorldCounts = interval.world(world);
+        }
+        return lastWorldCounts;
+    }
+
+    /**
+     * Called before a world runs the ticks due in a scheduler
+     */
+    public static void beginScheduler(Scheduler scheduler) {
+        schedulerStart[scheduler.ordinal()] = System.nanoTime();
+    }
+
+    /**
+     * Called after a world has run the ticks due in a scheduler
+     */
+    public static void endScheduler(ServerWorld world, Scheduler scheduler) {
+        long start = schedulerStart[scheduler.ordinal()];
+        if (start == 0) {
+            return;
+        }
+        schedulerStart[scheduler.ordinal()] = 0;
+        counts(world).nanos[scheduler.ordinal()] += System.nanoTime() - start;
+    }
+
+    /**
+     * Called for every scheduled block or fluid tick run
+     */
+    public static void scheduledTick(ServerWorld world, Scheduler scheduler, BlockPos pos) {
+        WorldCounts counts = counts(world);
+        counts.executed[scheduler.ordinal()]++;
+        counts.chunkTicks.addTo(ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4), 1);
+    }
+
+    /**
+     * Called for every neighbor update queued in a server world
+     */
+    public static void neighborUpdateQueued(ServerWorld world) {
+        counts(world).neighborUpdates++;
+    }
+
+    /**
+     * Called before a server world runs its neighbor update queue
+     */
+    public static void beginNeighborUpdates() {
+        neighborUpdateStart = System.nanoTime();
+    }
+
+    /**
+     * Called after a server world has run its neighbor update queue
+     */
+    public static void endNeighborUpdates(ServerWorld world) {
+        long start = neighborUpdateStart;
+        if (start == 0) {
+            return;
+        }
+        neighborUpdateStart = 0;
+        counts(world).neighborUpdateNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Called by the server thread at the end of every world tick
+     */
+    public static void endWorldTick(ServerWorld world) {
+        if (ticksUntilQueueSample > 0) {
+            return;
+        }
+        WorldCounts counts = counts(world);
+        sampleQueueDepth(counts, Scheduler.BLOCK, world.getBlockTickScheduler().getTickCount());
+        sampleQueueDepth(counts, Scheduler.FLUID, world.getFluidTickScheduler().getTickCount());
+    }
+
+    private static void sampleQueueDepth(WorldCounts counts, Scheduler scheduler, int depth) {
+        counts.queueDepth[scheduler.ordinal()] = depth;
+        counts.maxQueueDepth[scheduler.ordinal()] = Math.max(counts.maxQueueDepth[scheduler.ordinal()], depth);
+    }
+
+    /**
+     * Called by the server thread at the end of every tick
+     */
+    public static void endTick() {
+        if (--ticksUntilQueueSample < 0) {
+            ticksUntilQueueSample = QUEUE_SAMPLE_TICKS - 1;
+        }
+        EXCHANGE.current().ticks++;
+        EXCHANGE.endTick();
+    }
+
+    /**
+     * Takes the counters handed over since the previous call and asks for the
+     * next. The returned counters stay valid until the next call.
+     * @return The completed interval, or null if none has been handed over yet
+     */
+    public static Interval requestInterval() {
+        return EXCHANGE.request();
+    }
+}
@@ -0,0 +1,100 @@
+package net.nevq.nevformance.instrumentation;
+
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.world.chunk.ChunkStatus;
+import net.nevq.nevformance.metrics.histogram.IntervalHistogramRecorder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency of each chunk generation stage, per world and target
+ * {@link ChunkStatus}.
+ *
+ * A stage is timed from the moment the chunk loading manager runs its
+ * generation step for a chunk to the moment the step's future completes, so
+ * the latency includes the time the task waited for a worldgen thread. Steps
+ * complete on worker threads as well as on the server thread, so each stage's
+ * histogram is written under its own lock; contention is negligible next to
+ * the cost of the step. Steps that fail are not counted.
+ */
+public final class ChunkGenerationTimings {
+
+    /**
+     * Latencies and completions of one generation stage
+     */
+    public static final class StageTimings {
+        private final ChunkStatus status;
+        private final IntervalHistogramRecorder latencies = new IntervalHistogramRecorder();
+        private final LongAdder completed = new LongAdder();
+
+        private StageTimings(ChunkStatus status) {
+            this.status = status;
+        }
+
+        private void record(long latencyNanos) {
+            synchronized (this) {
+                latencies.record(latencyNanos);
+            }
+            completed.increment();
+        }
+
+        public ChunkStatus getStatus() {
+            return status;
+        }
+
+        /**
+         * @return Latencies of the stage, in nanoseconds
+         */
+        public IntervalHistogramRecorder getLatencies() {
+            return latencies;
+        }
+
+        /**
+         * @return Number of chunks that completed the stage so far
+         */
+        public long getCompleted() {
+            return completed.sum();
+        }
+    }
+
+    private static final int STAGE_COUNT = ChunkStatus.FULL.getIndex() + 1;
+
+    private static final Map<ServerWorld, AtomicReferenceArray<StageTimings>> WORLDS = new ConcurrentHashMap<>();
+
+    private ChunkGenerationTimings() {
+    }
+
+    /**
+     * @return Timings of the stages a world has run so far, indexed by
+     *         {@link ChunkStatus#getIndex()}; entries of stages not run yet are
+     *         null. Null if the world has not generated a chunk yet.
+     */
+    public static AtomicReferenceArray<StageTimings> get(ServerWorld world) {
+        return WORLDS.get(world);
+    }
+
+    /**
+     * Called on any thread when the generation step to a status completes for a chunk
+     */
+    public static void completed(ServerWorld world, ChunkStatus status, long latencyNanos) {
+        AtomicReferenceArray<StageTimings> stages = WORLDS.computeIfAbsent(world,
+                w -> new AtomicReferenceArray<>(STAGE_COUNT));
+        int index = status.getIndex();
+        StageTimings stage = stages.get(index);
+        if (stage == null) {
+            stages.compareAndSet(index, null, new StageTimings(status));
+            stage = stages.get(index);
+        }
+        stage.record(latencyNanos);
+    }
+
+    /**
+     * Forgets the worlds of a stopped server
+     */
+    public static void clear() {
+        WORLDS.clear();
+    }
+}
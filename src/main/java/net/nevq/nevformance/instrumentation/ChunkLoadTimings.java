@@ -0,0 +1,185 @@
+package net.nevq.nevformance.instrumentation;
+
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.world.chunk.WorldChunk;
+import net.nevq.nevformance.metrics.histogram.IntervalHistogramRecorder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency from the moment a chunk is requested to the moment it is loaded
+ * into its world as a full chunk, and load and unload counts, per world.
+ *
+ * A chunk is requested when the chunk loading manager starts reading it from
+ * storage, which happens once per chunk holder. If any generation step other
+ * than the final conversion to a full chunk does work on it before it is
+ * loaded, its latency counts as {@link Source#GENERATED}, otherwise as
+ * {@link Source#DISK}. Steps a chunk saved at a later status has already been
+ * through do not count. Chunks that are requested but never become full, such
+ * as the neighbors kept at a lower status during generation, are dropped by
+ * {@link WorldLoads#pruneStale}. Counters are {@link LongAdder}s, read as
+ * running totals by the collector.
+ */
+public final class ChunkLoadTimings {
+
+    /**
+     * Where a loaded chunk came from
+     */
+    public enum Source {
+        DISK("disk"),
+        GENERATED("generated");
+
+        private final String metricName;
+
+        Source(String metricName) {
+            this.metricName = metricName;
+        }
+
+        public String getMetricName() {
+            return metricName;
+        }
+    }
+
+    /**
+     * A chunk requested but not loaded yet
+     */
+    private static final class Pending {
+        final long requestNanos;
+        volatile boolean generated;
+
+        Pending(long requestNanos) {
+            this.requestNanos = requestNanos;
+        }
+    }
+
+    /**
+     * Load latencies and counters of one world
+     */
+    public static final class WorldLoads {
+        private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+        private final IntervalHistogramRecorder[] latencies = new IntervalHistogramRecorder[Source.values().length];
+        private final LongAdder loads = new LongAdder();
+        private final LongAdder generatedLoads = new LongAdder();
+        private final LongAdder unloads = new LongAdder();
+
+        private WorldLoads() {
+            for (int i = 0; i < latencies.length; i++) {
+                latencies[i] = new IntervalHistogramRecorder();
+            }
+        }
+
+        /**
+         * @return Request-to-load latencies of chunks from a source, in nanoseconds;
+         *         written by the server thread only
+         */
+        public IntervalHistogramRecorder getLatencies(Source source) {
+            return latencies[source.ordinal()];
+        }
+
+        /**
+         * @return Number of chunks loaded into the world so far
+         */
+        public long getLoads() {
+            return loads.sum();
+        }
+
+        /**
+         * @return Number of loaded chunks that had to be generated so far
+         */
+        public long getGeneratedLoads() {
+            return generatedLoads.sum();
+        }
+
+        /**
+         * @return Number of chunks unloaded from the world so far
+         */
+        public long getUnloads() {
+            return unloads.sum();
+        }
+
+        /**
+         * @return Number of chunks requested but not loaded yet
+         */
+        public int getPendingCount() {
+            return pending.size();
+        }
+
+        /**
+         * Forgets requests older than a maximum age
+         * @param maxAgeNanos Age after which a request is no longer expected to complete
+         */
+        public void pruneStale(long maxAgeNanos) {
+            long now = System.nanoTime();
+            pending.values().removeIf(request -> now - request.requestNanos > maxAgeNanos);
+        }
+    }
+
+    private static final Map<ServerWorld, WorldLoads> WORLDS = new ConcurrentHashMap<>();
+
+    private ChunkLoadTimings() {
+    }
+
+    private static WorldLoads world(ServerWorld world) {
+        return WORLDS.computeIfAbsent(world, w -> new WorldLoads());
+    }
+
+    /**
+     * @return Load latencies and counters of a world, or null if it has not loaded a chunk yet
+     */
+    public static WorldLoads get(ServerWorld world) {
+        return WORLDS.get(world);
+    }
+
+    /**
+     * Called when the chunk loading manager starts reading a chunk from storage
+     */
+    public static void requested(ServerWorld world, long chunkPos) {
+        world(world).pending.putIfAbsent(chunkPos, new Pending(System.nanoTime()));
+    }
+
+    /**
+     * Called when a generation step that creates chunk content does work on a chunk
+     */
+    public static void generating(ServerWorld world, long chunkPos) {
+        Pending request = world(world).pending.get(chunkPos);
+        if (request != null) {
+            request.generated = true;
+        }
+    }
+
+    /**
+     * Called on the server thread when a chunk has been loaded into its world
+     */
+    public static void loaded(ServerWorld world, WorldChunk chunk) {
+        WorldLoads loads = world(world);
+        loads.loads.increment();
+        Pending request = loads.pending.remove(chunk.getPos().toLong());
+        if (request == null) {
+            return;
+        }
+        Source source = request.generated ? Source.GENERATED : Source.DISK;
+        if (request.generated) {
+            loads.generatedLoads.increment();
+            PlayerChunkGeneration.generated(world, chunk.getPos());
+        }
+        loads.latencies[source.ordinal()].record(System.nanoTime() - request.requestNanos);
+    }
+
+    /**
+     * Called when a chunk is unloaded from its world
+     */
+    public static void unloaded(ServerWorld world, WorldChunk chunk) {
+        WorldLoads loads = world(world);
+        loads.unloads.increment();
+        loads.pending.remove(chunk.getPos().toLong());
+    }
+
+    /**
+     * Forgets the worlds of a stopped server
+     */
+    public static void clear() {
+        WORLDS.clear();
+    }
+}
@@ -0,0 +1,211 @@
+package net.nevq.nevformance.instrumentation;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tick time attributed to the chunk it was spent in, per source.
+ *
+ * Entity and block entity ticks are attributed from the timed samples of
+ * {@link EntityTickCosts} and {@link BlockEntityTickCosts}, scaled by their
+ * sampling interval. Random ticks are timed for every chunk, and on average
+ * one in {@link #setScheduledSampleInterval scheduledSampleInterval} scheduled
+ * block and fluid ticks is timed. Nanoseconds are added to a {@code long[]} per
+ * chunk, one slot per {@link Source}, in a primitive map keyed by the packed
+ * chunk position. Rows are kept across intervals, so the server thread only
+ * allocates when a chunk is ticked for the first time.
+ */
+public final class ChunkTickCosts {
+
+    /**
+     * A kind of work done for a chunk during a tick
+     */
+    public enum Source {
+        ENTITIES("entities"),
+        BLOCK_ENTITIES("block_entities"),
+        RANDOM_TICKS("random_ticks"),
+        SCHEDULED_TICKS("scheduled_ticks");
+
+        private final String metricName;
+
+        Source(String metricName) {
+            this.metricName = metricName;
+        }
+
+        public String getMetricName() {
+            return metricName;
+        }
+    }
+
+    private static final Source[] SOURCES = Source.values();
+
+    /**
+     * Nanoseconds per chunk and source of one collection interval
+     */
+    public static final class Interval {
+        private final Reference2ObjectOpenHashMap<ServerWorld, Long2ObjectOpenHashMap<long[]>> worlds = new Reference2ObjectOpenHashMap<>();
+        private long ticks;
+
+        private Long2ObjectOpenHashMap<long[]> chunks(ServerWorld world) {
+            Long2ObjectOpenHashMap<long[]> chunks = worlds.get(world);
+            if (chunks == null) {
+                chunks = new Long2ObjectOpenHashMap<>();
+                worlds.put(world, chunks);
+            }
+            return chunks;
+        }
+
+        private void clear() {
+            for (Long2ObjectOpenHashMap<long[]> chunks : worlds.values()) {
+                // Rows of chunks that were not ticked are dropped, the others are reused
+                chunks.values().removeIf(ChunkTickCosts::isZero);
+                for (long[] row : chunks.values()) {
+                    Arrays.fill(row, 0);
+                }
+            }
+            worlds.values().removeIf(Map::isEmpty);
+            ticks = 0;
+        }
+
+        /**
+         * @return Number of server ticks covered by the interval
+         */
+        public long getTicks() {
+            return ticks;
+        }
+
+        /**
+         * @return Nanoseconds per source, indexed by {@link Source#ordinal()},
+         *         keyed by packed chunk position, for every ticked world.
+         *         Rows may be all zero for chunks not ticked in this interval.
+         */
+        public Map<ServerWorld, Long2ObjectOpenHashMap<long[]>> getWorlds() {
+            return worlds;
+        }
+    }
+
+    private static final IntervalExchange<Interval> EXCHANGE = new IntervalExchange<>(Interval::new, Interval::clear);
+
+    // Written by the server thread only
+    private static long randomTickStart = 0;
+    private static long scheduledTickStart = 0;
+    private static int scheduledCountdown = 1;
+    private static int scheduledWeight = 0;
+
+    // Chunk rows of the world ticked last, to skip the lookup for consecutive additions
+    private static ServerWorld lastWorld;
+    private static Interval lastWorldInterval;
+    private static Long2ObjectOpenHashMap<long[]> lastWorldChunks;
+
+    private static volatile int scheduledSampleInterval = 4;
+
+    private ChunkTickCosts() {
+    }
+
+    /**
+     * Sets how many scheduled ticks pass per timed tick; 0 disables timing
+     */
+    public static void setScheduledSampleInterval(int interval) {
+        scheduledSampleInterval = Math.max(0, interval);
+    }
+
+    /**
+     * Adds time spent for a chunk
+     * @param world World of the chunk
+     * @param chunkPos Packed chunk position
+     * @param source What the time was spent on
+     * @param nanos Nanoseconds to add
+     */
+    public static void add(ServerWorld world, long chunkPos, Source source, long nanos) {
+        Interval interval = EXCHANGE.current();
+        if (world != lastWorld || interval != lastWorldInterval) {
+            lastWorld = world;
+            lastWorldInterval = interval;
+            lastWorldChunks = interval.chunks(world);
+        }
+        long[] row = lastWorldChunks.get(chunkPos);
+        if (row == null) {
+            row = new long[SOURCES.length];
+            lastWorldChunks.put(chunkPos, row);
+        }
+        row[source.ordinal()] += nanos;
+    }
+
+    /**
+     * Called before the random ticks of a chunk
+     */
+    public static void beginRandomTicks() {
+        randomTickStart = System.nanoTime();
+    }
+
+    /**
+     * Called after the random ticks of a chunk
+     */
+    public static void endRandomTicks(ServerWorld world, ChunkPos pos) {
+        long start = randomTickStart;
+        if (start == 0) {
+            return;
+        }
+        randomTickStart = 0;
+        add(world, pos.toLong(), Source.RANDOM_TICKS, System.nanoTime() - start);
+    }
+
+    /**
+     * Called before a scheduled block or fluid tick
+     */
+    public static void beginScheduledTick() {
+        int every = scheduledSampleInterval;
+        if (every > 0 && --scheduledCountdown <= 0) {
+            // Scheduled ticks come from periodic contraptions, so a fixed stride could lock onto or miss one
+            scheduledCountdown = ThreadLocalRandom.current().nextInt(1, 2 * every);
+            scheduledWeight = every;
+            scheduledTickStart = System.nanoTime();
+        }
+    }
+
+    /**
+     * Called after a scheduled block or fluid tick
+     */
+    public static void endScheduledTick(ServerWorld world, BlockPos pos) {
+        int weight = scheduledWeight;
+        if (weight == 0) {
+            return;
+        }
+        long elapsed = System.nanoTime() - scheduledTickStart;
+        scheduledWeight = 0;
+        add(world, ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4), Source.SCHEDULED_TICKS, elapsed * weight);
+    }
+
+    /**
+     * Called by the server thread at the end of every tick
+     */
+    public static void endTick() {
+        EXCHANGE.current().ticks++;
+        EXCHANGE.endTick();
+    }
+
+    /**
+     * Takes the counters handed over since the previous call and asks for the
+     * next. The returned counters stay valid until the next call.
+     * @return The completed interval, or null if none has been handed over yet
+     */
+    public static Interval requestInterval() {
+        return EXCHANGE.request();
+    }
+
+    private static boolean isZero(long[] row) {
+        for (long value : row) {
+            if (value != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
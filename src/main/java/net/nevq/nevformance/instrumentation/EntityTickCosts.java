@@ -0,0 +1,184 @@
+package net.nevq.nevformance.instrumentation;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.registry.Registries;
+import net.minecraft.server.world.ServerWorld;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Cost of ticking entities, accumulated per entity type by the entity tick mixin.
+ *
+ * Every entity tick is counted, but on average only one in
+ * {@link #setSampleInterval sampleInterval} is timed, at random gaps, which
+ * keeps the two {@link System#nanoTime()} reads off most entity ticks. Counters are plain arrays indexed by the raw
+ * registry id of the type and are only touched by the server thread. Timed
+ * ticks are also attributed to the entity's chunk in {@link ChunkTickCosts}.
+ *
+ * The collector takes the counters of each interval with
+ * {@link #requestInterval()}, through an {@link IntervalExchange}.
+ */
+public final class EntityTickCosts {
+
+    /**
+     * Counters of one collection interval, indexed by raw entity type id
+     */
+    public static final class Interval {
+        private long[] calls;
+        private long[] sampledCalls;
+        private long[] sampledNanos;
+        private long ticks;
+
+        private Interval(int size) {
+            calls = new long[size];
+            sampledCalls = new long[size];
+            sampledNanos = new long[size];
+        }
+
+        private void ensureCapacity(int rawId) {
+            if (rawId >= calls.length) {
+                int size = Math.max(rawId + 1, calls.length * 2);
+                calls = Arrays.copyOf(calls, size);
+                sampledCalls = Arrays.copyOf(sampledCalls, size);
+                sampledNanos = Arrays.copyOf(sampledNanos, size);
+            }
+        }
+
+        private void clear() {
+            Arrays.fill(calls, 0);
+            Arrays.fill(sampledCalls, 0);
+            Arrays.fill(sampledNanos, 0);
+            ticks = 0;
+        }
+
+        /**
+         * @return One more than the highest raw id that may have counters
+         */
+        public int size() {
+            return calls.length;
+        }
+
+        /**
+         * @return Number of server ticks covered by the interval
+         */
+        public long getTicks() {
+            return ticks;
+        }
+
+        /**
+         * @return Number of entity ticks of a type
+         */
+        public long getCalls(int rawId) {
+            return calls[rawId];
+        }
+
+        /**
+         * @return Number of entity ticks of a type that were timed
+         */
+        public long getSampledCalls(int rawId) {
+            return sampledCalls[rawId];
+        }
+
+        /**
+         * @return Nanoseconds spent in the timed entity ticks of a type
+         */
+        public long getSampledNanos(int rawId) {
+            return sampledNanos[rawId];
+        }
+
+        /**
+         * @return Estimated nanoseconds spent ticking all entities of a type,
+         *         scaled up from the timed ticks
+         */
+        public double getEstimatedNanos(int rawId) {
+            long sampled = sampledCalls[rawId];
+            return sampled == 0 ? 0 : (double) sampledNanos[rawId] * calls[rawId] / sampled;
+        }
+    }
+
+    private static final IntervalExchange<Interval> EXCHANGE = new IntervalExchange<>(
+            () -> new Interval(Registries.ENTITY_TYPE.size()), Interval::clear);
+
+    // Written by the server thread only
+    private static int sampleCountdown = 1;
+    private static long sampleStart = 0;
+    private static int sampleRawId = -1;
+    private static int sampleWeight;
+    private static ServerWorld sampleWorld;
+    private static long sampleChunk;
+
+    private static volatile int sampleInterval = 16;
+
+    private EntityTickCosts() {
+    }
+
+    /**
+     * Sets how many entity ticks pass per timed tick; 0 disables timing
+     */
+    public static void setSampleInterval(int interval) {
+        sampleInterval = Math.max(0, interval);
+    }
+
+    public static int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * Called before an entity is ticked
+     */
+    public static void begin(ServerWorld world, Entity entity) {
+        int rawId = Registries.ENTITY_TYPE.getRawId(entity.getType());
+        if (rawId < 0) {
+            return;
+        }
+        Interval interval = EXCHANGE.current();
+        interval.ensureCapacity(rawId);
+        interval.calls[rawId]++;
+
+        int every = sampleInterval;
+        if (every > 0 && --sampleCountdown <= 0) {
+            // Entities tick in a stable order, so a fixed stride would keep timing the same ones
+            sampleCountdown = ThreadLocalRandom.current().nextInt(1, 2 * every);
+            sampleRawId = rawId;
+            sampleWeight = every;
+            sampleWorld = world;
+            sampleChunk = entity.getChunkPos().toLong();
+            sampleStart = System.nanoTime();
+        }
+    }
+
+    /**
+     * Called after an entity has been ticked
+     */
+    public static void end() {
+        int rawId = sampleRawId;
+        if (rawId < 0) {
+            return;
+        }
+        long elapsed = System.nanoTime() - sampleStart;
+        sampleRawId = -1;
+
+        Interval interval = EXCHANGE.current();
+        interval.sampledCalls[rawId]++;
+        interval.sampledNanos[rawId] += elapsed;
+        ChunkTickCosts.add(sampleWorld, sampleChunk, ChunkTickCosts.Source.ENTITIES, elapsed * sampleWeight);
+    }
+
+    /**
+     * Called by the server thread at the end of every tick
+     */
+    public static void endTick() {
+        EXCHANGE.current().ticks++;
+        EXCHANGE.endTick();
+    }
+
+    /**
+     * Takes the counters handed over since the previous call and asks for the
+     * next. The returned counters stay valid until the next call.
+     * @return The completed interval, or null if none has been handed over yet
+     */
+    public static Interval requestInterval() {
+        return EXCHANGE.request();
+    }
+}
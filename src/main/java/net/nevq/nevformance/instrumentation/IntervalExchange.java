@@ -0,0 +1,79 @@
+package net.nevq.nevformance.instrumentation;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Hands counters filled by the server thread to a collector without locking
+ * or allocating.
+ *
+ * Three counter sets rotate between the two threads: the server thread fills
+ * the current set, the collector reads the set it was last given, and a
+ * cleared spare waits for the next handover. The collector asks for a set
+ * with {@link #request()}; at the end of the next tick the server thread
+ * hands over the current set and continues with the spare. The collector
+ * clears the set it is done with before asking again, so the server thread
+ * never clears or allocates.
+ */
+final class IntervalExchange<T> {
+    private final Consumer<T> clear;
+
+    // Written by the server thread only
+    private T current;
+
+    // Cleared set for the server thread to continue with, supplied by the collector before each request
+    private T spare;
+
+    // Owned by the collector: the set it was last given
+    private T taken;
+
+    private volatile boolean requested = true;
+    private volatile T completed = null;
+
+    IntervalExchange(Supplier<T> factory, Consumer<T> clear) {
+        this.clear = clear;
+        this.current = factory.get();
+        this.spare = factory.get();
+        this.taken = factory.get();
+    }
+
+    /**
+     * @return The set the server thread is filling; server thread only
+     */
+    T current() {
+        return current;
+    }
+
+    /**
+     * Hands the current set over if the collector asked for it; server thread only
+     */
+    void endTick() {
+        if (requested) {
+            T finished = current;
+            current = spare;
+            requested = false;
+            completed = finished;
+        }
+    }
+
+    /**
+     * Takes the set handed over since the previous call and, if there was one,
+     * asks for the next. Must only be called from one thread at a time; the
+     * returned set stays valid until the next call.
+     * @return The completed set, or null if none has been handed over yet
+     */
+    T request() {
+        T finished = completed;
+        if (finished == null) {
+            return null;
+        }
+        completed = null;
+
+        // The set returned by the previous call is no longer read, so it becomes the next spare
+        clear.accept(taken);
+        spare = taken;
+        taken = finished;
+        requested = true;
+        return finished;
+    }
+}
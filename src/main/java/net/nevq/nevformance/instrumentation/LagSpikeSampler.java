@@ -0,0 +1,288 @@
+package net.nevq.nevformance.instrumentation;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.nevq.nevformance.Nevformance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Flight recorder for slow ticks: a watchdog thread that samples the stack of
+ * the server thread while a tick runs longer than a threshold.
+ *
+ * The server thread only publishes when a tick starts and ends. The watchdog
+ * sleeps until the running tick would cross {@link #setThresholdMs threshold},
+ * then takes a stack sample every {@link #setSampleIntervalMs sampleInterval}
+ * until the tick ends. The samples of one tick are aggregated into collapsed
+ * stacks, root frame first with frames separated by {@code ;}, and handed to
+ * the collector as a {@link Profile} once the tick is over. Taking a stack
+ * briefly pauses the server thread, which only happens during a slow tick.
+ */
+public final class LagSpikeSampler {
+    // Samples kept per tick, so a hung server thread cannot grow a profile without bound
+    private static final int MAX_SAMPLES = 2000;
+    // Distinct stacks kept per profile; the rest are counted under OTHER_STACKS
+    private static final int MAX_STACKS = 256;
+    private static final String OTHER_STACKS = "[other]";
+    private static final int MAX_PENDING_PROFILES = 16;
+
+    /**
+     * Aggregated stack samples of one slow tick
+     */
+    public static final class Profile {
+        private final long tickStart;
+        private final double tickTimeMs;
+        private final double sampleIntervalMs;
+        private final int sampleCount;
+        private final Map<String, Integer> stacks;
+
+        private Profile(long tickStart, double tickTimeMs, double sampleIntervalMs, int sampleCount, Map<String, Integer> stacks) {
+            this.tickStart = tickStart;
+            this.tickTimeMs = tickTimeMs;
+            this.sampleIntervalMs = sampleIntervalMs;
+            this.sampleCount = sampleCount;
+            this.stacks = stacks;
+        }
+
+        /**
+         * @return Wall clock time the tick started at, in epoch milliseconds
+         */
+        public long getTickStart() {
+            return tickStart;
+        }
+
+        public double getTickTimeMs() {
+            return tickTimeMs;
+        }
+
+        public double getSampleIntervalMs() {
+            return sampleIntervalMs;
+        }
+
+        public int getSampleCount() {
+            return sampleCount;
+        }
+
+        /**
+         * @return Number of samples per collapsed stack, most frequent first
+         */
+        public Map<String, Integer> getStacks() {
+            return stacks;
+        }
+    }
+
+    /**
+     * Samples of the tick being captured; watchdog thread only
+     */
+    private static final class Capture {
+        final long sequence;
+        final long startNanos;
+        final long startMillis;
+        final long intervalNanos;
+        final Object2IntOpenHashMap<String> stacks = new Object2IntOpenHashMap<>();
+        final StringBuilder builder = new StringBuilder(4096);
+        int samples;
+        long lastSampleNanos;
+
+        Capture(long sequence, long startNanos, long intervalNanos) {
+            this.sequence = sequence;
+            this.startNanos = startNanos;
+            this.startMillis = System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            this.intervalNanos = intervalNanos;
+        }
+
+        void add(StackTraceElement[] stack, long now) {
+            builder.setLength(0);
+            for (int i = stack.length - 1; i >= 0; i--) {
+                StackTraceElement frame = stack[i];
+                builder.append(frame.getClassName()).append('.').append(frame.getMethodName());
+                if (i > 0) {
+                    builder.append(';');
+                }
+            }
+            stacks.addTo(builder.toString(), 1);
+            samples++;
+            lastSampleNanos = now;
+        }
+
+        Profile toProfile(long tickNanos) {
+            List<Object2IntMap.Entry<String>> entries = new ArrayList<>(stacks.object2IntEntrySet());
+            entries.sort((a, b) -> Integer.compare(b.getIntValue(), a.getIntValue()));
+
+            Map<String, Integer> collapsed = new LinkedHashMap<>();
+            int other = 0;
+            for (int i = 0; i < entries.size(); i++) {
+                if (i < MAX_STACKS) {
+                    collapsed.put(entries.get(i).getKey(), entries.get(i).getIntValue());
+                } else {
+                    other += entries.get(i).getIntValue();
+                }
+            }
+            if (other > 0) {
+                collapsed.put(OTHER_STACKS, other);
+            }
+            return new Profile(startMillis, tickNanos / 1_000_000.0, intervalNanos / 1_000_000.0,
+                    samples, Collections.unmodifiableMap(collapsed));
+        }
+    }
+
+    // Published by the server thread: the running tick is tickSequence unless it equals completedSequence
+    private static volatile Thread serverThread;
+    private static volatile long tickStartNanos;
+    private static volatile long tickSequence = 0;
+    private static volatile long completedSequence = 0;
+    private static volatile long completedTickNanos;
+
+    private static volatile long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(100);
+    private static volatile long sampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private static final ArrayBlockingQueue<Profile> PROFILES = new ArrayBlockingQueue<>(MAX_PENDING_PROFILES);
+
+    private static Thread watchdog;
+    private static volatile boolean running = false;
+
+    private LagSpikeSampler() {
+    }
+
+    /**
+     * Sets how long a tick must run before its stack is sampled
+     */
+    public static void setThresholdMs(int thresholdMs) {
+        thresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, thresholdMs));
+    }
+
+    /**
+     * Sets the time between stack samples of a slow tick; 0 disables sampling
+     */
+    public static void setSampleIntervalMs(int intervalMs) {
+        sampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, intervalMs));
+    }
+
+    /**
+     * Starts the watchdog thread if it is not running
+     */
+    public static synchronized void start() {
+        if (watchdog != null) {
+            return;
+        }
+        running = true;
+        watchdog = new Thread(LagSpikeSampler::run, "Nevformance Lag Spike Sampler");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    /**
+     * Stops the watchdog thread and drops profiles not yet collected
+     */
+    public static synchronized void stop() {
+        if (watchdog == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(watchdog);
+        try {
+            watchdog.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        watchdog = null;
+        PROFILES.clear();
+    }
+
+    /**
+     * Called by the server thread when a tick starts
+     * @param startNanos {@link System#nanoTime()} at the start of the tick
+     */
+    public static void tickStarted(long startNanos) {
+        Thread current = Thread.currentThread();
+        if (serverThread != current) {
+            serverThread = current;
+        }
+        tickStartNanos = startNanos;
+        // Written last, so a watchdog that sees the new sequence also sees its start time
+        tickSequence = tickSequence + 1;
+    }
+
+    /**
+     * Called by the server thread when a tick ends
+     * @param durationNanos Duration of the tick
+     */
+    public static void tickEnded(long durationNanos) {
+        completedTickNanos = durationNanos;
+        completedSequence = tickSequence;
+    }
+
+    /**
+     * Takes the profiles of the slow ticks that ended since the previous call
+     * @return Completed profiles, oldest first
+     */
+    public static List<Profile> drainProfiles() {
+        List<Profile> profiles = new ArrayList<>();
+        PROFILES.drainTo(profiles);
+        return profiles;
+    }
+
+    private static void run() {
+        Capture capture = null;
+        while (running) {
+            long sequence = tickSequence;
+            long start = tickStartNanos;
+            boolean inTick = completedSequence != sequence;
+
+            if (capture != null && (capture.sequence != sequence || !inTick)) {
+                publish(capture);
+                capture = null;
+            }
+
+            long threshold = thresholdNanos;
+            long interval = sampleIntervalNanos;
+            Thread thread = serverThread;
+            if (!inTick || interval == 0 || thread == null) {
+                // A tick starting during this wait has not crossed the threshold by the time it ends
+                LockSupport.parkNanos(threshold);
+                continue;
+            }
+
+            long now = System.nanoTime();
+            long elapsed = now - start;
+            if (elapsed < threshold) {
+                LockSupport.parkNanos(threshold - elapsed);
+                continue;
+            }
+
+            if (capture == null || capture.samples < MAX_SAMPLES) {
+                StackTraceElement[] stack = thread.getStackTrace();
+                // The tick may have ended while the stack was taken
+                if (tickSequence == sequence && completedSequence != sequence) {
+                    if (capture == null) {
+                        capture = new Capture(sequence, start, interval);
+                    }
+                    capture.add(stack, System.nanoTime());
+                }
+            }
+            LockSupport.parkNanos(interval);
+        }
+    }
+
+    private static void publish(Capture capture) {
+        long tickNanos = completedTickNanos;
+        if (completedSequence != capture.sequence) {
+            // The next tick ended before the watchdog woke up; the last sample bounds the duration
+            tickNanos = capture.lastSampleNanos - capture.startNanos;
+        }
+        Profile profile = capture.toProfile(tickNanos);
+        while (!PROFILES.offer(profile)) {
+            // Nobody is collecting; the oldest profile makes room
+            PROFILES.poll();
+        }
+        Nevformance.LOGGER.debug("Captured {} stack samples of a {} ms tick",
+                profile.getSampleCount(), String.format("%.2f", profile.getTickTimeMs()));
+    }
+}
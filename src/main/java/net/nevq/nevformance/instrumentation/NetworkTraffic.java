@@ -0,0 +1,229 @@
+package net.nevq.nevformance.instrumentation;
+
+import net.minecraft.network.packet.PacketType;
+import net.minecraft.util.Identifier;
+import net.nevq.nevformance.metrics.histogram.IntervalHistogramRecorder;
+import net.nevq.nevformance.metrics.histogram.LogLinearHistogram;
+import net.nevq.nevformance.util.MetricsUtil;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Packets and bytes per packet type and direction, per player connection, and
+ * the latency of packet writes, measured by the network mixins on the Netty
+ * event loops.
+ *
+ * Bytes are the size of the encoded packet before compression and framing,
+ * as reported by the packet encoder and decoder. Counters are
+ * {@link LongAdder}s and write latencies go into one histogram per stripe,
+ * picked by thread, so the event loops do not contend with each other. About
+ * one write in {@link #WRITE_SAMPLE_INTERVAL} is timed, from the moment a
+ * connection hands a packet to its channel to the moment the channel has
+ * written it to the socket, so packets written without a flush include the
+ * wait for the next flush.
+ */
+public final class NetworkTraffic {
+
+    /**
+     * Direction of a packet, seen from the server
+     */
+    public enum Direction {
+        SENT("sent"),
+        RECEIVED("received");
+
+        private final String metricName;
+
+        Direction(String metricName) {
+            this.metricName = metricName;
+        }
+
+        public String getMetricName() {
+            return metricName;
+        }
+    }
+
+    /**
+     * Packets and bytes of one packet type in one direction
+     */
+    public static final class PacketCounters {
+        private final String name;
+        private final Direction direction;
+        private final LongAdder packets = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+
+        private PacketCounters(String name, Direction direction) {
+            this.name = name;
+            this.direction = direction;
+        }
+
+        /**
+         * @return Name of the packet type, safe for metric names
+         */
+        public String getName() {
+            return name;
+        }
+
+        public Direction getDirection() {
+            return direction;
+        }
+
+        public long getPackets() {
+            return packets.sum();
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+    }
+
+    /**
+     * Traffic of one player connection
+     */
+    public static final class PlayerTraffic {
+        private final String playerName;
+        private final LongAdder[] packets = {new LongAdder(), new LongAdder()};
+        private final LongAdder[] bytes = {new LongAdder(), new LongAdder()};
+
+        private PlayerTraffic(String playerName) {
+            this.playerName = playerName;
+        }
+
+        public String getPlayerName() {
+            return playerName;
+        }
+
+        public long getPackets(Direction direction) {
+            return packets[direction.ordinal()].sum();
+        }
+
+        public long getBytes(Direction direction) {
+            return bytes[direction.ordinal()].sum();
+        }
+    }
+
+    /**
+     * Average number of packet writes per timed write
+     */
+    public static final int WRITE_SAMPLE_INTERVAL = 16;
+
+    // Power of two, so the stripe is picked with a mask
+    private static final int WRITE_LATENCY_STRIPES = 8;
+
+    @SuppressWarnings("unchecked")
+    private static final Map<PacketType<?>, PacketCounters>[] PACKET_TYPES = new Map[]{
+            new ConcurrentHashMap<>(), new ConcurrentHashMap<>()};
+    private static final LongAdder[] TOTAL_PACKETS = {new LongAdder(), new LongAdder()};
+    private static final LongAdder[] TOTAL_BYTES = {new LongAdder(), new LongAdder()};
+    private static final Map<SocketAddress, PlayerTraffic> PLAYERS = new ConcurrentHashMap<>();
+    private static final IntervalHistogramRecorder[] WRITE_LATENCIES = new IntervalHistogramRecorder[WRITE_LATENCY_STRIPES];
+
+    static {
+        for (int i = 0; i < WRITE_LATENCY_STRIPES; i++) {
+            WRITE_LATENCIES[i] = new IntervalHistogramRecorder();
+        }
+    }
+
+    private NetworkTraffic() {
+    }
+
+    /**
+     * Called on an event loop for every packet encoded or decoded
+     * @param remoteAddress Address of the connection
+     * @param bytes Size of the encoded packet
+     */
+    public static void packet(Direction direction, PacketType<?> type, SocketAddress remoteAddress, int bytes) {
+        int index = direction.ordinal();
+        PacketCounters counters = PACKET_TYPES[index].get(type);
+        if (counters == null) {
+            counters = PACKET_TYPES[index].computeIfAbsent(type, t -> new PacketCounters(getPacketName(t), direction));
+        }
+        counters.packets.increment();
+        counters.bytes.add(bytes);
+        TOTAL_PACKETS[index].increment();
+        TOTAL_BYTES[index].add(bytes);
+
+        PlayerTraffic player = remoteAddress != null ? PLAYERS.get(remoteAddress) : null;
+        if (player != null) {
+            player.packets[index].increment();
+            player.bytes[index].add(bytes);
+        }
+    }
+
+    /**
+     * Called when a channel has written a sampled packet to its socket
+     */
+    public static void writeCompleted(long latencyNanos) {
+        IntervalHistogramRecorder recorder = WRITE_LATENCIES[(int) Thread.currentThread().getId() & (WRITE_LATENCY_STRIPES - 1)];
+        synchronized (recorder) {
+            recorder.record(latencyNanos);
+        }
+    }
+
+    /**
+     * Called when a player has joined, so the traffic of the connection is attributed to them
+     */
+    public static void playerConnected(SocketAddress remoteAddress, String playerName) {
+        if (remoteAddress != null) {
+            PLAYERS.put(remoteAddress, new PlayerTraffic(playerName));
+        }
+    }
+
+    /**
+     * Called when a player has left
+     */
+    public static void playerDisconnected(SocketAddress remoteAddress) {
+        if (remoteAddress != null) {
+            PLAYERS.remove(remoteAddress);
+        }
+    }
+
+    /**
+     * @return Counters of every packet type seen so far in a direction
+     */
+    public static List<PacketCounters> getPacketTypes(Direction direction) {
+        return new ArrayList<>(PACKET_TYPES[direction.ordinal()].values());
+    }
+
+    public static long getTotalPackets(Direction direction) {
+        return TOTAL_PACKETS[direction.ordinal()].sum();
+    }
+
+    public static long getTotalBytes(Direction direction) {
+        return TOTAL_BYTES[direction.ordinal()].sum();
+    }
+
+    /**
+     * @return Traffic of the player on a connection, or null if no player has joined on it
+     */
+    public static PlayerTraffic getPlayer(SocketAddress remoteAddress) {
+        return remoteAddress != null ? PLAYERS.get(remoteAddress) : null;
+    }
+
+    /**
+     * @return Traffic of every connected player
+     */
+    public static List<PlayerTraffic> getPlayers() {
+        return new ArrayList<>(PLAYERS.values());
+    }
+
+    /**
+     * Ends the current write latency interval of every stripe
+     * @param into Histogram the latencies of the interval are added to, in nanoseconds
+     */
+    public static void drainWriteLatencies(LogLinearHistogram into) {
+        for (IntervalHistogramRecorder recorder : WRITE_LATENCIES) {
+            into.add(recorder.nextInterval());
+        }
+    }
+
+    private static String getPacketName(PacketType<?> type) {
+        Identifier id = type.id();
+        String name = id.getNamespace().equals(Identifier.DEFAULT_NAMESPACE) ? id.getPath() : id.getNamespace() + "." + id.getPath();
+        return MetricsUtil.sanitizeMetricName(name);
+    }
+}
@@ -0,0 +1,64 @@
+package net.nevq.nevformance.instrumentation;
+
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Newly generated chunks attributed to the player who caused them.
+ *
+ * When a chunk that had to be generated is loaded, it is attributed to the
+ * nearest player of its world whose view distance, plus a small margin for
+ * players that moved while the chunk was generating, covers it. Chunks
+ * generated for no player, such as forced or spawn chunks, are not counted.
+ */
+public final class PlayerChunkGeneration {
+
+    // Chunks beyond the view distance still attributed to a player
+    private static final int VIEW_DISTANCE_MARGIN = 2;
+
+    private static final Map<UUID, LongAdder> GENERATED = new ConcurrentHashMap<>();
+
+    private PlayerChunkGeneration() {
+    }
+
+    /**
+     * Called on the server thread when a generated chunk has been loaded into its world
+     */
+    static void generated(ServerWorld world, ChunkPos pos) {
+        int maxDistance = world.getServer().getPlayerManager().getViewDistance() + VIEW_DISTANCE_MARGIN;
+        ServerPlayerEntity nearest = null;
+        int nearestDistance = Integer.MAX_VALUE;
+        for (ServerPlayerEntity player : world.getPlayers()) {
+            ChunkPos playerPos = player.getChunkPos();
+            int distance = Math.max(Math.abs(playerPos.x - pos.x), Math.abs(playerPos.z - pos.z));
+            if (distance <= maxDistance && distance < nearestDistance) {
+                nearest = player;
+                nearestDistance = distance;
+            }
+        }
+        if (nearest != null) {
+            GENERATED.computeIfAbsent(nearest.getUuid(), uuid -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * @return Number of chunks generated for a player since they joined
+     */
+    public static long getGenerated(UUID player) {
+        LongAdder generated = GENERATED.get(player);
+        return generated != null ? generated.sum() : 0;
+    }
+
+    /**
+     * Forgets a player who has left
+     */
+    public static void playerDisconnected(UUID player) {
+        GENERATED.remove(player);
+    }
+}
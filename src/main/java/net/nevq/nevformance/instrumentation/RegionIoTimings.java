@@ -0,0 +1,233 @@
+package net.nevq.nevformance.instrumentation;
+
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.world.World;
+import net.nevq.nevformance.metrics.histogram.IntervalHistogramRecorder;
+import net.nevq.nevformance.util.MetricsUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Region file I/O of chunk, POI and entity storage, per dimension, measured by
+ * the region storage mixins.
+ *
+ * A read is one {@code RegionBasedStorage.getTagAt} and a write one
+ * {@code RegionBasedStorage.write}, timed end to end. The time spent in the
+ * region file's own disk read or write during the operation is tracked on the
+ * side, and the rest of the operation is reported as
+ * {@link Operation#DECOMPRESS} for reads and {@link Operation#COMPRESS} for
+ * writes: the NBT (de)serialization and the stream compression around the
+ * disk access. {@link Operation#FSYNC} is a flush of every open region file of
+ * a storage.
+ *
+ * Storage work runs on the shared I/O worker threads, several at once, so each
+ * operation keeps its state in a thread local and each histogram is written
+ * under its own lock. The write queue depth counts save requests handed to a
+ * storage I/O worker whose future has not completed yet.
+ */
+public final class RegionIoTimings {
+
+    /**
+     * A measured kind of storage operation
+     */
+    public enum Operation {
+        READ("read"),
+        WRITE("write"),
+        DECOMPRESS("decompress"),
+        COMPRESS("compress"),
+        FSYNC("fsync");
+
+        private final String metricName;
+
+        Operation(String metricName) {
+            this.metricName = metricName;
+        }
+
+        public String getMetricName() {
+            return metricName;
+        }
+    }
+
+    /**
+     * Storage I/O of one dimension
+     */
+    public static final class DimensionIo {
+        private final String dimensionKey;
+        private final IntervalHistogramRecorder[] latencies = new IntervalHistogramRecorder[Operation.values().length];
+        private final LongAdder bytesRead = new LongAdder();
+        private final LongAdder bytesWritten = new LongAdder();
+        private final AtomicInteger queuedWrites = new AtomicInteger();
+
+        private DimensionIo(String dimensionKey) {
+            this.dimensionKey = dimensionKey;
+            for (int i = 0; i < latencies.length; i++) {
+                latencies[i] = new IntervalHistogramRecorder();
+            }
+        }
+
+        private void record(Operation operation, long nanos) {
+            IntervalHistogramRecorder recorder = latencies[operation.ordinal()];
+            synchronized (recorder) {
+                recorder.record(nanos);
+            }
+        }
+
+        public String getDimensionKey() {
+            return dimensionKey;
+        }
+
+        /**
+         * @return Durations of an operation, in nanoseconds
+         */
+        public IntervalHistogramRecorder getLatencies(Operation operation) {
+            return latencies[operation.ordinal()];
+        }
+
+        /**
+         * @return Bytes read from region files so far
+         */
+        public long getBytesRead() {
+            return bytesRead.sum();
+        }
+
+        /**
+         * @return Bytes written to region files so far
+         */
+        public long getBytesWritten() {
+            return bytesWritten.sum();
+        }
+
+        /**
+         * @return Save requests waiting for a storage I/O worker
+         */
+        public int getQueuedWrites() {
+            return queuedWrites.get();
+        }
+    }
+
+    /**
+     * The storage operation running on a thread
+     */
+    private static final class ThreadState {
+        DimensionIo dimension;
+        long start;
+        long diskStart;
+        long diskNanos;
+        int writeRequestNesting;
+    }
+
+    private static final ThreadLocal<ThreadState> STATE = ThreadLocal.withInitial(ThreadState::new);
+
+    private static final Map<RegistryKey<World>, DimensionIo> DIMENSIONS = new ConcurrentHashMap<>();
+
+    private RegionIoTimings() {
+    }
+
+    private static DimensionIo dimension(RegistryKey<World> dimension) {
+        return DIMENSIONS.computeIfAbsent(dimension, key -> new DimensionIo(MetricsUtil.getDimensionKey(key)));
+    }
+
+    /**
+     * @return Every dimension that has done storage I/O so far
+     */
+    public static List<DimensionIo> getDimensions() {
+        return new ArrayList<>(DIMENSIONS.values());
+    }
+
+    /**
+     * Called when a storage starts reading or writing a chunk
+     */
+    public static void beginOperation(RegistryKey<World> dimension) {
+        ThreadState state = STATE.get();
+        state.dimension = dimension(dimension);
+        state.diskNanos = 0;
+        state.start = System.nanoTime();
+    }
+
+    /**
+     * Called when a storage has read or written a chunk
+     */
+    public static void endOperation(Operation operation, Operation processing) {
+        ThreadState state = STATE.get();
+        DimensionIo dimension = state.dimension;
+        if (dimension == null) {
+            // Ended without a matching begin, e.g. the begin threw
+            return;
+        }
+        state.dimension = null;
+        long elapsed = System.nanoTime() - state.start;
+        dimension.record(operation, elapsed);
+        dimension.record(processing, Math.max(0, elapsed - state.diskNanos));
+    }
+
+    /**
+     * Called when a region file starts reading or writing chunk sectors
+     */
+    public static void beginDiskAccess() {
+        STATE.get().diskStart = System.nanoTime();
+    }
+
+    /**
+     * Called when a region file has read chunk sectors
+     */
+    public static void endDiskRead(long bytes) {
+        ThreadState state = STATE.get();
+        state.diskNanos += System.nanoTime() - state.diskStart;
+        if (state.dimension != null && bytes > 0) {
+            state.dimension.bytesRead.add(bytes);
+        }
+    }
+
+    /**
+     * Called when a region file has written chunk sectors
+     */
+    public static void endDiskWrite(long bytes) {
+        ThreadState state = STATE.get();
+        state.diskNanos += System.nanoTime() - state.diskStart;
+        if (state.dimension != null && bytes > 0) {
+            state.dimension.bytesWritten.add(bytes);
+        }
+    }
+
+    /**
+     * Records a flush of the region files of a storage
+     */
+    public static void fsync(RegistryKey<World> dimension, long nanos) {
+        dimension(dimension).record(Operation.FSYNC, nanos);
+    }
+
+    /**
+     * Called when a save request enters a storage I/O worker. Overloads that
+     * delegate to each other are counted once, by the outermost call.
+     */
+    public static void enterWriteRequest() {
+        STATE.get().writeRequestNesting++;
+    }
+
+    /**
+     * Called when a save request has been handed to a storage I/O worker
+     * @param future Completes when the chunk has been written
+     */
+    public static void exitWriteRequest(RegistryKey<World> dimension, CompletableFuture<?> future) {
+        ThreadState state = STATE.get();
+        if (--state.writeRequestNesting > 0 || future == null || future.isDone()) {
+            return;
+        }
+        AtomicInteger queuedWrites = dimension(dimension).queuedWrites;
+        queuedWrites.incrementAndGet();
+        future.whenComplete((result, error) -> queuedWrites.decrementAndGet());
+    }
+
+    /**
+     * Forgets the dimensions of a stopped server
+     */
+    public static void clear() {
+        DIMENSIONS.clear();
+    }
+}
@@ -0,0 +1,203 @@
+package net.nevq.nevformance.instrumentation;
+
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.server.world.ServerWorld;
+import net.nevq.nevformance.metrics.histogram.IntervalHistogramRecorder;
+import net.nevq.nevformance.util.MetricsUtil;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Time spent in each phase of a server tick, measured by the tick phase mixins.
+ *
+ * Mixins bracket a phase with {@link #begin} and {@link #end}, which only read
+ * {@link System#nanoTime()} and add to plain counters. At the end of every tick
+ * the per-tick totals are recorded into one histogram per phase (and per
+ * dimension for world phases) and the counters are cleared. Everything except
+ * draining the histograms runs on the server thread and never allocates once
+ * each dimension has been seen.
+ *
+ * The phases of one tick stack up to the tick duration:
+ * {@code tick = sum(world) + connections + autosave + other}, and within a
+ * dimension {@code world >= entities + block_entities + chunks}. Queued tasks
+ * run between ticks and are reported alongside, not as part of the tick.
+ */
+public final class TickPhases {
+
+    /**
+     * A measured phase. Dimension phases are tracked separately for every world.
+     */
+    public enum Phase {
+        WORLD("world", true),
+        ENTITIES("entities", true),
+        BLOCK_ENTITIES("block_entities", true),
+        CHUNK_MANAGER("chunks", true),
+        CONNECTIONS("connections", false),
+        AUTOSAVE("autosave", false),
+        TASKS("tasks", false),
+        OTHER("other", false);
+
+        private final String metricName;
+        private final boolean perDimension;
+
+        Phase(String metricName, boolean perDimension) {
+            this.metricName = metricName;
+            this.perDimension = perDimension;
+        }
+
+        public String getMetricName() {
+            return metricName;
+        }
+
+        public boolean isPerDimension() {
+            return perDimension;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final int DIMENSION_PHASES = 4;
+
+    // Start time of each phase currently in progress, 0 when not running
+    private static final long[] phaseStart = new long[PHASES.length];
+
+    // Totals of the current tick for server-wide phases, indexed by ordinal
+    private static final long[] serverTotals = new long[PHASES.length];
+    private static final IntervalHistogramRecorder[] serverRecorders = new IntervalHistogramRecorder[PHASES.length];
+
+    // Server thread lookup, and a copy-on-write list for readers
+    private static final Reference2ObjectOpenHashMap<ServerWorld, DimensionPhases> dimensionsByWorld = new Reference2ObjectOpenHashMap<>();
+    private static volatile DimensionPhases[] dimensions = new DimensionPhases[0];
+
+    static {
+        for (Phase phase : PHASES) {
+            if (!phase.perDimension) {
+                serverRecorders[phase.ordinal()] = new IntervalHistogramRecorder();
+            }
+        }
+    }
+
+    private TickPhases() {
+    }
+
+    /**
+     * Per-dimension phase totals and histograms
+     */
+    public static final class DimensionPhases {
+        private final String dimensionKey;
+        private final long[] totals = new long[DIMENSION_PHASES];
+        private final IntervalHistogramRecorder[] recorders = new IntervalHistogramRecorder[DIMENSION_PHASES];
+
+        private DimensionPhases(String dimensionKey) {
+            this.dimensionKey = dimensionKey;
+            for (int i = 0; i < DIMENSION_PHASES; i++) {
+                recorders[i] = new IntervalHistogramRecorder();
+            }
+        }
+
+        public String getDimensionKey() {
+            return dimensionKey;
+        }
+
+        /**
+         * @return Recorder of per-tick nanoseconds spent in a dimension phase
+         */
+        public IntervalHistogramRecorder getRecorder(Phase phase) {
+            return recorders[phase.ordinal()];
+        }
+    }
+
+    public static void begin(Phase phase) {
+        phaseStart[phase.ordinal()] = System.nanoTime();
+    }
+
+    /**
+     * Ends a server-wide phase
+     */
+    public static void end(Phase phase) {
+        long elapsed = elapsed(phase);
+        if (elapsed > 0) {
+            serverTotals[phase.ordinal()] += elapsed;
+        }
+    }
+
+    /**
+     * Ends a dimension phase
+     */
+    public static void end(Phase phase, ServerWorld world) {
+        long elapsed = elapsed(phase);
+        if (elapsed > 0) {
+            dimension(world).totals[phase.ordinal()] += elapsed;
+        }
+    }
+
+    private static long elapsed(Phase phase) {
+        long start = phaseStart[phase.ordinal()];
+        if (start == 0) {
+            // Ended without a matching begin, e.g. instrumentation attached mid-phase
+            return 0;
+        }
+        phaseStart[phase.ordinal()] = 0;
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Records the totals of the tick that just finished and clears them
+     * @param tickNanos Duration of the whole tick
+     */
+    public static void endTick(long tickNanos) {
+        long accounted = serverTotals[Phase.CONNECTIONS.ordinal()] + serverTotals[Phase.AUTOSAVE.ordinal()];
+        for (DimensionPhases dimension : dimensions) {
+            accounted += dimension.totals[Phase.WORLD.ordinal()];
+            for (int i = 0; i < DIMENSION_PHASES; i++) {
+                dimension.recorders[i].record(dimension.totals[i]);
+                dimension.totals[i] = 0;
+            }
+        }
+        serverTotals[Phase.OTHER.ordinal()] = Math.max(0, tickNanos - accounted);
+
+        for (Phase phase : PHASES) {
+            if (!phase.perDimension) {
+                serverRecorders[phase.ordinal()].record(serverTotals[phase.ordinal()]);
+                serverTotals[phase.ordinal()] = 0;
+            }
+        }
+    }
+
+    /**
+     * @return Recorder of per-tick nanoseconds spent in a server-wide phase
+     */
+    public static IntervalHistogramRecorder getRecorder(Phase phase) {
+        if (phase.perDimension) {
+            throw new IllegalArgumentException(phase + " is tracked per dimension");
+        }
+        return serverRecorders[phase.ordinal()];
+    }
+
+    /**
+     * @return Every dimension that has been ticked so far
+     */
+    public static List<DimensionPhases> getDimensions() {
+        return Arrays.asList(dimensions);
+    }
+
+    private static DimensionPhases dimension(ServerWorld world) {
+        DimensionPhases dimension = dimensionsByWorld.get(world);
+        if (dimension == null) {
+            dimension = new DimensionPhases(MetricsUtil.getDimensionKey(world));
+            dimensionsByWorld.put(world, dimension);
+            DimensionPhases[] updated = Arrays.copyOf(dimensions, dimensions.length + 1);
+            updated[updated.length - 1] = dimension;
+            dimensions = updated;
+        }
+        return dimension;
+    }
+
+    /**
+     * Forgets the worlds of a stopped server. Called on the server thread.
+     */
+    public static void clear() {
+        dimensionsByWorld.clear();
+        dimensions = new DimensionPhases[0];
+    }
+}
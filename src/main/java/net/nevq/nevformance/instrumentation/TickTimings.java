@@ -0,0 +1,29 @@
+package net.nevq.nevformance.instrumentation;
+
+import net.nevq.nevformance.metrics.histogram.IntervalHistogramRecorder;
+
+/**
+ * Durations of server ticks, recorded by the server tick mixin on the server
+ * thread and drained once per collection interval by the system collector.
+ */
+public final class TickTimings {
+    private static final IntervalHistogramRecorder TICK_NANOS = new IntervalHistogramRecorder();
+
+    private TickTimings() {
+    }
+
+    /**
+     * Records the duration of one completed tick
+     * @param durationNanos Tick duration in nanoseconds
+     */
+    public static void recordTick(long durationNanos) {
+        TICK_NANOS.record(durationNanos);
+    }
+
+    /**
+     * @return Recorder holding the tick durations, in nanoseconds, of the current interval
+     */
+    public static IntervalHistogramRecorder tickDurations() {
+        return TICK_NANOS;
+    }
+}
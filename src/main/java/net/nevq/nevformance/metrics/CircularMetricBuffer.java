@@ -0,0 +1,513 @@
+package net.nevq.nevformance.metrics;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded buffer to store metric time series data.
+ *
+ * New points are written to a small mutable head of two parallel primitive
+ * columns (timestamps and values). When the head is full it is sealed into
+ * an immutable {@link CompressedBlock}, which typically takes at most 3 bytes per
+ * point instead of 16. The buffer retains at least {@code capacity} points,
+ * dropping whole blocks from the oldest end. Recording a sample only
+ * allocates when a block is sealed.
+ *
+ * Concurrency follows a seqlock: each series has a single writer (the
+ * collector that owns it) which makes the sequence odd while it updates the
+ * head and even again when done. Readers never block the writer; they copy
+ * the head optimistically and retry if the sequence moved underneath them.
+ * Sealed blocks are immutable, so they are decoded outside the read section.
+ * The writer claims the sequence with a CAS so that an overlapping collection
+ * cycle cannot corrupt the buffer, but in the normal case it is uncontended.
+ *
+ * A series may also carry {@link RollupTier}s which downsample every sample
+ * into coarser buckets, so history beyond the raw capacity is kept at a lower
+ * resolution instead of being dropped.
+ */
+class CircularMetricBuffer {
+    private static final VarHandle SEQUENCE;
+
+    // Points per sealed block, two minutes at the default collection interval
+    private static final int BLOCK_SIZE = 120;
+
+    private static final CompressedBlock[] NO_BLOCKS = new CompressedBlock[0];
+
+    static {
+        try {
+            SEQUENCE = MethodHandles.lookup().findVarHandle(CircularMetricBuffer.class, "sequence", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int capacity;
+    private final long[] headTimestamps;
+    private final double[] headValues;
+    private final RollupTier[] tiers;
+    private int headCount = 0;
+
+    // Sealed blocks, oldest first; the array is replaced, never mutated
+    private CompressedBlock[] blocks = NO_BLOCKS;
+    private int sealedCount = 0;
+
+    private long latestTimestamp;
+    private double latestValue;
+
+    // Even when stable, odd while a write is in progress
+    @SuppressWarnings("unused")
+    private volatile long sequence = 0;
+
+    public CircularMetricBuffer(int capacity) {
+        this(capacity, new RollupTier[0]);
+    }
+
+    public CircularMetricBuffer(int capacity, RollupTier[] tiers) {
+        this.capacity = capacity;
+        int headCapacity = Math.max(1, Math.min(BLOCK_SIZE, capacity));
+        headTimestamps = new long[headCapacity];
+        headValues = new double[headCapacity];
+        this.tiers = tiers;
+    }
+
+    public void add(long timestamp, double value) {
+        long seq = beginWrite();
+        try {
+            headTimestamps[headCount] = timestamp;
+            headValues[headCount] = value;
+            headCount++;
+            latestTimestamp = timestamp;
+            latestValue = value;
+            if (headCount == headTimestamps.length) {
+                sealHead();
+            }
+            for (RollupTier tier : tiers) {
+                tier.add(timestamp, value);
+            }
+        } finally {
+            SEQUENCE.setRelease(this, seq + 2);
+        }
+    }
+
+    /**
+     * Compresses the head into a new block and drops the oldest blocks that
+     * are no longer needed to retain {@code capacity} points. Caller must hold the write sequence.
+     */
+    private void sealHead() {
+        CompressedBlock block = CompressedBlock.encode(headTimestamps, headValues, headCount);
+        sealedCount += headCount;
+        headCount = 0;
+
+        int drop = 0;
+        int retained = sealedCount;
+        while (drop < blocks.length && retained - blocks[drop].getCount() >= capacity) {
+            retained -= blocks[drop].getCount();
+            drop++;
+        }
+
+        CompressedBlock[] updated = new CompressedBlock[blocks.length - drop + 1];
+        System.arraycopy(blocks, drop, updated, 0, blocks.length - drop);
+        updated[updated.length - 1] = block;
+        blocks = updated;
+        sealedCount = retained;
+    }
+
+    /**
+     * Copies the most recent points, oldest first, into caller-supplied arrays.
+     * At most {@code min(timestampsOut.length, valuesOut.length)} points are copied.
+     *
+     * @param timestampsOut Destination for timestamps
+     * @param valuesOut Destination for values
+     * @return Number of points written
+     */
+    public int copyPoints(long[] timestampsOut, double[] valuesOut) {
+        int limit = Math.min(timestampsOut.length, valuesOut.length);
+        CompressedBlock[] blockSnapshot;
+        int count;
+        int fromHead;
+
+        // Copy the mutable head into the tail of the destination under the seqlock
+        while (true) {
+            long seq = beginRead();
+            blockSnapshot = blocks;
+            int currentHead = Math.min(headCount, headTimestamps.length);
+            count = Math.min(limit, sealedCount + currentHead);
+            fromHead = Math.min(currentHead, count);
+            int headStart = currentHead - fromHead;
+            System.arraycopy(headTimestamps, headStart, timestampsOut, count - fromHead, fromHead);
+            System.arraycopy(headValues, headStart, valuesOut, count - fromHead, fromHead);
+            if (validateRead(seq)) {
+                break;
+            }
+        }
+
+        // Decode just enough sealed blocks, newest first, to fill the rest
+        int remaining = count - fromHead;
+        for (int i = blockSnapshot.length - 1; i >= 0 && remaining > 0; i--) {
+            CompressedBlock block = blockSnapshot[i];
+            int take = Math.min(remaining, block.getCount());
+            block.decode(block.getCount() - take, take, timestampsOut, valuesOut, remaining - take);
+            remaining -= take;
+        }
+        return count;
+    }
+
+    public List<MetricPoint> getPoints() {
+        int size = getSize();
+        long[] timestampsCopy = new long[size + headTimestamps.length];
+        double[] valuesCopy = new double[size + headTimestamps.length];
+        int count = copyPoints(timestampsCopy, valuesCopy);
+
+        List<MetricPoint> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new MetricPoint(timestampsCopy[i], valuesCopy[i]));
+        }
+        return result;
+    }
+
+    public List<MetricPoint> getPointsInRange(long startTime, long endTime) {
+        return getRange(startTime, endTime).asList();
+    }
+
+    /**
+     * Copies the points within a time range into a slice. Blocks and head
+     * entries are located by binary search on their timestamps, so the cost
+     * grows with the size of the range rather than with the retained history;
+     * at most one partial block is decoded at either end of the range.
+     *
+     * @param startTime Range start in milliseconds (inclusive)
+     * @param endTime Range end in milliseconds (inclusive)
+     * @return Points in the range, oldest first
+     */
+    public MetricSlice getRange(long startTime, long endTime) {
+        if (startTime > endTime) {
+            return MetricSlice.empty();
+        }
+
+        CompressedBlock[] blockSnapshot;
+        long[] headTimestampsCopy;
+        double[] headValuesCopy;
+        int fromHead;
+
+        // Copy the in-range part of the mutable head under the seqlock
+        while (true) {
+            long seq = beginRead();
+            blockSnapshot = blocks;
+            int currentHead = Math.min(headCount, headTimestamps.length);
+            int first = lowerBound(headTimestamps, currentHead, startTime);
+            int last = upperBound(headTimestamps, currentHead, endTime);
+            fromHead = Math.max(0, last - first);
+            headTimestampsCopy = new long[fromHead];
+            headValuesCopy = new double[fromHead];
+            System.arraycopy(headTimestamps, first, headTimestampsCopy, 0, fromHead);
+            System.arraycopy(headValues, first, headValuesCopy, 0, fromHead);
+            if (validateRead(seq)) {
+                break;
+            }
+        }
+
+        // Sealed blocks overlapping the range: [firstBlock, lastBlock)
+        int firstBlock = firstBlockEndingAtOrAfter(blockSnapshot, startTime);
+        int lastBlock = firstBlockStartingAfter(blockSnapshot, endTime);
+
+        int bound = fromHead;
+        for (int i = firstBlock; i < lastBlock; i++) {
+            bound += blockSnapshot[i].getCount();
+        }
+
+        long[] timestampsOut = new long[bound];
+        double[] valuesOut = new double[bound];
+        int written = 0;
+        for (int i = firstBlock; i < lastBlock; i++) {
+            CompressedBlock.Decoder decoder = blockSnapshot[i].decoder();
+            while (decoder.next()) {
+                long timestamp = decoder.timestamp();
+                if (timestamp > endTime) {
+                    break;
+                }
+                if (timestamp >= startTime) {
+                    timestampsOut[written] = timestamp;
+                    valuesOut[written] = decoder.value();
+                    written++;
+                }
+            }
+        }
+
+        System.arraycopy(headTimestampsCopy, 0, timestampsOut, written, fromHead);
+        System.arraycopy(headValuesCopy, 0, valuesOut, written, fromHead);
+        return new MetricSlice(timestampsOut, valuesOut, written + fromHead);
+    }
+
+    /**
+     * Streams the points within a time range to a visitor without copying
+     * the sealed history. Only the in-range part of the mutable head is
+     * copied, so the visitor is never called from inside a read section.
+     *
+     * @param startTime Range start in milliseconds (inclusive)
+     * @param endTime Range end in milliseconds (inclusive)
+     * @param visitor Receives the points, oldest first
+     */
+    public void scanRange(long startTime, long endTime, PointVisitor visitor) {
+        if (startTime > endTime) {
+            return;
+        }
+
+        CompressedBlock[] blockSnapshot;
+        long[] headTimestampsCopy;
+        double[] headValuesCopy;
+
+        while (true) {
+            long seq = beginRead();
+            blockSnapshot = blocks;
+            int currentHead = Math.min(headCount, headTimestamps.length);
+            int first = lowerBound(headTimestamps, currentHead, startTime);
+            int last = upperBound(headTimestamps, currentHead, endTime);
+            int fromHead = Math.max(0, last - first);
+            headTimestampsCopy = new long[fromHead];
+            headValuesCopy = new double[fromHead];
+            System.arraycopy(headTimestamps, first, headTimestampsCopy, 0, fromHead);
+            System.arraycopy(headValues, first, headValuesCopy, 0, fromHead);
+            if (validateRead(seq)) {
+                break;
+            }
+        }
+
+        int firstBlock = firstBlockEndingAtOrAfter(blockSnapshot, startTime);
+        int lastBlock = firstBlockStartingAfter(blockSnapshot, endTime);
+        for (int i = firstBlock; i < lastBlock; i++) {
+            CompressedBlock.Decoder decoder = blockSnapshot[i].decoder();
+            while (decoder.next()) {
+                long timestamp = decoder.timestamp();
+                if (timestamp > endTime) {
+                    break;
+                }
+                if (timestamp >= startTime) {
+                    visitor.visit(timestamp, decoder.value());
+                }
+            }
+        }
+
+        for (int i = 0; i < headTimestampsCopy.length; i++) {
+            visitor.visit(headTimestampsCopy[i], headValuesCopy[i]);
+        }
+    }
+
+    /**
+     * @return Index of the first of the leading {@code count} timestamps that is {@code >= key}
+     */
+    private static int lowerBound(long[] timestamps, int count, long key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return Index of the first of the leading {@code count} timestamps that is {@code > key}
+     */
+    private static int upperBound(long[] timestamps, int count, long key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int firstBlockEndingAtOrAfter(CompressedBlock[] blocks, long time) {
+        int low = 0;
+        int high = blocks.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blocks[mid].getLastTimestamp() < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int firstBlockStartingAfter(CompressedBlock[] blocks, long time) {
+        int low = 0;
+        int high = blocks.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blocks[mid].getFirstTimestamp() <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public MetricPoint getLatestPoint() {
+        while (true) {
+            long seq = beginRead();
+            boolean empty = sealedCount + headCount == 0;
+            long timestamp = latestTimestamp;
+            double value = latestValue;
+            if (validateRead(seq)) {
+                return empty ? null : new MetricPoint(timestamp, value);
+            }
+        }
+    }
+
+    public int getSize() {
+        while (true) {
+            long seq = beginRead();
+            int currentSize = sealedCount + headCount;
+            if (validateRead(seq)) {
+                return currentSize;
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return Approximate heap footprint of the raw points (head plus sealed blocks) in bytes
+     */
+    public long getStorageBytes() {
+        long bytes = headTimestamps.length * 16L;
+        while (true) {
+            long seq = beginRead();
+            CompressedBlock[] blockSnapshot = blocks;
+            if (validateRead(seq)) {
+                for (CompressedBlock block : blockSnapshot) {
+                    bytes += block.getEncodedBytes();
+                }
+                return bytes;
+            }
+        }
+    }
+
+    /**
+     * @return Timestamp of the oldest raw point, or {@code Long.MAX_VALUE} if empty
+     */
+    public long getOldestTimestamp() {
+        while (true) {
+            long seq = beginRead();
+            CompressedBlock[] blockSnapshot = blocks;
+            long oldest = blockSnapshot.length > 0
+                    ? blockSnapshot[0].getFirstTimestamp()
+                    : headCount > 0 ? headTimestamps[0] : Long.MAX_VALUE;
+            if (validateRead(seq)) {
+                return oldest;
+            }
+        }
+    }
+
+    public int getTierCount() {
+        return tiers.length;
+    }
+
+    public long getTierResolutionMs(int tierIndex) {
+        return tiers[tierIndex].getResolutionMs();
+    }
+
+    /**
+     * @return Start of the oldest bucket of a tier, or {@code Long.MAX_VALUE} if it is empty
+     */
+    public long getTierOldestTimestamp(int tierIndex) {
+        RollupTier tier = tiers[tierIndex];
+        while (true) {
+            long seq = beginRead();
+            long oldest = tier.oldestTimestamp();
+            if (validateRead(seq)) {
+                return oldest;
+            }
+        }
+    }
+
+    /**
+     * Gets the buckets of a rollup tier that overlap the given time range
+     * @param tierIndex Index of the tier, finest first
+     * @param startTime Range start in milliseconds (inclusive)
+     * @param endTime Range end in milliseconds (inclusive)
+     * @return Buckets ordered oldest first
+     */
+    public List<RollupPoint> getRollupPoints(int tierIndex, long startTime, long endTime) {
+        RollupTier tier = tiers[tierIndex];
+        long[] starts = new long[0];
+        double[] min = new double[0];
+        double[] max = new double[0];
+        double[] sum = new double[0];
+        long[] count = new long[0];
+        int written;
+
+        while (true) {
+            long seq = beginRead();
+            int length = tier.bucketLength();
+            if (starts.length < length) {
+                starts = new long[length];
+                min = new double[length];
+                max = new double[length];
+                sum = new double[length];
+                count = new long[length];
+            }
+            written = tier.copyRange(startTime, endTime, starts, min, max, sum, count);
+            if (written >= 0 && validateRead(seq)) {
+                break;
+            }
+        }
+
+        List<RollupPoint> result = new ArrayList<>(written);
+        for (int i = 0; i < written; i++) {
+            result.add(new RollupPoint(starts[i], min[i], max[i], sum[i] / count[i], count[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Claims the sequence for writing, spinning only if another write is in progress
+     * @return The even sequence value observed before the write
+     */
+    private long beginWrite() {
+        while (true) {
+            long seq = (long) SEQUENCE.getVolatile(this);
+            if ((seq & 1) == 0 && SEQUENCE.compareAndSet(this, seq, seq + 1)) {
+                return seq;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Waits for a stable (even) sequence value to start an optimistic read
+     */
+    private long beginRead() {
+        while (true) {
+            long seq = (long) SEQUENCE.getAcquire(this);
+            if ((seq & 1) == 0) {
+                return seq;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Checks that no write happened since {@link #beginRead()}
+     */
+    private boolean validateRead(long seq) {
+        VarHandle.loadLoadFence();
+        return (long) SEQUENCE.getOpaque(this) == seq;
+    }
+}
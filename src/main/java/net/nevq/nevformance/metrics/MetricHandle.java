@@ -0,0 +1,86 @@
+package net.nevq.nevformance.metrics;
+
+/**
+ * A resolved reference to a metric series.
+ *
+ * Collectors resolve each metric name once through
+ * {@link MetricsManager#getMetricHandle(String)} and then record through the
+ * handle, which skips the name lookup and lets the caller avoid building the
+ * name string on every collection cycle.
+ *
+ * A handle whose series was evicted by the registry's cardinality limits
+ * reports {@link #isEvicted()}. Recording through it still works, it
+ * re-creates the series under the same name, but holders that cache handles
+ * should check and re-resolve so the lookup is not repeated every cycle.
+ */
+public final class MetricHandle {
+    private final MetricRegistry registry;
+    private final int id;
+    private final String name;
+    private final CircularMetricBuffer buffer;
+
+    // Time of the most recent sample, used to pick eviction victims
+    private volatile long lastWriteTime;
+    private volatile boolean evicted = false;
+
+    MetricHandle(MetricRegistry registry, int id, String name, CircularMetricBuffer buffer, long createdTime) {
+        this.registry = registry;
+        this.id = id;
+        this.name = name;
+        this.buffer = buffer;
+        this.lastWriteTime = createdTime;
+    }
+
+    /**
+     * Records a sample for this metric
+     * @param timestamp Sample time in milliseconds
+     * @param value Sample value
+     */
+    public void record(long timestamp, double value) {
+        if (evicted) {
+            registry.getOrCreate(name).record(timestamp, value);
+            return;
+        }
+        buffer.add(timestamp, value);
+        lastWriteTime = timestamp;
+        registry.onRecorded(this, timestamp, value);
+    }
+
+    /**
+     * Adds a sample read back from disk without persisting it again
+     */
+    void restore(long timestamp, double value) {
+        buffer.add(timestamp, value);
+        lastWriteTime = timestamp;
+    }
+
+    /**
+     * @return true if the registry has dropped this series and the handle should be re-resolved
+     */
+    public boolean isEvicted() {
+        return evicted;
+    }
+
+    long getLastWriteTime() {
+        return lastWriteTime;
+    }
+
+    void markEvicted() {
+        evicted = true;
+    }
+
+    /**
+     * @return Dense index of this metric in its registry, reused for another series once this one is evicted
+     */
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    CircularMetricBuffer getBuffer() {
+        return buffer;
+    }
+}
@@ -0,0 +1,13 @@
+package net.nevq.nevformance.metrics;
+
+import java.util.List;
+
+/**
+ * Result of a history query, served from whichever storage tier covers the requested range
+ *
+ * @param metric Name of the metric
+ * @param resolutionMs Width of each point in milliseconds (the collection interval for raw data)
+ * @param points Points ordered oldest first
+ */
+public record MetricHistory(String metric, long resolutionMs, List<RollupPoint> points) {
+}
@@ -0,0 +1,275 @@
+package net.nevq.nevformance.metrics;
+
+import net.nevq.nevformance.metrics.storage.MetricSegmentStore;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Registry of all metric series, addressable by name or by dense integer id.
+ * The id of an evicted series is given to the next series created, so ids
+ * stay dense however many names come and go.
+ *
+ * The registry is safe for concurrent use: collectors create series from
+ * several threads while web handlers iterate them. Series creation is atomic
+ * per name, lookups never lock, and iteration is weakly consistent, so a
+ * reader sees every series that existed when it started and never fails
+ * with a {@link ConcurrentModificationException}.
+ *
+ * Dynamically named series (per chunk, per entity type, ...) would otherwise
+ * grow without bound, so the registry enforces a total series budget and
+ * per-pattern quotas. {@link #enforceLimits()} evicts the series that were
+ * written least recently until every limit holds again.
+ */
+public class MetricRegistry {
+    private final ConcurrentHashMap<String, MetricHandle> handlesByName = new ConcurrentHashMap<>();
+    private final Function<String, CircularMetricBuffer> bufferFactory;
+
+    // Indexed by handle id; replaced with a larger copy under the lock when full
+    private final Object idLock = new Object();
+    private volatile MetricHandle[] handlesById = new MetricHandle[256];
+    private int nextId = 0;
+
+    // Ids of evicted series, reused before new ones so churning names do not grow the id space
+    private int[] freeIds = new int[16];
+    private int freeIdCount = 0;
+
+    // Receives every recorded sample when persistence is enabled
+    private volatile MetricSegmentStore segmentStore;
+
+    // Cardinality limits, replaced as a whole by setLimits
+    private volatile int maxSeries = Integer.MAX_VALUE;
+    private volatile List<SeriesQuota> quotas = Collections.emptyList();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Limits the number of series whose names match a pattern. The pattern is a
+     * name prefix in which {@code *} matches any run of characters, e.g.
+     * {@code world.*.hotspot.}
+     */
+    public static final class SeriesQuota {
+        private final String pattern;
+        private final String[] parts;
+        private final int maxSeries;
+
+        public SeriesQuota(String pattern, int maxSeries) {
+            this.pattern = pattern;
+            this.parts = pattern.split("\\*", -1);
+            this.maxSeries = maxSeries;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public int getMaxSeries() {
+            return maxSeries;
+        }
+
+        boolean matches(String metricName) {
+            if (!metricName.startsWith(parts[0])) {
+                return false;
+            }
+            int nameIndex = parts[0].length();
+            for (int i = 1; i < parts.length; i++) {
+                int found = metricName.indexOf(parts[i], nameIndex);
+                if (found < 0) {
+                    return false;
+                }
+                nameIndex = found + parts[i].length();
+            }
+            return true;
+        }
+    }
+
+    MetricRegistry(Function<String, CircularMetricBuffer> bufferFactory) {
+        this.bufferFactory = bufferFactory;
+    }
+
+    /**
+     * Gets the handle for a metric, creating the series if it does not exist yet
+     * @param metricName Name of the metric
+     * @return The handle
+     */
+    public MetricHandle getOrCreate(String metricName) {
+        MetricHandle handle = handlesByName.get(metricName);
+        if (handle != null) {
+            return handle;
+        }
+        return handlesByName.computeIfAbsent(metricName, this::createHandle);
+    }
+
+    private MetricHandle createHandle(String metricName) {
+        CircularMetricBuffer buffer = bufferFactory.apply(metricName);
+        synchronized (idLock) {
+            MetricHandle[] byId = handlesById;
+            int id;
+            if (freeIdCount > 0) {
+                id = freeIds[--freeIdCount];
+            } else {
+                id = nextId++;
+                if (id == byId.length) {
+                    byId = Arrays.copyOf(byId, byId.length * 2);
+                }
+            }
+            MetricHandle handle = new MetricHandle(this, id, metricName, buffer, System.currentTimeMillis());
+            byId[id] = handle;
+            handlesById = byId;
+            return handle;
+        }
+    }
+
+    /**
+     * @return The handle for a metric, or null if it does not exist
+     */
+    public MetricHandle get(String metricName) {
+        return handlesByName.get(metricName);
+    }
+
+    /**
+     * @return The handle with the given id, or null if there is none
+     */
+    public MetricHandle get(int id) {
+        MetricHandle[] byId = handlesById;
+        return id >= 0 && id < byId.length ? byId[id] : null;
+    }
+
+    /**
+     * @return Weakly consistent view of all registered handles
+     */
+    public Collection<MetricHandle> getHandles() {
+        return handlesByName.values();
+    }
+
+    /**
+     * @return Weakly consistent view of all registered metric names
+     */
+    public Set<String> getNames() {
+        return handlesByName.keySet();
+    }
+
+    public int size() {
+        return handlesByName.size();
+    }
+
+    /**
+     * @return The most recent point of a metric, or null if the metric does not exist or is empty
+     */
+    public MetricPoint getLatestPoint(String metricName) {
+        MetricHandle handle = handlesByName.get(metricName);
+        return handle != null ? handle.getBuffer().getLatestPoint() : null;
+    }
+
+    /**
+     * Streams the points of a metric within a time range, oldest first
+     * @return false if the metric does not exist
+     */
+    public boolean scanMetric(String metricName, long startTime, long endTime, PointVisitor visitor) {
+        MetricHandle handle = handlesByName.get(metricName);
+        if (handle == null) {
+            return false;
+        }
+        handle.getBuffer().scanRange(startTime, endTime, visitor);
+        return true;
+    }
+
+    /**
+     * Sets the cardinality limits applied by {@link #enforceLimits()}
+     * @param maxSeries Maximum total number of series
+     * @param quotas Additional limits for series matching a pattern
+     */
+    public void setLimits(int maxSeries, List<SeriesQuota> quotas) {
+        this.maxSeries = maxSeries;
+        this.quotas = List.copyOf(quotas);
+    }
+
+    /**
+     * Evicts the least recently written series until the quotas and the
+     * total series budget are met. Handles of evicted series are marked so
+     * holders can drop them.
+     * @return Number of series evicted
+     */
+    public int enforceLimits() {
+        int evicted = 0;
+
+        for (SeriesQuota quota : quotas) {
+            List<MetricHandle> matching = new ArrayList<>();
+            for (MetricHandle handle : handlesByName.values()) {
+                if (quota.matches(handle.getName())) {
+                    matching.add(handle);
+                }
+            }
+            evicted += evictOldest(matching, matching.size() - quota.getMaxSeries());
+        }
+
+        int excess = handlesByName.size() - maxSeries;
+        if (excess > 0) {
+            evicted += evictOldest(new ArrayList<>(handlesByName.values()), excess);
+        }
+
+        evictionCount.addAndGet(evicted);
+        return evicted;
+    }
+
+    private int evictOldest(List<MetricHandle> candidates, int count) {
+        if (count <= 0) {
+            return 0;
+        }
+
+        // Snapshot the write times so the sort order cannot change underneath the sort
+        long[] lastWrites = new long[candidates.size()];
+        Integer[] order = new Integer[candidates.size()];
+        for (int i = 0; i < order.length; i++) {
+            lastWrites[i] = candidates.get(i).getLastWriteTime();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> lastWrites[i]));
+
+        int evicted = 0;
+        for (int i = 0; i < order.length && evicted < count; i++) {
+            if (evict(candidates.get(order[i]))) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    private boolean evict(MetricHandle handle) {
+        if (!handlesByName.remove(handle.getName(), handle)) {
+            return false;
+        }
+        handle.markEvicted();
+        synchronized (idLock) {
+            handlesById[handle.getId()] = null;
+            if (freeIdCount == freeIds.length) {
+                freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+            }
+            freeIds[freeIdCount++] = handle.getId();
+        }
+        return true;
+    }
+
+    /**
+     * @return Total number of series evicted since startup
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    void setSegmentStore(MetricSegmentStore segmentStore) {
+        this.segmentStore = segmentStore;
+    }
+
+    MetricSegmentStore getSegmentStore() {
+        return segmentStore;
+    }
+
+    void onRecorded(MetricHandle handle, long timestamp, double value) {
+        MetricSegmentStore store = segmentStore;
+        if (store != null) {
+            store.append(handle.getId(), handle.getName(), timestamp, value);
+        }
+    }
+}
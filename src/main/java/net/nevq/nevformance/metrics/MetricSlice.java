@@ -0,0 +1,80 @@
+package net.nevq.nevformance.metrics;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Read-only, time-ordered slice of a metric series.
+ *
+ * A slice owns a private copy of just the points in the requested range, held
+ * as primitive columns, so reading it never touches the live buffer again.
+ * {@link #asList()} exposes the same points as a {@code List<MetricPoint>}
+ * whose elements are created on access rather than up front.
+ */
+public final class MetricSlice {
+    private static final MetricSlice EMPTY = new MetricSlice(new long[0], new double[0], 0);
+
+    private final long[] timestamps;
+    private final double[] values;
+    private final int size;
+
+    MetricSlice(long[] timestamps, double[] values, int size) {
+        this.timestamps = timestamps;
+        this.values = values;
+        this.size = size;
+    }
+
+    static MetricSlice empty() {
+        return EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long timestamp(int index) {
+        checkIndex(index);
+        return timestamps[index];
+    }
+
+    public double value(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    /**
+     * @return Unmodifiable list view of the slice, oldest first
+     */
+    public List<MetricPoint> asList() {
+        return new PointList(this);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for slice of size " + size);
+        }
+    }
+
+    // A named class rather than an anonymous one, which Gson would refuse to serialize
+    private static final class PointList extends AbstractList<MetricPoint> {
+        private final MetricSlice slice;
+
+        PointList(MetricSlice slice) {
+            this.slice = slice;
+        }
+
+        @Override
+        public MetricPoint get(int index) {
+            return new MetricPoint(slice.timestamp(index), slice.value(index));
+        }
+
+        @Override
+        public int size() {
+            return slice.size;
+        }
+    }
+}
@@ -1,14 +1,23 @@
 package net.nevq.nevformance.metrics;
 
 import net.nevq.nevformance.Nevformance;
+import net.nevq.nevformance.config.ConfigManager;
+import net.nevq.nevformance.instrumentation.BlockEntityTickCosts;
+import net.nevq.nevformance.instrumentation.ChunkTickCosts;
+import net.nevq.nevformance.instrumentation.EntityTickCosts;
+import net.nevq.nevformance.instrumentation.LagSpikeSampler;
+import net.nevq.nevformance.metrics.storage.MetricSegmentStore;
+import net.nevq.nevformance.profiler.ContinuousProfiler;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.WorldSavePath;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.chunk.WorldChunk;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
@@ -22,76 +31,145 @@ public class MetricsManager {
 
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
     private final List<MetricCollector> collectors = new ArrayList<>();
-    private final Map<String, CircularMetricBuffer> metricBuffers = new HashMap<>();
+    private final MetricRegistry registry = new MetricRegistry(this::createBuffer);
+    private final MetricHandle registrySeriesMetric;
+    private final MetricHandle registryEvictionsMetric;
 
     private MinecraftServer server;
-    private boolean isCollecting = false;
+    private volatile boolean isCollecting = false;
+
+    // Last run of each collector, so a slow collector is never run twice at once
+    private final Map<MetricCollector, CompletableFuture<Void>> collectorRuns = new HashMap<>();
 
     // Specialized collectors
     private final EntityMetricsCollector entityCollector;
     private final WorldMetricsCollector worldCollector;
     private final SystemMetricsCollector systemCollector;
+    private final TickPhaseMetricsCollector tickPhaseCollector;
+    private final EntityTickCostCollector entityTickCostCollector;
+    private final ProfilerMetricsCollector profilerCollector;
+    private final JfrMetricsCollector jfrCollector;
+    private final StorageIoMetricsCollector storageIoCollector;
+    private final NetworkMetricsCollector networkCollector;
+    private final PlayerMetricsCollector playerCollector;
+    private final BlockUpdateMetricsCollector blockUpdateCollector;
+
+    // Continuous profiler of the running server, null while not collecting or disabled
+    private volatile ContinuousProfiler profiler;
 
     public MetricsManager() {
         // Initialize specialized metric collectors
         entityCollector = new EntityMetricsCollector();
         worldCollector = new WorldMetricsCollector();
         systemCollector = new SystemMetricsCollector();
+        tickPhaseCollector = new TickPhaseMetricsCollector();
+        entityTickCostCollector = new EntityTickCostCollector();
+        profilerCollector = new ProfilerMetricsCollector();
+        jfrCollector = new JfrMetricsCollector();
+        storageIoCollector = new StorageIoMetricsCollector();
+        networkCollector = new NetworkMetricsCollector();
+        playerCollector = new PlayerMetricsCollector();
+        blockUpdateCollector = new BlockUpdateMetricsCollector();
 
         // Add all collectors to the main list
         collectors.add(entityCollector);
         collectors.add(worldCollector);
         collectors.add(systemCollector);
+        collectors.add(tickPhaseCollector);
+        collectors.add(entityTickCostCollector);
+        collectors.add(profilerCollector);
+        collectors.add(jfrCollector);
+        collectors.add(storageIoCollector);
+        collectors.add(networkCollector);
+        collectors.add(playerCollector);
+        collectors.add(blockUpdateCollector);
 
         // Initialize metric buffers
         initializeMetricBuffers();
+        registrySeriesMetric = registry.getOrCreate("metrics.registry.series");
+        registryEvictionsMetric = registry.getOrCreate("metrics.registry.evictions");
+
+        // Let collectors resolve the handles they record through
+        for (MetricCollector collector : collectors) {
+            collector.initialize(this);
+        }
     }
 
     private void initializeMetricBuffers() {
-        int historySize = Nevformance.getInstance().getConfigManager().getMetricsHistorySize();
-
         // Server-wide metrics
-        metricBuffers.put("server.tps", new CircularMetricBuffer(historySize));
-        metricBuffers.put("server.tick_time", new CircularMetricBuffer(historySize));
-        metricBuffers.put("server.tick_time.mean", new CircularMetricBuffer(historySize));
-        metricBuffers.put("server.tick_time.std_dev", new CircularMetricBuffer(historySize));
-        metricBuffers.put("server.tick_time.median", new CircularMetricBuffer(historySize));
-        metricBuffers.put("server.tick_time.p95", new CircularMetricBuffer(historySize));
-        metricBuffers.put("server.tick_time.p99", new CircularMetricBuffer(historySize));
+        registry.getOrCreate("server.tps");
+        registry.getOrCreate("server.tick_time");
+        registry.getOrCreate("server.tick_time.mean");
+        registry.getOrCreate("server.tick_time.std_dev");
+        registry.getOrCreate("server.tick_time.median");
+        registry.getOrCreate("server.tick_time.p95");
+        registry.getOrCreate("server.tick_time.p99");
 
         // Memory metrics
-        metricBuffers.put("memory.heap.used", new CircularMetricBuffer(historySize));
-        metricBuffers.put("memory.heap.committed", new CircularMetricBuffer(historySize));
-        metricBuffers.put("memory.heap.max", new CircularMetricBuffer(historySize));
-        metricBuffers.put("memory.nonheap.used", new CircularMetricBuffer(historySize));
-        metricBuffers.put("memory.heap.utilization", new CircularMetricBuffer(historySize));
+        registry.getOrCreate("memory.heap.used");
+        registry.getOrCreate("memory.heap.committed");
+        registry.getOrCreate("memory.heap.max");
+        registry.getOrCreate("memory.nonheap.used");
+        registry.getOrCreate("memory.heap.utilization");
 
         // CPU metrics
-        metricBuffers.put("cpu.system", new CircularMetricBuffer(historySize));
-        metricBuffers.put("cpu.process", new CircularMetricBuffer(historySize));
+        registry.getOrCreate("cpu.system");
+        registry.getOrCreate("cpu.process");
 
         // Entity metrics
-        metricBuffers.put("entities.total", new CircularMetricBuffer(historySize));
-        metricBuffers.put("entities.living", new CircularMetricBuffer(historySize));
-        metricBuffers.put("entities.hostile", new CircularMetricBuffer(historySize));
-        metricBuffers.put("entities.passive", new CircularMetricBuffer(historySize));
+        registry.getOrCreate("entities.total");
+        registry.getOrCreate("entities.living");
+        registry.getOrCreate("entities.hostile");
+        registry.getOrCreate("entities.passive");
 
         // Chunk metrics
-        metricBuffers.put("chunks.loaded", new CircularMetricBuffer(historySize));
-        metricBuffers.put("chunks.load_rate", new CircularMetricBuffer(historySize));
-        metricBuffers.put("chunks.unload_rate", new CircularMetricBuffer(historySize));
+        registry.getOrCreate("chunks.loaded");
+        registry.getOrCreate("chunks.load_rate");
+        registry.getOrCreate("chunks.unload_rate");
 
         // GC metrics
-        metricBuffers.put("gc.young.rate", new CircularMetricBuffer(historySize));
-        metricBuffers.put("gc.old.rate", new CircularMetricBuffer(historySize));
+        registry.getOrCreate("gc.young.rate");
+        registry.getOrCreate("gc.old.rate");
 
         // Thread metrics
-        metricBuffers.put("threads.active", new CircularMetricBuffer(historySize));
+        registry.getOrCreate("threads.active");
 
         // Lag spike metrics
-        metricBuffers.put("server.lag_spikes.current", new CircularMetricBuffer(historySize));
-        metricBuffers.put("server.lag_spikes.count_10s", new CircularMetricBuffer(historySize));
-        metricBuffers.put("server.lag_spikes.count_60s", new CircularMetricBuffer(historySize));
+        registry.getOrCreate("server.lag_spikes.current");
+        registry.getOrCreate("server.lag_spikes.count_10s");
+        registry.getOrCreate("server.lag_spikes.count_60s");
+    }
+
+    /**
+     * Creates the buffer for a new metric, attaching rollup tiers
+     * if the metric is one of the configured rollup series
+     * @param metricName Name of the metric
+     * @return The new buffer
+     */
+    private CircularMetricBuffer createBuffer(String metricName) {
+        ConfigManager config = Nevformance.getInstance().getConfigManager();
+        int historySize = config.getMetricsHistorySize();
+
+        RollupTier[] tiers = new RollupTier[0];
+        if (config.getRollupSeries().contains(metricName)) {
+            tiers = createRollupTiers(config.getRollupTiers());
+        }
+
+        return new CircularMetricBuffer(historySize, tiers);
+    }
+
+    private RollupTier[] createRollupTiers(List<ConfigManager.RollupTierConfig> tierConfigs) {
+        List<RollupTier> tiers = new ArrayList<>();
+        for (ConfigManager.RollupTierConfig tierConfig : tierConfigs) {
+            if (tierConfig.resolutionSeconds <= 0 || tierConfig.retentionSeconds < tierConfig.resolutionSeconds) {
+                continue;
+            }
+            int capacity = tierConfig.retentionSeconds / tierConfig.resolutionSeconds;
+            tiers.add(new RollupTier(tierConfig.resolutionSeconds * 1000L, capacity));
+        }
+        // Finest resolution first so range queries can pick the first tier that covers them
+        tiers.sort(Comparator.comparingLong(RollupTier::getResolutionMs));
+        return tiers.toArray(new RollupTier[0]);
     }
 
     public void startCollection(MinecraftServer server) {
@@ -102,15 +180,89 @@ public class MetricsManager {
         this.server = server;
         isCollecting = true;
 
+        ConfigManager config = Nevformance.getInstance().getConfigManager();
+        applySeriesLimits(config);
+        EntityTickCosts.setSampleInterval(config.getEntityTickSampleInterval());
+        BlockEntityTickCosts.setSampleInterval(config.getBlockEntityTickSampleInterval());
+        ChunkTickCosts.setScheduledSampleInterval(config.getScheduledTickSampleInterval());
+        LagSpikeSampler.setThresholdMs(config.getLagSpikeSampleThresholdMs());
+        LagSpikeSampler.setSampleIntervalMs(config.getLagSpikeSampleIntervalMs());
+        LagSpikeSampler.start();
+        if (config.getProfilerSampleIntervalMs() > 0) {
+            profiler = new ContinuousProfiler(server.getThread(), config.getProfilerSampleIntervalMs(),
+                    config.getProfilerBucketSeconds(), config.getProfilerRetentionMinutes());
+            profiler.start();
+        }
+        if (config.isJfrEnabled()) {
+            jfrCollector.start(config.getJfrEventThresholdMs(),
+                    server.getSavePath(WorldSavePath.ROOT).resolve("nevformance").resolve("jfr").normalize(),
+                    config.getJfrDumpThresholdMs(), config.getJfrDumpCooldownSeconds(), config.getJfrMaxDumps());
+        }
+        if (config.isPersistenceEnabled()) {
+            startPersistence(config);
+        }
+
         // Schedule metric collection based on the configured interval
-        int interval = Nevformance.getInstance().getConfigManager().getMetricCollectionIntervalMs();
+        int interval = config.getMetricCollectionIntervalMs();
         LOGGER.info("Starting metric collection with interval of {} ms", interval);
 
         scheduler.scheduleAtFixedRate(this::collectMetrics, 0, interval, TimeUnit.MILLISECONDS);
     }
 
+    private void applySeriesLimits(ConfigManager config) {
+        List<MetricRegistry.SeriesQuota> quotas = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : config.getSeriesQuotas().entrySet()) {
+            quotas.add(new MetricRegistry.SeriesQuota(entry.getKey(), entry.getValue()));
+        }
+        registry.setLimits(config.getMaxSeries(), quotas);
+    }
+
+    /**
+     * Opens the on-disk store in the world directory and restores its recent
+     * history. Buffers only take points in time order, so restoring runs on the
+     * collection thread ahead of the first collection cycle, which it delays;
+     * it is bounded to the configured replay window so that delay stays short.
+     * The server thread never waits on disk I/O.
+     */
+    private void startPersistence(ConfigManager config) {
+        Path directory = server.getSavePath(WorldSavePath.ROOT).resolve("nevformance").resolve("metrics").normalize();
+        MetricSegmentStore store = new MetricSegmentStore(
+                directory,
+                config.getPersistenceSegmentSizeMb() * 1024 * 1024,
+                TimeUnit.HOURS.toMillis(config.getPersistenceRetentionHours())
+        );
+
+        long since = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(config.getPersistenceReplayHours());
+        scheduler.execute(() -> {
+            store.replay(since, this::restoreSample);
+            registry.setSegmentStore(store);
+        });
+
+        int flushInterval = config.getPersistenceFlushIntervalSeconds();
+        scheduler.scheduleAtFixedRate(() -> {
+            MetricSegmentStore current = registry.getSegmentStore();
+            if (current != null) {
+                current.flush();
+            }
+        }, flushInterval, flushInterval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Adds a sample read back from disk to its buffer without persisting it again
+     */
+    private void restoreSample(String metricName, long timestamp, double value) {
+        registry.getOrCreate(metricName).restore(timestamp, value);
+    }
+
     public void stopCollection() {
         isCollecting = false;
+        LagSpikeSampler.stop();
+        ContinuousProfiler runningProfiler = profiler;
+        if (runningProfiler != null) {
+            profiler = null;
+            runningProfiler.stop();
+        }
+        jfrCollector.stop();
         scheduler.shutdown();
         try {
             if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -120,6 +272,11 @@ public class MetricsManager {
             scheduler.shutdownNow();
             Thread.currentThread().interrupt();
         }
+        MetricSegmentStore store = registry.getSegmentStore();
+        if (store != null) {
+            registry.setSegmentStore(null);
+            store.close();
+        }
         LOGGER.info("Metric collection stopped");
     }
 
@@ -137,52 +294,173 @@ public class MetricsManager {
 
             // Let each collector gather its metrics
             for (MetricCollector collector : collectors) {
-                CompletableFuture.runAsync(() -> {
+                CompletableFuture<Void> previousRun = collectorRuns.get(collector);
+                if (previousRun != null && !previousRun.isDone()) {
+                    LOGGER.debug("Skipping {}, previous collection still running", collector.getClass().getSimpleName());
+                    continue;
+                }
+
+                collectorRuns.put(collector, CompletableFuture.runAsync(() -> {
                     try {
                         collector.collect(this, server, timestamp);
                     } catch (Exception e) {
                         LOGGER.error("Error in metric collector {}", collector.getClass().getSimpleName(), e);
                     }
-                });
+                }));
+            }
+
+            // Keep series cardinality within the configured limits
+            int evicted = registry.enforceLimits();
+            if (evicted > 0) {
+                LOGGER.debug("Evicted {} idle metric series", evicted);
             }
+            registrySeriesMetric.record(timestamp, registry.size());
+            registryEvictionsMetric.record(timestamp, evicted);
         } catch (Exception e) {
             LOGGER.error("Error collecting metrics", e);
         }
     }
 
-    public void recordMetric(String metricName, long timestamp, double value) {
-        CircularMetricBuffer buffer = metricBuffers.get(metricName);
-        if (buffer == null) {
-            // Create buffer if it doesn't exist yet
-            int historySize = Nevformance.getInstance().getConfigManager().getMetricsHistorySize();
-            buffer = new CircularMetricBuffer(historySize);
-            metricBuffers.put(metricName, buffer);
-        }
+    /**
+     * Resolves a metric name to a handle, creating the series if needed.
+     * Collectors should resolve once and keep the handle rather than
+     * calling {@link #recordMetric(String, long, double)} every cycle.
+     * @param metricName Name of the metric
+     * @return The handle to record through
+     */
+    public MetricHandle getMetricHandle(String metricName) {
+        return registry.getOrCreate(metricName);
+    }
 
-        buffer.add(new MetricPoint(timestamp, value));
+    public void recordMetric(String metricName, long timestamp, double value) {
+        registry.getOrCreate(metricName).record(timestamp, value);
     }
 
     public Map<String, List<MetricPoint>> getMetrics() {
         Map<String, List<MetricPoint>> result = new HashMap<>();
 
-        for (Map.Entry<String, CircularMetricBuffer> entry : metricBuffers.entrySet()) {
-            result.put(entry.getKey(), entry.getValue().getPoints());
+        for (MetricHandle handle : registry.getHandles()) {
+            result.put(handle.getName(), handle.getBuffer().getPoints());
         }
 
         return result;
     }
 
     public List<MetricPoint> getMetric(String metricName) {
-        CircularMetricBuffer buffer = metricBuffers.get(metricName);
-        return buffer != null ? buffer.getPoints() : Collections.emptyList();
+        MetricHandle handle = registry.get(metricName);
+        return handle != null ? handle.getBuffer().getPoints() : Collections.emptyList();
+    }
+
+    /**
+     * Copies the most recent points of a metric into caller-supplied arrays
+     * without allocating. Points are written oldest first.
+     * @param metricName Name of the metric
+     * @param timestampsOut Destination for timestamps
+     * @param valuesOut Destination for values
+     * @return Number of points written, 0 if the metric does not exist
+     */
+    public int copyMetric(String metricName, long[] timestampsOut, double[] valuesOut) {
+        MetricHandle handle = registry.get(metricName);
+        return handle != null ? handle.getBuffer().copyPoints(timestampsOut, valuesOut) : 0;
+    }
+
+    /**
+     * Gets the raw points of a metric within a time range. Only the points in
+     * the range are copied, so polling a short window of a long series is cheap.
+     * @param metricName Name of the metric
+     * @param startTime Range start in milliseconds (inclusive)
+     * @param endTime Range end in milliseconds (inclusive)
+     * @return The points in the range, or null if the metric does not exist
+     */
+    public MetricSlice getMetricRange(String metricName, long startTime, long endTime) {
+        MetricHandle handle = registry.get(metricName);
+        return handle != null ? handle.getBuffer().getRange(startTime, endTime) : null;
+    }
+
+    /**
+     * Streams the raw points of a metric within a time range to a visitor
+     * without materializing them
+     * @param metricName Name of the metric
+     * @param startTime Range start in milliseconds (inclusive)
+     * @param endTime Range end in milliseconds (inclusive)
+     * @param visitor Receives the points, oldest first
+     * @return false if the metric does not exist
+     */
+    public boolean scanMetric(String metricName, long startTime, long endTime, PointVisitor visitor) {
+        return registry.scanMetric(metricName, startTime, endTime, visitor);
+    }
+
+    /**
+     * @return The most recent point of a metric, or null if the metric does not exist or is empty
+     */
+    public MetricPoint getLatestPoint(String metricName) {
+        return registry.getLatestPoint(metricName);
+    }
+
+    /**
+     * Gets the history of a metric over a time range, served from the finest
+     * storage tier that still reaches back to the start of the range
+     * @param metricName Name of the metric
+     * @param startTime Range start in milliseconds (inclusive)
+     * @param endTime Range end in milliseconds (inclusive)
+     * @return The history, or null if the metric does not exist
+     */
+    public MetricHistory getMetricHistory(String metricName, long startTime, long endTime) {
+        MetricHandle handle = registry.get(metricName);
+        if (handle == null) {
+            return null;
+        }
+        CircularMetricBuffer buffer = handle.getBuffer();
+
+        if (buffer.getTierCount() == 0 || startTime >= buffer.getOldestTimestamp()) {
+            MetricSlice slice = buffer.getRange(startTime, endTime);
+            List<RollupPoint> points = new ArrayList<>(slice.size());
+            for (int i = 0; i < slice.size(); i++) {
+                double value = slice.value(i);
+                points.add(new RollupPoint(slice.timestamp(i), value, value, value, 1));
+            }
+            long interval = Nevformance.getInstance().getConfigManager().getMetricCollectionIntervalMs();
+            return new MetricHistory(metricName, interval, points);
+        }
+
+        // Fall back to the coarsest tier if none reaches back far enough
+        int tier = buffer.getTierCount() - 1;
+        for (int i = 0; i < buffer.getTierCount(); i++) {
+            if (startTime >= buffer.getTierOldestTimestamp(i)) {
+                tier = i;
+                break;
+            }
+        }
+
+        return new MetricHistory(metricName, buffer.getTierResolutionMs(tier),
+                buffer.getRollupPoints(tier, startTime, endTime));
     }
 
     public Map<String, List<MetricPoint>> getMetricsByPrefix(String prefix) {
         Map<String, List<MetricPoint>> result = new HashMap<>();
 
-        for (Map.Entry<String, CircularMetricBuffer> entry : metricBuffers.entrySet()) {
-            if (entry.getKey().startsWith(prefix)) {
-                result.put(entry.getKey(), entry.getValue().getPoints());
+        for (MetricHandle handle : registry.getHandles()) {
+            if (handle.getName().startsWith(prefix)) {
+                result.put(handle.getName(), handle.getBuffer().getPoints());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the points within a time range of every metric whose name starts with a prefix
+     * @param prefix Name prefix, empty for all metrics
+     * @param startTime Range start in milliseconds (inclusive)
+     * @param endTime Range end in milliseconds (inclusive)
+     * @return Map of metric name to the points in the range
+     */
+    public Map<String, List<MetricPoint>> getMetricsByPrefix(String prefix, long startTime, long endTime) {
+        Map<String, List<MetricPoint>> result = new HashMap<>();
+
+        for (MetricHandle handle : registry.getHandles()) {
+            if (handle.getName().startsWith(prefix)) {
+                result.put(handle.getName(), handle.getBuffer().getRange(startTime, endTime).asList());
             }
         }
 
@@ -194,7 +472,15 @@ public class MetricsManager {
      * @return Set of metric names
      */
     public Set<String> getAvailableMetrics() {
-        return new HashSet<>(metricBuffers.keySet());
+        return new HashSet<>(registry.getNames());
+    }
+
+    /**
+     * Gets the registry of all metric series
+     * @return MetricRegistry instance
+     */
+    public MetricRegistry getRegistry() {
+        return registry;
     }
 
     /**
@@ -213,6 +499,70 @@ public class MetricsManager {
         return worldCollector;
     }
 
+    /**
+     * Gets the tick phase metrics collector
+     * @return TickPhaseMetricsCollector instance
+     */
+    public TickPhaseMetricsCollector getTickPhaseCollector() {
+        return tickPhaseCollector;
+    }
+
+    /**
+     * Gets the entity tick cost collector
+     * @return EntityTickCostCollector instance
+     */
+    public EntityTickCostCollector getEntityTickCostCollector() {
+        return entityTickCostCollector;
+    }
+
+    /**
+     * Gets the JFR metrics collector
+     * @return JfrMetricsCollector instance
+     */
+    public JfrMetricsCollector getJfrCollector() {
+        return jfrCollector;
+    }
+
+    /**
+     * Gets the storage I/O metrics collector
+     * @return StorageIoMetricsCollector instance
+     */
+    public StorageIoMetricsCollector getStorageIoCollector() {
+        return storageIoCollector;
+    }
+
+    /**
+     * Gets the network metrics collector
+     * @return NetworkMetricsCollector instance
+     */
+    public NetworkMetricsCollector getNetworkCollector() {
+        return networkCollector;
+    }
+
+    /**
+     * Gets the player metrics collector
+     * @return PlayerMetricsCollector instance
+     */
+    public PlayerMetricsCollector getPlayerCollector() {
+        return playerCollector;
+    }
+
+    /**
+     * Gets the block update metrics collector
+     * @return BlockUpdateMetricsCollector instance
+     */
+    public BlockUpdateMetricsCollector getBlockUpdateCollector() {
+        return blockUpdateCollector;
+    }
+
+    /**
+     * Gets the continuous profiler
+     * @return ContinuousProfiler instance, or null if profiling is disabled or not running
+     */
+    public ContinuousProfiler getProfiler() {
+        return profiler;
+    }
+
     /**
      * Gets the system metrics collector
      * @return SystemMetricsCollector instance
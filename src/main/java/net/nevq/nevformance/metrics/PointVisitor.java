@@ -0,0 +1,9 @@
+package net.nevq.nevformance.metrics;
+
+/**
+ * Receives the points of a series one at a time, oldest first
+ */
+@FunctionalInterface
+public interface PointVisitor {
+    void visit(long timestamp, double value);
+}
@@ -0,0 +1,13 @@
+package net.nevq.nevformance.metrics;
+
+/**
+ * Represents one downsampled bucket of a metric series
+ *
+ * @param timestamp Start of the bucket in milliseconds
+ * @param min Smallest value recorded in the bucket
+ * @param max Largest value recorded in the bucket
+ * @param avg Mean of the values recorded in the bucket
+ * @param count Number of raw samples that fell into the bucket
+ */
+public record RollupPoint(long timestamp, double min, double max, double avg, long count) {
+}
@@ -0,0 +1,170 @@
+package net.nevq.nevformance.metrics;
+
+/**
+ * A downsampling tier of a metric series.
+ *
+ * Every raw sample is folded into a fixed-width time bucket that keeps
+ * min/max/sum/count, so a tier with a 60 s resolution can hold a month of
+ * history in 43200 buckets. Bucket storage starts small and doubles up to
+ * the configured capacity, so short-lived servers do not pay for retention
+ * they never use.
+ *
+ * A tier is not thread-safe on its own; it is only mutated and read inside
+ * the sequence-guarded sections of its owning {@link CircularMetricBuffer}.
+ */
+class RollupTier {
+    private static final int INITIAL_BUCKETS = 64;
+
+    private final long resolutionMs;
+    private final int capacity;
+
+    // Replaced as a whole when the tier grows so readers never mix array generations
+    private Buckets buckets;
+
+    public RollupTier(long resolutionMs, int capacity) {
+        this.resolutionMs = resolutionMs;
+        this.capacity = capacity;
+        this.buckets = new Buckets(Math.min(capacity, INITIAL_BUCKETS));
+    }
+
+    public long getResolutionMs() {
+        return resolutionMs;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return How far back this tier can reach once it is full, in milliseconds
+     */
+    public long getRetentionMs() {
+        return resolutionMs * capacity;
+    }
+
+    /**
+     * @return Current length of the bucket arrays, which grows up to {@link #getCapacity()}
+     */
+    int bucketLength() {
+        return buckets.starts.length;
+    }
+
+    /**
+     * Folds a raw sample into its bucket. Samples older than the newest bucket are ignored.
+     */
+    void add(long timestamp, double value) {
+        long bucketStart = timestamp - Math.floorMod(timestamp, resolutionMs);
+        Buckets b = buckets;
+
+        if (b.size > 0) {
+            int latest = (b.head - 1 + b.starts.length) % b.starts.length;
+            if (b.starts[latest] == bucketStart) {
+                b.min[latest] = Math.min(b.min[latest], value);
+                b.max[latest] = Math.max(b.max[latest], value);
+                b.sum[latest] += value;
+                b.count[latest]++;
+                return;
+            }
+            if (b.starts[latest] > bucketStart) {
+                return;
+            }
+        }
+
+        if (b.size == b.starts.length && b.starts.length < capacity) {
+            b = grow(b);
+            buckets = b;
+        }
+
+        b.starts[b.head] = bucketStart;
+        b.min[b.head] = value;
+        b.max[b.head] = value;
+        b.sum[b.head] = value;
+        b.count[b.head] = 1;
+        b.head = (b.head + 1) % b.starts.length;
+        if (b.size < b.starts.length) {
+            b.size++;
+        }
+    }
+
+    /**
+     * @return Start of the oldest bucket, or {@code Long.MAX_VALUE} if the tier is empty
+     */
+    long oldestTimestamp() {
+        Buckets b = buckets;
+        int size = Math.min(b.size, b.starts.length);
+        if (size == 0) {
+            return Long.MAX_VALUE;
+        }
+        return b.starts[size == b.starts.length ? b.head % b.starts.length : 0];
+    }
+
+    /**
+     * Copies the buckets overlapping {@code [startTime, endTime]}, oldest first.
+     * Destination arrays must be at least {@link #bucketLength()} long.
+     *
+     * @return Number of buckets written, or -1 if the tier grew past the destination size
+     */
+    int copyRange(long startTime, long endTime,
+                  long[] startsOut, double[] minOut, double[] maxOut, double[] sumOut, long[] countOut) {
+        Buckets b = buckets;
+        int length = b.starts.length;
+        if (startsOut.length < length) {
+            return -1;
+        }
+        int size = Math.min(b.size, length);
+        int oldest = size == length ? b.head % length : 0;
+
+        int written = 0;
+        for (int i = 0; i < size; i++) {
+            int index = (oldest + i) % length;
+            long bucketStart = b.starts[index];
+            if (bucketStart + resolutionMs <= startTime || bucketStart > endTime) {
+                continue;
+            }
+            startsOut[written] = bucketStart;
+            minOut[written] = b.min[index];
+            maxOut[written] = b.max[index];
+            sumOut[written] = b.sum[index];
+            countOut[written] = b.count[index];
+            written++;
+        }
+        return written;
+    }
+
+    private Buckets grow(Buckets old) {
+        Buckets grown = new Buckets(Math.min(capacity, old.starts.length * 2));
+        int oldest = old.size == old.starts.length ? old.head : 0;
+        for (int i = 0; i < old.size; i++) {
+            int from = (oldest + i) % old.starts.length;
+            grown.starts[i] = old.starts[from];
+            grown.min[i] = old.min[from];
+            grown.max[i] = old.max[from];
+            grown.sum[i] = old.sum[from];
+            grown.count[i] = old.count[from];
+        }
+        grown.size = old.size;
+        grown.head = old.size % grown.starts.length;
+        return grown;
+    }
+
+    /**
+     * Column storage for the buckets of a tier
+     */
+    private static final class Buckets {
+        final long[] starts;
+        final double[] min;
+        final double[] max;
+        final double[] sum;
+        final long[] count;
+        int size = 0;
+        int head = 0;
+
+        Buckets(int length) {
+            starts = new long[length];
+            min = new double[length];
+            max = new double[length];
+            sum = new double[length];
+            count = new long[length];
+        }
+    }
+}
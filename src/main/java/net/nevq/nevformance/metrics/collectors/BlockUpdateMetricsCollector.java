@@ -0,0 +1,172 @@
+package net.nevq.nevformance.metrics.collectors;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.nevq.nevformance.instrumentation.BlockUpdateQueues;
+import net.nevq.nevformance.instrumentation.BlockUpdateQueues.Scheduler;
+import net.nevq.nevformance.metrics.MetricHandle;
+import net.nevq.nevformance.metrics.MetricsManager;
+import net.nevq.nevformance.util.MetricsUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Publishes the scheduled tick and neighbor update counters of each
+ * dimension, measured by the world mixins.
+ *
+ * Per dimension and scheduler ({@code block} or {@code fluid}) this publishes
+ * {@code world.<dim>.scheduled_ticks.<scheduler>.per_tick|ms_per_tick} and the
+ * sampled number of ticks waiting as
+ * {@code world.<dim>.scheduled_ticks.<scheduler>.queue_depth|queue_depth_max},
+ * neighbor updates as {@code world.<dim>.neighbor_updates.per_tick|ms_per_tick},
+ * and the chunks running the most scheduled ticks as
+ * {@code world.<dim>.scheduled_ticks.chunk.<x>.<z>.per_tick}.
+ */
+public class BlockUpdateMetricsCollector implements MetricCollector {
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final int TOP_CHUNKS = 10;
+
+    private static final Scheduler[] SCHEDULERS = Scheduler.values();
+
+    private final Map<RegistryKey<World>, DimensionMetrics> dimensionMetrics = new HashMap<>();
+
+    // Chunks by scheduled ticks over the latest interval, per dimension, for the web interface
+    private volatile Map<String, List<ChunkTicks>> topChunks = Collections.emptyMap();
+
+    @Override
+    public void collect(MetricsManager manager, MinecraftServer server, long timestamp) {
+        BlockUpdateQueues.Interval interval = BlockUpdateQueues.requestInterval();
+        if (interval == null || interval.getTicks() == 0) {
+            return;
+        }
+
+        Map<String, List<ChunkTicks>> chunks = new TreeMap<>();
+        for (ServerWorld world : server.getWorlds()) {
+            DimensionMetrics metrics = dimensionMetrics.get(world.getRegistryKey());
+            if (metrics == null) {
+                metrics = new DimensionMetrics(manager, "world." + MetricsUtil.getDimensionKey(world));
+                dimensionMetrics.put(world.getRegistryKey(), metrics);
+            }
+            metrics.pruneEvicted();
+
+            BlockUpdateQueues.WorldCounts counts = interval.getWorlds().get(world);
+            if (counts == null) {
+                continue;
+            }
+            metrics.record(manager, counts, interval.getTicks(), timestamp);
+            chunks.put(MetricsUtil.getDimensionKey(world), topChunks(counts.getChunkTicks(), interval.getTicks()));
+        }
+        topChunks = Collections.unmodifiableMap(chunks);
+    }
+
+    private static List<ChunkTicks> topChunks(Long2IntOpenHashMap chunkTicks, long ticks) {
+        List<ChunkTicks> chunks = new ArrayList<>(chunkTicks.size());
+        for (Long2IntMap.Entry entry : chunkTicks.long2IntEntrySet()) {
+            long chunkPos = entry.getLongKey();
+            chunks.add(new ChunkTicks(ChunkPos.getPackedX(chunkPos), ChunkPos.getPackedZ(chunkPos),
+                    (double) entry.getIntValue() / ticks));
+        }
+        chunks.sort(Comparator.comparingDouble((ChunkTicks chunk) -> chunk.ticksPerTick).reversed());
+        return chunks;
+    }
+
+    /**
+     * Gets the chunks of each dimension, by scheduled ticks over the latest interval
+     * @return Chunks of every dimension by dimension key, busiest first
+     */
+    public Map<String, List<ChunkTicks>> getTopChunks() {
+        return topChunks;
+    }
+
+    /**
+     * Handles of one dimension
+     */
+    private static class DimensionMetrics {
+        final String worldPrefix;
+        final MetricHandle[] ticksPerTick = new MetricHandle[SCHEDULERS.length];
+        final MetricHandle[] msPerTick = new MetricHandle[SCHEDULERS.length];
+        final MetricHandle[] queueDepth = new MetricHandle[SCHEDULERS.length];
+        final MetricHandle[] maxQueueDepth = new MetricHandle[SCHEDULERS.length];
+        final MetricHandle neighborUpdatesPerTick;
+        final MetricHandle neighborUpdatesMsPerTick;
+        final Long2ObjectOpenHashMap<MetricHandle> chunkTicks = new Long2ObjectOpenHashMap<>();
+
+        DimensionMetrics(MetricsManager manager, String worldPrefix) {
+            this.worldPrefix = worldPrefix;
+            for (Scheduler scheduler : SCHEDULERS) {
+                String prefix = worldPrefix + ".scheduled_ticks." + scheduler.getMetricName();
+                ticksPerTick[scheduler.ordinal()] = manager.getMetricHandle(prefix + ".per_tick");
+                msPerTick[scheduler.ordinal()] = manager.getMetricHandle(prefix + ".ms_per_tick");
+                queueDepth[scheduler.ordinal()] = manager.getMetricHandle(prefix + ".queue_depth");
+                maxQueueDepth[scheduler.ordinal()] = manager.getMetricHandle(prefix + ".queue_depth_max");
+            }
+            neighborUpdatesPerTick = manager.getMetricHandle(worldPrefix + ".neighbor_updates.per_tick");
+            neighborUpdatesMsPerTick = manager.getMetricHandle(worldPrefix + ".neighbor_updates.ms_per_tick");
+        }
+
+        void record(MetricsManager manager, BlockUpdateQueues.WorldCounts counts, long ticks, long timestamp) {
+            for (Scheduler scheduler : SCHEDULERS) {
+                int index = scheduler.ordinal();
+                ticksPerTick[index].record(timestamp, (double) counts.getExecuted(scheduler) / ticks);
+                msPerTick[index].record(timestamp, counts.getNanos(scheduler) / NANOS_PER_MILLI / ticks);
+                // No sample is taken in intervals shorter than the sample period
+                if (counts.getQueueDepth(scheduler) >= 0) {
+                    queueDepth[index].record(timestamp, counts.getQueueDepth(scheduler));
+                    maxQueueDepth[index].record(timestamp, counts.getMaxQueueDepth(scheduler));
+                }
+            }
+            neighborUpdatesPerTick.record(timestamp, (double) counts.getNeighborUpdates() / ticks);
+            neighborUpdatesMsPerTick.record(timestamp, counts.getNeighborUpdateNanos() / NANOS_PER_MILLI / ticks);
+
+            counts.getChunkTicks().long2IntEntrySet().stream()
+                    .sorted(Comparator.comparingInt(Long2IntMap.Entry::getIntValue).reversed())
+                    .limit(TOP_CHUNKS)
+                    .forEach(entry -> chunkTicks(manager, entry.getLongKey())
+                            .record(timestamp, (double) entry.getIntValue() / ticks));
+        }
+
+        MetricHandle chunkTicks(MetricsManager manager, long chunkPos) {
+            MetricHandle handle = chunkTicks.get(chunkPos);
+            if (handle == null || handle.isEvicted()) {
+                handle = manager.getMetricHandle(worldPrefix + ".scheduled_ticks.chunk."
+                        + ChunkPos.getPackedX(chunkPos) + "." + ChunkPos.getPackedZ(chunkPos) + ".per_tick");
+                chunkTicks.put(chunkPos, handle);
+            }
+            return handle;
+        }
+
+        /**
+         * Drops cached chunk handles whose series the registry has evicted
+         */
+        void pruneEvicted() {
+            chunkTicks.values().removeIf(MetricHandle::isEvicted);
+        }
+    }
+
+    /**
+     * Scheduled ticks of one chunk over the latest interval
+     */
+    public static class ChunkTicks {
+        public final int x;
+        public final int z;
+        public final double ticksPerTick;
+
+        public ChunkTicks(int x, int z, double ticksPerTick) {
+            this.x = x;
+            this.z = z;
+            this.ticksPerTick = ticksPerTick;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package net.nevq.nevformance.metrics.collectors;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.util.math.ChunkPos;
+import net.nevq.nevformance.instrumentation.ChunkTickCosts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Measured tick time per chunk of one world, as an exponentially decaying
+ * average of nanoseconds per tick.
+ *
+ * Each interval from {@link ChunkTickCosts} is folded in as if its per-tick
+ * mean had been added on every one of its ticks, so the decay follows server
+ * ticks rather than collection cycles: a chunk that stops costing anything
+ * halves every {@link #HALF_LIFE_TICKS} ticks and is dropped once it falls
+ * below {@link #MIN_NANOS_PER_TICK}. Updated by the collector thread; readers
+ * get an immutable snapshot from {@link #getCells()}.
+ */
+public class ChunkHeatmap {
+    private static final double HALF_LIFE_TICKS = 200; // 10 seconds at 20 TPS
+    private static final double MIN_NANOS_PER_TICK = 1_000;
+    private static final int SOURCES = ChunkTickCosts.Source.values().length;
+
+    // Decaying nanoseconds per tick, indexed by source, keyed by packed chunk position
+    private final Long2ObjectOpenHashMap<double[]> cells = new Long2ObjectOpenHashMap<>();
+
+    private volatile List<Cell> snapshot = Collections.emptyList();
+
+    /**
+     * Folds the costs of one interval into the heatmap
+     * @param chunks Nanoseconds per source per chunk of the interval, or null if this world did no chunk work
+     * @param ticks Number of ticks the interval covers
+     */
+    void update(Long2ObjectMap<long[]> chunks, long ticks) {
+        double decay = Math.pow(0.5, ticks / HALF_LIFE_TICKS);
+        for (double[] cell : cells.values()) {
+            for (int i = 0; i < SOURCES; i++) {
+                cell[i] *= decay;
+            }
+        }
+
+        if (chunks != null) {
+            for (Long2ObjectMap.Entry<long[]> entry : chunks.long2ObjectEntrySet()) {
+                long[] nanos = entry.getValue();
+                double[] cell = cells.get(entry.getLongKey());
+                for (int i = 0; i < SOURCES; i++) {
+                    if (nanos[i] == 0) {
+                        continue;
+                    }
+                    if (cell == null) {
+                        cell = new double[SOURCES];
+                        cells.put(entry.getLongKey(), cell);
+                    }
+                    cell[i] += (1 - decay) * nanos[i] / ticks;
+                }
+            }
+        }
+
+        cells.values().removeIf(cell -> total(cell) < MIN_NANOS_PER_TICK);
+
+        List<Cell> updated = new ArrayList<>(cells.size());
+        for (Long2ObjectMap.Entry<double[]> entry : cells.long2ObjectEntrySet()) {
+            updated.add(new Cell(entry.getLongKey(), entry.getValue()));
+        }
+        updated.sort(Comparator.comparingDouble(Cell::getTotalNanos).reversed());
+        snapshot = Collections.unmodifiableList(updated);
+    }
+
+    /**
+     * @return The chunks of the latest update, most expensive first
+     */
+    public List<Cell> getCells() {
+        return snapshot;
+    }
+
+    private static double total(double[] cell) {
+        double total = 0;
+        for (double value : cell) {
+            total += value;
+        }
+        return total;
+    }
+
+    /**
+     * Measured tick time of one chunk, in nanoseconds per tick
+     */
+    public static class Cell {
+        private final int x;
+        private final int z;
+        private final double totalNanos;
+        private final double entityNanos;
+        private final double blockEntityNanos;
+        private final double randomTickNanos;
+        private final double scheduledTickNanos;
+
+        Cell(long chunkPos, double[] nanos) {
+            this.x = ChunkPos.getPackedX(chunkPos);
+            this.z = ChunkPos.getPackedZ(chunkPos);
+            this.totalNanos = total(nanos);
+            this.entityNanos = nanos[ChunkTickCosts.Source.ENTITIES.ordinal()];
+            this.blockEntityNanos = nanos[ChunkTickCosts.Source.BLOCK_ENTITIES.ordinal()];
+            this.randomTickNanos = nanos[ChunkTickCosts.Source.RANDOM_TICKS.ordinal()];
+            this.scheduledTickNanos = nanos[ChunkTickCosts.Source.SCHEDULED_TICKS.ordinal()];
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getZ() {
+            return z;
+        }
+
+        public double getTotalNanos() {
+            return totalNanos;
+        }
+
+        public double getEntityNanos() {
+            return entityNanos;
+        }
+
+        public double getBlockEntityNanos() {
+            return blockEntityNanos;
+        }
+
+        public double getRandomTickNanos() {
+            return randomTickNanos;
+        }
+
+        public double getScheduledTickNanos() {
+            return scheduledTickNanos;
+        }
+    }
+}
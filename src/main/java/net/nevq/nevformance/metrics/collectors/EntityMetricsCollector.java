@@ -8,9 +8,14 @@ import net.minecraft.entity.passive.PassiveEntity;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.world.ServerWorld;
+import net.minecraft.registry.RegistryKey;
 import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.nevq.nevformance.metrics.MetricHandle;
 import net.nevq.nevformance.metrics.MetricsManager;
 import net.nevq.nevformance.util.MetricsUtil;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -31,6 +36,25 @@ public class EntityMetricsCollector implements MetricCollector {
     private static final int ENTITY_CONCENTRATION_WARNING = 20; // Entities per chunk
     private static final int ENTITY_TYPE_CONCENTRATION_WARNING = 12; // Same type entities per chunk
 
+    // Handles for fixed metric names, resolved in initialize()
+    private MetricHandle totalMetric;
+    private MetricHandle livingMetric;
+    private MetricHandle hostileMetric;
+    private MetricHandle passiveMetric;
+
+    // Handles for names derived from game objects, resolved on first use
+    private final Map<EntityType<?>, MetricHandle> globalTypeMetrics = new HashMap<>();
+    private final Map<RegistryKey<World>, DimensionMetrics> dimensionMetrics = new HashMap<>();
+    private final Map<EntityType<?>, String> entityTypeNames = new HashMap<>();
+
+    @Override
+    public void initialize(MetricsManager manager) {
+        totalMetric = manager.getMetricHandle("entities.total");
+        livingMetric = manager.getMetricHandle("entities.living");
+        hostileMetric = manager.getMetricHandle("entities.hostile");
+        passiveMetric = manager.getMetricHandle("entities.passive");
+    }
+
     @Override
     public void collect(MetricsManager manager, MinecraftServer server, long timestamp) {
         // Reset caches for this collection cycle
@@ -54,8 +78,13 @@ public class EntityMetricsCollector implements MetricCollector {
 
         // Process each world/dimension
         for (ServerWorld world : server.getWorlds()) {
-            String dimensionKey = MetricsUtil.getDimensionKey(world);
-            String worldPrefix = "world." + dimensionKey;
+            DimensionMetrics metrics = dimensionMetrics.get(world.getRegistryKey());
+            if (metrics == null) {
+                metrics = new DimensionMetrics("world." + MetricsUtil.getDimensionKey(world));
+                dimensionMetrics.put(world.getRegistryKey(), metrics);
+            }
+            metrics.pruneEvicted();
+            final DimensionMetrics worldMetrics = metrics;
 
             // Category counts for this dimension
             Map<String, Integer> dimensionCategories = new HashMap<>(entityCategories);
@@ -99,29 +128,18 @@ public class EntityMetricsCollector implements MetricCollector {
             }
 
             // Record general counts for this dimension
-            manager.recordMetric(worldPrefix + ".entities.total", timestamp, worldEntityCount);
+            worldMetrics.total(manager).record(timestamp, worldEntityCount);
 
             // Record category breakdown for this dimension
             for (Map.Entry<String, Integer> entry : dimensionCategories.entrySet()) {
-                manager.recordMetric(
-                        worldPrefix + ".entities." + entry.getKey(),
-                        timestamp,
-                        entry.getValue()
-                );
+                worldMetrics.category(manager, entry.getKey()).record(timestamp, entry.getValue());
             }
 
             // Record top entity types for this dimension
             entityCountsByType.entrySet().stream()
                     .sorted(Map.Entry.<EntityType<?>, Integer>comparingByValue().reversed())
                     .limit(10) // Top 10 entity types
-                    .forEach(entry -> {
-                        String entityTypeName = EntityType.getId(entry.getKey()).toString().replace(":", ".");
-                        manager.recordMetric(
-                                worldPrefix + ".entities.types." + entityTypeName,
-                                timestamp,
-                                entry.getValue()
-                        );
-                    });
+                    .forEach(entry -> worldMetrics.type(manager, entry.getKey()).record(timestamp, entry.getValue()));
 
             // Identify entity hotspots
             entitiesByChunk.entrySet().stream()
@@ -138,50 +156,124 @@ public class EntityMetricsCollector implements MetricCollector {
                         Map<String, Integer> chunkData = new HashMap<>();
                         chunkData.put("total", totalInChunk);
                         entry.getValue().forEach((type, count) -> {
-                            String typeName = EntityType.getId(type).toString().replace(":", ".");
-                            chunkData.put(typeName, count);
+                            chunkData.put(getEntityTypeName(type), count);
 
                             // Record individual high concentrations of specific types
                             if (count >= ENTITY_TYPE_CONCENTRATION_WARNING) {
-                                manager.recordMetric(
-                                        String.format("%s.hotspot.%d.%d.%s", worldPrefix, pos.x, pos.z, typeName),
-                                        timestamp,
-                                        count
-                                );
+                                worldMetrics.hotspotType(manager, pos, type).record(timestamp, count);
                             }
                         });
 
                         entityDensityMap.put(pos, chunkData);
 
                         // Record the total for this hotspot
-                        manager.recordMetric(
-                                String.format("%s.hotspot.%d.%d.total", worldPrefix, pos.x, pos.z),
-                                timestamp,
-                                totalInChunk
-                        );
+                        worldMetrics.hotspotTotal(manager, pos).record(timestamp, totalInChunk);
                     });
         }
 
         // Record global metrics
-        manager.recordMetric("entities.total", timestamp, totalEntities);
-        manager.recordMetric("entities.living", timestamp, totalLivingEntities);
-        manager.recordMetric("entities.hostile", timestamp, entityCategories.get("hostile"));
-        manager.recordMetric("entities.passive", timestamp, entityCategories.get("passive"));
+        totalMetric.record(timestamp, totalEntities);
+        livingMetric.record(timestamp, totalLivingEntities);
+        hostileMetric.record(timestamp, entityCategories.get("hostile"));
+        passiveMetric.record(timestamp, entityCategories.get("passive"));
 
         // Record top entity types globally
         lastEntityCountsByType.entrySet().stream()
                 .sorted(Map.Entry.<EntityType<?>, Integer>comparingByValue().reversed())
                 .limit(15) // Top 15 entity types globally
                 .forEach(entry -> {
-                    String entityTypeName = EntityType.getId(entry.getKey()).toString().replace(":", ".");
-                    manager.recordMetric(
-                            "entities.types." + entityTypeName,
-                            timestamp,
-                            entry.getValue()
-                    );
+                    MetricHandle typeMetric = globalTypeMetrics.get(entry.getKey());
+                    if (typeMetric == null || typeMetric.isEvicted()) {
+                        typeMetric = manager.getMetricHandle("entities.types." + getEntityTypeName(entry.getKey()));
+                        globalTypeMetrics.put(entry.getKey(), typeMetric);
+                    }
+                    typeMetric.record(timestamp, entry.getValue());
                 });
     }
 
+    /**
+     * Gets the metric-safe name of an entity type, e.g. "minecraft.zombie"
+     */
+    private String getEntityTypeName(EntityType<?> type) {
+        String name = entityTypeNames.get(type);
+        if (name == null) {
+            name = EntityType.getId(type).toString().replace(":", ".");
+            entityTypeNames.put(type, name);
+        }
+        return name;
+    }
+
+    /**
+     * Handles for the metrics of one dimension, keyed by the objects they are derived from
+     */
+    private class DimensionMetrics {
+        private final String worldPrefix;
+        private MetricHandle total;
+        private final Map<String, MetricHandle> categories = new HashMap<>();
+        private final Map<EntityType<?>, MetricHandle> types = new HashMap<>();
+        private final Long2ObjectMap<MetricHandle> hotspotTotals = new Long2ObjectOpenHashMap<>();
+        private final Map<EntityType<?>, Long2ObjectMap<MetricHandle>> hotspotTypes = new HashMap<>();
+
+        DimensionMetrics(String worldPrefix) {
+            this.worldPrefix = worldPrefix;
+        }
+
+        MetricHandle total(MetricsManager manager) {
+            if (total == null || total.isEvicted()) {
+                total = manager.getMetricHandle(worldPrefix + ".entities.total");
+            }
+            return total;
+        }
+
+        MetricHandle category(MetricsManager manager, String category) {
+            MetricHandle handle = categories.get(category);
+            if (handle == null || handle.isEvicted()) {
+                handle = manager.getMetricHandle(worldPrefix + ".entities." + category);
+                categories.put(category, handle);
+            }
+            return handle;
+        }
+
+        MetricHandle type(MetricsManager manager, EntityType<?> type) {
+            MetricHandle handle = types.get(type);
+            if (handle == null || handle.isEvicted()) {
+                handle = manager.getMetricHandle(worldPrefix + ".entities.types." + getEntityTypeName(type));
+                types.put(type, handle);
+            }
+            return handle;
+        }
+
+        MetricHandle hotspotTotal(MetricsManager manager, ChunkPos pos) {
+            MetricHandle handle = hotspotTotals.get(pos.toLong());
+            if (handle == null || handle.isEvicted()) {
+                handle = manager.getMetricHandle(worldPrefix + ".hotspot." + pos.x + "." + pos.z + ".total");
+                hotspotTotals.put(pos.toLong(), handle);
+            }
+            return handle;
+        }
+
+        MetricHandle hotspotType(MetricsManager manager, ChunkPos pos, EntityType<?> type) {
+            Long2ObjectMap<MetricHandle> byChunk = hotspotTypes.computeIfAbsent(type, k -> new Long2ObjectOpenHashMap<>());
+            MetricHandle handle = byChunk.get(pos.toLong());
+            if (handle == null || handle.isEvicted()) {
+                handle = manager.getMetricHandle(
+                        worldPrefix + ".hotspot." + pos.x + "." + pos.z + "." + getEntityTypeName(type));
+                byChunk.put(pos.toLong(), handle);
+            }
+            return handle;
+        }
+
+        /**
+         * Drops cached hotspot handles whose series the registry has evicted
+         */
+        void pruneEvicted() {
+            hotspotTotals.values().removeIf(MetricHandle::isEvicted);
+            for (Long2ObjectMap<MetricHandle> byChunk : hotspotTypes.values()) {
+                byChunk.values().removeIf(MetricHandle::isEvicted);
+            }
+        }
+    }
+
     /**
      * Categorizes an entity into a general category
      * @param entity The entity to categorize
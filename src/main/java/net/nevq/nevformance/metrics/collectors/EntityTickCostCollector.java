@@ -0,0 +1,161 @@
+package net.nevq.nevformance.metrics.collectors;
+
+import net.minecraft.entity.EntityType;
+import net.minecraft.registry.Registries;
+import net.minecraft.server.MinecraftServer;
+import net.nevq.nevformance.instrumentation.EntityTickCosts;
+import net.nevq.nevformance.metrics.MetricHandle;
+import net.nevq.nevformance.metrics.MetricsManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Publishes what ticking each entity type costs, from the sampled entity tick timings.
+ *
+ * For every type ticked during the interval it records
+ * {@code entities.tick_cost.<type>.ms_per_tick}, the estimated time spent
+ * ticking all entities of that type per server tick, and
+ * {@code entities.tick_cost.<type>.us_per_entity}, the mean cost of ticking one
+ * of them. The latest interval is also kept as a ranking for the web API.
+ */
+public class EntityTickCostCollector implements MetricCollector {
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final double NANOS_PER_MICRO = 1_000.0;
+
+    private MetricHandle totalMetric;
+
+    // Handles indexed by raw entity type id, resolved on first use
+    private TypeMetrics[] typeMetrics = new TypeMetrics[0];
+
+    private volatile List<EntityTickCost> ranking = Collections.emptyList();
+
+    @Override
+    public void initialize(MetricsManager manager) {
+        totalMetric = manager.getMetricHandle("entities.tick_cost.total.ms_per_tick");
+    }
+
+    @Override
+    public void collect(MetricsManager manager, MinecraftServer server, long timestamp) {
+        EntityTickCosts.Interval interval = EntityTickCosts.requestInterval();
+        if (interval == null || interval.getTicks() == 0) {
+            return;
+        }
+
+        if (typeMetrics.length < interval.size()) {
+            typeMetrics = Arrays.copyOf(typeMetrics, interval.size());
+        }
+
+        double ticks = interval.getTicks();
+        double totalNanos = 0;
+        List<EntityTickCost> costs = new ArrayList<>();
+
+        for (int rawId = 0; rawId < interval.size(); rawId++) {
+            long sampled = interval.getSampledCalls(rawId);
+            if (sampled == 0) {
+                continue;
+            }
+            EntityType<?> type = Registries.ENTITY_TYPE.get(rawId);
+            if (type == null) {
+                continue;
+            }
+
+            double estimatedNanos = interval.getEstimatedNanos(rawId);
+            double msPerTick = estimatedNanos / ticks / NANOS_PER_MILLI;
+            double usPerEntity = interval.getSampledNanos(rawId) / (double) sampled / NANOS_PER_MICRO;
+            totalNanos += estimatedNanos;
+
+            TypeMetrics metrics = typeMetrics[rawId];
+            if (metrics == null || metrics.isEvicted()) {
+                metrics = new TypeMetrics(manager, getEntityTypeName(type));
+                typeMetrics[rawId] = metrics;
+            }
+            metrics.msPerTick.record(timestamp, msPerTick);
+            metrics.usPerEntity.record(timestamp, usPerEntity);
+
+            costs.add(new EntityTickCost(metrics.typeName, interval.getCalls(rawId) / ticks,
+                    msPerTick, usPerEntity, sampled));
+        }
+
+        totalMetric.record(timestamp, totalNanos / ticks / NANOS_PER_MILLI);
+
+        costs.sort(Comparator.comparingDouble(EntityTickCost::getMsPerTick).reversed());
+        ranking = Collections.unmodifiableList(costs);
+    }
+
+    /**
+     * @return Entity types of the latest interval, most expensive first
+     */
+    public List<EntityTickCost> getRanking() {
+        return ranking;
+    }
+
+    /**
+     * Gets the metric-safe name of an entity type, e.g. "minecraft.zombie"
+     */
+    private static String getEntityTypeName(EntityType<?> type) {
+        return EntityType.getId(type).toString().replace(":", ".");
+    }
+
+    /**
+     * Handles for the tick cost of one entity type
+     */
+    private static class TypeMetrics {
+        final String typeName;
+        final MetricHandle msPerTick;
+        final MetricHandle usPerEntity;
+
+        TypeMetrics(MetricsManager manager, String typeName) {
+            this.typeName = typeName;
+            msPerTick = manager.getMetricHandle("entities.tick_cost." + typeName + ".ms_per_tick");
+            usPerEntity = manager.getMetricHandle("entities.tick_cost." + typeName + ".us_per_entity");
+        }
+
+        boolean isEvicted() {
+            return msPerTick.isEvicted() || usPerEntity.isEvicted();
+        }
+    }
+
+    /**
+     * Tick cost of one entity type over a collection interval
+     */
+    public static class EntityTickCost {
+        private final String type;
+        private final double entitiesPerTick;
+        private final double msPerTick;
+        private final double usPerEntity;
+        private final long sampledTicks;
+
+        public EntityTickCost(String type, double entitiesPerTick, double msPerTick,
+                              double usPerEntity, long sampledTicks) {
+            this.type = type;
+            this.entitiesPerTick = entitiesPerTick;
+            this.msPerTick = msPerTick;
+            this.usPerEntity = usPerEntity;
+            this.sampledTicks = sampledTicks;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public double getEntitiesPerTick() {
+            return entitiesPerTick;
+        }
+
+        public double getMsPerTick() {
+            return msPerTick;
+        }
+
+        public double getUsPerEntity() {
+            return usPerEntity;
+        }
+
+        public long getSampledTicks() {
+            return sampledTicks;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package net.nevq.nevformance.metrics.collectors;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import net.minecraft.server.MinecraftServer;
+import net.nevq.nevformance.metrics.MetricHandle;
+import net.nevq.nevformance.metrics.MetricsManager;
+import net.nevq.nevformance.metrics.histogram.IntervalHistogramRecorder;
+import net.nevq.nevformance.metrics.histogram.LogLinearHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Turns JDK Flight Recorder events into metrics, so pauses and stalls that
+ * fall between two MXBean polls are still seen.
+ *
+ * A {@link RecordingStream} with the JDK's {@code default} settings delivers
+ * GC pauses, safepoints, new TLAB allocations, contended monitor enters,
+ * file and socket I/O and thread parks on its own thread. Durations go into a
+ * histogram per event kind and are published each interval as
+ * {@code jfr.<kind>.count|p50|p99|max|total_ms}; I/O and allocation also
+ * publish megabytes per second. Because the stream keeps the last minutes of
+ * the recording, {@link #dumpForLagSpike} can write them to a {@code .jfr}
+ * file in the world directory when a lag spike is detected.
+ */
+public class JfrMetricsCollector implements MetricCollector {
+    private static final Logger LOGGER = LoggerFactory.getLogger("nevformance");
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+    // Recording kept by the stream for dumps
+    private static final Duration MAX_AGE = Duration.ofMinutes(2);
+    private static final long MAX_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * Durations and bytes of one kind of event
+     */
+    private static class EventSeries {
+        final String prefix;
+        final IntervalHistogramRecorder durations = new IntervalHistogramRecorder();
+        final AtomicLong bytes = new AtomicLong();
+        MetricHandle count;
+        MetricHandle p50;
+        MetricHandle p99;
+        MetricHandle max;
+        MetricHandle totalMs;
+        MetricHandle mbPerSecond;
+
+        EventSeries(String prefix) {
+            this.prefix = prefix;
+        }
+
+        void initialize(MetricsManager manager, boolean hasBytes) {
+            count = manager.getMetricHandle(prefix + ".count");
+            p50 = manager.getMetricHandle(prefix + ".p50");
+            p99 = manager.getMetricHandle(prefix + ".p99");
+            max = manager.getMetricHandle(prefix + ".max");
+            totalMs = manager.getMetricHandle(prefix + ".total_ms");
+            if (hasBytes) {
+                mbPerSecond = manager.getMetricHandle(prefix + ".mb_per_sec");
+            }
+        }
+
+        /**
+         * Called on the stream thread for each event
+         */
+        void add(RecordedEvent event, long byteCount) {
+            durations.record(Math.max(0, event.getDuration().toNanos()));
+            if (byteCount > 0) {
+                bytes.addAndGet(byteCount);
+            }
+        }
+
+        void record(long timestamp, double elapsedSeconds) {
+            LogLinearHistogram interval = durations.nextInterval();
+            long byteCount = bytes.getAndSet(0);
+            count.record(timestamp, interval.getTotalCount());
+            if (mbPerSecond != null && elapsedSeconds > 0) {
+                mbPerSecond.record(timestamp, byteCount / BYTES_PER_MB / elapsedSeconds);
+            }
+            if (interval.getTotalCount() == 0) {
+                return;
+            }
+            p50.record(timestamp, interval.getValueAtPercentile(50) / NANOS_PER_MILLI);
+            p99.record(timestamp, interval.getValueAtPercentile(99) / NANOS_PER_MILLI);
+            max.record(timestamp, interval.getMax() / NANOS_PER_MILLI);
+            totalMs.record(timestamp, interval.getMean() * interval.getTotalCount() / NANOS_PER_MILLI);
+        }
+    }
+
+    private final EventSeries gcPauses = new EventSeries("jfr.gc.pause");
+    private final EventSeries safepoints = new EventSeries("jfr.safepoint");
+    private final EventSeries tlabAllocations = new EventSeries("jfr.allocation.new_tlab");
+    private final EventSeries monitorEnters = new EventSeries("jfr.monitor_enter");
+    private final EventSeries fileReads = new EventSeries("jfr.io.file_read");
+    private final EventSeries fileWrites = new EventSeries("jfr.io.file_write");
+    private final EventSeries socketReads = new EventSeries("jfr.io.socket_read");
+    private final EventSeries socketWrites = new EventSeries("jfr.io.socket_write");
+    private final EventSeries threadParks = new EventSeries("jfr.thread_park");
+    private final List<EventSeries> allSeries = List.of(gcPauses, safepoints, tlabAllocations, monitorEnters,
+            fileReads, fileWrites, socketReads, socketWrites, threadParks);
+
+    private volatile RecordingStream stream;
+    private long lastCollectNanos;
+
+    // Lag spike dumps
+    private final ExecutorService dumpExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Nevformance JFR Dump");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Path dumpDirectory;
+    private volatile double dumpThresholdMs;
+    private volatile long dumpCooldownMs;
+    private volatile int maxDumps;
+    private long lastDumpTime = Long.MIN_VALUE;
+
+    @Override
+    public void initialize(MetricsManager manager) {
+        for (EventSeries series : allSeries) {
+            boolean hasBytes = series == tlabAllocations || series == fileReads || series == fileWrites
+                    || series == socketReads || series == socketWrites;
+            series.initialize(manager, hasBytes);
+        }
+    }
+
+    /**
+     * Starts the recording stream
+     * @param eventThresholdMs Shortest monitor enter, I/O and park events recorded
+     * @param dumpDirectory Directory for lag spike dumps
+     * @param dumpThresholdMs Shortest lag spike that triggers a dump; 0 disables dumps
+     * @param dumpCooldownSeconds Minimum time between two dumps
+     * @param maxDumps Number of dump files kept, the oldest are deleted
+     */
+    public void start(int eventThresholdMs, Path dumpDirectory, int dumpThresholdMs, int dumpCooldownSeconds, int maxDumps) {
+        if (stream != null) {
+            return;
+        }
+        this.dumpDirectory = dumpDirectory;
+        this.dumpThresholdMs = dumpThresholdMs;
+        this.dumpCooldownMs = TimeUnit.SECONDS.toMillis(dumpCooldownSeconds);
+        this.maxDumps = Math.max(1, maxDumps);
+
+        try {
+            RecordingStream recording = new RecordingStream(Configuration.getConfiguration("default"));
+            recording.setMaxAge(MAX_AGE);
+            recording.setMaxSize(MAX_SIZE);
+            Duration threshold = Duration.ofMillis(Math.max(0, eventThresholdMs));
+
+            recording.enable("jdk.GCPhasePause");
+            recording.enable("jdk.SafepointBegin");
+            recording.enable("jdk.ObjectAllocationInNewTLAB").withoutStackTrace();
+            recording.enable("jdk.JavaMonitorEnter").withThreshold(threshold);
+            recording.enable("jdk.FileRead").withThreshold(threshold);
+            recording.enable("jdk.FileWrite").withThreshold(threshold);
+            recording.enable("jdk.SocketRead").withThreshold(threshold);
+            recording.enable("jdk.SocketWrite").withThreshold(threshold);
+            recording.enable("jdk.ThreadPark").withThreshold(threshold);
+
+            recording.onEvent("jdk.GCPhasePause", event -> gcPauses.add(event, 0));
+            recording.onEvent("jdk.SafepointBegin", event -> safepoints.add(event, 0));
+            recording.onEvent("jdk.ObjectAllocationInNewTLAB", event -> tlabAllocations.add(event, event.getLong("tlabSize")));
+            recording.onEvent("jdk.JavaMonitorEnter", event -> monitorEnters.add(event, 0));
+            recording.onEvent("jdk.FileRead", event -> fileReads.add(event, event.getLong("bytesRead")));
+            recording.onEvent("jdk.FileWrite", event -> fileWrites.add(event, event.getLong("bytesWritten")));
+            recording.onEvent("jdk.SocketRead", event -> socketReads.add(event, event.getLong("bytesRead")));
+            recording.onEvent("jdk.SocketWrite", event -> socketWrites.add(event, event.getLong("bytesWritten")));
+            recording.onEvent("jdk.ThreadPark", event -> threadParks.add(event, 0));
+
+            recording.startAsync();
+            stream = recording;
+            lastCollectNanos = System.nanoTime();
+            LOGGER.info("JFR event streaming started");
+        } catch (IOException | ParseException | RuntimeException | LinkageError e) {
+            // Runtimes without the jdk.jfr module, or with Flight Recorder disabled
+            LOGGER.warn("JFR event streaming is not available: {}", e.toString());
+        }
+    }
+
+    /**
+     * Closes the recording stream
+     */
+    public void stop() {
+        RecordingStream recording = stream;
+        if (recording != null) {
+            stream = null;
+            recording.close();
+        }
+    }
+
+    @Override
+    public void collect(MetricsManager manager, MinecraftServer server, long timestamp) {
+        if (stream == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        double elapsedSeconds = (now - lastCollectNanos) / 1_000_000_000.0;
+        lastCollectNanos = now;
+        for (EventSeries series : allSeries) {
+            series.record(timestamp, elapsedSeconds);
+        }
+    }
+
+    /**
+     * Writes the recent recording to a file if a lag spike is long enough and
+     * no other dump was written within the cooldown. The file is written in
+     * the background.
+     * @param timestamp Time the spike was detected, in epoch milliseconds
+     * @param tickTimeMs Duration of the spike
+     * @return Path of the dump being written, or null if none is written
+     */
+    public synchronized String dumpForLagSpike(long timestamp, double tickTimeMs) {
+        RecordingStream recording = stream;
+        Path directory = dumpDirectory;
+        if (recording == null || directory == null || dumpThresholdMs <= 0 || tickTimeMs < dumpThresholdMs) {
+            return null;
+        }
+        if (lastDumpTime != Long.MIN_VALUE && timestamp - lastDumpTime < dumpCooldownMs) {
+            return null;
+        }
+        lastDumpTime = timestamp;
+
+        String name = "lagspike-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(timestamp))
+                + "-" + Math.round(tickTimeMs) + "ms.jfr";
+        Path file = directory.resolve(name);
+        dumpExecutor.execute(() -> {
+            try {
+                Files.createDirectories(directory);
+                recording.dump(file);
+                deleteOldDumps(directory);
+                LOGGER.info("Wrote JFR recording of a {} ms lag spike to {}", String.format("%.2f", tickTimeMs), file);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Failed to write JFR recording to {}", file, e);
+            }
+        });
+        return file.toString();
+    }
+
+    private void deleteOldDumps(Path directory) throws IOException {
+        List<Path> dumps = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> path.getFileName().toString().startsWith("lagspike-")
+                    && path.getFileName().toString().endsWith(".jfr")).forEach(dumps::add);
+        }
+        // Names start with the time, so they sort oldest first
+        dumps.sort(null);
+        for (int i = 0; i < dumps.size() - maxDumps; i++) {
+            Files.deleteIfExists(dumps.get(i));
+        }
+    }
+}
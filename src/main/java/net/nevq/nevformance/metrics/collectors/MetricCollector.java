@@ -8,6 +8,16 @@ import net.nevq.nevformance.metrics.MetricsManager;
  * Collectors are specialized components that gather specific types of performance data
  */
 public interface MetricCollector {
+    /**
+     * Called once when the metrics manager is created, before the first collection.
+     * Collectors resolve the {@link net.nevq.nevformance.metrics.MetricHandle}s
+     * for their fixed metric names here.
+     *
+     * @param manager The metrics manager to resolve handles from
+     */
+    default void initialize(MetricsManager manager) {
+    }
+
     /**
      * Collects metrics and records them in the metrics manager
      *
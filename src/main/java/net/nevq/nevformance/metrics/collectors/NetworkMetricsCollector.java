@@ -0,0 +1,211 @@
+package net.nevq.nevformance.metrics.collectors;
+
+import net.minecraft.server.MinecraftServer;
+import net.nevq.nevformance.instrumentation.NetworkTraffic;
+import net.nevq.nevformance.instrumentation.NetworkTraffic.Direction;
+import net.nevq.nevformance.metrics.MetricHandle;
+import net.nevq.nevformance.metrics.MetricsManager;
+import net.nevq.nevformance.metrics.histogram.LogLinearHistogram;
+import net.nevq.nevformance.util.MetricsUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Publishes the packet traffic counted by the network mixins.
+ *
+ * Per direction ({@code sent} or {@code received}) the totals are published as
+ * {@code network.<direction>.packets_per_sec|kb_per_sec}, every packet type as
+ * {@code network.packets.<direction>.<type>.packets_per_sec|kb_per_sec} and
+ * every connected player as
+ * {@code network.player.<name>.<direction>.packets_per_sec|kb_per_sec}.
+ * Sizes are those of the encoded packets before compression. The latency of
+ * sampled packet writes is published as
+ * {@code network.write_latency.count|p50|p99|max} in milliseconds, where the
+ * count is that of the timed writes.
+ */
+public class NetworkMetricsCollector implements MetricCollector {
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final double BYTES_PER_KB = 1024.0;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final RateMetrics[] totalMetrics = new RateMetrics[DIRECTIONS.length];
+    private MetricHandle writeLatencyCountMetric;
+    private MetricHandle writeLatencyP50Metric;
+    private MetricHandle writeLatencyP99Metric;
+    private MetricHandle writeLatencyMaxMetric;
+
+    private final Map<NetworkTraffic.PacketCounters, RateMetrics> packetTypeMetrics = new HashMap<>();
+    private final Map<NetworkTraffic.PlayerTraffic, RateMetrics[]> playerMetrics = new HashMap<>();
+    private final LogLinearHistogram writeLatencies = new LogLinearHistogram();
+    private long lastCollectNanos;
+
+    // Packet types by traffic over the latest interval, for the web interface
+    private volatile List<PacketTypeRate> packetTypeRates = Collections.emptyList();
+
+    @Override
+    public void initialize(MetricsManager manager) {
+        for (Direction direction : DIRECTIONS) {
+            totalMetrics[direction.ordinal()] = new RateMetrics(manager, "network." + direction.getMetricName());
+        }
+        writeLatencyCountMetric = manager.getMetricHandle("network.write_latency.count");
+        writeLatencyP50Metric = manager.getMetricHandle("network.write_latency.p50");
+        writeLatencyP99Metric = manager.getMetricHandle("network.write_latency.p99");
+        writeLatencyMaxMetric = manager.getMetricHandle("network.write_latency.max");
+    }
+
+    @Override
+    public void collect(MetricsManager manager, MinecraftServer server, long timestamp) {
+        long now = System.nanoTime();
+        double elapsedSeconds = lastCollectNanos != 0 ? (now - lastCollectNanos) / 1_000_000_000.0 : 0;
+        lastCollectNanos = now;
+
+        for (Direction direction : DIRECTIONS) {
+            totalMetrics[direction.ordinal()].record(timestamp, elapsedSeconds,
+                    NetworkTraffic.getTotalPackets(direction), NetworkTraffic.getTotalBytes(direction));
+        }
+
+        collectPacketTypes(manager, timestamp, elapsedSeconds);
+        collectPlayers(manager, timestamp, elapsedSeconds);
+
+        writeLatencies.reset();
+        NetworkTraffic.drainWriteLatencies(writeLatencies);
+        writeLatencyCountMetric.record(timestamp, writeLatencies.getTotalCount());
+        if (writeLatencies.getTotalCount() > 0) {
+            writeLatencyP50Metric.record(timestamp, writeLatencies.getValueAtPercentile(50) / NANOS_PER_MILLI);
+            writeLatencyP99Metric.record(timestamp, writeLatencies.getValueAtPercentile(99) / NANOS_PER_MILLI);
+            writeLatencyMaxMetric.record(timestamp, writeLatencies.getMax() / NANOS_PER_MILLI);
+        }
+    }
+
+    private void collectPacketTypes(MetricsManager manager, long timestamp, double elapsedSeconds) {
+        List<PacketTypeRate> rates = new ArrayList<>();
+        for (Direction direction : DIRECTIONS) {
+            for (NetworkTraffic.PacketCounters counters : NetworkTraffic.getPacketTypes(direction)) {
+                RateMetrics metrics = packetTypeMetrics.get(counters);
+                if (metrics == null || metrics.isEvicted()) {
+                    metrics = new RateMetrics(manager,
+                            "network.packets." + direction.getMetricName() + "." + counters.getName(), metrics);
+                    packetTypeMetrics.put(counters, metrics);
+                }
+                if (metrics.record(timestamp, elapsedSeconds, counters.getPackets(), counters.getBytes())) {
+                    rates.add(new PacketTypeRate(counters.getName(), direction.getMetricName(),
+                            metrics.packetsPerSecondValue, metrics.kbPerSecondValue));
+                }
+            }
+        }
+        rates.sort(Comparator.comparingDouble((PacketTypeRate rate) -> rate.kbPerSecond).reversed());
+        packetTypeRates = Collections.unmodifiableList(rates);
+    }
+
+    private void collectPlayers(MetricsManager manager, long timestamp, double elapsedSeconds) {
+        Set<NetworkTraffic.PlayerTraffic> connected = new HashSet<>();
+        for (NetworkTraffic.PlayerTraffic player : NetworkTraffic.getPlayers()) {
+            connected.add(player);
+            RateMetrics[] metrics = playerMetrics.get(player);
+            if (metrics == null || metrics[0].isEvicted()) {
+                RateMetrics[] previous = metrics;
+                metrics = new RateMetrics[DIRECTIONS.length];
+                String prefix = "network.player." + MetricsUtil.sanitizeMetricName(player.getPlayerName()) + ".";
+                for (Direction direction : DIRECTIONS) {
+                    metrics[direction.ordinal()] = new RateMetrics(manager, prefix + direction.getMetricName(),
+                            previous != null ? previous[direction.ordinal()] : null);
+                }
+                playerMetrics.put(player, metrics);
+            }
+            for (Direction direction : DIRECTIONS) {
+                metrics[direction.ordinal()].record(timestamp, elapsedSeconds,
+                        player.getPackets(direction), player.getBytes(direction));
+            }
+        }
+        // Forget players that have left
+        playerMetrics.keySet().retainAll(connected);
+    }
+
+    /**
+     * Gets the packet types of both directions, by traffic over the latest interval
+     * @return Rates of every packet type seen, largest first
+     */
+    public List<PacketTypeRate> getPacketTypeRates() {
+        return packetTypeRates;
+    }
+
+    /**
+     * Handles and counter totals of one packet and byte count pair
+     */
+    private static class RateMetrics {
+        final MetricHandle packetsPerSecond;
+        final MetricHandle kbPerSecond;
+
+        // Counter totals at the previous collection, -1 before the first
+        long lastPackets = -1;
+        long lastBytes = -1;
+
+        // Rates of the latest interval
+        double packetsPerSecondValue;
+        double kbPerSecondValue;
+
+        RateMetrics(MetricsManager manager, String prefix) {
+            this(manager, prefix, null);
+        }
+
+        /**
+         * @param previous Metrics whose handles were evicted, to carry the counter totals over from
+         */
+        RateMetrics(MetricsManager manager, String prefix, RateMetrics previous) {
+            packetsPerSecond = manager.getMetricHandle(prefix + ".packets_per_sec");
+            kbPerSecond = manager.getMetricHandle(prefix + ".kb_per_sec");
+            if (previous != null) {
+                lastPackets = previous.lastPackets;
+                lastBytes = previous.lastBytes;
+            }
+        }
+
+        boolean isEvicted() {
+            return packetsPerSecond.isEvicted() || kbPerSecond.isEvicted();
+        }
+
+        /**
+         * @return Whether a rate was recorded
+         */
+        boolean record(long timestamp, double elapsedSeconds, long packets, long bytes) {
+            boolean hasPrevious = lastPackets >= 0 && elapsedSeconds > 0;
+            long packetDelta = packets - lastPackets;
+            long byteDelta = bytes - lastBytes;
+            lastPackets = packets;
+            lastBytes = bytes;
+            if (!hasPrevious) {
+                return false;
+            }
+            packetsPerSecondValue = packetDelta / elapsedSeconds;
+            kbPerSecondValue = byteDelta / BYTES_PER_KB / elapsedSeconds;
+            packetsPerSecond.record(timestamp, packetsPerSecondValue);
+            kbPerSecond.record(timestamp, kbPerSecondValue);
+            return true;
+        }
+    }
+
+    /**
+     * Traffic of one packet type over the latest interval
+     */
+    public static class PacketTypeRate {
+        public final String packetType;
+        public final String direction;
+        public final double packetsPerSecond;
+        public final double kbPerSecond;
+
+        public PacketTypeRate(String packetType, String direction, double packetsPerSecond, double kbPerSecond) {
+            this.packetType = packetType;
+            this.direction = direction;
+            this.packetsPerSecond = packetsPerSecond;
+            this.kbPerSecond = kbPerSecond;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package net.nevq.nevformance.metrics.collectors;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.ChunkPos;
+import net.nevq.nevformance.instrumentation.NetworkTraffic;
+import net.nevq.nevformance.instrumentation.PlayerChunkGeneration;
+import net.nevq.nevformance.metrics.MetricHandle;
+import net.nevq.nevformance.metrics.MetricsManager;
+import net.nevq.nevformance.util.MetricsUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Attributes server costs to each online player, to answer which player is
+ * behind a rise in tick time.
+ *
+ * A player is charged with the loaded chunks within the server view distance
+ * around them, and with the measured tick time of those chunks from the chunk
+ * heatmap. A chunk in view of several players has its tick time split evenly
+ * between them, so the per-player tick times add up to the tick time of the
+ * chunks near players. Chunk generation and outbound traffic come from the
+ * chunk load and network instrumentation. Every player is published as
+ * {@code players.<name>.*} and the latest ranking is served to the web
+ * interface.
+ */
+public class PlayerMetricsCollector implements MetricCollector {
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final double BYTES_PER_KB = 1024.0;
+
+    private final Map<UUID, PlayerMetrics> playerMetrics = new HashMap<>();
+    private long lastCollectNanos;
+
+    // Players by attributed tick time over the latest interval, for the web interface
+    private volatile List<PlayerCost> playerCosts = Collections.emptyList();
+
+    @Override
+    public void collect(MetricsManager manager, MinecraftServer server, long timestamp) {
+        long now = System.nanoTime();
+        double elapsedSeconds = lastCollectNanos != 0 ? (now - lastCollectNanos) / 1_000_000_000.0 : 0;
+        lastCollectNanos = now;
+
+        int viewDistance = server.getPlayerManager().getViewDistance();
+        Map<String, ChunkHeatmap> heatmaps = manager.getWorldCollector().getChunkHeatmaps();
+
+        // Group players by world, so each heatmap is only walked once
+        Map<ServerWorld, List<PlayerCost>> playersByWorld = new HashMap<>();
+        for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
+            ServerWorld world = player.getServerWorld();
+            ChunkPos pos = player.getChunkPos();
+            PlayerCost cost = new PlayerCost(player.getGameProfile().getName(), player.getUuid(),
+                    MetricsUtil.getDimensionKey(world), pos.x, pos.z);
+            cost.loadedChunks = countLoadedChunks(world, pos, viewDistance);
+            playersByWorld.computeIfAbsent(world, w -> new ArrayList<>()).add(cost);
+
+            NetworkTraffic.PlayerTraffic traffic = NetworkTraffic.getPlayer(player.networkHandler.getConnectionAddress());
+            PlayerMetrics metrics = playerMetrics(manager, cost);
+            metrics.recordCounters(cost, elapsedSeconds, PlayerChunkGeneration.getGenerated(cost.uuid),
+                    traffic != null ? traffic.getBytes(NetworkTraffic.Direction.SENT) : -1);
+        }
+
+        List<PlayerCost> costs = new ArrayList<>();
+        for (Map.Entry<ServerWorld, List<PlayerCost>> entry : playersByWorld.entrySet()) {
+            List<PlayerCost> players = entry.getValue();
+            ChunkHeatmap heatmap = heatmaps.get(MetricsUtil.getDimensionKey(entry.getKey()));
+            if (heatmap != null) {
+                attributeTickCosts(heatmap, players, viewDistance);
+            }
+            costs.addAll(players);
+        }
+
+        for (PlayerCost cost : costs) {
+            playerMetrics.get(cost.uuid).record(cost, timestamp, elapsedSeconds > 0);
+        }
+
+        // Forget players that have left
+        Set<UUID> online = new HashSet<>();
+        for (PlayerCost cost : costs) {
+            online.add(cost.uuid);
+        }
+        playerMetrics.keySet().retainAll(online);
+
+        costs.sort(Comparator.comparingDouble((PlayerCost cost) -> cost.tickCostMs).reversed());
+        playerCosts = Collections.unmodifiableList(costs);
+    }
+
+    private PlayerMetrics playerMetrics(MetricsManager manager, PlayerCost cost) {
+        PlayerMetrics metrics = playerMetrics.get(cost.uuid);
+        if (metrics == null || metrics.isEvicted()) {
+            metrics = new PlayerMetrics(manager, "players." + MetricsUtil.sanitizeMetricName(cost.playerName), metrics);
+            playerMetrics.put(cost.uuid, metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * Counts the loaded chunks within view distance of a chunk
+     */
+    private static int countLoadedChunks(ServerWorld world, ChunkPos center, int viewDistance) {
+        int loaded = 0;
+        for (int x = center.x - viewDistance; x <= center.x + viewDistance; x++) {
+            for (int z = center.z - viewDistance; z <= center.z + viewDistance; z++) {
+                if (world.isChunkLoaded(x, z)) {
+                    loaded++;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Splits the tick time of every chunk of a world between the players that have it in view
+     */
+    private static void attributeTickCosts(ChunkHeatmap heatmap, List<PlayerCost> players, int viewDistance) {
+        List<PlayerCost> viewers = new ArrayList<>(players.size());
+        for (ChunkHeatmap.Cell cell : heatmap.getCells()) {
+            viewers.clear();
+            for (PlayerCost player : players) {
+                if (Math.abs(player.chunkX - cell.getX()) <= viewDistance
+                        && Math.abs(player.chunkZ - cell.getZ()) <= viewDistance) {
+                    viewers.add(player);
+                }
+            }
+            if (viewers.isEmpty()) {
+                continue;
+            }
+            double share = 1.0 / viewers.size();
+            for (PlayerCost viewer : viewers) {
+                viewer.tickCostMs += cell.getTotalNanos() * share / NANOS_PER_MILLI;
+                viewer.entityTickCostMs += cell.getEntityNanos() * share / NANOS_PER_MILLI;
+                viewer.blockEntityTickCostMs += cell.getBlockEntityNanos() * share / NANOS_PER_MILLI;
+            }
+        }
+    }
+
+    /**
+     * Handles and counter totals of one player
+     */
+    private static class PlayerMetrics {
+        final MetricHandle loadedChunks;
+        final MetricHandle tickCost;
+        final MetricHandle entityTickCost;
+        final MetricHandle blockEntityTickCost;
+        final MetricHandle generateRate;
+        final MetricHandle sentKbPerSecond;
+
+        // Counter totals at the previous collection, -1 before the first
+        long lastGenerated = -1;
+        long lastSentBytes = -1;
+
+        PlayerMetrics(MetricsManager manager, String prefix, PlayerMetrics previous) {
+            loadedChunks = manager.getMetricHandle(prefix + ".chunks.loaded");
+            tickCost = manager.getMetricHandle(prefix + ".tick_cost.ms_per_tick");
+            entityTickCost = manager.getMetricHandle(prefix + ".tick_cost.entities.ms_per_tick");
+            blockEntityTickCost = manager.getMetricHandle(prefix + ".tick_cost.block_entities.ms_per_tick");
+            generateRate = manager.getMetricHandle(prefix + ".chunks.generate_rate");
+            sentKbPerSecond = manager.getMetricHandle(prefix + ".network.sent.kb_per_sec");
+            if (previous != null) {
+                lastGenerated = previous.lastGenerated;
+                lastSentBytes = previous.lastSentBytes;
+            }
+        }
+
+        boolean isEvicted() {
+            return loadedChunks.isEvicted() || tickCost.isEvicted() || entityTickCost.isEvicted()
+                    || blockEntityTickCost.isEvicted() || generateRate.isEvicted() || sentKbPerSecond.isEvicted();
+        }
+
+        /**
+         * Turns the counter totals into the rates of the interval
+         * @param sentBytes Bytes sent to the player so far, or -1 if unknown
+         */
+        void recordCounters(PlayerCost cost, double elapsedSeconds, long generated, long sentBytes) {
+            if (lastGenerated >= 0 && elapsedSeconds > 0) {
+                cost.chunksGeneratedPerMinute = (generated - lastGenerated) * 60 / elapsedSeconds;
+            }
+            if (sentBytes >= 0 && lastSentBytes >= 0 && elapsedSeconds > 0) {
+                cost.sentKbPerSecond = (sentBytes - lastSentBytes) / BYTES_PER_KB / elapsedSeconds;
+            }
+            lastGenerated = generated;
+            lastSentBytes = sentBytes;
+        }
+
+        void record(PlayerCost cost, long timestamp, boolean hasRates) {
+            loadedChunks.record(timestamp, cost.loadedChunks);
+            tickCost.record(timestamp, cost.tickCostMs);
+            entityTickCost.record(timestamp, cost.entityTickCostMs);
+            blockEntityTickCost.record(timestamp, cost.blockEntityTickCostMs);
+            if (hasRates) {
+                generateRate.record(timestamp, cost.chunksGeneratedPerMinute);
+                sentKbPerSecond.record(timestamp, cost.sentKbPerSecond);
+            }
+        }
+    }
+
+    /**
+     * Gets the online players, by attributed tick time over the latest interval
+     * @return Costs of every online player, most expensive first
+     */
+    public List<PlayerCost> getPlayerCosts() {
+        return playerCosts;
+    }
+
+    /**
+     * Costs attributed to one player over the latest interval
+     */
+    public static class PlayerCost {
+        public final String playerName;
+        public final UUID uuid;
+        public final String dimension;
+        public final int chunkX;
+        public final int chunkZ;
+        public int loadedChunks;
+        public double tickCostMs;
+        public double entityTickCostMs;
+        public double blockEntityTickCostMs;
+        public double chunksGeneratedPerMinute;
+        public double sentKbPerSecond;
+
+        public PlayerCost(String playerName, UUID uuid, String dimension, int chunkX, int chunkZ) {
+            this.playerName = playerName;
+            this.uuid = uuid;
+            this.dimension = dimension;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+        }
+    }
+}
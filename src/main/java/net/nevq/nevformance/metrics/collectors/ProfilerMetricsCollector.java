@@ -0,0 +1,61 @@
+package net.nevq.nevformance.metrics.collectors;
+
+import net.minecraft.server.MinecraftServer;
+import net.nevq.nevformance.metrics.MetricHandle;
+import net.nevq.nevformance.metrics.MetricsManager;
+import net.nevq.nevformance.profiler.ContinuousProfiler;
+
+/**
+ * Publishes the cost of the continuous profiler itself:
+ * {@code profiler.overhead.percent} is the sampling time over the interval
+ * as a percentage of one core, next to the sample rate, the number of
+ * distinct stacks held and the samples dropped for lack of room.
+ */
+public class ProfilerMetricsCollector implements MetricCollector {
+    private MetricHandle overheadMetric;
+    private MetricHandle samplesPerSecondMetric;
+    private MetricHandle stacksMetric;
+    private MetricHandle droppedMetric;
+
+    // Profiler counters at the previous collection
+    private ContinuousProfiler lastProfiler;
+    private long lastOverheadNanos;
+    private long lastSampleCount;
+    private long lastDroppedSamples;
+    private long lastNanoTime;
+
+    @Override
+    public void initialize(MetricsManager manager) {
+        overheadMetric = manager.getMetricHandle("profiler.overhead.percent");
+        samplesPerSecondMetric = manager.getMetricHandle("profiler.samples_per_sec");
+        stacksMetric = manager.getMetricHandle("profiler.stacks");
+        droppedMetric = manager.getMetricHandle("profiler.dropped_samples");
+    }
+
+    @Override
+    public void collect(MetricsManager manager, MinecraftServer server, long timestamp) {
+        ContinuousProfiler profiler = manager.getProfiler();
+        long now = System.nanoTime();
+        if (profiler == null) {
+            lastProfiler = null;
+            return;
+        }
+
+        long overheadNanos = profiler.getOverheadNanos();
+        long sampleCount = profiler.getSampleCount();
+        long droppedSamples = profiler.getDroppedSamples();
+        if (profiler == lastProfiler && now > lastNanoTime) {
+            double elapsedNanos = now - lastNanoTime;
+            overheadMetric.record(timestamp, (overheadNanos - lastOverheadNanos) * 100.0 / elapsedNanos);
+            samplesPerSecondMetric.record(timestamp, (sampleCount - lastSampleCount) * 1_000_000_000.0 / elapsedNanos);
+            droppedMetric.record(timestamp, droppedSamples - lastDroppedSamples);
+        }
+        stacksMetric.record(timestamp, profiler.getDistinctStacks());
+
+        lastProfiler = profiler;
+        lastOverheadNanos = overheadNanos;
+        lastSampleCount = sampleCount;
+        lastDroppedSamples = droppedSamples;
+        lastNanoTime = now;
+    }
+}
@@ -0,0 +1,144 @@
+package net.nevq.nevformance.metrics.collectors;
+
+import net.minecraft.server.MinecraftServer;
+import net.nevq.nevformance.instrumentation.RegionIoTimings;
+import net.nevq.nevformance.instrumentation.RegionIoTimings.Operation;
+import net.nevq.nevformance.metrics.MetricHandle;
+import net.nevq.nevformance.metrics.MetricsManager;
+import net.nevq.nevformance.metrics.histogram.LogLinearHistogram;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Publishes the region file I/O measured by the region storage mixins, so
+ * autosave and exploration bursts can be lined up with disk pressure.
+ *
+ * Per dimension, every operation is published as
+ * {@code io.region.<dimension>.<operation>.count|p50|p99|max} in milliseconds,
+ * next to {@code io.region.<dimension>.read|write.mb_per_sec} and the number of
+ * save requests waiting, {@code io.region.<dimension>.queue_depth}. The same
+ * throughput and queue depth summed over all dimensions are published without
+ * the dimension.
+ */
+public class StorageIoMetricsCollector implements MetricCollector {
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+    private MetricHandle readMbPerSecondMetric;
+    private MetricHandle writeMbPerSecondMetric;
+    private MetricHandle queueDepthMetric;
+
+    private final Map<String, DimensionMetrics> dimensionMetrics = new HashMap<>();
+    private long lastCollectNanos;
+
+    @Override
+    public void initialize(MetricsManager manager) {
+        readMbPerSecondMetric = manager.getMetricHandle("io.region.read.mb_per_sec");
+        writeMbPerSecondMetric = manager.getMetricHandle("io.region.write.mb_per_sec");
+        queueDepthMetric = manager.getMetricHandle("io.region.queue_depth");
+    }
+
+    @Override
+    public void collect(MetricsManager manager, MinecraftServer server, long timestamp) {
+        long now = System.nanoTime();
+        double elapsedSeconds = lastCollectNanos != 0 ? (now - lastCollectNanos) / 1_000_000_000.0 : 0;
+        lastCollectNanos = now;
+
+        long totalRead = 0;
+        long totalWritten = 0;
+        int totalQueued = 0;
+        for (RegionIoTimings.DimensionIo dimension : RegionIoTimings.getDimensions()) {
+            DimensionMetrics metrics = dimensionMetrics.computeIfAbsent(dimension.getDimensionKey(),
+                    key -> new DimensionMetrics(manager, "io.region." + key));
+            metrics.record(dimension, timestamp, elapsedSeconds);
+            totalRead += metrics.readDelta;
+            totalWritten += metrics.writtenDelta;
+            totalQueued += dimension.getQueuedWrites();
+        }
+
+        if (elapsedSeconds > 0) {
+            readMbPerSecondMetric.record(timestamp, totalRead / BYTES_PER_MB / elapsedSeconds);
+            writeMbPerSecondMetric.record(timestamp, totalWritten / BYTES_PER_MB / elapsedSeconds);
+        }
+        queueDepthMetric.record(timestamp, totalQueued);
+    }
+
+    /**
+     * Handles for the statistics of one operation
+     */
+    private static class OperationMetrics {
+        final MetricHandle count;
+        final MetricHandle p50;
+        final MetricHandle p99;
+        final MetricHandle max;
+
+        OperationMetrics(MetricsManager manager, String prefix) {
+            count = manager.getMetricHandle(prefix + ".count");
+            p50 = manager.getMetricHandle(prefix + ".p50");
+            p99 = manager.getMetricHandle(prefix + ".p99");
+            max = manager.getMetricHandle(prefix + ".max");
+        }
+
+        void record(LogLinearHistogram latencies, long timestamp) {
+            count.record(timestamp, latencies.getTotalCount());
+            if (latencies.getTotalCount() == 0) {
+                return;
+            }
+            p50.record(timestamp, latencies.getValueAtPercentile(50) / NANOS_PER_MILLI);
+            p99.record(timestamp, latencies.getValueAtPercentile(99) / NANOS_PER_MILLI);
+            max.record(timestamp, latencies.getMax() / NANOS_PER_MILLI);
+        }
+    }
+
+    /**
+     * Handles and byte counts of one dimension
+     */
+    private static class DimensionMetrics {
+        private final Map<Operation, OperationMetrics> operations = new EnumMap<>(Operation.class);
+        private final MetricHandle readMbPerSecond;
+        private final MetricHandle writeMbPerSecond;
+        private final MetricHandle queueDepth;
+
+        // Byte totals at the previous collection
+        private long lastRead;
+        private long lastWritten;
+
+        // Bytes of the latest interval
+        long readDelta;
+        long writtenDelta;
+
+        DimensionMetrics(MetricsManager manager, String prefix) {
+            for (Operation operation : Operation.values()) {
+                operations.put(operation, new OperationMetrics(manager, prefix + "." + operation.getMetricName()));
+            }
+            readMbPerSecond = manager.getMetricHandle(prefix + ".read.mb_per_sec");
+            writeMbPerSecond = manager.getMetricHandle(prefix + ".write.mb_per_sec");
+            queueDepth = manager.getMetricHandle(prefix + ".queue_depth");
+        }
+
+        void record(RegionIoTimings.DimensionIo dimension, long timestamp, double elapsedSeconds) {
+            for (Map.Entry<Operation, OperationMetrics> entry : operations.entrySet()) {
+                entry.getValue().record(dimension.getLatencies(entry.getKey()).nextInterval(), timestamp);
+            }
+
+            long read = dimension.getBytesRead();
+            long written = dimension.getBytesWritten();
+            if (read < lastRead || written < lastWritten) {
+                // Counters of a restarted server
+                lastRead = 0;
+                lastWritten = 0;
+            }
+            readDelta = read - lastRead;
+            writtenDelta = written - lastWritten;
+            lastRead = read;
+            lastWritten = written;
+            if (elapsedSeconds > 0) {
+                readMbPerSecond.record(timestamp, readDelta / BYTES_PER_MB / elapsedSeconds);
+                writeMbPerSecond.record(timestamp, writtenDelta / BYTES_PER_MB / elapsedSeconds);
+            }
+            queueDepth.record(timestamp, dimension.getQueuedWrites());
+        }
+    }
+}
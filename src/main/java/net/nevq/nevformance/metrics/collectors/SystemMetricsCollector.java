@@ -1,7 +1,12 @@
 package net.nevq.nevformance.metrics.collectors;
 
 import net.minecraft.server.MinecraftServer;
+import net.nevq.nevformance.instrumentation.LagSpikeSampler;
+import net.nevq.nevformance.instrumentation.TickTimings;
+import net.nevq.nevformance.metrics.MetricHandle;
 import net.nevq.nevformance.metrics.MetricsManager;
+import net.nevq.nevformance.metrics.histogram.LogLinearHistogram;
+import net.nevq.nevformance.util.MetricsUtil;
 
 import java.lang.management.*;
 import java.util.*;
@@ -27,14 +32,88 @@ public class SystemMetricsCollector implements MetricCollector {
     // Track thread CPU usage
     private final Map<Long, Long> lastThreadCpuTimes = new ConcurrentHashMap<>();
 
-    // Tracking tick time statistics
-    private final List<Double> recentTickTimes = new ArrayList<>();
-    private static final int TICK_TIMES_WINDOW = 600; // 30 seconds at 20 TPS
+    // Track thread allocation
+    private static final String[] THREAD_CATEGORIES = {"main", "network", "worker", "chunk", "io", "other"};
+    private static final int TOP_ALLOCATING_THREADS = 10;
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+    private final Map<Long, Long> lastThreadAllocatedBytes = new HashMap<>();
+    private long lastAllocationNanos = 0;
+    private volatile List<ThreadAllocation> topAllocatingThreads = Collections.emptyList();
 
     // Lag spike detection
     private static final double LAG_SPIKE_THRESHOLD_MS = 100.0; // 100ms = 5% of a tick at 20 TPS
-    private final Queue<LagSpike> recentLagSpikes = new ArrayDeque<>();
+    private final Deque<LagSpike> recentLagSpikes = new ArrayDeque<>();
     private static final int MAX_LAG_SPIKES = 50;
+    // Only the newest spikes keep their stack profile, the older ones keep just their tick time
+    private static final int MAX_PROFILED_LAG_SPIKES = 10;
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    // Handles for fixed metric names, resolved in initialize()
+    private MetricHandle heapUsedMetric;
+    private MetricHandle heapCommittedMetric;
+    private MetricHandle heapMaxMetric;
+    private MetricHandle nonHeapUsedMetric;
+    private MetricHandle heapUtilizationMetric;
+    private MetricHandle cpuSystemMetric;
+    private MetricHandle cpuProcessMetric;
+    private MetricHandle cpuProcessorsMetric;
+    private MetricHandle cpuLoadAverageMetric;
+    private MetricHandle threadsActiveMetric;
+    private MetricHandle threadsPeakMetric;
+    private MetricHandle allocationTotalMetric;
+    private MetricHandle tickTimeMetric;
+    private MetricHandle tpsMetric;
+    private MetricHandle tickMeanMetric;
+    private MetricHandle tickStdDevMetric;
+    private MetricHandle tickMedianMetric;
+    private MetricHandle tickP95Metric;
+    private MetricHandle tickP99Metric;
+    private MetricHandle tickMaxMetric;
+    private MetricHandle tickCountMetric;
+    private MetricHandle lagSpikeCurrentMetric;
+    private MetricHandle lagSpikeCount10sMetric;
+    private MetricHandle lagSpikeCount60sMetric;
+    private final Map<Thread.State, MetricHandle> threadStateMetrics = new EnumMap<>(Thread.State.class);
+
+    // Handles for names derived from JVM objects, resolved on first use
+    private final Map<String, MetricHandle> memoryPoolMetrics = new HashMap<>();
+    private final Map<String, MetricHandle> threadCpuMetrics = new HashMap<>();
+    private final Map<String, MetricHandle> threadAllocationMetrics = new HashMap<>();
+    private final Map<String, MetricHandle> topThreadAllocationMetrics = new HashMap<>();
+    private final Map<String, GcMetrics> gcMetrics = new HashMap<>();
+
+    @Override
+    public void initialize(MetricsManager manager) {
+        heapUsedMetric = manager.getMetricHandle("memory.heap.used");
+        heapCommittedMetric = manager.getMetricHandle("memory.heap.committed");
+        heapMaxMetric = manager.getMetricHandle("memory.heap.max");
+        nonHeapUsedMetric = manager.getMetricHandle("memory.nonheap.used");
+        heapUtilizationMetric = manager.getMetricHandle("memory.heap.utilization");
+        cpuSystemMetric = manager.getMetricHandle("cpu.system");
+        cpuProcessMetric = manager.getMetricHandle("cpu.process");
+        cpuProcessorsMetric = manager.getMetricHandle("cpu.available_processors");
+        cpuLoadAverageMetric = manager.getMetricHandle("cpu.system_load_average");
+        threadsActiveMetric = manager.getMetricHandle("threads.active");
+        threadsPeakMetric = manager.getMetricHandle("threads.peak");
+        allocationTotalMetric = manager.getMetricHandle("threads.alloc.total.mb_per_sec");
+        tickTimeMetric = manager.getMetricHandle("server.tick_time");
+        tpsMetric = manager.getMetricHandle("server.tps");
+        tickMeanMetric = manager.getMetricHandle("server.tick_time.mean");
+        tickStdDevMetric = manager.getMetricHandle("server.tick_time.std_dev");
+        tickMedianMetric = manager.getMetricHandle("server.tick_time.median");
+        tickP95Metric = manager.getMetricHandle("server.tick_time.p95");
+        tickP99Metric = manager.getMetricHandle("server.tick_time.p99");
+        tickMaxMetric = manager.getMetricHandle("server.tick_time.max");
+        tickCountMetric = manager.getMetricHandle("server.tick_time.count");
+        lagSpikeCurrentMetric = manager.getMetricHandle("server.lag_spikes.current");
+        lagSpikeCount10sMetric = manager.getMetricHandle("server.lag_spikes.count_10s");
+        lagSpikeCount60sMetric = manager.getMetricHandle("server.lag_spikes.count_60s");
+
+        for (Thread.State state : Thread.State.values()) {
+            threadStateMetrics.put(state, manager.getMetricHandle("threads.states." + state.name().toLowerCase()));
+        }
+    }
 
     @Override
     public void collect(MetricsManager manager, MinecraftServer server, long timestamp) {
@@ -67,21 +146,26 @@ public class SystemMetricsCollector implements MetricCollector {
         long usedNonHeapMemory = memoryBean.getNonHeapMemoryUsage().getUsed() / (1024 * 1024); // MB
 
         // Record metrics
-        manager.recordMetric("memory.heap.used", timestamp, usedHeapMemory);
-        manager.recordMetric("memory.heap.committed", timestamp, committedHeapMemory);
-        manager.recordMetric("memory.heap.max", timestamp, maxHeapMemory);
-        manager.recordMetric("memory.nonheap.used", timestamp, usedNonHeapMemory);
+        heapUsedMetric.record(timestamp, usedHeapMemory);
+        heapCommittedMetric.record(timestamp, committedHeapMemory);
+        heapMaxMetric.record(timestamp, maxHeapMemory);
+        nonHeapUsedMetric.record(timestamp, usedNonHeapMemory);
 
         // Calculate heap utilization percentage
         double heapUtilizationPct = (double) usedHeapMemory / maxHeapMemory * 100.0;
-        manager.recordMetric("memory.heap.utilization", timestamp, heapUtilizationPct);
+        heapUtilizationMetric.record(timestamp, heapUtilizationPct);
 
         // Memory pools - more detailed breakdown
         for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
-            String poolName = memoryPool.getName().replace(" ", "_").toLowerCase();
+            MetricHandle poolMetric = memoryPoolMetrics.get(memoryPool.getName());
+            if (poolMetric == null) {
+                String poolName = memoryPool.getName().replace(" ", "_").toLowerCase();
+                poolMetric = manager.getMetricHandle("memory.pools." + poolName);
+                memoryPoolMetrics.put(memoryPool.getName(), poolMetric);
+            }
             long usedMemory = memoryPool.getUsage().getUsed() / (1024 * 1024); // MB
 
-            manager.recordMetric("memory.pools." + poolName, timestamp, usedMemory);
+            poolMetric.record(timestamp, usedMemory);
         }
     }
 
@@ -97,18 +181,18 @@ public class SystemMetricsCollector implements MetricCollector {
             double systemCpuLoad = sunOsBean.getCpuLoad() * 100.0;
             double processCpuLoad = sunOsBean.getProcessCpuLoad() * 100.0;
 
-            manager.recordMetric("cpu.system", timestamp, systemCpuLoad);
-            manager.recordMetric("cpu.process", timestamp, processCpuLoad);
+            cpuSystemMetric.record(timestamp, systemCpuLoad);
+            cpuProcessMetric.record(timestamp, processCpuLoad);
         }
 
         // Available processors
         int availableProcessors = osBean.getAvailableProcessors();
-        manager.recordMetric("cpu.available_processors", timestamp, availableProcessors);
+        cpuProcessorsMetric.record(timestamp, availableProcessors);
 
         // System load average (from standard API)
         double systemLoadAverage = osBean.getSystemLoadAverage();
         if (systemLoadAverage >= 0) { // May not be available on all platforms
-            manager.recordMetric("cpu.system_load_average", timestamp, systemLoadAverage);
+            cpuLoadAverageMetric.record(timestamp, systemLoadAverage);
         }
     }
 
@@ -121,8 +205,8 @@ public class SystemMetricsCollector implements MetricCollector {
         int peakThreadCount = threadBean.getPeakThreadCount();
         long totalStartedThreadCount = threadBean.getTotalStartedThreadCount();
 
-        manager.recordMetric("threads.active", timestamp, threadCount);
-        manager.recordMetric("threads.peak", timestamp, peakThreadCount);
+        threadsActiveMetric.record(timestamp, threadCount);
+        threadsPeakMetric.record(timestamp, peakThreadCount);
 
         // Thread state distribution
         Map<Thread.State, Integer> threadStateCount = new HashMap<>();
@@ -130,7 +214,9 @@ public class SystemMetricsCollector implements MetricCollector {
             threadStateCount.put(state, 0);
         }
 
-        ThreadInfo[] threadInfos = threadBean.getThreadInfo(threadBean.getAllThreadIds());
+        // One batched lookup serves the states, CPU times and allocation below
+        long[] threadIds = threadBean.getAllThreadIds();
+        ThreadInfo[] threadInfos = threadBean.getThreadInfo(threadIds);
         for (ThreadInfo info : threadInfos) {
             if (info != null) {
                 threadStateCount.merge(info.getThreadState(), 1, Integer::sum);
@@ -139,11 +225,7 @@ public class SystemMetricsCollector implements MetricCollector {
 
         // Record thread states
         for (Map.Entry<Thread.State, Integer> entry : threadStateCount.entrySet()) {
-            manager.recordMetric(
-                    "threads.states." + entry.getKey().name().toLowerCase(),
-                    timestamp,
-                    entry.getValue()
-            );
+            threadStateMetrics.get(entry.getKey()).record(timestamp, entry.getValue());
         }
 
         // Analysis of thread CPU time (if supported)
@@ -153,7 +235,8 @@ public class SystemMetricsCollector implements MetricCollector {
             Map<String, Long> threadTimeDiffs = new HashMap<>();
             AtomicLong totalCpuTime = new AtomicLong(0);
 
-            for (long threadId : threadBean.getAllThreadIds()) {
+            for (int i = 0; i < threadIds.length; i++) {
+                long threadId = threadIds[i];
                 long cpuTime = threadBean.getThreadCpuTime(threadId);
                 if (cpuTime > 0) {
                     currentThreadCpuTimes.put(threadId, cpuTime);
@@ -165,7 +248,7 @@ public class SystemMetricsCollector implements MetricCollector {
 
                         if (timeDiff > 0) {
                             // Get thread name
-                            ThreadInfo info = threadBean.getThreadInfo(threadId);
+                            ThreadInfo info = threadInfos[i];
                             if (info != null) {
                                 String threadName = info.getThreadName();
 
@@ -187,14 +270,103 @@ public class SystemMetricsCollector implements MetricCollector {
             if (totalCpuTime.get() > 0) {
                 for (Map.Entry<String, Long> entry : threadTimeDiffs.entrySet()) {
                     double percentage = (double) entry.getValue() / totalCpuTime.get() * 100.0;
-                    manager.recordMetric(
-                            "threads.cpu." + entry.getKey(),
-                            timestamp,
-                            percentage
-                    );
+                    MetricHandle categoryMetric = threadCpuMetrics.get(entry.getKey());
+                    if (categoryMetric == null) {
+                        categoryMetric = manager.getMetricHandle("threads.cpu." + entry.getKey());
+                        threadCpuMetrics.put(entry.getKey(), categoryMetric);
+                    }
+                    categoryMetric.record(timestamp, percentage);
                 }
             }
         }
+
+        collectThreadAllocation(manager, timestamp, threadIds, threadInfos);
+    }
+
+    /**
+     * Collects the allocation rate of each thread category and of the threads
+     * allocating the most, from the allocated byte counters of all threads read
+     * in one call
+     */
+    private void collectThreadAllocation(MetricsManager manager, long timestamp, long[] threadIds, ThreadInfo[] threadInfos) {
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean sunThreadBean)
+                || !sunThreadBean.isThreadAllocatedMemorySupported()
+                || !sunThreadBean.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        long[] allocatedBytes = sunThreadBean.getThreadAllocatedBytes(threadIds);
+        double elapsedSeconds = (now - lastAllocationNanos) / 1_000_000_000.0;
+        boolean hasPrevious = lastAllocationNanos != 0 && elapsedSeconds > 0;
+        lastAllocationNanos = now;
+
+        Map<Long, Long> currentAllocatedBytes = new HashMap<>();
+        Map<String, Long> categoryBytes = new HashMap<>();
+        List<ThreadAllocation> threadRates = new ArrayList<>();
+        long totalBytes = 0;
+
+        for (int i = 0; i < threadIds.length; i++) {
+            ThreadInfo info = threadInfos[i];
+            if (allocatedBytes[i] < 0 || info == null) {
+                // The thread has terminated
+                continue;
+            }
+            currentAllocatedBytes.put(threadIds[i], allocatedBytes[i]);
+
+            Long lastBytes = lastThreadAllocatedBytes.get(threadIds[i]);
+            if (!hasPrevious || lastBytes == null) {
+                continue;
+            }
+            long bytes = allocatedBytes[i] - lastBytes;
+            if (bytes <= 0) {
+                continue;
+            }
+            categoryBytes.merge(categorizeThread(info.getThreadName()), bytes, Long::sum);
+            threadRates.add(new ThreadAllocation(info.getThreadName(), bytes / BYTES_PER_MB / elapsedSeconds));
+            totalBytes += bytes;
+        }
+
+        lastThreadAllocatedBytes.clear();
+        lastThreadAllocatedBytes.putAll(currentAllocatedBytes);
+        if (!hasPrevious) {
+            return;
+        }
+
+        allocationTotalMetric.record(timestamp, totalBytes / BYTES_PER_MB / elapsedSeconds);
+        for (String category : THREAD_CATEGORIES) {
+            MetricHandle categoryMetric = threadAllocationMetrics.get(category);
+            if (categoryMetric == null) {
+                categoryMetric = manager.getMetricHandle("threads.alloc." + category + ".mb_per_sec");
+                threadAllocationMetrics.put(category, categoryMetric);
+            }
+            categoryMetric.record(timestamp, categoryBytes.getOrDefault(category, 0L) / BYTES_PER_MB / elapsedSeconds);
+        }
+
+        threadRates.sort(Comparator.comparingDouble((ThreadAllocation allocation) -> allocation.mbPerSecond).reversed());
+        List<ThreadAllocation> top = new ArrayList<>(threadRates.subList(0, Math.min(TOP_ALLOCATING_THREADS, threadRates.size())));
+        Set<String> topKeys = new HashSet<>();
+        for (ThreadAllocation allocation : top) {
+            String key = MetricsUtil.sanitizeMetricName(allocation.threadName.replace('.', '_')).toLowerCase();
+            topKeys.add(key);
+            MetricHandle threadMetric = topThreadAllocationMetrics.get(key);
+            if (threadMetric == null || threadMetric.isEvicted()) {
+                threadMetric = manager.getMetricHandle("threads.alloc.thread." + key + ".mb_per_sec");
+                topThreadAllocationMetrics.put(key, threadMetric);
+            }
+            threadMetric.record(timestamp, allocation.mbPerSecond);
+        }
+        // Threads leave the top or terminate, so only the handles of the current top are kept
+        topThreadAllocationMetrics.keySet().retainAll(topKeys);
+        topAllocatingThreads = Collections.unmodifiableList(top);
+    }
+
+    /**
+     * Gets the threads that allocated the most during the last interval
+     * @return Thread names and allocation rates, highest first
+     */
+    public List<ThreadAllocation> getTopAllocatingThreads() {
+        return topAllocatingThreads;
     }
 
     /**
@@ -221,14 +393,18 @@ public class SystemMetricsCollector implements MetricCollector {
      */
     private void collectGcMetrics(MetricsManager manager, long timestamp) {
         for (GarbageCollectorMXBean gcBean : gcBeans) {
-            String gcName = gcBean.getName().replace(" ", "_").toLowerCase();
+            GcMetrics metrics = gcMetrics.get(gcBean.getName());
+            if (metrics == null) {
+                metrics = new GcMetrics(manager, gcBean.getName().replace(" ", "_").toLowerCase());
+                gcMetrics.put(gcBean.getName(), metrics);
+            }
 
             long collectionCount = gcBean.getCollectionCount();
             long collectionTime = gcBean.getCollectionTime();
 
             // Record total values
-            manager.recordMetric("gc." + gcName + ".count", timestamp, collectionCount);
-            manager.recordMetric("gc." + gcName + ".time", timestamp, collectionTime);
+            metrics.count.record(timestamp, collectionCount);
+            metrics.time.record(timestamp, collectionTime);
 
             // Calculate changes since last collection
             String gcKey = gcBean.getName();
@@ -237,9 +413,9 @@ public class SystemMetricsCollector implements MetricCollector {
                 long timeDiff = collectionTime - lastGcTimes.get(gcKey);
 
                 // Record rate metrics
-                manager.recordMetric("gc." + gcName + ".rate", timestamp, countDiff);
+                metrics.rate.record(timestamp, countDiff);
                 if (countDiff > 0) {
-                    manager.recordMetric("gc." + gcName + ".avg_time", timestamp, timeDiff / countDiff);
+                    metrics.avgTime.record(timestamp, timeDiff / countDiff);
                 }
             }
 
@@ -250,77 +426,76 @@ public class SystemMetricsCollector implements MetricCollector {
     }
 
     /**
-     * Collects server tick metrics and analyzes performance
+     * Collects server tick metrics and analyzes performance. Percentiles are
+     * computed over every tick completed since the previous collection, as
+     * recorded by the tick mixin.
      */
     private void collectTickMetrics(MetricsManager manager, MinecraftServer server, long timestamp) {
         // Get current tick time
         double currentTickTime = server.getAverageTickTime();
 
         // Record raw tick time
-        manager.recordMetric("server.tick_time", timestamp, currentTickTime);
+        tickTimeMetric.record(timestamp, currentTickTime);
 
         // Calculate TPS from tick time
         double tps = Math.min(20.0, 1000.0 / Math.max(currentTickTime, 50.0));
-        manager.recordMetric("server.tps", timestamp, tps);
-
-        // Add to recent tick times (for statistical analysis)
-        recentTickTimes.add(currentTickTime);
-        while (recentTickTimes.size() > TICK_TIMES_WINDOW) {
-            recentTickTimes.remove(0);
+        tpsMetric.record(timestamp, tps);
+
+        // Ticks of the interval that just ended, in nanoseconds, and the stack profiles of its slow ticks
+        LogLinearHistogram ticks = TickTimings.tickDurations().nextInterval();
+        List<LagSpikeSampler.Profile> profiles = LagSpikeSampler.drainProfiles();
+        tickCountMetric.record(timestamp, ticks.getTotalCount());
+        if (ticks.getTotalCount() == 0) {
+            // The server thread did not finish a tick during the whole interval
+            return;
         }
 
-        // Statistical analysis of tick times
-        if (recentTickTimes.size() >= 20) { // Need at least 1 second worth of ticks
-            // Calculate standard deviation to identify variance
-            double mean = recentTickTimes.stream().mapToDouble(Double::doubleValue).average().orElse(0);
-            double variance = recentTickTimes.stream()
-                    .mapToDouble(t -> Math.pow(t - mean, 2))
-                    .average()
-                    .orElse(0);
-            double stdDev = Math.sqrt(variance);
-
-            manager.recordMetric("server.tick_time.mean", timestamp, mean);
-            manager.recordMetric("server.tick_time.std_dev", timestamp, stdDev);
-
-            // Calculate percentiles for more detailed performance picture
-            List<Double> sortedTimes = new ArrayList<>(recentTickTimes);
-            Collections.sort(sortedTimes);
-
-            int size = sortedTimes.size();
-            double median = size % 2 == 0
-                    ? (sortedTimes.get(size / 2 - 1) + sortedTimes.get(size / 2)) / 2
-                    : sortedTimes.get(size / 2);
-
-            int p95Index = (int) Math.ceil(size * 0.95) - 1;
-            int p99Index = (int) Math.ceil(size * 0.99) - 1;
-
-            double p95 = sortedTimes.get(p95Index);
-            double p99 = sortedTimes.get(p99Index);
-
-            manager.recordMetric("server.tick_time.median", timestamp, median);
-            manager.recordMetric("server.tick_time.p95", timestamp, p95);
-            manager.recordMetric("server.tick_time.p99", timestamp, p99);
-
-            // Lag spike detection
-            if (currentTickTime > LAG_SPIKE_THRESHOLD_MS) {
-                // Record this as a lag spike
-                LagSpike spike = new LagSpike(timestamp, currentTickTime);
-                recentLagSpikes.add(spike);
-
-                // Keep only recent spikes
-                while (recentLagSpikes.size() > MAX_LAG_SPIKES) {
-                    recentLagSpikes.poll();
+        tickMeanMetric.record(timestamp, ticks.getMean() / NANOS_PER_MILLI);
+        tickStdDevMetric.record(timestamp, ticks.getStdDeviation() / NANOS_PER_MILLI);
+        tickMedianMetric.record(timestamp, ticks.getValueAtPercentile(50) / NANOS_PER_MILLI);
+        tickP95Metric.record(timestamp, ticks.getValueAtPercentile(95) / NANOS_PER_MILLI);
+        tickP99Metric.record(timestamp, ticks.getValueAtPercentile(99) / NANOS_PER_MILLI);
+
+        double maxTickTime = ticks.getMax() / NANOS_PER_MILLI;
+        tickMaxMetric.record(timestamp, maxTickTime);
+
+        // Lag spike detection on the slowest real tick of the interval
+        if (maxTickTime > LAG_SPIKE_THRESHOLD_MS) {
+            // Record this as a lag spike, explained by the profile of the slowest sampled tick
+            LagSpike spike = new LagSpike(timestamp, maxTickTime, slowestProfile(profiles));
+            spike.jfrDump = manager.getJfrCollector().dumpForLagSpike(timestamp, maxTickTime);
+            recentLagSpikes.add(spike);
+
+            // Keep only recent spikes
+            while (recentLagSpikes.size() > MAX_LAG_SPIKES) {
+                recentLagSpikes.poll();
+            }
+            int profiled = 0;
+            for (Iterator<LagSpike> it = recentLagSpikes.descendingIterator(); it.hasNext(); ) {
+                LagSpike recent = it.next();
+                if (recent.profile != null && ++profiled > MAX_PROFILED_LAG_SPIKES) {
+                    recent.profile = null;
                 }
+            }
 
-                // Record spike metrics
-                int spikesLast10Sec = countSpikesInWindow(10000, timestamp);
-                int spikesLast60Sec = countSpikesInWindow(60000, timestamp);
+            // Record spike metrics
+            int spikesLast10Sec = countSpikesInWindow(10000, timestamp);
+            int spikesLast60Sec = countSpikesInWindow(60000, timestamp);
 
-                manager.recordMetric("server.lag_spikes.current", timestamp, currentTickTime);
-                manager.recordMetric("server.lag_spikes.count_10s", timestamp, spikesLast10Sec);
-                manager.recordMetric("server.lag_spikes.count_60s", timestamp, spikesLast60Sec);
+            lagSpikeCurrentMetric.record(timestamp, maxTickTime);
+            lagSpikeCount10sMetric.record(timestamp, spikesLast10Sec);
+            lagSpikeCount60sMetric.record(timestamp, spikesLast60Sec);
+        }
+    }
+
+    private static LagSpikeSampler.Profile slowestProfile(List<LagSpikeSampler.Profile> profiles) {
+        LagSpikeSampler.Profile slowest = null;
+        for (LagSpikeSampler.Profile profile : profiles) {
+            if (slowest == null || profile.getTickTimeMs() > slowest.getTickTimeMs()) {
+                slowest = profile;
             }
         }
+        return slowest;
     }
 
     /**
@@ -343,6 +518,36 @@ public class SystemMetricsCollector implements MetricCollector {
         return new ArrayList<>(recentLagSpikes);
     }
 
+    /**
+     * Handles for the per-collector garbage collection metrics
+     */
+    private static class GcMetrics {
+        final MetricHandle count;
+        final MetricHandle time;
+        final MetricHandle rate;
+        final MetricHandle avgTime;
+
+        GcMetrics(MetricsManager manager, String gcName) {
+            count = manager.getMetricHandle("gc." + gcName + ".count");
+            time = manager.getMetricHandle("gc." + gcName + ".time");
+            rate = manager.getMetricHandle("gc." + gcName + ".rate");
+            avgTime = manager.getMetricHandle("gc." + gcName + ".avg_time");
+        }
+    }
+
+    /**
+     * Allocation rate of one thread over the last interval
+     */
+    public static class ThreadAllocation {
+        public final String threadName;
+        public final double mbPerSecond;
+
+        public ThreadAllocation(String threadName, double mbPerSecond) {
+            this.threadName = threadName;
+            this.mbPerSecond = mbPerSecond;
+        }
+    }
+
     /**
      * Simple class to represent a performance lag spike
      */
@@ -350,11 +555,16 @@ public class SystemMetricsCollector implements MetricCollector {
         public final long timestamp;
         public final double tickTimeMs;
         public double mspt;
+        // Server thread stack samples of the spike, or null if the tick was not sampled
+        public LagSpikeSampler.Profile profile;
+        // JFR recording written for the spike, or null if none was
+        public String jfrDump;
 
-        public LagSpike(long timestamp, double tickTimeMs) {
+        public LagSpike(long timestamp, double tickTimeMs, LagSpikeSampler.Profile profile) {
             this.timestamp = timestamp;
             this.tickTimeMs = tickTimeMs;
-            this.mspt = mspt;
+            this.mspt = tickTimeMs;
+            this.profile = profile;
         }
     }
 }
\ No newline at end of file
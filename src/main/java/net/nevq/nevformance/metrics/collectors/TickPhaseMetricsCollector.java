@@ -0,0 +1,85 @@
+package net.nevq.nevformance.metrics.collectors;
+
+import net.minecraft.server.MinecraftServer;
+import net.nevq.nevformance.instrumentation.TickPhases;
+import net.nevq.nevformance.instrumentation.TickPhases.Phase;
+import net.nevq.nevformance.metrics.MetricHandle;
+import net.nevq.nevformance.metrics.MetricsManager;
+import net.nevq.nevformance.metrics.histogram.LogLinearHistogram;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Publishes the tick phase breakdown measured by the tick phase mixins.
+ *
+ * Every phase is published as milliseconds per tick over the collection
+ * interval: {@code server.tick.phase.<phase>.mean|p95|max} for server-wide
+ * phases and {@code server.tick.phase.<phase>.<dimension>.mean|p95|max} for
+ * phases of a single world. The means stack up to the mean tick time.
+ */
+public class TickPhaseMetricsCollector implements MetricCollector {
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final Map<Phase, PhaseMetrics> serverPhaseMetrics = new EnumMap<>(Phase.class);
+    private final Map<String, Map<Phase, PhaseMetrics>> dimensionPhaseMetrics = new HashMap<>();
+
+    @Override
+    public void initialize(MetricsManager manager) {
+        for (Phase phase : Phase.values()) {
+            if (!phase.isPerDimension()) {
+                serverPhaseMetrics.put(phase, new PhaseMetrics(manager, "server.tick.phase." + phase.getMetricName()));
+            }
+        }
+    }
+
+    @Override
+    public void collect(MetricsManager manager, MinecraftServer server, long timestamp) {
+        for (Map.Entry<Phase, PhaseMetrics> entry : serverPhaseMetrics.entrySet()) {
+            entry.getValue().record(TickPhases.getRecorder(entry.getKey()).nextInterval(), timestamp);
+        }
+
+        for (TickPhases.DimensionPhases dimension : TickPhases.getDimensions()) {
+            Map<Phase, PhaseMetrics> metrics = dimensionPhaseMetrics.computeIfAbsent(
+                    dimension.getDimensionKey(), k -> new EnumMap<>(Phase.class));
+
+            for (Phase phase : Phase.values()) {
+                if (!phase.isPerDimension()) {
+                    continue;
+                }
+                PhaseMetrics phaseMetrics = metrics.get(phase);
+                if (phaseMetrics == null) {
+                    phaseMetrics = new PhaseMetrics(manager,
+                            "server.tick.phase." + phase.getMetricName() + "." + dimension.getDimensionKey());
+                    metrics.put(phase, phaseMetrics);
+                }
+                phaseMetrics.record(dimension.getRecorder(phase).nextInterval(), timestamp);
+            }
+        }
+    }
+
+    /**
+     * Handles for the statistics of one phase
+     */
+    private static class PhaseMetrics {
+        final MetricHandle mean;
+        final MetricHandle p95;
+        final MetricHandle max;
+
+        PhaseMetrics(MetricsManager manager, String prefix) {
+            mean = manager.getMetricHandle(prefix + ".mean");
+            p95 = manager.getMetricHandle(prefix + ".p95");
+            max = manager.getMetricHandle(prefix + ".max");
+        }
+
+        void record(LogLinearHistogram ticks, long timestamp) {
+            if (ticks.getTotalCount() == 0) {
+                return;
+            }
+            mean.record(timestamp, ticks.getMean() / NANOS_PER_MILLI);
+            p95.record(timestamp, ticks.getValueAtPercentile(95) / NANOS_PER_MILLI);
+            max.record(timestamp, ticks.getMax() / NANOS_PER_MILLI);
+        }
+    }
+}
@@ -1,20 +1,36 @@
 package net.nevq.nevformance.metrics.collectors;
 
 import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.block.entity.BlockEntityType;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.RegistryKey;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.world.ServerChunkManager;
 import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.World;
 import net.minecraft.world.chunk.ChunkStatus;
 import net.minecraft.world.chunk.WorldChunk;
+import net.nevq.nevformance.instrumentation.BlockEntityTickCosts;
+import net.nevq.nevformance.instrumentation.ChunkGenerationTimings;
+import net.nevq.nevformance.instrumentation.ChunkLoadTimings;
+import net.nevq.nevformance.instrumentation.ChunkTickCosts;
+import net.nevq.nevformance.metrics.MetricHandle;
 import net.nevq.nevformance.metrics.MetricsManager;
+import net.nevq.nevformance.metrics.histogram.LogLinearHistogram;
 import net.nevq.nevformance.util.MetricsUtil;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Specialized collector for world and chunk-related metrics
@@ -22,35 +38,123 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class WorldMetricsCollector implements MetricCollector {
 
     // Cache for block entity statistics
-    private final Map<String, Integer> blockEntityCountsByType = new ConcurrentHashMap<>();
+    private final Map<BlockEntityType<?>, Integer> blockEntityCountsByType = new ConcurrentHashMap<>();
 
-    // Cache for chunk activity scores
-    private final Map<ChunkPos, Double> chunkActivityScores = new ConcurrentHashMap<>();
+    // Measured tick time per chunk of each dimension, keyed by dimension key
+    private final Map<String, ChunkHeatmap> chunkHeatmaps = new ConcurrentHashMap<>();
 
-    // Threshold for considering a chunk "active"
-    private static final double CHUNK_ACTIVITY_THRESHOLD = 0.7;
+    // Measured tick time at which a chunk is considered "active"
+    private static final double ACTIVE_CHUNK_TICK_COST_MS = 0.5;
 
-    // Window size for tracking chunk load/unload rates (milliseconds)
-    private static final long RATE_WINDOW_SIZE = 60000;
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final double NANOS_PER_MICRO = 1_000.0;
 
-    // Tracking chunk load/unload events
-    private final Queue<Long> chunkLoadTimestamps = new ArrayDeque<>();
-    private final Queue<Long> chunkUnloadTimestamps = new ArrayDeque<>();
+    // Requested chunks that have not loaded after this long are no longer expected to
+    private static final long CHUNK_REQUEST_MAX_AGE_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    // Chunk load counter totals at the previous collection, for the rates
+    private long lastChunkCountNanos = 0;
+
+    // Handles for fixed metric names, resolved in initialize()
+    private MetricHandle loadRateMetric;
+    private MetricHandle unloadRateMetric;
+    private MetricHandle generateRateMetric;
+    private MetricHandle loadedMetric;
+    private MetricHandle blockEntitiesMetric;
+    private MetricHandle tickCostTotalMetric;
+
+    // Handles for names derived from game objects, resolved on first use
+    private final Map<BlockEntityType<?>, MetricHandle> globalTypeMetrics = new HashMap<>();
+    private final Map<RegistryKey<World>, DimensionMetrics> dimensionMetrics = new HashMap<>();
+
+    // Tick cost handles indexed by raw block entity type id, resolved on first use
+    private TickCostMetrics[] tickCostMetrics = new TickCostMetrics[0];
+
+    @Override
+    public void initialize(MetricsManager manager) {
+        loadRateMetric = manager.getMetricHandle("chunks.load_rate");
+        unloadRateMetric = manager.getMetricHandle("chunks.unload_rate");
+        generateRateMetric = manager.getMetricHandle("chunks.generate_rate");
+        loadedMetric = manager.getMetricHandle("chunks.loaded");
+        blockEntitiesMetric = manager.getMetricHandle("block_entities.total");
+        tickCostTotalMetric = manager.getMetricHandle("block_entities.tick_cost.total.ms_per_tick");
+    }
 
     @Override
     public void collect(MetricsManager manager, MinecraftServer server, long timestamp) {
         // Reset caches for this collection cycle
         blockEntityCountsByType.clear();
-        chunkActivityScores.clear();
+
+        // Measured block entity tick costs since the previous collection, if the server has ticked
+        BlockEntityTickCosts.Interval tickCosts = BlockEntityTickCosts.requestInterval();
+        if (tickCosts != null && tickCosts.getTicks() == 0) {
+            tickCosts = null;
+        }
+        if (tickCosts != null) {
+            recordTypeTickCosts(manager, tickCosts, timestamp);
+        }
+        ChunkTickCosts.Interval chunkCosts = ChunkTickCosts.requestInterval();
+        if (chunkCosts != null && chunkCosts.getTicks() == 0) {
+            chunkCosts = null;
+        }
 
         // Track totals across all dimensions
         int totalLoadedChunks = 0;
         int totalBlockEntities = 0;
 
+        // Chunk loads since the previous collection
+        long nowNanos = System.nanoTime();
+        double elapsedMinutes = (nowNanos - lastChunkCountNanos) / (double) TimeUnit.MINUTES.toNanos(1);
+        boolean hasChunkCounts = lastChunkCountNanos != 0 && elapsedMinutes > 0;
+        lastChunkCountNanos = nowNanos;
+        long totalLoads = 0;
+        long totalUnloads = 0;
+        long totalGenerated = 0;
+
         // Process each world/dimension
         for (ServerWorld world : server.getWorlds()) {
-            String dimensionKey = MetricsUtil.getDimensionKey(world);
-            String worldPrefix = "world." + dimensionKey;
+            DimensionMetrics metrics = dimensionMetrics.get(world.getRegistryKey());
+            if (metrics == null) {
+                String dimensionKey = MetricsUtil.getDimensionKey(world);
+                metrics = new DimensionMetrics(manager, "world." + dimensionKey);
+                dimensionMetrics.put(world.getRegistryKey(), metrics);
+                chunkHeatmaps.put(dimensionKey, metrics.heatmap);
+            }
+            metrics.pruneEvicted();
+            final DimensionMetrics worldMetrics = metrics;
+
+            ChunkLoadTimings.WorldLoads chunkLoads = ChunkLoadTimings.get(world);
+            if (chunkLoads != null) {
+                chunkLoads.pruneStale(CHUNK_REQUEST_MAX_AGE_NANOS);
+                worldMetrics.recordChunkLoads(chunkLoads, timestamp, hasChunkCounts ? elapsedMinutes : 0);
+                totalLoads += worldMetrics.loadsDelta;
+                totalUnloads += worldMetrics.unloadsDelta;
+                totalGenerated += worldMetrics.generatedDelta;
+            }
+
+            AtomicReferenceArray<ChunkGenerationTimings.StageTimings> generationStages = ChunkGenerationTimings.get(world);
+            if (generationStages != null) {
+                worldMetrics.recordGenerationStages(manager, generationStages, timestamp,
+                        hasChunkCounts ? elapsedMinutes * 60 : 0);
+            }
+
+            if (tickCosts != null) {
+                worldMetrics.updateChunkTickCosts(tickCosts.getChunkCosts().get(world), tickCosts.getTicks());
+                worldMetrics.recordTopChunkTickCosts(manager, timestamp);
+            }
+
+            if (chunkCosts != null) {
+                worldMetrics.heatmap.update(chunkCosts.getWorlds().get(world), chunkCosts.getTicks());
+
+                // Record the chunks whose measured tick time makes them "active"
+                for (ChunkHeatmap.Cell cell : worldMetrics.heatmap.getCells()) {
+                    double msPerTick = cell.getTotalNanos() / NANOS_PER_MILLI;
+                    if (msPerTick < ACTIVE_CHUNK_TICK_COST_MS) {
+                        break; // Cells are sorted by cost
+                    }
+                    worldMetrics.activeChunk(manager, ChunkPos.toLong(cell.getX(), cell.getZ())).record(timestamp, msPerTick);
+                }
+            }
 
             // Count loaded chunks in this dimension
             int loadedChunks = 0;
@@ -60,7 +164,7 @@ public class WorldMetricsCollector implements MetricCollector {
             Map<ChunkStatus, Integer> chunkStatusCounts = new HashMap<>();
 
             // Track block entity types in this dimension
-            Map<String, Integer> dimensionBlockEntityTypes = new HashMap<>();
+            Map<BlockEntityType<?>, Integer> dimensionBlockEntityTypes = new HashMap<>();
 
             // Get chunk manager for this world
             ServerChunkManager chunkManager = world.getChunkManager();
@@ -74,22 +178,8 @@ public class WorldMetricsCollector implements MetricCollector {
 
             // Analyze each chunk
             for (WorldChunk chunk : loadedChunkList) {
-                // Analyze chunk activity and score it
-                double activityScore = calculateChunkActivityScore(chunk);
-                ChunkPos pos = chunk.getPos();
-                chunkActivityScores.put(pos, activityScore);
-
-                // If chunk is highly active, record it
-                if (activityScore > CHUNK_ACTIVITY_THRESHOLD) {
-                    manager.recordMetric(
-                            String.format("%s.active_chunk.%d.%d", worldPrefix, pos.x, pos.z),
-                            timestamp,
-                            activityScore
-                    );
-                }
-
                 // Count block entities in this chunk and get map of types
-                Map<String, Integer> blockEntityTypesInChunk = countBlockEntities(chunk);
+                Map<BlockEntityType<?>, Integer> blockEntityTypesInChunk = countBlockEntities(chunk);
 
                 // Use a local counter to avoid modifying variables in lambda
                 final int[] entityCount = {0};
@@ -110,61 +200,90 @@ public class WorldMetricsCollector implements MetricCollector {
             }
 
             // Record general counts for this dimension
-            manager.recordMetric(worldPrefix + ".chunks.loaded", timestamp, loadedChunks);
-            manager.recordMetric(worldPrefix + ".block_entities.total", timestamp, blockEntitiesCount);
+            worldMetrics.loaded.record(timestamp, loadedChunks);
+            worldMetrics.blockEntities.record(timestamp, blockEntitiesCount);
 
             // Record chunk status breakdown
-            final String finalWorldPrefix = worldPrefix;
-            final long finalTimestamp = timestamp;
-            chunkStatusCounts.forEach((status, count) -> {
-                manager.recordMetric(
-                        finalWorldPrefix + ".chunks.status." + status.getId(),
-                        finalTimestamp,
-                        count
-                );
-            });
+            chunkStatusCounts.forEach((status, count) ->
+                    worldMetrics.status(manager, status).record(timestamp, count));
 
             // Record top block entity types for this dimension
-            final String metricWorldPrefix = worldPrefix;
-            final long metricTimestamp = timestamp;
             dimensionBlockEntityTypes.entrySet().stream()
-                    .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                    .sorted(Map.Entry.<BlockEntityType<?>, Integer>comparingByValue().reversed())
                     .limit(10) // Top 10 block entity types
-                    .forEach(entry -> {
-                        manager.recordMetric(
-                                metricWorldPrefix + ".block_entities.types." + entry.getKey().replace(":", "."),
-                                metricTimestamp,
-                                entry.getValue()
-                        );
-                    });
+                    .forEach(entry -> worldMetrics.type(manager, entry.getKey()).record(timestamp, entry.getValue()));
         }
 
-        // Calculate and record chunk load/unload rates
-        updateChunkLoadRates(timestamp);
-        double chunkLoadRate = calculateChunkRate(chunkLoadTimestamps, timestamp);
-        double chunkUnloadRate = calculateChunkRate(chunkUnloadTimestamps, timestamp);
-
-        manager.recordMetric("chunks.load_rate", timestamp, chunkLoadRate);
-        manager.recordMetric("chunks.unload_rate", timestamp, chunkUnloadRate);
+        // Record chunk load/unload rates, in chunks per minute
+        if (hasChunkCounts) {
+            loadRateMetric.record(timestamp, totalLoads / elapsedMinutes);
+            unloadRateMetric.record(timestamp, totalUnloads / elapsedMinutes);
+            generateRateMetric.record(timestamp, totalGenerated / elapsedMinutes);
+        }
 
         // Record global metrics
-        manager.recordMetric("chunks.loaded", timestamp, totalLoadedChunks);
-        manager.recordMetric("block_entities.total", timestamp, totalBlockEntities);
+        loadedMetric.record(timestamp, totalLoadedChunks);
+        blockEntitiesMetric.record(timestamp, totalBlockEntities);
 
         // Record top block entity types globally
-        final long typeTimestamp = timestamp;
         blockEntityCountsByType.entrySet().stream()
-                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .sorted(Map.Entry.<BlockEntityType<?>, Integer>comparingByValue().reversed())
                 .limit(15) // Top 15 block entity types globally
                 .forEach(entry -> {
-                    manager.recordMetric(
-                            "block_entities.types." + entry.getKey().replace(":", "."),
-                            typeTimestamp,
-                            entry.getValue()
-                    );
+                    MetricHandle typeMetric = globalTypeMetrics.get(entry.getKey());
+                    if (typeMetric == null || typeMetric.isEvicted()) {
+                        typeMetric = manager.getMetricHandle("block_entities.types." + getBlockEntityTypeName(entry.getKey()));
+                        globalTypeMetrics.put(entry.getKey(), typeMetric);
+                    }
+                    typeMetric.record(timestamp, entry.getValue());
                 });
     }
 
+    /**
+     * Records the measured tick cost of the most expensive block entity types
+     * and the total over all types
+     */
+    private void recordTypeTickCosts(MetricsManager manager, BlockEntityTickCosts.Interval tickCosts, long timestamp) {
+        if (tickCostMetrics.length < tickCosts.size()) {
+            tickCostMetrics = Arrays.copyOf(tickCostMetrics, tickCosts.size());
+        }
+
+        double ticks = tickCosts.getTicks();
+        double totalNanos = 0;
+        List<Integer> measured = new ArrayList<>();
+        for (int rawId = 0; rawId < tickCosts.size(); rawId++) {
+            if (tickCosts.getSampledCalls(rawId) > 0) {
+                measured.add(rawId);
+                totalNanos += tickCosts.getEstimatedNanos(rawId);
+            }
+        }
+        tickCostTotalMetric.record(timestamp, totalNanos / ticks / NANOS_PER_MILLI);
+
+        measured.sort(Comparator.comparingDouble((Integer rawId) -> tickCosts.getEstimatedNanos(rawId)).reversed());
+        for (int rawId : measured.subList(0, Math.min(15, measured.size()))) { // Top 15 block entity types
+            BlockEntityType<?> type = Registries.BLOCK_ENTITY_TYPE.get(rawId);
+            if (type == null) {
+                continue;
+            }
+            TickCostMetrics metrics = tickCostMetrics[rawId];
+            if (metrics == null || metrics.isEvicted()) {
+                metrics = new TickCostMetrics(manager, "block_entities.tick_cost." + getBlockEntityTypeName(type));
+                tickCostMetrics[rawId] = metrics;
+            }
+            metrics.msPerTick.record(timestamp, tickCosts.getEstimatedNanos(rawId) / ticks / NANOS_PER_MILLI);
+            metrics.usPerBlockEntity.record(timestamp,
+                    tickCosts.getSampledNanos(rawId) / (double) tickCosts.getSampledCalls(rawId) / NANOS_PER_MICRO);
+        }
+    }
+
+    /**
+     * Gets the metric-safe name of a block entity type, e.g. "minecraft.hopper"
+     */
+    private static String getBlockEntityTypeName(BlockEntityType<?> type) {
+        Identifier id = Registries.BLOCK_ENTITY_TYPE.getId(type);
+        return id == null ? "unknown" : id.toString().replace(":", ".");
+    }
+
     /**
      * Gets loaded chunks from the world
      * @param world The server world
@@ -195,102 +314,262 @@ public class WorldMetricsCollector implements MetricCollector {
     }
 
     /**
-     * Calculates an activity score for a chunk based on various factors
+     * Counts block entities in a chunk by type
      * @param chunk The chunk to analyze
-     * @return Activity score between 0 and 1
+     * @return Map of block entity types to counts
      */
-    private double calculateChunkActivityScore(WorldChunk chunk) {
-        double score = 0.0;
+    private Map<BlockEntityType<?>, Integer> countBlockEntities(WorldChunk chunk) {
+        Map<BlockEntityType<?>, Integer> countsByType = new HashMap<>();
 
-        // Factor 1: Block entities (redstone, furnaces, etc.)
-        int blockEntityCount = 0;
         for (BlockEntity blockEntity : chunk.getBlockEntities().values()) {
-            blockEntityCount++;
-
-            // Additional score for "active" block entities like furnaces
-            String blockEntityType = blockEntity.getType().toString();
-            if (blockEntityType.contains("furnace") ||
-                    blockEntityType.contains("hopper") ||
-                    blockEntityType.contains("piston") ||
-                    blockEntityType.contains("dispenser") ||
-                    blockEntityType.contains("dropper")) {
-                score += 0.1;
-            }
+            countsByType.merge(blockEntity.getType(), 1, Integer::sum);
         }
 
-        // Base score from block entity count (max contribution: 0.3)
-        score += Math.min(0.3, blockEntityCount * 0.03);
-
-        // TODO: Add other factors like recent block updates, redstone activity
-        // These require mixins to track during chunk updates
+        return countsByType;
+    }
 
-        return Math.min(1.0, score);
+    /**
+     * Gets the measured tick time per chunk of every dimension
+     * @return Map of dimension keys (e.g. "minecraft.overworld") to heatmaps
+     */
+    public Map<String, ChunkHeatmap> getChunkHeatmaps() {
+        return chunkHeatmaps;
     }
 
     /**
-     * Counts block entities in a chunk by type
-     * @param chunk The chunk to analyze
-     * @return Map of block entity types to counts
+     * Handles for the measured tick cost of one block entity type
      */
-    private Map<String, Integer> countBlockEntities(WorldChunk chunk) {
-        Map<String, Integer> countsByType = new HashMap<>();
+    private static class TickCostMetrics {
+        final MetricHandle msPerTick;
+        final MetricHandle usPerBlockEntity;
 
-        for (BlockEntity blockEntity : chunk.getBlockEntities().values()) {
-            String type = blockEntity.getType().toString();
-            countsByType.merge(type, 1, Integer::sum);
+        TickCostMetrics(MetricsManager manager, String prefix) {
+            msPerTick = manager.getMetricHandle(prefix + ".ms_per_tick");
+            usPerBlockEntity = manager.getMetricHandle(prefix + ".us_per_block_entity");
         }
 
-        return countsByType;
+        boolean isEvicted() {
+            return msPerTick.isEvicted() || usPerBlockEntity.isEvicted();
+        }
     }
 
     /**
-     * Updates the chunk load/unload rate trackers
-     * @param currentTime Current timestamp
+     * Handles for the statistics of a latency histogram, in milliseconds
      */
-    private void updateChunkLoadRates(long currentTime) {
-        // Remove timestamps outside the window
-        while (!chunkLoadTimestamps.isEmpty() && chunkLoadTimestamps.peek() < currentTime - RATE_WINDOW_SIZE) {
-            chunkLoadTimestamps.poll();
+    private static class LatencyMetrics {
+        final MetricHandle count;
+        final MetricHandle p50;
+        final MetricHandle p99;
+        final MetricHandle max;
+
+        LatencyMetrics(MetricsManager manager, String prefix) {
+            count = manager.getMetricHandle(prefix + ".count");
+            p50 = manager.getMetricHandle(prefix + ".p50");
+            p99 = manager.getMetricHandle(prefix + ".p99");
+            max = manager.getMetricHandle(prefix + ".max");
         }
 
-        while (!chunkUnloadTimestamps.isEmpty() && chunkUnloadTimestamps.peek() < currentTime - RATE_WINDOW_SIZE) {
-            chunkUnloadTimestamps.poll();
+        void record(LogLinearHistogram latencies, long timestamp) {
+            count.record(timestamp, latencies.getTotalCount());
+            if (latencies.getTotalCount() == 0) {
+                return;
+            }
+            p50.record(timestamp, latencies.getValueAtPercentile(50) / NANOS_PER_MILLI);
+            p99.record(timestamp, latencies.getValueAtPercentile(99) / NANOS_PER_MILLI);
+            max.record(timestamp, latencies.getMax() / NANOS_PER_MILLI);
         }
     }
 
     /**
-     * Calculates the rate of events per minute based on timestamps in a window
-     * @param timestamps Queue of event timestamps
-     * @param currentTime Current timestamp
-     * @return Rate of events per minute
+     * Handles for one chunk generation stage of a dimension
      */
-    private double calculateChunkRate(Queue<Long> timestamps, long currentTime) {
-        // Calculate events per minute
-        double windowSizeMinutes = RATE_WINDOW_SIZE / 60000.0;
-        return timestamps.size() / windowSizeMinutes;
-    }
+    private static class GenerationStageMetrics {
+        final LatencyMetrics latencies;
+        final MetricHandle chunksPerSecond;
 
-    /**
-     * Registers a chunk load event
-     * @param timestamp Time when chunk was loaded
-     */
-    public void registerChunkLoad(long timestamp) {
-        chunkLoadTimestamps.add(timestamp);
-    }
+        // Completed count at the previous collection
+        long lastCompleted;
 
-    /**
-     * Registers a chunk unload event
-     * @param timestamp Time when chunk was unloaded
-     */
-    public void registerChunkUnload(long timestamp) {
-        chunkUnloadTimestamps.add(timestamp);
+        GenerationStageMetrics(MetricsManager manager, String prefix) {
+            latencies = new LatencyMetrics(manager, prefix + ".latency");
+            chunksPerSecond = manager.getMetricHandle(prefix + ".chunks_per_sec");
+        }
     }
 
     /**
-     * Gets the activity scores for chunks
-     * @return Map of chunk positions to activity scores
+     * Handles for the metrics of one dimension, keyed by the objects they are derived from
      */
-    public Map<ChunkPos, Double> getChunkActivityScores() {
-        return chunkActivityScores;
+    private static class DimensionMetrics {
+        private final String worldPrefix;
+        final MetricHandle loaded;
+        final MetricHandle blockEntities;
+        private final Map<ChunkStatus, MetricHandle> statuses = new HashMap<>();
+        private final Map<BlockEntityType<?>, MetricHandle> types = new HashMap<>();
+        private final Long2ObjectMap<MetricHandle> activeChunks = new Long2ObjectOpenHashMap<>();
+        private final Long2ObjectMap<MetricHandle> chunkTickCosts = new Long2ObjectOpenHashMap<>();
+
+        // Measured block entity tick time per chunk in ms per tick, from the latest interval
+        final Long2DoubleMap chunkTickCostsMs = new Long2DoubleOpenHashMap();
+
+        // Measured tick time per chunk from all sources
+        final ChunkHeatmap heatmap = new ChunkHeatmap();
+
+        // Chunk loading
+        private final MetricHandle loadRate;
+        private final MetricHandle unloadRate;
+        private final MetricHandle pendingLoads;
+        private final LatencyMetrics[] loadLatencies = new LatencyMetrics[ChunkLoadTimings.Source.values().length];
+        private long lastLoads;
+        private long lastUnloads;
+        private long lastGenerated;
+
+        // Chunk generation, per target status
+        private final Map<ChunkStatus, GenerationStageMetrics> generationStages = new HashMap<>();
+
+        // Chunk load counts of the latest interval
+        long loadsDelta;
+        long unloadsDelta;
+        long generatedDelta;
+
+        DimensionMetrics(MetricsManager manager, String worldPrefix) {
+            this.worldPrefix = worldPrefix;
+            loaded = manager.getMetricHandle(worldPrefix + ".chunks.loaded");
+            blockEntities = manager.getMetricHandle(worldPrefix + ".block_entities.total");
+            loadRate = manager.getMetricHandle(worldPrefix + ".chunks.load_rate");
+            unloadRate = manager.getMetricHandle(worldPrefix + ".chunks.unload_rate");
+            pendingLoads = manager.getMetricHandle(worldPrefix + ".chunks.pending_loads");
+            for (ChunkLoadTimings.Source source : ChunkLoadTimings.Source.values()) {
+                loadLatencies[source.ordinal()] = new LatencyMetrics(manager,
+                        worldPrefix + ".chunks.load_latency." + source.getMetricName());
+            }
+        }
+
+        /**
+         * Records the chunk load latencies of the interval and, if the elapsed
+         * time is known, the load and unload rates in chunks per minute
+         */
+        void recordChunkLoads(ChunkLoadTimings.WorldLoads loads, long timestamp, double elapsedMinutes) {
+            long totalLoads = loads.getLoads();
+            long totalUnloads = loads.getUnloads();
+            long totalGenerated = loads.getGeneratedLoads();
+            if (totalLoads < lastLoads || totalUnloads < lastUnloads) {
+                // Counters of a restarted server
+                lastLoads = 0;
+                lastUnloads = 0;
+                lastGenerated = 0;
+            }
+            loadsDelta = totalLoads - lastLoads;
+            unloadsDelta = totalUnloads - lastUnloads;
+            generatedDelta = totalGenerated - lastGenerated;
+            lastLoads = totalLoads;
+            lastUnloads = totalUnloads;
+            lastGenerated = totalGenerated;
+
+            if (elapsedMinutes > 0) {
+                loadRate.record(timestamp, loadsDelta / elapsedMinutes);
+                unloadRate.record(timestamp, unloadsDelta / elapsedMinutes);
+            }
+            pendingLoads.record(timestamp, loads.getPendingCount());
+            for (ChunkLoadTimings.Source source : ChunkLoadTimings.Source.values()) {
+                loadLatencies[source.ordinal()].record(loads.getLatencies(source).nextInterval(), timestamp);
+            }
+        }
+
+        /**
+         * Records the latency of each generation stage over the interval and,
+         * if the elapsed time is known, its throughput in chunks per second
+         */
+        void recordGenerationStages(MetricsManager manager, AtomicReferenceArray<ChunkGenerationTimings.StageTimings> stages,
+                                    long timestamp, double elapsedSeconds) {
+            for (int i = 0; i < stages.length(); i++) {
+                ChunkGenerationTimings.StageTimings stage = stages.get(i);
+                if (stage == null) {
+                    continue;
+                }
+                GenerationStageMetrics metrics = generationStages.computeIfAbsent(stage.getStatus(),
+                        status -> new GenerationStageMetrics(manager, worldPrefix + ".worldgen." + status.getId()));
+                long completed = stage.getCompleted();
+                if (completed < metrics.lastCompleted) {
+                    // Counter of a restarted server
+                    metrics.lastCompleted = 0;
+                }
+                if (elapsedSeconds > 0) {
+                    metrics.chunksPerSecond.record(timestamp, (completed - metrics.lastCompleted) / elapsedSeconds);
+                }
+                metrics.lastCompleted = completed;
+                metrics.latencies.record(stage.getLatencies().nextInterval(), timestamp);
+            }
+        }
+
+        MetricHandle status(MetricsManager manager, ChunkStatus status) {
+            MetricHandle handle = statuses.get(status);
+            if (handle == null || handle.isEvicted()) {
+                handle = manager.getMetricHandle(worldPrefix + ".chunks.status." + status.getId());
+                statuses.put(status, handle);
+            }
+            return handle;
+        }
+
+        MetricHandle type(MetricsManager manager, BlockEntityType<?> type) {
+            MetricHandle handle = types.get(type);
+            if (handle == null || handle.isEvicted()) {
+                handle = manager.getMetricHandle(worldPrefix + ".block_entities.types." + getBlockEntityTypeName(type));
+                types.put(type, handle);
+            }
+            return handle;
+        }
+
+        MetricHandle activeChunk(MetricsManager manager, long chunkPos) {
+            MetricHandle handle = activeChunks.get(chunkPos);
+            if (handle == null || handle.isEvicted()) {
+                handle = manager.getMetricHandle(worldPrefix + ".active_chunk."
+                        + ChunkPos.getPackedX(chunkPos) + "." + ChunkPos.getPackedZ(chunkPos));
+                activeChunks.put(chunkPos, handle);
+            }
+            return handle;
+        }
+
+        /**
+         * Replaces the per-chunk tick costs with those of a new interval
+         * @param costs Chunk counters of this world, or null if no block entity was ticked
+         */
+        void updateChunkTickCosts(BlockEntityTickCosts.ChunkCosts costs, long ticks) {
+            chunkTickCostsMs.clear();
+            if (costs == null) {
+                return;
+            }
+            for (long chunkPos : costs.getChunks()) {
+                chunkTickCostsMs.put(chunkPos, costs.getEstimatedNanos(chunkPos) / ticks / NANOS_PER_MILLI);
+            }
+        }
+
+        /**
+         * Records the tick cost of the most expensive chunks
+         */
+        void recordTopChunkTickCosts(MetricsManager manager, long timestamp) {
+            chunkTickCostsMs.long2DoubleEntrySet().stream()
+                    .filter(entry -> entry.getDoubleValue() > 0)
+                    .sorted(Comparator.comparingDouble(Long2DoubleMap.Entry::getDoubleValue).reversed())
+                    .limit(10) // Top 10 chunks
+                    .forEach(entry -> chunkTickCost(manager, entry.getLongKey()).record(timestamp, entry.getDoubleValue()));
+        }
+
+        MetricHandle chunkTickCost(MetricsManager manager, long chunkPos) {
+            MetricHandle handle = chunkTickCosts.get(chunkPos);
+            if (handle == null || handle.isEvicted()) {
+                handle = manager.getMetricHandle(worldPrefix + ".block_entities.tick_cost.chunk."
+                        + ChunkPos.getPackedX(chunkPos) + "." + ChunkPos.getPackedZ(chunkPos) + ".ms_per_tick");
+                chunkTickCosts.put(chunkPos, handle);
+            }
+            return handle;
+        }
+
+        /**
+         * Drops cached chunk handles whose series the registry has evicted
+         */
+        void pruneEvicted() {
+            activeChunks.values().removeIf(MetricHandle::isEvicted);
+            chunkTickCosts.values().removeIf(MetricHandle::isEvicted);
+        }
     }
 }
\ No newline at end of file
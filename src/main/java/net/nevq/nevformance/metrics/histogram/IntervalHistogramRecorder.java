@@ -0,0 +1,68 @@
+package net.nevq.nevformance.metrics.histogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records values into a histogram on a hot thread and hands complete
+ * intervals to a reader without locking the writer.
+ *
+ * Two histograms are swapped with a writer-reader phaser (as in HdrHistogram's
+ * {@code WriterReaderPhaser}): a writer only increments an epoch counter on
+ * entry and exit, and the reader, after swapping the active histogram, waits
+ * until every writer that may still hold the old one has left. Recording never
+ * blocks and never allocates.
+ */
+public final class IntervalHistogramRecorder {
+    private final AtomicLong startEpoch = new AtomicLong(0);
+    private final AtomicLong evenEndEpoch = new AtomicLong(0);
+    private final AtomicLong oddEndEpoch = new AtomicLong(Long.MIN_VALUE);
+
+    private volatile LogLinearHistogram active = new LogLinearHistogram();
+    private LogLinearHistogram inactive = new LogLinearHistogram();
+
+    public void record(long value) {
+        long epoch = startEpoch.getAndIncrement();
+        try {
+            active.record(value);
+        } finally {
+            if (epoch < 0) {
+                oddEndEpoch.getAndIncrement();
+            } else {
+                evenEndEpoch.getAndIncrement();
+            }
+        }
+    }
+
+    /**
+     * Ends the current interval and starts a new, empty one
+     * @return The values recorded since the previous call. The histogram stays
+     *         valid until the next call and must not be modified.
+     */
+    public synchronized LogLinearHistogram nextInterval() {
+        inactive.reset();
+        LogLinearHistogram finished = active;
+        active = inactive;
+        flipPhase();
+        inactive = finished;
+        return finished;
+    }
+
+    /**
+     * Waits until no writer can still be recording into the histogram that was just swapped out
+     */
+    private void flipPhase() {
+        boolean nextPhaseIsEven = startEpoch.get() < 0;
+        long initialStartValue = nextPhaseIsEven ? 0 : Long.MIN_VALUE;
+        if (nextPhaseIsEven) {
+            evenEndEpoch.set(initialStartValue);
+        } else {
+            oddEndEpoch.set(initialStartValue);
+        }
+
+        long startValueAtFlip = startEpoch.getAndSet(initialStartValue);
+        AtomicLong previousEndEpoch = nextPhaseIsEven ? oddEndEpoch : evenEndEpoch;
+        while (previousEndEpoch.get() != startValueAtFlip) {
+            Thread.onSpinWait();
+        }
+    }
+}
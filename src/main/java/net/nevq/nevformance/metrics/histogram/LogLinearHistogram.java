@@ -0,0 +1,144 @@
+package net.nevq.nevformance.metrics.histogram;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size log-linear histogram of non-negative long values, in the style of HdrHistogram.
+ *
+ * Values below {@code 2^SUB_BUCKET_BITS} are counted exactly. Above that,
+ * every power of two is split into {@code 2^SUB_BUCKET_BITS} equal
+ * sub-buckets, so any recorded value is reported within 1/128 (under 0.8%) of
+ * its true value. Recording is a handful of arithmetic operations and never
+ * allocates; values beyond the trackable range are clamped into the last bucket.
+ *
+ * Not thread-safe: use {@link IntervalHistogramRecorder} to hand a histogram
+ * from a recording thread to a reading thread.
+ */
+public final class LogLinearHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // Largest trackable value is 2^40 - 1, over 18 minutes when recording nanoseconds
+    private static final int MAX_MAGNITUDE = 39;
+    static final long MAX_TRACKABLE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+    static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long min = Long.MAX_VALUE;
+    private long max;
+    private double sum;
+    private double sumOfSquares;
+
+    public void record(long value) {
+        long clamped = Math.max(0, Math.min(value, MAX_TRACKABLE));
+        counts[indexFor(clamped)]++;
+        totalCount++;
+        min = Math.min(min, clamped);
+        max = Math.max(max, clamped);
+        sum += clamped;
+        sumOfSquares += (double) clamped * clamped;
+    }
+
+    /**
+     * Adds every value recorded in another histogram to this one
+     */
+    public void add(LogLinearHistogram other) {
+        if (other.totalCount == 0) {
+            return;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        sum += other.sum;
+        sumOfSquares += other.sumOfSquares;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+        sum = 0;
+        sumOfSquares = 0;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return Smallest recorded value, or 0 if empty
+     */
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    /**
+     * @return Largest recorded value (exact), or 0 if empty
+     */
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    public double getStdDeviation() {
+        if (totalCount == 0) {
+            return 0;
+        }
+        double mean = sum / totalCount;
+        return Math.sqrt(Math.max(0, sumOfSquares / totalCount - mean * mean));
+    }
+
+    /**
+     * Gets the value below which the given percentage of recorded values fall.
+     * The result is the upper bound of the bucket holding that rank, capped at the
+     * recorded maximum, so it never understates the true percentile by more than
+     * the bucket resolution.
+     * @param percentile Percentile between 0 and 100
+     * @return The value at the percentile, or 0 if empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        double fraction = Math.max(0, Math.min(100, percentile)) / 100.0;
+        long targetRank = Math.max(1, (long) Math.ceil(fraction * totalCount));
+
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= targetRank) {
+                return Math.min(highestValueFor(i), max);
+            }
+        }
+        return max;
+    }
+
+    // Package-private for tests
+    static int indexFor(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long highestValueFor(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_COUNT;
+        long lowest = (SUB_BUCKET_COUNT + subBucket) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,278 @@
+package net.nevq.nevformance.metrics.query;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import net.nevq.nevformance.metrics.MetricPoint;
+import net.nevq.nevformance.metrics.PointVisitor;
+
+import java.util.*;
+
+/**
+ * A node of a parsed query. Every node evaluates to an instant vector at a
+ * given time; range selectors only exist as arguments of range functions,
+ * which fold the points of the window into a single value while streaming
+ * over the series.
+ */
+interface Expression {
+    InstantVector evaluate(QueryContext context, long time);
+
+    /**
+     * A number, e.g. {@code 50}
+     */
+    final class NumberLiteral implements Expression {
+        private final double value;
+
+        NumberLiteral(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public InstantVector evaluate(QueryContext context, long time) {
+            return InstantVector.scalar(value);
+        }
+    }
+
+    /**
+     * A series name pattern, e.g. {@code world.*.entities.total}, optionally with a window, e.g. {@code [5m]}
+     */
+    final class Selector implements Expression {
+        final String pattern;
+        final long rangeMs;
+
+        Selector(String pattern, long rangeMs) {
+            this.pattern = pattern;
+            this.rangeMs = rangeMs;
+        }
+
+        @Override
+        public InstantVector evaluate(QueryContext context, long time) {
+            if (rangeMs > 0) {
+                throw new QueryException("Range selector '" + pattern + "' must be the argument of a range function");
+            }
+
+            List<Sample> samples = new ArrayList<>();
+            for (QueryContext.SeriesMatch match : context.resolve(pattern)) {
+                MetricPoint point = context.latest(match.name(), time);
+                if (point != null) {
+                    samples.add(new Sample(match.name(), match.captures(), point.value()));
+                }
+            }
+            return InstantVector.of(samples);
+        }
+    }
+
+    /**
+     * A function over the window of a range selector, e.g. {@code rate(gc.young.count[1m])}
+     */
+    final class RangeFunction implements Expression {
+        private final String function;
+        private final double parameter;
+        private final Selector selector;
+
+        RangeFunction(String function, double parameter, Selector selector) {
+            this.function = function;
+            this.parameter = parameter;
+            this.selector = selector;
+        }
+
+        @Override
+        public InstantVector evaluate(QueryContext context, long time) {
+            boolean keepValues = function.equals("quantile_over_time");
+            List<Sample> samples = new ArrayList<>();
+            for (QueryContext.SeriesMatch match : context.resolve(selector.pattern)) {
+                WindowAccumulator window = new WindowAccumulator(keepValues);
+                context.scan(match.name(), time - selector.rangeMs, time, window);
+                double value = window.result(function, parameter);
+                if (!Double.isNaN(value)) {
+                    samples.add(new Sample(match.name(), match.captures(), value));
+                }
+            }
+            return InstantVector.of(samples);
+        }
+    }
+
+    /**
+     * An aggregation across series, e.g. {@code sum by ($1) (world.*.entities.total)}
+     */
+    final class Aggregation implements Expression {
+        private final String operator;
+        private final int[] grouping;
+        private final Expression operand;
+
+        /**
+         * @param grouping Indexes of the labels to group by, or an empty array to aggregate everything
+         */
+        Aggregation(String operator, int[] grouping, Expression operand) {
+            this.operator = operator;
+            this.grouping = grouping;
+            this.operand = operand;
+        }
+
+        @Override
+        public InstantVector evaluate(QueryContext context, long time) {
+            Map<List<String>, double[]> groups = new LinkedHashMap<>();
+            for (Sample sample : operand.evaluate(context, time).samples()) {
+                List<String> key = new ArrayList<>(grouping.length);
+                for (int index : grouping) {
+                    key.add(index < sample.labels().size() ? sample.labels().get(index) : "");
+                }
+
+                double[] state = groups.get(key);
+                if (state == null) {
+                    // { accumulated value, count }
+                    state = new double[]{sample.value(), 0};
+                    groups.put(key, state);
+                } else {
+                    state[0] = switch (operator) {
+                        case "min" -> Math.min(state[0], sample.value());
+                        case "max" -> Math.max(state[0], sample.value());
+                        default -> state[0] + sample.value();
+                    };
+                }
+                state[1]++;
+            }
+
+            List<Sample> samples = new ArrayList<>(groups.size());
+            for (Map.Entry<List<String>, double[]> group : groups.entrySet()) {
+                double[] state = group.getValue();
+                double value = switch (operator) {
+                    case "avg" -> state[0] / state[1];
+                    case "count" -> state[1];
+                    default -> state[0];
+                };
+                String name = grouping.length == 0 ? operator : operator + " " + String.join(",", group.getKey());
+                samples.add(new Sample(name, group.getKey(), value));
+            }
+            return InstantVector.of(samples);
+        }
+    }
+
+    /**
+     * Arithmetic between two operands. Vector operands are paired by equal labels.
+     */
+    final class BinaryOperation implements Expression {
+        private final char operator;
+        private final Expression left;
+        private final Expression right;
+
+        BinaryOperation(char operator, Expression left, Expression right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public InstantVector evaluate(QueryContext context, long time) {
+            InstantVector leftValue = left.evaluate(context, time);
+            InstantVector rightValue = right.evaluate(context, time);
+
+            if (leftValue.scalar() && rightValue.scalar()) {
+                return InstantVector.scalar(apply(leftValue.scalarValue(), rightValue.scalarValue()));
+            }
+
+            List<Sample> samples = new ArrayList<>();
+            if (rightValue.scalar()) {
+                double operand = rightValue.scalarValue();
+                for (Sample sample : leftValue.samples()) {
+                    samples.add(sample.withValue(apply(sample.value(), operand)));
+                }
+            } else if (leftValue.scalar()) {
+                double operand = leftValue.scalarValue();
+                for (Sample sample : rightValue.samples()) {
+                    samples.add(sample.withValue(apply(operand, sample.value())));
+                }
+            } else {
+                Map<List<String>, Sample> rightByLabels = new HashMap<>();
+                for (Sample sample : rightValue.samples()) {
+                    rightByLabels.putIfAbsent(sample.labels(), sample);
+                }
+                for (Sample sample : leftValue.samples()) {
+                    Sample match = rightByLabels.get(sample.labels());
+                    if (match != null) {
+                        samples.add(sample.withValue(apply(sample.value(), match.value())));
+                    }
+                }
+            }
+            return InstantVector.of(samples);
+        }
+
+        private double apply(double a, double b) {
+            return switch (operator) {
+                case '+' -> a + b;
+                case '-' -> a - b;
+                case '*' -> a * b;
+                default -> a / b;
+            };
+        }
+    }
+
+    /**
+     * Folds the points of a window as they are streamed from the store
+     */
+    final class WindowAccumulator implements PointVisitor {
+        private final DoubleArrayList values;
+        private long count;
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private long firstTimestamp;
+        private double firstValue;
+        private long lastTimestamp;
+        private double lastValue;
+        // Counter increase over the window, with resets treated as restarts from zero
+        private double increase;
+
+        WindowAccumulator(boolean keepValues) {
+            this.values = keepValues ? new DoubleArrayList() : null;
+        }
+
+        @Override
+        public void visit(long timestamp, double value) {
+            if (count == 0) {
+                firstTimestamp = timestamp;
+                firstValue = value;
+            } else {
+                increase += value >= lastValue ? value - lastValue : value;
+            }
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            lastTimestamp = timestamp;
+            lastValue = value;
+            if (values != null) {
+                values.add(value);
+            }
+        }
+
+        /**
+         * @return The value of the function over the window, or NaN if the window holds too few points
+         */
+        double result(String function, double parameter) {
+            if (count == 0) {
+                return Double.NaN;
+            }
+            return switch (function) {
+                case "rate" -> count < 2 || lastTimestamp == firstTimestamp
+                        ? Double.NaN
+                        : increase / ((lastTimestamp - firstTimestamp) / 1000.0);
+                case "delta" -> count < 2 ? Double.NaN : lastValue - firstValue;
+                case "avg_over_time" -> sum / count;
+                case "min_over_time" -> min;
+                case "max_over_time" -> max;
+                case "sum_over_time" -> sum;
+                case "count_over_time" -> count;
+                case "quantile_over_time" -> quantile(parameter);
+                default -> throw new QueryException("Unknown function: " + function);
+            };
+        }
+
+        private double quantile(double q) {
+            double[] sorted = values.toDoubleArray();
+            Arrays.sort(sorted);
+            double rank = Math.max(0, Math.min(1, q)) * (sorted.length - 1);
+            int lower = (int) Math.floor(rank);
+            int upper = Math.min(lower + 1, sorted.length - 1);
+            return sorted[lower] + (sorted[upper] - sorted[lower]) * (rank - lower);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package net.nevq.nevformance.metrics.query;
+
+import java.util.List;
+
+/**
+ * Result of evaluating an expression at a single point in time. A scalar is
+ * represented as a vector with exactly one unlabeled sample.
+ */
+record InstantVector(List<Sample> samples, boolean scalar) {
+    static InstantVector scalar(double value) {
+        return new InstantVector(List.of(new Sample("scalar", List.of(), value)), true);
+    }
+
+    static InstantVector of(List<Sample> samples) {
+        return new InstantVector(samples, false);
+    }
+
+    double scalarValue() {
+        return samples.get(0).value();
+    }
+}
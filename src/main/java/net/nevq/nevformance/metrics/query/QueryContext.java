@@ -0,0 +1,126 @@
+package net.nevq.nevformance.metrics.query;
+
+import net.nevq.nevformance.metrics.MetricPoint;
+import net.nevq.nevformance.metrics.MetricRegistry;
+import net.nevq.nevformance.metrics.PointVisitor;
+
+import java.util.*;
+
+/**
+ * State shared by one evaluation of a query: access to the store, and the
+ * series each selector pattern resolved to, so a range query matches names
+ * once rather than once per step.
+ */
+final class QueryContext {
+    // How far back an instant selector looks for the latest sample
+    static final long LOOKBACK_MS = 5 * 60 * 1000L;
+
+    private final MetricRegistry registry;
+    private final Map<String, List<SeriesMatch>> resolved = new HashMap<>();
+
+    /**
+     * A series matched by a selector
+     *
+     * @param name Name of the series
+     * @param captures Text matched by each {@code *} of the pattern
+     */
+    record SeriesMatch(String name, List<String> captures) {
+    }
+
+    QueryContext(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Resolves a selector pattern in which {@code *} matches any run of characters
+     * @return Matching series sorted by name
+     */
+    List<SeriesMatch> resolve(String pattern) {
+        List<SeriesMatch> matches = resolved.get(pattern);
+        if (matches != null) {
+            return matches;
+        }
+
+        matches = new ArrayList<>();
+        if (pattern.indexOf('*') < 0) {
+            if (registry.get(pattern) != null) {
+                matches.add(new SeriesMatch(pattern, List.of()));
+            }
+        } else {
+            String[] parts = pattern.split("\\*", -1);
+            for (String name : registry.getNames()) {
+                List<String> captures = match(parts, name);
+                if (captures != null) {
+                    matches.add(new SeriesMatch(name, captures));
+                }
+            }
+            matches.sort(Comparator.comparing(SeriesMatch::name));
+        }
+
+        resolved.put(pattern, matches);
+        return matches;
+    }
+
+    /**
+     * @return The latest value of a series at or before {@code time} within the lookback window, or null
+     */
+    MetricPoint latest(String metricName, long time) {
+        MetricPoint latest = registry.getLatestPoint(metricName);
+        if (latest == null || latest.timestamp() < time - LOOKBACK_MS) {
+            return null;
+        }
+        if (latest.timestamp() <= time) {
+            return latest;
+        }
+
+        // Evaluating in the past: find the last point before the evaluation time
+        LastPoint last = new LastPoint();
+        registry.scanMetric(metricName, time - LOOKBACK_MS, time, last);
+        return last.found ? new MetricPoint(last.timestamp, last.value) : null;
+    }
+
+    void scan(String metricName, long startTime, long endTime, PointVisitor visitor) {
+        registry.scanMetric(metricName, startTime, endTime, visitor);
+    }
+
+    /**
+     * Matches a name against a split pattern, taking the shortest match for each wildcard
+     * @return The text matched by each wildcard, or null if the name does not match
+     */
+    private static List<String> match(String[] parts, String name) {
+        if (!name.startsWith(parts[0])) {
+            return null;
+        }
+        String last = parts[parts.length - 1];
+        int end = name.length() - last.length();
+        if (!name.endsWith(last) || end < parts[0].length()) {
+            return null;
+        }
+
+        List<String> captures = new ArrayList<>(parts.length - 1);
+        int position = parts[0].length();
+        for (int i = 1; i < parts.length - 1; i++) {
+            int found = name.indexOf(parts[i], position);
+            if (found < 0 || found + parts[i].length() > end) {
+                return null;
+            }
+            captures.add(name.substring(position, found));
+            position = found + parts[i].length();
+        }
+        captures.add(name.substring(position, end));
+        return captures;
+    }
+
+    private static final class LastPoint implements PointVisitor {
+        boolean found;
+        long timestamp;
+        double value;
+
+        @Override
+        public void visit(long timestamp, double value) {
+            this.found = true;
+            this.timestamp = timestamp;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package net.nevq.nevformance.metrics.query;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.nevq.nevformance.metrics.MetricRegistry;
+
+import java.util.*;
+
+/**
+ * Evaluates query expressions against the metric registry, so clients can ask
+ * for aggregates instead of downloading whole series.
+ *
+ * Supported expressions:
+ * <ul>
+ *   <li>Selectors: {@code server.tps}, or {@code world.*.entities.total} where each
+ *       {@code *} becomes a label ({@code $1}, {@code $2}, ...)</li>
+ *   <li>Range functions: {@code rate}, {@code delta}, {@code avg_over_time},
+ *       {@code min_over_time}, {@code max_over_time}, {@code sum_over_time},
+ *       {@code count_over_time}, {@code quantile_over_time(0.95, ...)}</li>
+ *   <li>Aggregations: {@code sum}, {@code avg}, {@code min}, {@code max}, {@code count},
+ *       optionally grouped, e.g. {@code sum by ($1) (world.*.entities.total)}</li>
+ *   <li>Arithmetic: {@code + - * /} between numbers and series, pairing series by labels</li>
+ * </ul>
+ *
+ * Range functions stream over the stored points, so evaluation never copies a whole series.
+ */
+public class QueryEngine {
+    // Upper bound on evaluation steps of a range query
+    private static final int MAX_STEPS = 11_000;
+
+    private final MetricRegistry registry;
+
+    public QueryEngine(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Evaluates a query at a single point in time
+     * @param query The expression
+     * @param time Evaluation time in milliseconds
+     * @return One point per output series
+     * @throws QueryException if the query is invalid
+     */
+    public QueryResult query(String query, long time) {
+        return queryRange(query, time, time, 1);
+    }
+
+    /**
+     * Evaluates a query at regular steps over a time range
+     * @param query The expression
+     * @param startTime First evaluation time in milliseconds
+     * @param endTime Last evaluation time in milliseconds (inclusive)
+     * @param stepMs Interval between evaluations in milliseconds
+     * @return One series per output series of the expression
+     * @throws QueryException if the query or the range is invalid
+     */
+    public QueryResult queryRange(String query, long startTime, long endTime, long stepMs) {
+        if (stepMs <= 0) {
+            throw new QueryException("Step must be positive");
+        }
+        if (endTime < startTime) {
+            throw new QueryException("End time is before start time");
+        }
+        long steps;
+        try {
+            steps = Math.subtractExact(endTime, startTime) / stepMs;
+        } catch (ArithmeticException e) {
+            throw new QueryException("Time range is too large");
+        }
+        if (steps >= MAX_STEPS) {
+            throw new QueryException("Range query exceeds " + MAX_STEPS + " steps, use a larger step");
+        }
+
+        Expression expression = QueryParser.parse(query);
+        QueryContext context = new QueryContext(registry);
+
+        Map<String, SeriesBuilder> series = new LinkedHashMap<>();
+        // Times are derived from the step index, since accumulating them could wrap past the end
+        for (long i = 0; i <= steps; i++) {
+            long time = startTime + i * stepMs;
+            for (Sample sample : expression.evaluate(context, time).samples()) {
+                // Non-finite values cannot be represented in JSON
+                if (!Double.isFinite(sample.value())) {
+                    continue;
+                }
+                String key = sample.series() + '\0' + sample.labels();
+                series.computeIfAbsent(key, k -> new SeriesBuilder(sample.series(), sample.labels()))
+                        .add(time, sample.value());
+            }
+        }
+
+        List<QueryResult.Series> result = new ArrayList<>(series.size());
+        for (SeriesBuilder builder : series.values()) {
+            result.add(builder.build());
+        }
+        return new QueryResult(query, result);
+    }
+
+    private static final class SeriesBuilder {
+        private final String name;
+        private final List<String> labels;
+        private final LongArrayList timestamps = new LongArrayList();
+        private final DoubleArrayList values = new DoubleArrayList();
+
+        SeriesBuilder(String name, List<String> labels) {
+            this.name = name;
+            this.labels = labels;
+        }
+
+        void add(long timestamp, double value) {
+            timestamps.add(timestamp);
+            values.add(value);
+        }
+
+        QueryResult.Series build() {
+            return new QueryResult.Series(name, labels, timestamps.toLongArray(), values.toDoubleArray());
+        }
+    }
+}
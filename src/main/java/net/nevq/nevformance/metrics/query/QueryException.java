@@ -0,0 +1,10 @@
+package net.nevq.nevformance.metrics.query;
+
+/**
+ * Thrown when a query cannot be parsed or evaluated. The message is meant for the client.
+ */
+public class QueryException extends RuntimeException {
+    public QueryException(String message) {
+        super(message);
+    }
+}
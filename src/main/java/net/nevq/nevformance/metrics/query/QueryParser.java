@@ -0,0 +1,295 @@
+package net.nevq.nevformance.metrics.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Recursive descent parser for query expressions.
+ *
+ * <pre>
+ *   expression  := term (('+' | '-') term)*
+ *   term        := unary (('*' | '/') unary)*
+ *   unary       := '-' unary | primary
+ *   primary     := number | '(' expression ')' | aggregation | function | selector
+ *   aggregation := ('sum' | 'avg' | 'min' | 'max' | 'count') [grouping] '(' expression ')' [grouping]
+ *   grouping    := 'by' '(' '$'n (',' '$'n)* ')'
+ *   function    := name '(' [number ','] selector ')'
+ *   selector    := pattern ['[' duration ']']
+ * </pre>
+ *
+ * Series names may contain {@code -} and {@code *} (as a wildcard), so
+ * binary operators must be separated from names by whitespace:
+ * {@code memory.heap.used / memory.heap.max}.
+ */
+final class QueryParser {
+    private static final Set<String> AGGREGATIONS = Set.of("sum", "avg", "min", "max", "count");
+    private static final Set<String> RANGE_FUNCTIONS = Set.of(
+            "rate", "delta",
+            "avg_over_time", "min_over_time", "max_over_time", "sum_over_time", "count_over_time",
+            "quantile_over_time"
+    );
+
+    private final String input;
+    private int position = 0;
+
+    private QueryParser(String input) {
+        this.input = input;
+    }
+
+    static Expression parse(String input) {
+        QueryParser parser = new QueryParser(input);
+        Expression expression = parser.parseExpression();
+        parser.skipWhitespace();
+        if (!parser.atEnd()) {
+            throw parser.error("Unexpected '" + parser.peek() + "'");
+        }
+        return expression;
+    }
+
+    private Expression parseExpression() {
+        Expression left = parseTerm();
+        while (true) {
+            skipWhitespace();
+            char c = peek();
+            if (c != '+' && c != '-') {
+                return left;
+            }
+            position++;
+            left = new Expression.BinaryOperation(c, left, parseTerm());
+        }
+    }
+
+    private Expression parseTerm() {
+        Expression left = parseUnary();
+        while (true) {
+            skipWhitespace();
+            char c = peek();
+            if (c != '*' && c != '/') {
+                return left;
+            }
+            position++;
+            left = new Expression.BinaryOperation(c, left, parseUnary());
+        }
+    }
+
+    private Expression parseUnary() {
+        skipWhitespace();
+        if (peek() == '-') {
+            position++;
+            return new Expression.BinaryOperation('-', new Expression.NumberLiteral(0), parseUnary());
+        }
+        return parsePrimary();
+    }
+
+    private Expression parsePrimary() {
+        skipWhitespace();
+        char c = peek();
+
+        if (c == '(') {
+            position++;
+            Expression expression = parseExpression();
+            expect(')');
+            return expression;
+        }
+        if (Character.isDigit(c) || c == '.') {
+            return new Expression.NumberLiteral(parseNumber());
+        }
+        if (!isNameStart(c)) {
+            throw atEnd() ? error("Unexpected end of query") : error("Unexpected '" + c + "'");
+        }
+
+        String name = parseName();
+        skipWhitespace();
+        if (AGGREGATIONS.contains(name) && (peek() == '(' || atKeyword("by"))) {
+            return parseAggregation(name);
+        }
+        if (peek() == '(') {
+            return parseFunction(name);
+        }
+
+        long rangeMs = 0;
+        if (peek() == '[') {
+            position++;
+            rangeMs = parseDuration();
+            expect(']');
+        }
+        return new Expression.Selector(name, rangeMs);
+    }
+
+    private Expression parseAggregation(String operator) {
+        int[] grouping = atKeyword("by") ? parseGrouping() : null;
+        expect('(');
+        Expression operand = parseExpression();
+        expect(')');
+        skipWhitespace();
+        if (grouping == null && atKeyword("by")) {
+            grouping = parseGrouping();
+        }
+        return new Expression.Aggregation(operator, grouping != null ? grouping : new int[0], operand);
+    }
+
+    private int[] parseGrouping() {
+        position += 2;
+        expect('(');
+        List<Integer> labels = new ArrayList<>();
+        do {
+            skipWhitespace();
+            if (peek() != '$') {
+                throw error("Expected a label such as $1");
+            }
+            position++;
+            int start = position;
+            while (Character.isDigit(peek())) {
+                position++;
+            }
+            if (start == position) {
+                throw error("Expected a label number after '$'");
+            }
+            int label = Integer.parseInt(input.substring(start, position));
+            if (label < 1) {
+                throw error("Labels are numbered from $1");
+            }
+            labels.add(label - 1);
+            skipWhitespace();
+        } while (consume(','));
+        expect(')');
+        return labels.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private Expression parseFunction(String function) {
+        if (!RANGE_FUNCTIONS.contains(function)) {
+            throw error("Unknown function: " + function);
+        }
+        expect('(');
+
+        double parameter = Double.NaN;
+        if (function.equals("quantile_over_time")) {
+            skipWhitespace();
+            parameter = parseNumber();
+            expect(',');
+        }
+
+        Expression argument = parseExpression();
+        if (!(argument instanceof Expression.Selector selector) || selector.rangeMs <= 0) {
+            throw error(function + " expects a range selector such as server.tick_time[5m]");
+        }
+        expect(')');
+        return new Expression.RangeFunction(function, parameter, selector);
+    }
+
+    private double parseNumber() {
+        int start = position;
+        while (Character.isDigit(peek()) || peek() == '.') {
+            position++;
+        }
+        if ((peek() == 'e' || peek() == 'E') && start != position) {
+            position++;
+            if (peek() == '+' || peek() == '-') {
+                position++;
+            }
+            while (Character.isDigit(peek())) {
+                position++;
+            }
+        }
+        try {
+            return Double.parseDouble(input.substring(start, position));
+        } catch (NumberFormatException e) {
+            throw error("Invalid number '" + input.substring(start, position) + "'");
+        }
+    }
+
+    /**
+     * Parses a duration such as {@code 30s}, {@code 5m}, {@code 1h} or {@code 500ms}
+     * @return The duration in milliseconds
+     */
+    private long parseDuration() {
+        skipWhitespace();
+        int start = position;
+        while (Character.isDigit(peek())) {
+            position++;
+        }
+        if (start == position) {
+            throw error("Expected a duration such as 5m");
+        }
+        long amount = Long.parseLong(input.substring(start, position));
+
+        long unit;
+        if (input.startsWith("ms", position)) {
+            unit = 1;
+            position += 2;
+        } else {
+            unit = switch (peek()) {
+                case 's' -> 1000L;
+                case 'm' -> 60_000L;
+                case 'h' -> 3_600_000L;
+                case 'd' -> 86_400_000L;
+                default -> throw error("Expected a duration unit (ms, s, m, h or d)");
+            };
+            position++;
+        }
+        skipWhitespace();
+        return amount * unit;
+    }
+
+    private String parseName() {
+        int start = position;
+        while (!atEnd()) {
+            char c = peek();
+            // A '-' only continues a name if the name goes on after it
+            boolean continues = isNameChar(c)
+                    || (c == '-' && position + 1 < input.length() && isNameChar(input.charAt(position + 1)));
+            if (!continues) {
+                break;
+            }
+            position++;
+        }
+        return input.substring(start, position);
+    }
+
+    private static boolean isNameStart(char c) {
+        return Character.isLetter(c) || c == '_' || c == '*';
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == ':' || c == '*';
+    }
+
+    private boolean atKeyword(String keyword) {
+        int end = position + keyword.length();
+        return input.startsWith(keyword, position) && (end >= input.length() || !isNameChar(input.charAt(end)));
+    }
+
+    private void expect(char c) {
+        skipWhitespace();
+        if (!consume(c)) {
+            throw atEnd() ? error("Expected '" + c + "' but the query ended") : error("Expected '" + c + "'");
+        }
+    }
+
+    private boolean consume(char c) {
+        if (peek() == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (!atEnd() && Character.isWhitespace(input.charAt(position))) {
+            position++;
+        }
+    }
+
+    private char peek() {
+        return atEnd() ? '\0' : input.charAt(position);
+    }
+
+    private boolean atEnd() {
+        return position >= input.length();
+    }
+
+    private QueryException error(String message) {
+        return new QueryException(message + " at position " + position);
+    }
+}
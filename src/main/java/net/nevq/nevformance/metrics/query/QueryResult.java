@@ -0,0 +1,21 @@
+package net.nevq.nevformance.metrics.query;
+
+import java.util.List;
+
+/**
+ * Result of a query, one entry per output series
+ *
+ * @param query The evaluated expression
+ * @param series Output series; an instant query has exactly one point per series
+ */
+public record QueryResult(String query, List<Series> series) {
+
+    /**
+     * @param name Name of the series, or a description of the aggregate
+     * @param labels Labels that identify the series within the result
+     * @param timestamps Evaluation times in milliseconds, oldest first
+     * @param values Value at each evaluation time
+     */
+    public record Series(String name, List<String> labels, long[] timestamps, double[] values) {
+    }
+}
@@ -0,0 +1,17 @@
+package net.nevq.nevformance.metrics.query;
+
+import java.util.List;
+
+/**
+ * One element of an instant vector
+ *
+ * @param series Name of the series, or a description of the aggregate it came from
+ * @param labels Text matched by each {@code *} of the selector, or the group of an aggregation;
+ *               binary operators pair samples with equal labels
+ * @param value Value at the evaluation time
+ */
+record Sample(String series, List<String> labels, double value) {
+    Sample withValue(double newValue) {
+        return new Sample(series, labels, newValue);
+    }
+}
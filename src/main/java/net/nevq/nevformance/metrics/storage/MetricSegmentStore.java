@@ -0,0 +1,304 @@
+package net.nevq.nevformance.metrics.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Append-only, memory-mapped store for metric samples so history survives restarts.
+ *
+ * Samples are appended to fixed-size segment files named after the time they
+ * were opened. Every segment is self-describing: the first time a series
+ * appears in a segment its name is written as a definition record, so old
+ * segments can be deleted independently once they fall out of retention.
+ * Series ids are reused by the registry, so an id is defined again whenever
+ * it is appended under a different name, and a definition applies to the
+ * points that follow it.
+ *
+ * Record layout (big endian):
+ * <pre>
+ *   DEFINE: type=1 | int id | short length | utf-8 name
+ *   POINT:  type=2 | int id | long timestamp | double value
+ * </pre>
+ * The type byte is written last, so a record torn by a crash reads as the
+ * zero-filled end of the segment rather than as garbage.
+ */
+public class MetricSegmentStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger("nevformance");
+
+    private static final int MAGIC = 0x4E564D53; // "NVMS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte RECORD_DEFINE = 1;
+    private static final byte RECORD_POINT = 2;
+    private static final int POINT_RECORD_SIZE = 1 + 4 + 8 + 8;
+
+    private static final String SEGMENT_PREFIX = "metrics-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long retentionMs;
+
+    // Name each series id was last defined with in the current segment, indexed by id
+    private String[] definedInSegment = new String[256];
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private boolean closed = false;
+
+    /**
+     * Receives samples read back from disk
+     */
+    @FunctionalInterface
+    public interface SampleConsumer {
+        void accept(String metricName, long timestamp, double value);
+    }
+
+    public MetricSegmentStore(Path directory, int segmentSize, long retentionMs) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.retentionMs = retentionMs;
+    }
+
+    /**
+     * Replays the retained samples at or after a start time, oldest first. Segments
+     * closed before the start time are skipped without being read. Must be
+     * called before the first {@link #append}, as the segment opened by the first
+     * append is not replayed.
+     * @param since Earliest sample time to replay in milliseconds; samples past
+     *              retention are skipped regardless
+     * @param consumer Receives each stored sample in write order
+     */
+    public void replay(long since, SampleConsumer consumer) {
+        long cutoff = Math.max(since, System.currentTimeMillis() - retentionMs);
+        List<Path> segments = listSegments();
+        int replayed = 0;
+        int read = 0;
+
+        for (int i = 0; i < segments.size(); i++) {
+            Path file = segments.get(i);
+            // A segment only holds samples written before the next one was opened
+            if (i + 1 < segments.size() && segmentStartTime(segments.get(i + 1)) < cutoff) {
+                continue;
+            }
+            try (FileChannel readChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+                replayed += replaySegment(file, buffer, cutoff, consumer);
+                read++;
+            } catch (IOException e) {
+                LOGGER.warn("Failed to read metric segment {}", file, e);
+            }
+        }
+
+        if (replayed > 0) {
+            LOGGER.info("Restored {} metric samples from {} of {} segments", replayed, read, segments.size());
+        }
+    }
+
+    private int replaySegment(Path file, MappedByteBuffer buffer, long cutoff, SampleConsumer consumer) {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            LOGGER.warn("Skipping metric segment with unknown format: {}", file);
+            return 0;
+        }
+
+        Map<Integer, String> names = new HashMap<>();
+        int count = 0;
+
+        while (buffer.remaining() > 0) {
+            byte type = buffer.get();
+            if (type == RECORD_DEFINE && buffer.remaining() >= 6) {
+                int id = buffer.getInt();
+                int length = buffer.getShort() & 0xFFFF;
+                if (buffer.remaining() < length) {
+                    break;
+                }
+                byte[] nameBytes = new byte[length];
+                buffer.get(nameBytes);
+                names.put(id, new String(nameBytes, StandardCharsets.UTF_8));
+            } else if (type == RECORD_POINT && buffer.remaining() >= POINT_RECORD_SIZE - 1) {
+                int id = buffer.getInt();
+                long timestamp = buffer.getLong();
+                double value = buffer.getDouble();
+                String name = names.get(id);
+                if (name != null && timestamp >= cutoff) {
+                    consumer.accept(name, timestamp, value);
+                    count++;
+                }
+            } else {
+                // End of written data, or a torn record
+                break;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Appends a sample to the current segment, rotating to a new segment when it is full
+     * @param id Id of the series, which may be reused for another series after it is evicted
+     * @param metricName Name of the series, written when the id is first appended with it in a segment
+     * @param timestamp Sample time in milliseconds
+     * @param value Sample value
+     */
+    public synchronized void append(int id, String metricName, long timestamp, double value) {
+        if (closed) {
+            return;
+        }
+
+        try {
+            byte[] nameBytes = null;
+            int needed = POINT_RECORD_SIZE;
+            if (!isDefined(id, metricName)) {
+                nameBytes = metricName.getBytes(StandardCharsets.UTF_8);
+                needed += 1 + 4 + 2 + nameBytes.length;
+            }
+
+            if (segment == null || segment.remaining() < needed) {
+                openNewSegment(timestamp);
+                if (nameBytes == null) {
+                    nameBytes = metricName.getBytes(StandardCharsets.UTF_8);
+                }
+            }
+
+            if (nameBytes != null && !isDefined(id, metricName)) {
+                int start = segment.position();
+                segment.position(start + 1);
+                segment.putInt(id);
+                segment.putShort((short) nameBytes.length);
+                segment.put(nameBytes);
+                segment.put(start, RECORD_DEFINE);
+                if (id >= definedInSegment.length) {
+                    definedInSegment = Arrays.copyOf(definedInSegment, Math.max(id + 1, definedInSegment.length * 2));
+                }
+                definedInSegment[id] = metricName;
+            }
+
+            int start = segment.position();
+            segment.position(start + 1);
+            segment.putInt(id);
+            segment.putLong(timestamp);
+            segment.putDouble(value);
+            segment.put(start, RECORD_POINT);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Failed to persist metric sample, disabling persistence", e);
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Forces written samples to disk and deletes segments past retention
+     */
+    public synchronized void flush() {
+        if (segment != null) {
+            segment.force();
+        }
+        deleteExpiredSegments();
+    }
+
+    /**
+     * Flushes and closes the current segment. Further appends are ignored.
+     */
+    public synchronized void close() {
+        if (segment != null) {
+            segment.force();
+        }
+        closeQuietly();
+    }
+
+    private void openNewSegment(long timestamp) throws IOException {
+        if (segment != null) {
+            segment.force();
+            channel.close();
+        }
+
+        Files.createDirectories(directory);
+        Path file = directory.resolve(SEGMENT_PREFIX + timestamp + SEGMENT_SUFFIX);
+        // Multiple rotations within the same millisecond must not reuse a file
+        while (Files.exists(file)) {
+            timestamp++;
+            file = directory.resolve(SEGMENT_PREFIX + timestamp + SEGMENT_SUFFIX);
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.putInt(MAGIC);
+        segment.putInt(VERSION);
+        Arrays.fill(definedInSegment, null);
+    }
+
+    private boolean isDefined(int id, String metricName) {
+        return id < definedInSegment.length && metricName.equals(definedInSegment[id]);
+    }
+
+    private void deleteExpiredSegments() {
+        long cutoff = System.currentTimeMillis() - retentionMs;
+        List<Path> segments = listSegments();
+
+        // Never delete the newest segment, it may still be in use
+        for (int i = 0; i < segments.size() - 1; i++) {
+            Path file = segments.get(i);
+            try {
+                if (Files.getLastModifiedTime(file).toMillis() < cutoff) {
+                    Files.deleteIfExists(file);
+                }
+            } catch (IOException e) {
+                LOGGER.debug("Could not delete expired metric segment {}", file, e);
+            }
+        }
+    }
+
+    /**
+     * Lists segment files sorted by the time they were opened
+     */
+    private List<Path> listSegments() {
+        if (!Files.isDirectory(directory)) {
+            return Collections.emptyList();
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted(Comparator.comparingLong(MetricSegmentStore::segmentStartTime))
+                    .toList();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to list metric segments in {}", directory, e);
+            return Collections.emptyList();
+        }
+    }
+
+    private static long segmentStartTime(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private void closeQuietly() {
+        closed = true;
+        segment = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.debug("Error closing metric segment", e);
+            }
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package net.nevq.nevformance.mixin;
+
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.nevq.nevformance.instrumentation.BlockEntityTickCosts;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * Times the ticker of each block entity run from {@code World.tickBlockEntities}.
+ * The injections wrap only the ticker call, so block entities that are removed
+ * or sit in chunks that cannot tick are not counted. Block entities of client
+ * worlds are ignored.
+ */
+@Mixin(targets = "net.minecraft.world.chunk.WorldChunk$DirectBlockEntityTickInvoker")
+public class BlockEntityTickInvokerMixin {
+
+    @Shadow
+    @Final
+    private BlockEntity blockEntity;
+
+    @Inject(method = "tick", at = @At(value = "INVOKE",
+            target = "Lnet/minecraft/block/entity/BlockEntityTicker;tick(Lnet/minecraft/world/World;Lnet/minecraft/util/math/BlockPos;Lnet/minecraft/block/BlockState;Lnet/minecraft/block/entity/BlockEntity;)V"))
+    private void onTickerStart(CallbackInfo ci) {
+        if (blockEntity.getWorld() instanceof ServerWorld world) {
+            BlockEntityTickCosts.begin(world, blockEntity);
+        }
+    }
+
+    @Inject(method = "tick", at = @At(value = "INVOKE",
+            target = "Lnet/minecraft/block/entity/BlockEntityTicker;tick(Lnet/minecraft/world/World;Lnet/minecraft/util/math/BlockPos;Lnet/minecraft/block/BlockState;Lnet/minecraft/block/entity/BlockEntity;)V",
+            shift = At.Shift.AFTER))
+    private void onTickerEnd(CallbackInfo ci) {
+        BlockEntityTickCosts.end();
+    }
+}
@@ -0,0 +1,46 @@
+package net.nevq.nevformance.mixin;
+
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.world.World;
+import net.minecraft.world.block.ChainRestrictedNeighborUpdater;
+import net.nevq.nevformance.instrumentation.BlockUpdateQueues;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * Counts the neighbor updates queued in server worlds and times the runs of
+ * their update queue. The queue only runs from the outermost update, so runs
+ * never nest.
+ */
+@Mixin(ChainRestrictedNeighborUpdater.class)
+public class ChainRestrictedNeighborUpdaterMixin {
+
+    @Shadow
+    @Final
+    private World world;
+
+    @Inject(method = "enqueue", at = @At("HEAD"))
+    private void onEnqueue(CallbackInfo ci) {
+        if (world instanceof ServerWorld serverWorld) {
+            BlockUpdateQueues.neighborUpdateQueued(serverWorld);
+        }
+    }
+
+    @Inject(method = "runQueue", at = @At("HEAD"))
+    private void onRunQueueStart(CallbackInfo ci) {
+        if (world instanceof ServerWorld) {
+            BlockUpdateQueues.beginNeighborUpdates();
+        }
+    }
+
+    @Inject(method = "runQueue", at = @At("RETURN"))
+    private void onRunQueueEnd(CallbackInfo ci) {
+        if (world instanceof ServerWorld serverWorld) {
+            BlockUpdateQueues.endNeighborUpdates(serverWorld);
+        }
+    }
+}
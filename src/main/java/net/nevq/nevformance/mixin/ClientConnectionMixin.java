@@ -0,0 +1,69 @@
+package net.nevq.nevformance.mixin;
+
+import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
+import com.llamalad7.mixinextras.injector.wrapoperation.WrapOperation;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import net.minecraft.network.ClientConnection;
+import net.nevq.nevformance.instrumentation.NetworkTraffic;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Times a sample of packet writes from the moment the connection hands a
+ * packet to its channel until the channel has written it to the socket.
+ * Writes of a connection all happen on its event loop, so the sample
+ * countdown needs no synchronization.
+ */
+@Mixin(ClientConnection.class)
+public class ClientConnectionMixin {
+
+    @Unique
+    private int nevformance$writeCountdown = 1;
+
+    @WrapOperation(method = "sendInternal", at = @At(value = "INVOKE",
+            target = "Lio/netty/channel/Channel;writeAndFlush(Ljava/lang/Object;)Lio/netty/channel/ChannelFuture;"))
+    private ChannelFuture nevformance$onWriteAndFlush(Channel channel, Object packet, Operation<ChannelFuture> original) {
+        if (!nevformance$sampleWrite()) {
+            return original.call(channel, packet);
+        }
+        long start = System.nanoTime();
+        return nevformance$timeWrite(start, original.call(channel, packet));
+    }
+
+    @WrapOperation(method = "sendInternal", at = @At(value = "INVOKE",
+            target = "Lio/netty/channel/Channel;write(Ljava/lang/Object;)Lio/netty/channel/ChannelFuture;"))
+    private ChannelFuture nevformance$onWrite(Channel channel, Object packet, Operation<ChannelFuture> original) {
+        if (!nevformance$sampleWrite()) {
+            return original.call(channel, packet);
+        }
+        long start = System.nanoTime();
+        return nevformance$timeWrite(start, original.call(channel, packet));
+    }
+
+    /**
+     * Counts down to the next timed write. The countdown restarts at a random
+     * value so periodic packet patterns do not line up with the samples.
+     */
+    @Unique
+    private boolean nevformance$sampleWrite() {
+        if (--nevformance$writeCountdown > 0) {
+            return false;
+        }
+        nevformance$writeCountdown = ThreadLocalRandom.current().nextInt(1, 2 * NetworkTraffic.WRITE_SAMPLE_INTERVAL);
+        return true;
+    }
+
+    @Unique
+    private static ChannelFuture nevformance$timeWrite(long start, ChannelFuture future) {
+        future.addListener(written -> {
+            if (written.isSuccess()) {
+                NetworkTraffic.writeCompleted(System.nanoTime() - start);
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,29 @@
+package net.nevq.nevformance.mixin;
+
+import net.minecraft.network.NetworkPhase;
+import net.minecraft.network.handler.DecoderHandler;
+import net.minecraft.network.packet.PacketType;
+import net.minecraft.util.profiling.jfr.FlightProfiler;
+import net.nevq.nevformance.instrumentation.NetworkTraffic;
+import net.nevq.nevformance.instrumentation.NetworkTraffic.Direction;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Redirect;
+
+import java.net.SocketAddress;
+
+/**
+ * Counts every packet decoded from a connection, at the point where the
+ * decoder reports it to the flight profiler with its type and size
+ */
+@Mixin(DecoderHandler.class)
+public class DecoderHandlerMixin {
+
+    @Redirect(method = "decode", at = @At(value = "INVOKE",
+            target = "Lnet/minecraft/util/profiling/jfr/FlightProfiler;onPacketReceived(Lnet/minecraft/network/NetworkPhase;Lnet/minecraft/network/packet/PacketType;Ljava/net/SocketAddress;I)V"))
+    private void onPacketReceived(FlightProfiler profiler, NetworkPhase phase, PacketType<?> type,
+                                  SocketAddress remoteAddress, int bytes) {
+        NetworkTraffic.packet(Direction.RECEIVED, type, remoteAddress, bytes);
+        profiler.onPacketReceived(phase, type, remoteAddress, bytes);
+    }
+}
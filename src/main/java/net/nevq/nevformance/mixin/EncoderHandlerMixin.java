@@ -0,0 +1,29 @@
+package net.nevq.nevformance.mixin;
+
+import net.minecraft.network.NetworkPhase;
+import net.minecraft.network.handler.EncoderHandler;
+import net.minecraft.network.packet.PacketType;
+import net.minecraft.util.profiling.jfr.FlightProfiler;
+import net.nevq.nevformance.instrumentation.NetworkTraffic;
+import net.nevq.nevformance.instrumentation.NetworkTraffic.Direction;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Redirect;
+
+import java.net.SocketAddress;
+
+/**
+ * Counts every packet encoded for a connection, at the point where the encoder
+ * reports it to the flight profiler with its type and size
+ */
+@Mixin(EncoderHandler.class)
+public class EncoderHandlerMixin {
+
+    @Redirect(method = "encode", at = @At(value = "INVOKE",
+            target = "Lnet/minecraft/util/profiling/jfr/FlightProfiler;onPacketSent(Lnet/minecraft/network/NetworkPhase;Lnet/minecraft/network/packet/PacketType;Ljava/net/SocketAddress;I)V"))
+    private void onPacketSent(FlightProfiler profiler, NetworkPhase phase, PacketType<?> type,
+                              SocketAddress remoteAddress, int bytes) {
+        NetworkTraffic.packet(Direction.SENT, type, remoteAddress, bytes);
+        profiler.onPacketSent(phase, type, remoteAddress, bytes);
+    }
+}
@@ -1,7 +1,16 @@
 package net.nevq.nevformance.mixin;
 
 import net.nevq.nevformance.Nevformance;
+import net.nevq.nevformance.instrumentation.BlockEntityTickCosts;
+import net.nevq.nevformance.instrumentation.BlockUpdateQueues;
+import net.nevq.nevformance.instrumentation.ChunkTickCosts;
+import net.nevq.nevformance.instrumentation.EntityTickCosts;
+import net.nevq.nevformance.instrumentation.LagSpikeSampler;
+import net.nevq.nevformance.instrumentation.TickPhases;
+import net.nevq.nevformance.instrumentation.TickPhases.Phase;
+import net.nevq.nevformance.instrumentation.TickTimings;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.ServerTask;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
@@ -29,6 +38,7 @@ public class MinecraftServerTickMixin {
     @Inject(method = "tick", at = @At("HEAD"))
     private void onTickStart(CallbackInfo ci) {
         tickStartTime = System.nanoTime();
+        LagSpikeSampler.tickStarted(tickStartTime);
     }
 
     /**
@@ -40,6 +50,15 @@ public class MinecraftServerTickMixin {
         long tickEndTime = System.nanoTime();
         long tickDurationNanos = tickEndTime - tickStartTime;
         double tickDurationMs = tickDurationNanos / 1_000_000.0;
+        LagSpikeSampler.tickEnded(tickDurationNanos);
+
+        // Feed the per-interval MSPT histogram, the phase breakdown and the tick costs
+        TickTimings.recordTick(tickDurationNanos);
+        TickPhases.endTick(tickDurationNanos);
+        EntityTickCosts.endTick();
+        BlockEntityTickCosts.endTick();
+        ChunkTickCosts.endTick();
+        BlockUpdateQueues.endTick();
 
         // Check if this was a slow tick
         boolean isSlowTick = tickDurationMs > SLOW_TICK_THRESHOLD;
@@ -67,8 +86,34 @@ public class MinecraftServerTickMixin {
 
         // Record extreme lag spikes for analysis
         if (tickDurationMs > 500) { // Over 500ms is a very noticeable lag spike
+            // The stack samples of this tick are attached to its lag spike by the system collector
             Nevformance.LOGGER.warn("Major lag spike detected: {}ms", String.format("%.2f", tickDurationMs));
-            // Could add additional diagnostics here - memory dump, thread analysis, etc.
         }
     }
-}
\ No newline at end of file
+
+    @Inject(method = "tick", at = @At(value = "INVOKE",
+            target = "Lnet/minecraft/server/MinecraftServer;saveAll(ZZZ)Z"))
+    private void onAutosaveStart(CallbackInfo ci) {
+        TickPhases.begin(Phase.AUTOSAVE);
+    }
+
+    @Inject(method = "tick", at = @At(value = "INVOKE",
+            target = "Lnet/minecraft/server/MinecraftServer;saveAll(ZZZ)Z",
+            shift = At.Shift.AFTER))
+    private void onAutosaveEnd(CallbackInfo ci) {
+        TickPhases.end(Phase.AUTOSAVE);
+    }
+
+    /**
+     * Times queued tasks, including packets handed to the server thread, which run between ticks
+     */
+    @Inject(method = "executeTask(Lnet/minecraft/server/ServerTask;)V", at = @At("HEAD"))
+    private void onTaskStart(ServerTask task, CallbackInfo ci) {
+        TickPhases.begin(Phase.TASKS);
+    }
+
+    @Inject(method = "executeTask(Lnet/minecraft/server/ServerTask;)V", at = @At("RETURN"))
+    private void onTaskEnd(ServerTask task, CallbackInfo ci) {
+        TickPhases.end(Phase.TASKS);
+    }
+}
@@ -0,0 +1,61 @@
+package net.nevq.nevformance.mixin;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.storage.RegionBasedStorage;
+import net.minecraft.world.storage.StorageKey;
+import net.nevq.nevformance.instrumentation.RegionIoTimings;
+import net.nevq.nevformance.instrumentation.RegionIoTimings.Operation;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+/**
+ * Times chunk reads, writes and flushes of the region file storages of every
+ * dimension. Runs on the storage I/O worker threads.
+ */
+@Mixin(RegionBasedStorage.class)
+public class RegionBasedStorageMixin {
+
+    @Shadow
+    @Final
+    private StorageKey storageKey;
+
+    @Unique
+    private long nevformance$syncStart;
+
+    @Inject(method = "getTagAt", at = @At("HEAD"))
+    private void onReadStart(ChunkPos pos, CallbackInfoReturnable<NbtCompound> cir) {
+        RegionIoTimings.beginOperation(storageKey.dimension());
+    }
+
+    @Inject(method = "getTagAt", at = @At("RETURN"))
+    private void onReadEnd(ChunkPos pos, CallbackInfoReturnable<NbtCompound> cir) {
+        RegionIoTimings.endOperation(Operation.READ, Operation.DECOMPRESS);
+    }
+
+    @Inject(method = "write", at = @At("HEAD"))
+    private void onWriteStart(ChunkPos pos, NbtCompound nbt, CallbackInfo ci) {
+        RegionIoTimings.beginOperation(storageKey.dimension());
+    }
+
+    @Inject(method = "write", at = @At("RETURN"))
+    private void onWriteEnd(ChunkPos pos, NbtCompound nbt, CallbackInfo ci) {
+        RegionIoTimings.endOperation(Operation.WRITE, Operation.COMPRESS);
+    }
+
+    @Inject(method = "sync", at = @At("HEAD"))
+    private void onSyncStart(CallbackInfo ci) {
+        nevformance$syncStart = System.nanoTime();
+    }
+
+    @Inject(method = "sync", at = @At("RETURN"))
+    private void onSyncEnd(CallbackInfo ci) {
+        RegionIoTimings.fsync(storageKey.dimension(), System.nanoTime() - nevformance$syncStart);
+    }
+}
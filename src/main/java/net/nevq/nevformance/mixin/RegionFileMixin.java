@@ -0,0 +1,42 @@
+package net.nevq.nevformance.mixin;
+
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.storage.RegionFile;
+import net.nevq.nevformance.instrumentation.RegionIoTimings;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.Redirect;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Measures the disk part of region file reads and writes: the sectors read for
+ * a chunk and the sectors written for it, already compressed
+ */
+@Mixin(RegionFile.class)
+public class RegionFileMixin {
+
+    @Redirect(method = "getChunkInputStream", at = @At(value = "INVOKE",
+            target = "Ljava/nio/channels/FileChannel;read(Ljava/nio/ByteBuffer;J)I"))
+    private int onReadSectors(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        RegionIoTimings.beginDiskAccess();
+        int bytes = channel.read(buffer, position);
+        RegionIoTimings.endDiskRead(bytes);
+        return bytes;
+    }
+
+    @Inject(method = "writeChunk", at = @At("HEAD"))
+    private void onWriteStart(ChunkPos pos, ByteBuffer buf, CallbackInfo ci) {
+        RegionIoTimings.beginDiskAccess();
+    }
+
+    @Inject(method = "writeChunk", at = @At("RETURN"))
+    private void onWriteEnd(ChunkPos pos, ByteBuffer buf, CallbackInfo ci) {
+        // The buffer has been written in full
+        RegionIoTimings.endDiskWrite(buf.limit());
+    }
+}
@@ -0,0 +1,64 @@
+package net.nevq.nevformance.mixin;
+
+import net.minecraft.server.world.ServerChunkLoadingManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.collection.BoundedRegionArray;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.chunk.AbstractChunkHolder;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkGenerationContext;
+import net.minecraft.world.chunk.ChunkGenerationStep;
+import net.minecraft.world.chunk.ChunkStatus;
+import net.nevq.nevformance.instrumentation.ChunkGenerationTimings;
+import net.nevq.nevformance.instrumentation.ChunkLoadTimings;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.Redirect;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Marks when a chunk is requested from storage and whether a generation step
+ * does any work on it before it is loaded. The load itself is reported through
+ * Fabric's {@code ServerChunkEvents}. Also times each generation step until
+ * its future completes.
+ */
+@Mixin(ServerChunkLoadingManager.class)
+public class ServerChunkLoadingManagerMixin {
+
+    @Shadow
+    @Final
+    ServerWorld world;
+
+    @Inject(method = "loadChunk", at = @At("HEAD"))
+    private void onLoadChunk(ChunkPos pos, CallbackInfoReturnable<CompletableFuture<Chunk>> cir) {
+        ChunkLoadTimings.requested(world, pos.toLong());
+    }
+
+    @Redirect(method = "generate", at = @At(value = "INVOKE",
+            target = "Lnet/minecraft/world/chunk/ChunkGenerationStep;run(Lnet/minecraft/world/chunk/ChunkGenerationContext;Lnet/minecraft/util/collection/BoundedRegionArray;Lnet/minecraft/world/chunk/Chunk;)Ljava/util/concurrent/CompletableFuture;"))
+    private CompletableFuture<Chunk> timeGenerationStep(ChunkGenerationStep step, ChunkGenerationContext context,
+                                                        BoundedRegionArray<AbstractChunkHolder> chunks, Chunk chunk) {
+        // A chunk saved at a later status passes through the step without generating anything
+        ChunkStatus status = step.targetStatus();
+        if (!chunk.getStatus().isEarlierThan(status)) {
+            return step.run(context, chunks, chunk);
+        }
+        // EMPTY is the load from storage and FULL the conversion every loaded chunk goes through
+        if (status != ChunkStatus.EMPTY && status != ChunkStatus.FULL) {
+            ChunkLoadTimings.generating(world, chunk.getPos().toLong());
+        }
+        long start = System.nanoTime();
+        CompletableFuture<Chunk> future = step.run(context, chunks, chunk);
+        future.whenComplete((generated, error) -> {
+            if (error == null) {
+                ChunkGenerationTimings.completed(world, status, System.nanoTime() - start);
+            }
+        });
+        return future;
+    }
+}
@@ -1,33 +1,33 @@
 package net.nevq.nevformance.mixin;
 
-import net.nevq.nevformance.Nevformance;
 import net.minecraft.server.world.ServerChunkManager;
-import net.minecraft.server.world.ChunkHolder;
-import net.minecraft.util.math.ChunkPos;
+import net.minecraft.server.world.ServerWorld;
+import net.nevq.nevformance.instrumentation.TickPhases;
+import net.nevq.nevformance.instrumentation.TickPhases.Phase;
+import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
-import java.util.concurrent.CompletableFuture;
-
 /**
- * Mixin to capture chunk loading performance
+ * Times the chunk manager tick of each dimension
  */
 @Mixin(ServerChunkManager.class)
 public class ServerChunkManagerMixin {
 
-    // Since chunk loading methods vary widely between versions,
-    // let's track the ThreadedAnvilChunkStorage's chunk loading instead
-    // This will be implemented in a future version once we determine
-    // the correct method signatures for your specific Minecraft version
-
-    // For now, we'll use a simpler approach that works with server ticks
+    @Shadow
+    @Final
+    ServerWorld world;
 
     @Inject(method = "tick", at = @At("HEAD"))
     private void onTickStart(CallbackInfo ci) {
-        // We can gather chunk statistics during server ticks
-        // This is a more reliable approach than trying to inject into
-        // specific chunk loading methods that might change between versions
+        TickPhases.begin(Phase.CHUNK_MANAGER);
+    }
+
+    @Inject(method = "tick", at = @At("RETURN"))
+    private void onTickEnd(CallbackInfo ci) {
+        TickPhases.end(Phase.CHUNK_MANAGER, world);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,26 @@
+package net.nevq.nevformance.mixin;
+
+import net.minecraft.server.ServerNetworkIo;
+import net.nevq.nevformance.instrumentation.TickPhases;
+import net.nevq.nevformance.instrumentation.TickPhases.Phase;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * Times the per-tick processing of player connections
+ */
+@Mixin(ServerNetworkIo.class)
+public class ServerNetworkIoMixin {
+
+    @Inject(method = "tick", at = @At("HEAD"))
+    private void onTickStart(CallbackInfo ci) {
+        TickPhases.begin(Phase.CONNECTIONS);
+    }
+
+    @Inject(method = "tick", at = @At("RETURN"))
+    private void onTickEnd(CallbackInfo ci) {
+        TickPhases.end(Phase.CONNECTIONS);
+    }
+}
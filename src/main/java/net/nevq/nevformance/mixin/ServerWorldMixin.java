@@ -0,0 +1,138 @@
+package net.nevq.nevformance.mixin;
+
+import net.minecraft.block.Block;
+import net.minecraft.entity.Entity;
+import net.minecraft.fluid.Fluid;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.chunk.WorldChunk;
+import net.nevq.nevformance.instrumentation.BlockUpdateQueues;
+import net.nevq.nevformance.instrumentation.BlockUpdateQueues.Scheduler;
+import net.nevq.nevformance.instrumentation.ChunkTickCosts;
+import net.nevq.nevformance.instrumentation.EntityTickCosts;
+import net.nevq.nevformance.instrumentation.TickPhases;
+import net.nevq.nevformance.instrumentation.TickPhases.Phase;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Times the world tick of each dimension, the entity and block entity
+ * phases within it, the block and fluid tick schedulers, and the ticks of
+ * individual entities and chunks
+ */
+@Mixin(ServerWorld.class)
+public class ServerWorldMixin {
+
+    @Inject(method = "tick", at = @At("HEAD"))
+    private void onTickStart(BooleanSupplier shouldKeepTicking, CallbackInfo ci) {
+        TickPhases.begin(Phase.WORLD);
+    }
+
+    @Inject(method = "tick", at = @At("RETURN"))
+    private void onTickEnd(BooleanSupplier shouldKeepTicking, CallbackInfo ci) {
+        TickPhases.end(Phase.WORLD, (ServerWorld) (Object) this);
+        BlockUpdateQueues.endWorldTick((ServerWorld) (Object) this);
+    }
+
+    @Inject(method = "tick", at = @At(value = "INVOKE",
+            target = "Lnet/minecraft/world/EntityList;forEach(Ljava/util/function/Consumer;)V"))
+    private void onEntitiesStart(BooleanSupplier shouldKeepTicking, CallbackInfo ci) {
+        TickPhases.begin(Phase.ENTITIES);
+    }
+
+    @Inject(method = "tick", at = @At(value = "INVOKE",
+            target = "Lnet/minecraft/world/EntityList;forEach(Ljava/util/function/Consumer;)V",
+            shift = At.Shift.AFTER))
+    private void onEntitiesEnd(BooleanSupplier shouldKeepTicking, CallbackInfo ci) {
+        TickPhases.end(Phase.ENTITIES, (ServerWorld) (Object) this);
+    }
+
+    @Inject(method = "tick", at = @At(value = "INVOKE",
+            target = "Lnet/minecraft/server/world/ServerWorld;tickBlockEntities()V"))
+    private void onBlockEntitiesStart(BooleanSupplier shouldKeepTicking, CallbackInfo ci) {
+        TickPhases.begin(Phase.BLOCK_ENTITIES);
+    }
+
+    @Inject(method = "tick", at = @At(value = "INVOKE",
+            target = "Lnet/minecraft/server/world/ServerWorld;tickBlockEntities()V",
+            shift = At.Shift.AFTER))
+    private void onBlockEntitiesEnd(BooleanSupplier shouldKeepTicking, CallbackInfo ci) {
+        TickPhases.end(Phase.BLOCK_ENTITIES, (ServerWorld) (Object) this);
+    }
+
+    // The block tick scheduler runs first, the fluid tick scheduler second
+    @Inject(method = "tick", at = @At(value = "INVOKE",
+            target = "Lnet/minecraft/world/tick/WorldTickScheduler;tick(JILjava/util/function/BiConsumer;)V",
+            ordinal = 0))
+    private void onBlockTicksStart(BooleanSupplier shouldKeepTicking, CallbackInfo ci) {
+        BlockUpdateQueues.beginScheduler(Scheduler.BLOCK);
+    }
+
+    @Inject(method = "tick", at = @At(value = "INVOKE",
+            target = "Lnet/minecraft/world/tick/WorldTickScheduler;tick(JILjava/util/function/BiConsumer;)V",
+            ordinal = 0, shift = At.Shift.AFTER))
+    private void onBlockTicksEnd(BooleanSupplier shouldKeepTicking, CallbackInfo ci) {
+        BlockUpdateQueues.endScheduler((ServerWorld) (Object) this, Scheduler.BLOCK);
+    }
+
+    @Inject(method = "tick", at = @At(value = "INVOKE",
+            target = "Lnet/minecraft/world/tick/WorldTickScheduler;tick(JILjava/util/function/BiConsumer;)V",
+            ordinal = 1))
+    private void onFluidTicksStart(BooleanSupplier shouldKeepTicking, CallbackInfo ci) {
+        BlockUpdateQueues.beginScheduler(Scheduler.FLUID);
+    }
+
+    @Inject(method = "tick", at = @At(value = "INVOKE",
+            target = "Lnet/minecraft/world/tick/WorldTickScheduler;tick(JILjava/util/function/BiConsumer;)V",
+            ordinal = 1, shift = At.Shift.AFTER))
+    private void onFluidTicksEnd(BooleanSupplier shouldKeepTicking, CallbackInfo ci) {
+        BlockUpdateQueues.endScheduler((ServerWorld) (Object) this, Scheduler.FLUID);
+    }
+
+    // Passengers are ticked from within their vehicle's tick, so their cost is counted towards the vehicle
+    @Inject(method = "tickEntity", at = @At("HEAD"))
+    private void onEntityTickStart(Entity entity, CallbackInfo ci) {
+        EntityTickCosts.begin((ServerWorld) (Object) this, entity);
+    }
+
+    @Inject(method = "tickEntity", at = @At("RETURN"))
+    private void onEntityTickEnd(Entity entity, CallbackInfo ci) {
+        EntityTickCosts.end();
+    }
+
+    @Inject(method = "tickChunk", at = @At("HEAD"))
+    private void onChunkTickStart(WorldChunk chunk, int randomTickSpeed, CallbackInfo ci) {
+        ChunkTickCosts.beginRandomTicks();
+    }
+
+    @Inject(method = "tickChunk", at = @At("RETURN"))
+    private void onChunkTickEnd(WorldChunk chunk, int randomTickSpeed, CallbackInfo ci) {
+        ChunkTickCosts.endRandomTicks((ServerWorld) (Object) this, chunk.getPos());
+    }
+
+    @Inject(method = "tickBlock", at = @At("HEAD"))
+    private void onScheduledBlockTickStart(BlockPos pos, Block block, CallbackInfo ci) {
+        BlockUpdateQueues.scheduledTick((ServerWorld) (Object) this, Scheduler.BLOCK, pos);
+        ChunkTickCosts.beginScheduledTick();
+    }
+
+    @Inject(method = "tickBlock", at = @At("RETURN"))
+    private void onScheduledBlockTickEnd(BlockPos pos, Block block, CallbackInfo ci) {
+        ChunkTickCosts.endScheduledTick((ServerWorld) (Object) this, pos);
+    }
+
+    @Inject(method = "tickFluid", at = @At("HEAD"))
+    private void onScheduledFluidTickStart(BlockPos pos, Fluid fluid, CallbackInfo ci) {
+        BlockUpdateQueues.scheduledTick((ServerWorld) (Object) this, Scheduler.FLUID, pos);
+        ChunkTickCosts.beginScheduledTick();
+    }
+
+    @Inject(method = "tickFluid", at = @At("RETURN"))
+    private void onScheduledFluidTickEnd(BlockPos pos, Fluid fluid, CallbackInfo ci) {
+        ChunkTickCosts.endScheduledTick((ServerWorld) (Object) this, pos);
+    }
+}
@@ -0,0 +1,40 @@
+package net.nevq.nevformance.mixin;
+
+import net.minecraft.world.storage.StorageIoWorker;
+import net.minecraft.world.storage.StorageKey;
+import net.nevq.nevformance.instrumentation.RegionIoTimings;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Counts save requests waiting in a storage I/O worker until they are written
+ */
+@Mixin(StorageIoWorker.class)
+public class StorageIoWorkerMixin {
+
+    @Unique
+    private StorageKey nevformance$storageKey;
+
+    @Inject(method = "<init>", at = @At("RETURN"))
+    private void onInit(StorageKey storageKey, Path directory, boolean dsync, CallbackInfo ci) {
+        nevformance$storageKey = storageKey;
+    }
+
+    // Matches every overload; the ones delegating to another are counted once
+    @Inject(method = "setResult", at = @At("HEAD"))
+    private void onSetResultStart(CallbackInfoReturnable<CompletableFuture<Void>> cir) {
+        RegionIoTimings.enterWriteRequest();
+    }
+
+    @Inject(method = "setResult", at = @At("RETURN"))
+    private void onSetResultEnd(CallbackInfoReturnable<CompletableFuture<Void>> cir) {
+        RegionIoTimings.exitWriteRequest(nevformance$storageKey.dimension(), cir.getReturnValue());
+    }
+}
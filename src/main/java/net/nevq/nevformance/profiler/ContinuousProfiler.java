@@ -0,0 +1,425 @@
+package net.nevq.nevformance.profiler;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2LongMap;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Always-on sampling profiler of the server thread and the worker threads
+ * that generate and load chunks.
+ *
+ * A daemon thread takes the stack of each profiled thread at a fixed rate.
+ * Frames and stacks are interned into {@link FrameTable} and
+ * {@link StackTable}, and sample counts per stack id are kept in time
+ * buckets of a ring covering the retained history, so memory is bounded by
+ * the number of distinct stacks rather than by the number of samples. Once
+ * the stack table is full it is rebuilt from the stacks still referenced by
+ * retained buckets; samples that still do not fit are counted as dropped.
+ *
+ * Stacks are taken with {@link Thread#getStackTrace()}, which pauses only the
+ * sampled thread. Worker threads are only sampled while runnable, so idle
+ * workers do not drown the profile; the server thread is always sampled, so
+ * time spent waiting for the next tick shows up as such. The CPU time the
+ * sampler thread spends taking and recording samples is reported by
+ * {@link #getOverheadNanos()}.
+ */
+public class ContinuousProfiler {
+
+    /**
+     * Threads that are profiled together
+     */
+    public enum Target {
+        SERVER("server"),
+        WORKERS("workers");
+
+        private final String name;
+
+        Target(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The target with a name, or null if there is none
+         */
+        public static Target fromName(String name) {
+            for (Target target : TARGETS) {
+                if (target.name.equals(name)) {
+                    return target;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final Target[] TARGETS = Target.values();
+
+    // Leaf-most frames kept per sample; deeper stacks get a truncation marker as their root
+    private static final int MAX_DEPTH = 256;
+    private static final int MAX_STACKS = 32768;
+    private static final String TRUNCATED_FRAME = "[truncated]";
+
+    // Threads of the main worker executor, which runs chunk generation and loading
+    private static final String WORKER_THREAD_PREFIX = "Worker-Main-";
+    private static final long WORKER_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * Sample counts per stack id of one time bucket
+     */
+    private static final class Bucket {
+        long start = Long.MIN_VALUE;
+        final Int2IntOpenHashMap[] counts = new Int2IntOpenHashMap[TARGETS.length];
+        final long[] samples = new long[TARGETS.length];
+
+        Bucket() {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new Int2IntOpenHashMap();
+            }
+        }
+
+        void reset(long start) {
+            this.start = start;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i].clear();
+                samples[i] = 0;
+            }
+        }
+    }
+
+    private final Thread serverThread;
+    private final long sampleIntervalNanos;
+    private final long bucketMillis;
+    private final Bucket[] buckets;
+
+    // Guarded by this
+    private FrameTable frames = new FrameTable();
+    private StackTable stacks = new StackTable(MAX_STACKS);
+    private final int[] frameBuffer = new int[MAX_DEPTH + 1];
+    private long compactedBucket = Long.MIN_VALUE;
+
+    // Sampler thread only
+    private Thread[] workers = new Thread[0];
+    private Thread[] threadScratch = new Thread[256];
+    private long nextWorkerRefresh = 0;
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final boolean cpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported();
+
+    // Written by the sampler thread only
+    private volatile long sampleCount = 0;
+    private volatile long droppedSamples = 0;
+    private volatile long overheadNanos = 0;
+    private volatile int workerCount = 0;
+
+    private final long startNanos = System.nanoTime();
+    private volatile boolean running = false;
+    private Thread sampler;
+
+    /**
+     * @param serverThread The server thread
+     * @param sampleIntervalMs Time between samples of each thread
+     * @param bucketSeconds Time resolution of the retained history
+     * @param retentionMinutes How long samples are kept
+     */
+    public ContinuousProfiler(Thread serverThread, int sampleIntervalMs, int bucketSeconds, int retentionMinutes) {
+        this.serverThread = serverThread;
+        this.sampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, sampleIntervalMs));
+        this.bucketMillis = TimeUnit.SECONDS.toMillis(Math.max(1, bucketSeconds));
+        int bucketCount = (int) Math.max(1, TimeUnit.MINUTES.toMillis(Math.max(1, retentionMinutes)) / bucketMillis);
+        this.buckets = new Bucket[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    /**
+     * Starts the sampler thread
+     */
+    public synchronized void start() {
+        if (sampler != null) {
+            return;
+        }
+        running = true;
+        sampler = new Thread(this::run, "Nevformance Profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    /**
+     * Stops the sampler thread; the retained history can still be queried
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            thread = sampler;
+            sampler = null;
+        }
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long next = System.nanoTime();
+        while (running) {
+            long begin = System.nanoTime();
+            long beginCpu = cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : 0;
+            if (begin - nextWorkerRefresh >= 0) {
+                refreshWorkers();
+                nextWorkerRefresh = begin + WORKER_REFRESH_NANOS;
+            }
+
+            long now = System.currentTimeMillis();
+            sample(serverThread, Target.SERVER, now);
+            for (Thread worker : workers) {
+                if (worker.getState() == Thread.State.RUNNABLE) {
+                    sample(worker, Target.WORKERS, now);
+                }
+            }
+            overheadNanos = overheadNanos + (cpuTimeSupported
+                    ? threadBean.getCurrentThreadCpuTime() - beginCpu
+                    : System.nanoTime() - begin);
+
+            next += sampleIntervalNanos;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+            } else {
+                // Fell behind, e.g. after a long pause; skip the missed samples rather than catching up
+                next = System.nanoTime();
+            }
+        }
+    }
+
+    private void refreshWorkers() {
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        int count;
+        while ((count = root.enumerate(threadScratch, true)) == threadScratch.length) {
+            threadScratch = new Thread[threadScratch.length * 2];
+        }
+
+        List<Thread> found = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (threadScratch[i].getName().startsWith(WORKER_THREAD_PREFIX)) {
+                found.add(threadScratch[i]);
+            }
+        }
+        Arrays.fill(threadScratch, 0, count, null);
+        workers = found.toArray(new Thread[0]);
+        workerCount = workers.length;
+    }
+
+    private void sample(Thread thread, Target target, long now) {
+        StackTraceElement[] trace = thread.getStackTrace();
+        if (trace.length == 0) {
+            // The thread has terminated
+            return;
+        }
+
+        synchronized (this) {
+            Bucket bucket = bucket(now);
+            int stack = intern(trace);
+            if (stack < 0 && compactedBucket != bucket.start) {
+                compactedBucket = bucket.start;
+                compact(now);
+                stack = intern(trace);
+            }
+            if (stack < 0) {
+                droppedSamples = droppedSamples + 1;
+                return;
+            }
+            bucket.counts[target.ordinal()].addTo(stack, 1);
+            bucket.samples[target.ordinal()]++;
+            sampleCount = sampleCount + 1;
+        }
+    }
+
+    private int intern(StackTraceElement[] trace) {
+        int depth = Math.min(trace.length, MAX_DEPTH);
+        int length = 0;
+        if (trace.length > MAX_DEPTH) {
+            frameBuffer[length++] = frames.intern(TRUNCATED_FRAME, "");
+        }
+        // Stack traces start at the leaf; interned stacks start at the root
+        for (int i = depth - 1; i >= 0; i--) {
+            StackTraceElement frame = trace[i];
+            frameBuffer[length++] = frames.intern(frame.getClassName(), frame.getMethodName());
+        }
+        return stacks.intern(frameBuffer, length);
+    }
+
+    private Bucket bucket(long now) {
+        long start = now - Math.floorMod(now, bucketMillis);
+        Bucket bucket = buckets[(int) Math.floorMod(start / bucketMillis, (long) buckets.length)];
+        if (bucket.start != start) {
+            bucket.reset(start);
+        }
+        return bucket;
+    }
+
+    /**
+     * Rebuilds the frame and stack tables from the stacks referenced by
+     * retained buckets, dropping everything else
+     */
+    private void compact(long now) {
+        long oldest = now - (long) buckets.length * bucketMillis;
+        FrameTable compactedFrames = new FrameTable();
+        StackTable compactedStacks = new StackTable(MAX_STACKS);
+        int[] remapped = new int[stacks.size()];
+        Arrays.fill(remapped, -1);
+        int[] buffer = new int[MAX_DEPTH + 1];
+
+        for (Bucket bucket : buckets) {
+            if (bucket.start == Long.MIN_VALUE) {
+                continue;
+            }
+            if (bucket.start < oldest) {
+                bucket.reset(Long.MIN_VALUE);
+                continue;
+            }
+            for (int t = 0; t < TARGETS.length; t++) {
+                Int2IntOpenHashMap compactedCounts = new Int2IntOpenHashMap(bucket.counts[t].size());
+                for (Int2IntMap.Entry entry : bucket.counts[t].int2IntEntrySet()) {
+                    int old = entry.getIntKey();
+                    if (remapped[old] < 0) {
+                        int length = stacks.length(old);
+                        for (int d = 0; d < length; d++) {
+                            int frame = stacks.frame(old, d);
+                            buffer[d] = compactedFrames.intern(frames.className(frame), frames.methodName(frame));
+                        }
+                        remapped[old] = compactedStacks.intern(buffer, length);
+                    }
+                    compactedCounts.put(remapped[old], entry.getIntValue());
+                }
+                bucket.counts[t] = compactedCounts;
+            }
+        }
+
+        frames = compactedFrames;
+        stacks = compactedStacks;
+    }
+
+    /**
+     * Aggregates the samples of the buckets overlapping a time window
+     * @param from Start of the window, in epoch milliseconds
+     * @param to End of the window, in epoch milliseconds
+     * @param target Threads to aggregate, or null for all profiled threads
+     * @return The aggregated stacks
+     */
+    public synchronized ProfileWindow query(long from, long to, Target target) {
+        Int2LongOpenHashMap totals = new Int2LongOpenHashMap();
+        long samples = 0;
+        long windowStart = Long.MAX_VALUE;
+        long windowEnd = Long.MIN_VALUE;
+
+        for (Bucket bucket : buckets) {
+            if (bucket.start == Long.MIN_VALUE || bucket.start + bucketMillis <= from || bucket.start > to) {
+                continue;
+            }
+            windowStart = Math.min(windowStart, bucket.start);
+            windowEnd = Math.max(windowEnd, bucket.start + bucketMillis);
+            for (Target t : TARGETS) {
+                if (target != null && t != target) {
+                    continue;
+                }
+                for (Int2IntMap.Entry entry : bucket.counts[t.ordinal()].int2IntEntrySet()) {
+                    totals.addTo(entry.getIntKey(), entry.getIntValue());
+                }
+                samples += bucket.samples[t.ordinal()];
+            }
+        }
+
+        List<int[]> stackFrames = new ArrayList<>(totals.size());
+        long[] counts = new long[totals.size()];
+        int i = 0;
+        for (Int2LongMap.Entry entry : totals.int2LongEntrySet()) {
+            int stack = entry.getIntKey();
+            int[] path = new int[stacks.length(stack)];
+            for (int d = 0; d < path.length; d++) {
+                path[d] = stacks.frame(stack, d);
+            }
+            stackFrames.add(path);
+            counts[i++] = entry.getLongValue();
+        }
+
+        if (samples == 0) {
+            windowStart = from;
+            windowEnd = to;
+        }
+        return new ProfileWindow(frames.names(), stackFrames, counts, samples, windowStart, windowEnd);
+    }
+
+    public double getSampleIntervalMs() {
+        return sampleIntervalNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return Time span of the retained history, in milliseconds
+     */
+    public long getRetentionMs() {
+        return buckets.length * bucketMillis;
+    }
+
+    /**
+     * @return Number of samples recorded since the profiler was created
+     */
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return Number of samples lost because the stack table was full
+     */
+    public long getDroppedSamples() {
+        return droppedSamples;
+    }
+
+    /**
+     * @return CPU nanoseconds the sampler thread spent taking and recording
+     *         samples, or wall clock nanoseconds if thread CPU time is not supported
+     */
+    public long getOverheadNanos() {
+        return overheadNanos;
+    }
+
+    /**
+     * @return Sampling CPU time as a percentage of one core since the profiler was created
+     */
+    public double getAverageOverheadPercent() {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed > 0 ? overheadNanos * 100.0 / elapsed : 0;
+    }
+
+    public synchronized int getDistinctStacks() {
+        return stacks.size();
+    }
+
+    /**
+     * @return Number of worker threads found at the last refresh
+     */
+    public int getWorkerCount() {
+        return workerCount;
+    }
+}
@@ -0,0 +1,101 @@
+package net.nevq.nevformance.profiler;
+
+import java.util.Arrays;
+
+/**
+ * Interns stack frames by class and method name into dense ids.
+ *
+ * Lookups hash and compare the strings of a {@link StackTraceElement} in
+ * place, so a frame that was seen before costs no allocation; only a new
+ * frame stores its names and builds its display name. Line numbers are
+ * ignored so that samples of one method aggregate.
+ */
+final class FrameTable {
+    private String[] classNames = new String[1024];
+    private String[] methodNames = new String[1024];
+    private String[] names = new String[1024];
+    private int size = 0;
+
+    // Open addressing, slot holds id + 1, 0 is empty
+    private int[] slots = new int[2048];
+
+    /**
+     * @return Id of the frame of a class and method, adding it if new
+     */
+    int intern(String className, String methodName) {
+        int mask = slots.length - 1;
+        for (int slot = hash(className, methodName) & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                return add(slot, className, methodName);
+            }
+            int id = entry - 1;
+            if (classNames[id].equals(className) && methodNames[id].equals(methodName)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * @return Display name of a frame, {@code class.method}
+     */
+    String name(int id) {
+        return names[id];
+    }
+
+    String className(int id) {
+        return classNames[id];
+    }
+
+    String methodName(int id) {
+        return methodNames[id];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return Copy of the display names, indexed by frame id
+     */
+    String[] names() {
+        return Arrays.copyOf(names, size);
+    }
+
+    private int add(int slot, String className, String methodName) {
+        int id = size++;
+        if (id == classNames.length) {
+            classNames = Arrays.copyOf(classNames, id * 2);
+            methodNames = Arrays.copyOf(methodNames, id * 2);
+            names = Arrays.copyOf(names, id * 2);
+        }
+        classNames[id] = className;
+        methodNames[id] = methodName;
+        names[id] = methodName.isEmpty() ? className : className + "." + methodName;
+        slots[slot] = id + 1;
+
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return id;
+    }
+
+    private void rehash(int capacity) {
+        int[] rehashed = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hash(classNames[id], methodNames[id]) & mask;
+            while (rehashed[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed[slot] = id + 1;
+        }
+        slots = rehashed;
+    }
+
+    private static int hash(String className, String methodName) {
+        // String hash codes are cached, so this does not touch the characters again
+        int h = className.hashCode() * 31 + methodName.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,135 @@
+package net.nevq.nevformance.profiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stacks sampled by the {@link ContinuousProfiler} during a time window, with
+ * the number of samples of each. The window is widened to whole buckets.
+ */
+public class ProfileWindow {
+    private final String[] frameNames;
+    private final List<int[]> stacks;
+    private final long[] counts;
+    private final long samples;
+    private final long from;
+    private final long to;
+
+    ProfileWindow(String[] frameNames, List<int[]> stacks, long[] counts, long samples, long from, long to) {
+        this.frameNames = frameNames;
+        this.stacks = stacks;
+        this.counts = counts;
+        this.samples = samples;
+        this.from = from;
+        this.to = to;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return Start of the covered buckets, in epoch milliseconds
+     */
+    public long getFrom() {
+        return from;
+    }
+
+    /**
+     * @return End of the covered buckets, in epoch milliseconds
+     */
+    public long getTo() {
+        return to;
+    }
+
+    public int getDistinctStacks() {
+        return stacks.size();
+    }
+
+    /**
+     * @return The stacks in the folded format read by flame graph tools: one
+     *         line per stack, frames from the root separated by {@code ;},
+     *         then a space and the sample count; most sampled first
+     */
+    public String toFolded() {
+        Integer[] order = new Integer[stacks.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+
+        StringBuilder folded = new StringBuilder();
+        for (int i : order) {
+            int[] stack = stacks.get(i);
+            for (int d = 0; d < stack.length; d++) {
+                if (d > 0) {
+                    folded.append(';');
+                }
+                folded.append(frameNames[stack[d]]);
+            }
+            folded.append(' ').append(counts[i]).append('\n');
+        }
+        return folded.toString();
+    }
+
+    /**
+     * @return The stacks merged into a call tree rooted at a node named
+     *         {@code all}, in the nested name/value/children form used by
+     *         d3-flame-graph
+     */
+    public FlameNode toFlameGraph() {
+        FlameNode root = new FlameNode("all");
+        for (int i = 0; i < stacks.size(); i++) {
+            long count = counts[i];
+            FlameNode node = root;
+            node.value += count;
+            for (int frame : stacks.get(i)) {
+                node = node.child(frameNames[frame]);
+                node.value += count;
+            }
+        }
+        return root;
+    }
+
+    /**
+     * A frame of the call tree and the number of samples that passed through it
+     */
+    public static class FlameNode {
+        private final String name;
+        private long value;
+        private final List<FlameNode> children = new ArrayList<>();
+        private transient Map<String, FlameNode> childIndex;
+
+        FlameNode(String name) {
+            this.name = name;
+        }
+
+        private FlameNode child(String childName) {
+            if (childIndex == null) {
+                childIndex = new HashMap<>();
+            }
+            FlameNode child = childIndex.get(childName);
+            if (child == null) {
+                child = new FlameNode(childName);
+                childIndex.put(childName, child);
+                children.add(child);
+            }
+            return child;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getValue() {
+            return value;
+        }
+
+        public List<FlameNode> getChildren() {
+            return children;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package net.nevq.nevformance.profiler;
+
+import java.util.Arrays;
+
+/**
+ * Interns stacks, as sequences of frame ids from the root frame to the leaf,
+ * into dense ids.
+ *
+ * Frames of all stacks are kept back to back in one pool. A lookup hashes and
+ * compares the caller's buffer against the pool, so a stack that was seen
+ * before costs no allocation. The table holds at most a fixed number of
+ * stacks; {@link #intern} returns -1 once it is full.
+ */
+final class StackTable {
+    private final int maxStacks;
+
+    private int[] pool = new int[16384];
+    private int poolSize = 0;
+    private int[] offsets = new int[1024];
+    private int[] lengths = new int[1024];
+    private int[] hashes = new int[1024];
+    private int size = 0;
+
+    // Open addressing, slot holds id + 1, 0 is empty
+    private int[] slots = new int[2048];
+
+    StackTable(int maxStacks) {
+        this.maxStacks = maxStacks;
+    }
+
+    /**
+     * @param frames Frame ids, root first
+     * @param length Number of frames used in the buffer
+     * @return Id of the stack, or -1 if it is new and the table is full
+     */
+    int intern(int[] frames, int length) {
+        int hash = hash(frames, length);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                return size < maxStacks ? add(slot, hash, frames, length) : -1;
+            }
+            int id = entry - 1;
+            if (hashes[id] == hash && lengths[id] == length
+                    && Arrays.equals(pool, offsets[id], offsets[id] + length, frames, 0, length)) {
+                return id;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isFull() {
+        return size >= maxStacks;
+    }
+
+    int length(int id) {
+        return lengths[id];
+    }
+
+    /**
+     * @return Frame id at a depth of a stack, 0 being the root
+     */
+    int frame(int id, int depth) {
+        return pool[offsets[id] + depth];
+    }
+
+    private int add(int slot, int hash, int[] frames, int length) {
+        int id = size++;
+        if (id == offsets.length) {
+            offsets = Arrays.copyOf(offsets, id * 2);
+            lengths = Arrays.copyOf(lengths, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        if (poolSize + length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+        }
+        System.arraycopy(frames, 0, pool, poolSize, length);
+        offsets[id] = poolSize;
+        lengths[id] = length;
+        hashes[id] = hash;
+        poolSize += length;
+        slots[slot] = id + 1;
+
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return id;
+    }
+
+    private void rehash(int capacity) {
+        int[] rehashed = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (rehashed[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed[slot] = id + 1;
+        }
+        slots = rehashed;
+    }
+
+    private static int hash(int[] frames, int length) {
+        int h = 1;
+        for (int i = 0; i < length; i++) {
+            h = h * 31 + frames[i];
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,5 +1,6 @@
 package net.nevq.nevformance.util;
 
+import net.minecraft.registry.RegistryKey;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.Identifier;
 import net.minecraft.world.World;
@@ -22,7 +23,16 @@ public class MetricsUtil {
      * @return A safe string identifier for the dimension
      */
     public static String getDimensionKey(ServerWorld world) {
-        Identifier dimensionId = world.getRegistryKey().getValue();
+        return getDimensionKey(world.getRegistryKey());
+    }
+
+    /**
+     * Gets a safe dimension key for use in metric names
+     * @param dimension The registry key of the dimension
+     * @return A safe string identifier for the dimension
+     */
+    public static String getDimensionKey(RegistryKey<World> dimension) {
+        Identifier dimensionId = dimension.getValue();
         String namespace = dimensionId.getNamespace();
         String path = dimensionId.getPath();
 
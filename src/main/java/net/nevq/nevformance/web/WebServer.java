@@ -1,9 +1,22 @@
 package net.nevq.nevformance.web;
 
 import net.nevq.nevformance.Nevformance;
+import net.nevq.nevformance.instrumentation.EntityTickCosts;
+import net.nevq.nevformance.metrics.MetricHistory;
 import net.nevq.nevformance.metrics.MetricPoint;
+import net.nevq.nevformance.metrics.MetricSlice;
 import net.nevq.nevformance.metrics.MetricsManager;
+import net.nevq.nevformance.metrics.collectors.BlockUpdateMetricsCollector;
+import net.nevq.nevformance.metrics.collectors.ChunkHeatmap;
+import net.nevq.nevformance.metrics.collectors.EntityTickCostCollector;
+import net.nevq.nevformance.metrics.collectors.NetworkMetricsCollector;
+import net.nevq.nevformance.metrics.collectors.PlayerMetricsCollector;
 import net.nevq.nevformance.metrics.collectors.SystemMetricsCollector;
+import net.nevq.nevformance.metrics.query.QueryEngine;
+import net.nevq.nevformance.metrics.query.QueryException;
+import net.nevq.nevformance.metrics.query.QueryResult;
+import net.nevq.nevformance.profiler.ContinuousProfiler;
+import net.nevq.nevformance.profiler.ProfileWindow;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.sun.net.httpserver.HttpExchange;
@@ -18,6 +31,7 @@ import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -44,6 +58,7 @@ public class WebServer {
 
     private final int port;
     private final MetricsManager metricsManager;
+    private final QueryEngine queryEngine;
     private HttpServer server;
     private final Gson gson = new GsonBuilder()
             .setPrettyPrinting()
@@ -52,6 +67,7 @@ public class WebServer {
     public WebServer(int port, MetricsManager metricsManager) {
         this.port = port;
         this.metricsManager = metricsManager;
+        this.queryEngine = new QueryEngine(metricsManager.getRegistry());
     }
 
     /**
@@ -73,8 +89,17 @@ public class WebServer {
             // API endpoints
             server.createContext("/api/metrics", new MetricsHandler());
             server.createContext("/api/metrics/list", new MetricListHandler());
+            server.createContext("/api/metrics/history", new MetricHistoryHandler());
+            server.createContext("/api/query", new QueryHandler());
             server.createContext("/api/hotspots", new EntityHotspotsHandler());
+            server.createContext("/api/entities/tickcost", new EntityTickCostHandler());
+            server.createContext("/api/chunks/heatmap", new ChunkHeatmapHandler());
+            server.createContext("/api/chunks/scheduledticks", new ScheduledTicksHandler());
             server.createContext("/api/lagspikes", new LagSpikesHandler());
+            server.createContext("/api/profile", new ProfileHandler());
+            server.createContext("/api/threads/allocation", new ThreadAllocationHandler());
+            server.createContext("/api/network/packets", new NetworkPacketsHandler());
+            server.createContext("/api/players", new PlayersHandler());
             server.createContext("/api/config", new ConfigHandler());
 
             // Start the server
@@ -260,9 +285,24 @@ public class WebServer {
                 String metricPrefix = params.getOrDefault("prefix", null);
                 String metricName = params.getOrDefault("metric", null);
 
+                // Optional time range in milliseconds, either bound may be omitted
+                boolean ranged = params.containsKey("from") || params.containsKey("to");
+                long from = params.containsKey("from") ? Long.parseLong(params.get("from")) : Long.MIN_VALUE;
+                long to = params.containsKey("to") ? Long.parseLong(params.get("to")) : Long.MAX_VALUE;
+
                 // Get metrics based on request
                 Map<String, List<MetricPoint>> metrics;
-                if (metricName != null) {
+                if (ranged) {
+                    if (metricName != null) {
+                        metrics = new HashMap<>();
+                        MetricSlice slice = metricsManager.getMetricRange(metricName, from, to);
+                        if (slice != null && !slice.isEmpty()) {
+                            metrics.put(metricName, slice.asList());
+                        }
+                    } else {
+                        metrics = metricsManager.getMetricsByPrefix(metricPrefix != null ? metricPrefix : "", from, to);
+                    }
+                } else if (metricName != null) {
                     // Return a single specific metric
                     metrics = new HashMap<>();
                     List<MetricPoint> points = metricsManager.getMetric(metricName);
@@ -282,6 +322,8 @@ public class WebServer {
 
                 // Send the response
                 sendJsonResponse(exchange, 200, jsonResponse);
+            } catch (NumberFormatException e) {
+                sendErrorResponse(exchange, 400, "Invalid 'from' or 'to' parameter");
             } catch (Exception e) {
                 LOGGER.error("Error handling metrics request", e);
                 sendErrorResponse(exchange, 500, "Internal Server Error");
@@ -289,6 +331,107 @@ public class WebServer {
         }
     }
 
+    /**
+     * Handles long-range history requests, which are served from rollup tiers
+     * when the range reaches beyond the raw history
+     */
+    private class MetricHistoryHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+                sendErrorResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+
+            try {
+                Map<String, String> params = parseQueryParameters(exchange.getRequestURI().getQuery());
+                String metricName = params.get("metric");
+                if (metricName == null) {
+                    sendErrorResponse(exchange, 400, "Missing 'metric' parameter");
+                    return;
+                }
+
+                // Default to the last hour
+                long to = params.containsKey("to") ? Long.parseLong(params.get("to")) : System.currentTimeMillis();
+                long from = params.containsKey("from") ? Long.parseLong(params.get("from")) : to - 3_600_000L;
+
+                MetricHistory history = metricsManager.getMetricHistory(metricName, from, to);
+                if (history == null) {
+                    sendErrorResponse(exchange, 404, "Unknown metric: " + metricName);
+                    return;
+                }
+
+                sendJsonResponse(exchange, 200, gson.toJson(history));
+            } catch (NumberFormatException e) {
+                sendErrorResponse(exchange, 400, "Invalid 'from' or 'to' parameter");
+            } catch (Exception e) {
+                LOGGER.error("Error handling metric history request", e);
+                sendErrorResponse(exchange, 500, "Internal Server Error");
+            }
+        }
+    }
+
+    /**
+     * Handles query expression requests, evaluated at one time ({@code time})
+     * or at regular steps over a range ({@code start}, {@code end}, {@code step})
+     */
+    private class QueryHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+                sendErrorResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+
+            try {
+                // Expressions contain characters that must be percent-encoded, so decode from the raw query
+                Map<String, String> params = parseQueryParameters(exchange.getRequestURI().getRawQuery());
+                String query = params.get("query");
+                if (query == null || query.isBlank()) {
+                    sendErrorResponse(exchange, 400, "Missing 'query' parameter");
+                    return;
+                }
+                query = URLDecoder.decode(query, StandardCharsets.UTF_8);
+
+                QueryResult result;
+                if (params.containsKey("start")) {
+                    long start = Long.parseLong(params.get("start"));
+                    long end = params.containsKey("end") ? Long.parseLong(params.get("end")) : System.currentTimeMillis();
+                    long step = params.containsKey("step")
+                            ? Long.parseLong(params.get("step"))
+                            : defaultStep(start, end);
+                    result = queryEngine.queryRange(query, start, end, step);
+                } else {
+                    long time = params.containsKey("time") ? Long.parseLong(params.get("time")) : System.currentTimeMillis();
+                    result = queryEngine.query(query, time);
+                }
+
+                sendJsonResponse(exchange, 200, gson.toJson(result));
+            } catch (NumberFormatException e) {
+                sendErrorResponse(exchange, 400, "Invalid 'time', 'start', 'end' or 'step' parameter");
+            } catch (QueryException e) {
+                sendErrorResponse(exchange, 400, e.getMessage());
+            } catch (Exception e) {
+                LOGGER.error("Error handling query request", e);
+                sendErrorResponse(exchange, 500, "Internal Server Error");
+            }
+        }
+
+        /**
+         * Picks a step that splits a range into about 250 evaluations, but no
+         * finer than the collection interval
+         */
+        private long defaultStep(long start, long end) {
+            long range;
+            try {
+                range = Math.subtractExact(end, start);
+            } catch (ArithmeticException e) {
+                throw new QueryException("Time range is too large");
+            }
+            return Math.max(Nevformance.getInstance().getConfigManager().getMetricCollectionIntervalMs(), range / 250);
+        }
+    }
+
     /**
      * Handles entity hotspots retrieval requests
      */
@@ -317,6 +460,142 @@ public class WebServer {
         }
     }
 
+    /**
+     * Handles entity tick cost requests, returning entity types ranked by the
+     * time spent ticking them
+     */
+    private class EntityTickCostHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+                sendErrorResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+
+            try {
+                Map<String, String> params = parseQueryParameters(exchange.getRequestURI().getQuery());
+                int limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit")) : 20;
+                if (limit <= 0) {
+                    sendErrorResponse(exchange, 400, "'limit' must be positive");
+                    return;
+                }
+
+                List<EntityTickCostCollector.EntityTickCost> ranking =
+                        metricsManager.getEntityTickCostCollector().getRanking();
+
+                Map<String, Object> response = new HashMap<>();
+                response.put("types", ranking.subList(0, Math.min(limit, ranking.size())));
+                response.put("count", ranking.size());
+                response.put("sampleInterval", EntityTickCosts.getSampleInterval());
+
+                sendJsonResponse(exchange, 200, gson.toJson(response));
+            } catch (NumberFormatException e) {
+                sendErrorResponse(exchange, 400, "Invalid 'limit' parameter");
+            } catch (Exception e) {
+                LOGGER.error("Error handling entity tick cost request", e);
+                sendErrorResponse(exchange, 500, "Internal Server Error");
+            }
+        }
+    }
+
+    /**
+     * Handles chunk heatmap requests, returning the measured tick time of the
+     * most expensive chunks of each dimension in nanoseconds per tick
+     */
+    private class ChunkHeatmapHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+                sendErrorResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+
+            try {
+                Map<String, String> params = parseQueryParameters(exchange.getRequestURI().getQuery());
+                String dimension = params.get("dimension");
+                int limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit")) : 4096;
+                if (limit <= 0) {
+                    sendErrorResponse(exchange, 400, "'limit' must be positive");
+                    return;
+                }
+
+                Map<String, ChunkHeatmap> heatmaps = metricsManager.getWorldCollector().getChunkHeatmaps();
+                if (dimension != null && !heatmaps.containsKey(dimension)) {
+                    sendErrorResponse(exchange, 404, "Unknown dimension: " + dimension);
+                    return;
+                }
+
+                Map<String, Object> dimensions = new TreeMap<>();
+                heatmaps.forEach((key, heatmap) -> {
+                    if (dimension == null || dimension.equals(key)) {
+                        List<ChunkHeatmap.Cell> cells = heatmap.getCells();
+                        dimensions.put(key, cells.subList(0, Math.min(limit, cells.size())));
+                    }
+                });
+
+                Map<String, Object> response = new HashMap<>();
+                response.put("dimensions", dimensions);
+                response.put("unit", "ns/tick");
+
+                sendJsonResponse(exchange, 200, gson.toJson(response));
+            } catch (NumberFormatException e) {
+                sendErrorResponse(exchange, 400, "Invalid 'limit' parameter");
+            } catch (Exception e) {
+                LOGGER.error("Error handling chunk heatmap request", e);
+                sendErrorResponse(exchange, 500, "Internal Server Error");
+            }
+        }
+    }
+
+    /**
+     * Handles scheduled tick requests, returning the chunks of each dimension
+     * by scheduled block and fluid ticks run per tick over the latest interval
+     */
+    private class ScheduledTicksHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+                sendErrorResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+
+            try {
+                Map<String, String> params = parseQueryParameters(exchange.getRequestURI().getQuery());
+                String dimension = params.get("dimension");
+                int limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit")) : 50;
+                if (limit <= 0) {
+                    sendErrorResponse(exchange, 400, "'limit' must be positive");
+                    return;
+                }
+
+                Map<String, List<BlockUpdateMetricsCollector.ChunkTicks>> topChunks =
+                        metricsManager.getBlockUpdateCollector().getTopChunks();
+                if (dimension != null && !topChunks.containsKey(dimension)) {
+                    sendErrorResponse(exchange, 404, "Unknown dimension: " + dimension);
+                    return;
+                }
+
+                Map<String, Object> dimensions = new TreeMap<>();
+                topChunks.forEach((key, chunks) -> {
+                    if (dimension == null || dimension.equals(key)) {
+                        dimensions.put(key, chunks.subList(0, Math.min(limit, chunks.size())));
+                    }
+                });
+
+                Map<String, Object> response = new HashMap<>();
+                response.put("dimensions", dimensions);
+                response.put("unit", "ticks/tick");
+
+                sendJsonResponse(exchange, 200, gson.toJson(response));
+            } catch (NumberFormatException e) {
+                sendErrorResponse(exchange, 400, "Invalid 'limit' parameter");
+            } catch (Exception e) {
+                LOGGER.error("Error handling scheduled ticks request", e);
+                sendErrorResponse(exchange, 500, "Internal Server Error");
+            }
+        }
+    }
+
     /**
      * Handles metric list retrieval requests
      */
@@ -361,9 +640,23 @@ public class WebServer {
             }
 
             try {
+                // Stack profiles are included unless profiles=false
+                Map<String, String> params = parseQueryParameters(exchange.getRequestURI().getQuery());
+                boolean includeProfiles = !"false".equalsIgnoreCase(params.get("profiles"));
+
                 // Get lag spikes from system metrics collector
                 List<SystemMetricsCollector.LagSpike> lagSpikes =
                         metricsManager.getSystemCollector().getRecentLagSpikes();
+                if (!includeProfiles) {
+                    List<SystemMetricsCollector.LagSpike> withoutProfiles = new ArrayList<>(lagSpikes.size());
+                    for (SystemMetricsCollector.LagSpike spike : lagSpikes) {
+                        SystemMetricsCollector.LagSpike copy =
+                                new SystemMetricsCollector.LagSpike(spike.timestamp, spike.tickTimeMs, null);
+                        copy.jfrDump = spike.jfrDump;
+                        withoutProfiles.add(copy);
+                    }
+                    lagSpikes = withoutProfiles;
+                }
 
                 // Create response object
                 Map<String, Object> response = new HashMap<>();
@@ -382,6 +675,200 @@ public class WebServer {
         }
     }
 
+    /**
+     * Handles thread allocation requests, returning the threads that allocated
+     * the most during the last collection interval
+     */
+    private class ThreadAllocationHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+                sendErrorResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+
+            try {
+                List<SystemMetricsCollector.ThreadAllocation> threads =
+                        metricsManager.getSystemCollector().getTopAllocatingThreads();
+
+                Map<String, Object> response = new HashMap<>();
+                response.put("threads", threads);
+                response.put("count", threads.size());
+                response.put("unit", "MB/s");
+
+                sendJsonResponse(exchange, 200, gson.toJson(response));
+            } catch (Exception e) {
+                LOGGER.error("Error handling thread allocation request", e);
+                sendErrorResponse(exchange, 500, "Internal Server Error");
+            }
+        }
+    }
+
+    /**
+     * Handles network packet requests, listing the packet types of both
+     * directions by traffic over the latest collection interval
+     */
+    private class NetworkPacketsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+                sendErrorResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+
+            try {
+                Map<String, String> queryParams = parseQueryParameters(exchange.getRequestURI().getQuery());
+                String direction = queryParams.get("direction");
+                int limit = queryParams.containsKey("limit") ? Integer.parseInt(queryParams.get("limit")) : 50;
+
+                List<NetworkMetricsCollector.PacketTypeRate> packetTypes = new ArrayList<>();
+                for (NetworkMetricsCollector.PacketTypeRate rate : metricsManager.getNetworkCollector().getPacketTypeRates()) {
+                    if (packetTypes.size() >= limit) {
+                        break;
+                    }
+                    if (direction == null || direction.equals(rate.direction)) {
+                        packetTypes.add(rate);
+                    }
+                }
+
+                Map<String, Object> response = new HashMap<>();
+                response.put("packetTypes", packetTypes);
+                response.put("count", packetTypes.size());
+                response.put("unit", "KB/s");
+
+                sendJsonResponse(exchange, 200, gson.toJson(response));
+            } catch (NumberFormatException e) {
+                sendErrorResponse(exchange, 400, "Invalid 'limit' parameter");
+            } catch (Exception e) {
+                LOGGER.error("Error handling network packets request", e);
+                sendErrorResponse(exchange, 500, "Internal Server Error");
+            }
+        }
+    }
+
+    /**
+     * Handles player requests, ranking the online players by the cost
+     * attributed to them: tick time by default, or the {@code sort} parameter
+     * ({@code chunks}, {@code generation} or {@code network})
+     */
+    private class PlayersHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+                sendErrorResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+
+            try {
+                Map<String, String> queryParams = parseQueryParameters(exchange.getRequestURI().getQuery());
+                int limit = queryParams.containsKey("limit") ? Integer.parseInt(queryParams.get("limit")) : 50;
+                String sort = queryParams.getOrDefault("sort", "tick_cost");
+
+                Comparator<PlayerMetricsCollector.PlayerCost> order;
+                switch (sort) {
+                    case "tick_cost" -> order = Comparator.comparingDouble(cost -> cost.tickCostMs);
+                    case "chunks" -> order = Comparator.comparingDouble(cost -> cost.loadedChunks);
+                    case "generation" -> order = Comparator.comparingDouble(cost -> cost.chunksGeneratedPerMinute);
+                    case "network" -> order = Comparator.comparingDouble(cost -> cost.sentKbPerSecond);
+                    default -> {
+                        sendErrorResponse(exchange, 400, "Invalid 'sort' parameter");
+                        return;
+                    }
+                }
+
+                List<PlayerMetricsCollector.PlayerCost> players =
+                        new ArrayList<>(metricsManager.getPlayerCollector().getPlayerCosts());
+                players.sort(order.reversed());
+                if (players.size() > limit) {
+                    players = new ArrayList<>(players.subList(0, Math.max(0, limit)));
+                }
+
+                Map<String, Object> response = new HashMap<>();
+                response.put("players", players);
+                response.put("count", players.size());
+                response.put("sort", sort);
+
+                sendJsonResponse(exchange, 200, gson.toJson(response));
+            } catch (NumberFormatException e) {
+                sendErrorResponse(exchange, 400, "Invalid 'limit' parameter");
+            } catch (Exception e) {
+                LOGGER.error("Error handling players request", e);
+                sendErrorResponse(exchange, 500, "Internal Server Error");
+            }
+        }
+    }
+
+    /**
+     * Handles profile requests, aggregating the continuous profiler samples of
+     * a time window into folded stacks ({@code format=folded}) or a flame
+     * graph tree (the default). The window defaults to the last minute.
+     */
+    private class ProfileHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+                sendErrorResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+
+            try {
+                ContinuousProfiler profiler = metricsManager.getProfiler();
+                if (profiler == null) {
+                    sendErrorResponse(exchange, 503, "Profiler is not running");
+                    return;
+                }
+
+                Map<String, String> params = parseQueryParameters(exchange.getRequestURI().getQuery());
+                long to = params.containsKey("to") ? Long.parseLong(params.get("to")) : System.currentTimeMillis();
+                long from = params.containsKey("from") ? Long.parseLong(params.get("from")) : to - 60000;
+                if (from > to) {
+                    sendErrorResponse(exchange, 400, "'from' must not be after 'to'");
+                    return;
+                }
+
+                ContinuousProfiler.Target target = null;
+                String thread = params.get("thread");
+                if (thread != null) {
+                    target = ContinuousProfiler.Target.fromName(thread);
+                    if (target == null) {
+                        sendErrorResponse(exchange, 400, "Unknown thread: " + thread);
+                        return;
+                    }
+                }
+
+                ProfileWindow window = profiler.query(from, to, target);
+                String format = params.getOrDefault("format", "json");
+                if (format.equals("folded")) {
+                    sendTextResponse(exchange, 200, window.toFolded());
+                    return;
+                }
+                if (!format.equals("json")) {
+                    sendErrorResponse(exchange, 400, "Unknown format: " + format);
+                    return;
+                }
+
+                Map<String, Object> response = new HashMap<>();
+                response.put("from", window.getFrom());
+                response.put("to", window.getTo());
+                response.put("thread", target != null ? target.getName() : "all");
+                response.put("samples", window.getSamples());
+                response.put("stacks", window.getDistinctStacks());
+                response.put("sampleIntervalMs", profiler.getSampleIntervalMs());
+                response.put("retentionMs", profiler.getRetentionMs());
+                response.put("overheadPercent", profiler.getAverageOverheadPercent());
+                response.put("droppedSamples", profiler.getDroppedSamples());
+                response.put("root", window.toFlameGraph());
+
+                sendJsonResponse(exchange, 200, gson.toJson(response));
+            } catch (NumberFormatException e) {
+                sendErrorResponse(exchange, 400, "Invalid 'from' or 'to' parameter");
+            } catch (Exception e) {
+                LOGGER.error("Error handling profile request", e);
+                sendErrorResponse(exchange, 500, "Internal Server Error");
+            }
+        }
+    }
+
     /**
      * Handles configuration retrieval requests
      */
@@ -427,6 +914,20 @@ public class WebServer {
         }
     }
 
+    /**
+     * Helper method to send plain text responses
+     */
+    private void sendTextResponse(HttpExchange exchange, int statusCode, String text) throws IOException {
+        byte[] responseBytes = text.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(statusCode, responseBytes.length);
+
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(responseBytes);
+        }
+    }
+
     /**
      * Helper method to parse query parameters
      */
@@ -145,7 +145,7 @@ export function updateAnalyticsCharts(appState) {
     // Fetch server performance metrics
     Promise.all([
         fetch('/api/metrics?metric=server.tick_time').then(response => response.json()),
-        fetch('/api/lagspikes').then(response => response.json())
+        fetch('/api/lagspikes?profiles=false').then(response => response.json())
     ])
         .then(([tickTimeData, lagSpikeData]) => {
             updateTickDistributionChart(tickTimeData);
@@ -9,10 +9,18 @@ let chunksByDimensionChart = null;
 let chunkRateChart = null;
 let blockEntitiesChart = null;
 
+// Latest heatmap response and the layout it was drawn with, for hover lookups
+let heatmapData = null;
+let heatmapLayout = null;
+
 /**
  * Initializes all chunk tab charts
  */
 export function initChunkCharts() {
+    // Chunk tick time heatmap, drawn directly on its canvas
+    document.getElementById('heatmap-dimension').addEventListener('change', drawChunkHeatmap);
+    document.getElementById('chunk-heatmap').addEventListener('mousemove', showHeatmapCell);
+
     // Chunks by Dimension chart
     const chunkDimCtx = document.getElementById('chunks-by-dimension-chart').getContext('2d');
     chunksByDimensionChart = new Chart(chunkDimCtx, {
@@ -136,13 +144,15 @@ export function updateChunkCharts(appState) {
     Promise.all([
         fetch('/api/metrics?prefix=world').then(response => response.json()),
         fetch('/api/metrics?prefix=chunks').then(response => response.json()),
-        fetch('/api/metrics?prefix=block_entities').then(response => response.json())
+        fetch('/api/metrics?prefix=block_entities').then(response => response.json()),
+        fetch('/api/chunks/heatmap').then(response => response.json())
     ])
-        .then(([worldData, chunkData, blockEntityData]) => {
+        .then(([worldData, chunkData, blockEntityData, heatmap]) => {
             updateChunksByDimensionChart(worldData);
             updateChunkRateChart(chunkData, appState.selectedTimeRange);
             updateBlockEntitiesChart(blockEntityData);
-            updateActiveChunksTable(worldData);
+            updateChunkHeatmap(heatmap);
+            updateActiveChunksTable(heatmap);
         })
         .catch(error => {
             console.error('Error fetching chunk metrics:', error);
@@ -289,68 +299,123 @@ function updateBlockEntitiesChart(blockEntityData) {
 }
 
 /**
- * Updates the active chunks table
+ * Stores the latest heatmap, refreshes the dimension selector and redraws
+ * @param {Object} heatmap Response of /api/chunks/heatmap
  */
-function updateActiveChunksTable(worldData) {
-    const table = document.getElementById('active-chunks-table').querySelector('tbody');
-    table.innerHTML = '';
+function updateChunkHeatmap(heatmap) {
+    heatmapData = heatmap;
+
+    const select = document.getElementById('heatmap-dimension');
+    const dimensions = Object.keys(heatmap.dimensions || {});
+    const current = select.value;
+    if (select.options.length !== dimensions.length ||
+        dimensions.some((dimension, i) => select.options[i].value !== dimension)) {
+        select.innerHTML = dimensions
+            .map(dimension => `<option value="${dimension}">${formatDimensionName(dimension)}</option>`)
+            .join('');
+        select.value = dimensions.includes(current) ? current
+            : dimensions.includes('minecraft.overworld') ? 'minecraft.overworld' : dimensions[0] || '';
+    }
 
-    console.log('World data keys:', Object.keys(worldData));
+    drawChunkHeatmap();
+}
 
-    // Check if we have any active chunk data
-    const hasActiveChunkData = Object.keys(worldData).some(key => key.includes('.active_chunk.'));
+/**
+ * Draws the measured tick time of each chunk of the selected dimension.
+ * Colors use a log scale from the cheapest to the most expensive chunk.
+ */
+function drawChunkHeatmap() {
+    const canvas = document.getElementById('chunk-heatmap');
+    const width = canvas.clientWidth;
+    const height = canvas.clientHeight;
+    canvas.width = width;
+    canvas.height = height;
+
+    const ctx = canvas.getContext('2d');
+    ctx.clearRect(0, 0, width, height);
+    heatmapLayout = null;
+
+    const dimension = document.getElementById('heatmap-dimension').value;
+    const cells = heatmapData && heatmapData.dimensions ? heatmapData.dimensions[dimension] || [] : [];
+    if (cells.length === 0) {
+        ctx.fillStyle = '#6c757d';
+        ctx.textAlign = 'center';
+        ctx.fillText('No chunk tick time measured yet', width / 2, height / 2);
+        return;
+    }
 
-    if (!hasActiveChunkData) {
-        // No active chunk data available yet
-        const row = document.createElement('tr');
-        row.innerHTML = `<td colspan="4">No active chunk data available. This might be populated as more data is collected.</td>`;
-        table.appendChild(row);
+    const minX = Math.min(...cells.map(cell => cell.x));
+    const maxX = Math.max(...cells.map(cell => cell.x));
+    const minZ = Math.min(...cells.map(cell => cell.z));
+    const maxZ = Math.max(...cells.map(cell => cell.z));
+    const size = Math.max(1, Math.min(width / (maxX - minX + 1), height / (maxZ - minZ + 1)));
+    const offsetX = (width - (maxX - minX + 1) * size) / 2;
+    const offsetZ = (height - (maxZ - minZ + 1) * size) / 2;
+
+    const logMin = Math.log(Math.min(...cells.map(cell => cell.totalNanos)));
+    const logMax = Math.log(Math.max(...cells.map(cell => cell.totalNanos)));
+
+    cells.forEach(cell => {
+        const t = logMax > logMin ? (Math.log(cell.totalNanos) - logMin) / (logMax - logMin) : 1;
+        // Yellow for the cheapest chunks through to red for the most expensive
+        ctx.fillStyle = `hsla(${Math.round(60 * (1 - t))}, 100%, 50%, ${0.35 + 0.65 * t})`;
+        ctx.fillRect(offsetX + (cell.x - minX) * size, offsetZ + (cell.z - minZ) * size, size, size);
+    });
+
+    heatmapLayout = { cells, minX, minZ, size, offsetX, offsetZ };
+}
+
+/**
+ * Shows the chunk under the cursor as the canvas tooltip
+ */
+function showHeatmapCell(event) {
+    const canvas = event.target;
+    if (!heatmapLayout) {
+        canvas.title = '';
         return;
     }
 
-    const activeChunks = [];
+    const { cells, minX, minZ, size, offsetX, offsetZ } = heatmapLayout;
+    const x = Math.floor((event.offsetX - offsetX) / size) + minX;
+    const z = Math.floor((event.offsetY - offsetZ) / size) + minZ;
+    const cell = cells.find(c => c.x === x && c.z === z);
 
-    // Extract active chunks from metrics
-    Object.entries(worldData).forEach(([key, points]) => {
-        if (!key.includes('.active_chunk.') || points.length === 0) return;
+    canvas.title = cell
+        ? `Chunk ${cell.x}, ${cell.z}: ${formatMs(cell.totalNanos)} ms/tick\n` +
+          `Entities ${formatMs(cell.entityNanos)}, block entities ${formatMs(cell.blockEntityNanos)}, ` +
+          `random ticks ${formatMs(cell.randomTickNanos)}, scheduled ticks ${formatMs(cell.scheduledTickNanos)}`
+        : `Chunk ${x}, ${z}`;
+}
 
-        console.log('Processing active chunk key:', key);
+/**
+ * Formats nanoseconds per tick as milliseconds
+ */
+function formatMs(nanos) {
+    return (nanos / 1e6).toFixed(3);
+}
 
-        // Parse key format: world.dimension.active_chunk.x.z
-        const parts = key.split('.');
-        if (parts.length >= 5) {
-            const dimension = `${parts[1]}.${parts[2]}`;
-            const x = parseInt(parts[4]);
-            const z = parseInt(parts[5]);
-            const activityScore = points[points.length - 1].value;
-
-            // Find block entity count for this chunk
-            let blockEntityCount = 0;
-            const blockEntityKey = `world.${dimension}.chunk.${x}.${z}.block_entities`;
-            if (worldData[blockEntityKey] && worldData[blockEntityKey].length > 0) {
-                blockEntityCount = worldData[blockEntityKey][worldData[blockEntityKey].length - 1].value;
-            }
+/**
+ * Updates the active chunks table with the most expensive chunks of all dimensions
+ * @param {Object} heatmap Response of /api/chunks/heatmap
+ */
+function updateActiveChunksTable(heatmap) {
+    const table = document.getElementById('active-chunks-table').querySelector('tbody');
+    table.innerHTML = '';
 
-            activeChunks.push({
-                dimension,
-                x,
-                z,
-                activityScore,
-                blockEntityCount
-            });
-        }
+    const activeChunks = [];
+    Object.entries(heatmap.dimensions || {}).forEach(([dimension, cells]) => {
+        cells.forEach(cell => activeChunks.push({ dimension, ...cell }));
     });
 
     if (activeChunks.length === 0) {
-        // No active chunks after processing
         const row = document.createElement('tr');
-        row.innerHTML = `<td colspan="4">No active chunks detected. This might be populated as more chunk activity data is collected.</td>`;
+        row.innerHTML = `<td colspan="7">No chunk tick time measured yet. This will be populated as the server ticks.</td>`;
         table.appendChild(row);
         return;
     }
 
-    // Sort by activity score (descending) and take top 15
-    activeChunks.sort((a, b) => b.activityScore - a.activityScore)
+    // Sort by measured tick time (descending) and take top 15
+    activeChunks.sort((a, b) => b.totalNanos - a.totalNanos)
         .slice(0, 15)
         .forEach(chunk => {
             const row = document.createElement('tr');
@@ -358,10 +423,13 @@ function updateActiveChunksTable(worldData) {
             row.innerHTML = `
                 <td>${formatDimensionName(chunk.dimension)}</td>
                 <td>${chunk.x}, ${chunk.z}</td>
-                <td>${chunk.activityScore.toFixed(2)}</td>
-                <td>${chunk.blockEntityCount}</td>
+                <td>${formatMs(chunk.totalNanos)}</td>
+                <td>${formatMs(chunk.entityNanos)}</td>
+                <td>${formatMs(chunk.blockEntityNanos)}</td>
+                <td>${formatMs(chunk.randomTickNanos)}</td>
+                <td>${formatMs(chunk.scheduledTickNanos)}</td>
             `;
 
             table.appendChild(row);
         });
-}
\ No newline at end of file
+}
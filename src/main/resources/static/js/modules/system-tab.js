@@ -7,11 +7,53 @@ let cpuChart = null;
 let threadsChart = null;
 let gcChart = null;
 let memoryPoolsChart = null;
+let tickPhasesChart = null;
+
+// Colors for the stacked tick phase datasets, assigned in order
+const PHASE_COLORS = [
+    '54, 162, 235',
+    '75, 192, 192',
+    '153, 102, 255',
+    '255, 159, 64',
+    '255, 205, 86',
+    '255, 99, 132',
+    '201, 203, 207'
+];
 
 /**
  * Initializes all system tab charts
  */
 export function initSystemCharts() {
+    // MSPT breakdown chart, one stacked area per tick phase
+    const tickPhasesCtx = document.getElementById('tick-phases-chart').getContext('2d');
+    tickPhasesChart = new Chart(tickPhasesCtx, {
+        type: 'line',
+        data: {
+            labels: [],
+            datasets: []
+        },
+        options: {
+            responsive: true,
+            maintainAspectRatio: false,
+            scales: {
+                y: {
+                    stacked: true,
+                    beginAtZero: true,
+                    title: {
+                        display: true,
+                        text: 'Milliseconds per Tick'
+                    }
+                },
+                x: {
+                    title: {
+                        display: true,
+                        text: 'Time'
+                    }
+                }
+            }
+        }
+    });
+
     // CPU Usage chart
     const cpuCtx = document.getElementById('cpu-chart').getContext('2d');
     cpuChart = new Chart(cpuCtx, {
@@ -193,9 +235,11 @@ export function updateSystemCharts(appState) {
         fetch('/api/metrics?prefix=cpu').then(response => response.json()),
         fetch('/api/metrics?prefix=threads').then(response => response.json()),
         fetch('/api/metrics?prefix=gc').then(response => response.json()),
-        fetch('/api/metrics?prefix=memory').then(response => response.json())
+        fetch('/api/metrics?prefix=memory').then(response => response.json()),
+        fetch('/api/metrics?prefix=server.tick.phase.').then(response => response.json())
     ])
-        .then(([cpuData, threadsData, gcData, memoryData]) => {
+        .then(([cpuData, threadsData, gcData, memoryData, tickPhaseData]) => {
+            updateTickPhasesChart(tickPhaseData, appState.selectedTimeRange);
             updateCpuChart(cpuData, appState.selectedTimeRange);
             updateThreadsChart(threadsData, appState.selectedTimeRange);
             updateGcChart(gcData, appState.selectedTimeRange);
@@ -206,6 +250,46 @@ export function updateSystemCharts(appState) {
         });
 }
 
+/**
+ * Updates the stacked MSPT breakdown chart. World time is shown per dimension;
+ * together with connections, autosave and other it adds up to the tick time.
+ * @param {Object} tickPhaseData Tick phase metrics data
+ * @param {string} timeRange Selected time range
+ */
+function updateTickPhasesChart(tickPhaseData, timeRange) {
+    const phases = [];
+    Object.keys(tickPhaseData).sort().forEach(key => {
+        const match = key.match(/^server\.tick\.phase\.world\.(.+)\.mean$/);
+        if (match) {
+            phases.push({ label: match[1], key });
+        }
+    });
+    ['connections', 'autosave', 'other'].forEach(phase => {
+        const key = `server.tick.phase.${phase}.mean`;
+        if (tickPhaseData[key]) {
+            phases.push({ label: phase, key });
+        }
+    });
+    if (phases.length === 0) return;
+
+    const series = phases.map(phase => filterMetricsByTimeRange(tickPhaseData[phase.key]));
+    const longest = series.reduce((a, b) => (b.length > a.length ? b : a), []);
+
+    tickPhasesChart.data.labels = longest.map(point => formatTime(point.timestamp));
+    tickPhasesChart.data.datasets = phases.map((phase, i) => {
+        const color = PHASE_COLORS[i % PHASE_COLORS.length];
+        return {
+            label: phase.label,
+            borderColor: `rgba(${color}, 1)`,
+            backgroundColor: `rgba(${color}, 0.4)`,
+            data: series[i].map(point => point.value),
+            tension: 0.2,
+            fill: true
+        };
+    });
+    tickPhasesChart.update();
+}
+
 /**
  * Updates the CPU usage chart
  * @param {Object} cpuData CPU metrics data
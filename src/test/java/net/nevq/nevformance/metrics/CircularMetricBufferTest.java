@@ -0,0 +1,97 @@
+package net.nevq.nevformance.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static net.nevq.nevformance.metrics.MetricRegistryTest.assertConsistent;
+import static net.nevq.nevformance.metrics.MetricRegistryTest.assertNoFailures;
+import static net.nevq.nevformance.metrics.MetricRegistryTest.valueAt;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the seqlock of the buffer: readers racing a single writer must only
+ * ever see whole, ordered samples
+ */
+class CircularMetricBufferTest {
+
+    @Test
+    void readersNeverSeeTornWrites() throws Exception {
+        // Small capacity so blocks are sealed and dropped all the time
+        CircularMetricBuffer buffer = new CircularMetricBuffer(300);
+        int samples = 200_000;
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 4; r++) {
+            int reader = r;
+            readers.add(new Thread(() -> {
+                long[] timestamps = new long[300];
+                double[] values = new double[300];
+                try {
+                    while (writing.get()) {
+                        switch (reader) {
+                            case 0 -> assertConsistent(timestamps, values, buffer.copyPoints(timestamps, values));
+                            case 1 -> {
+                                MetricSlice slice = buffer.getRange(0, Long.MAX_VALUE);
+                                List<MetricPoint> points = slice.asList();
+                                for (int i = 1; i < points.size(); i++) {
+                                    assertEquals(points.get(i - 1).timestamp() + 1, points.get(i).timestamp());
+                                    assertEquals(valueAt(points.get(i).timestamp()), points.get(i).value());
+                                }
+                            }
+                            case 2 -> {
+                                MetricPoint latest = buffer.getLatestPoint();
+                                if (latest != null) {
+                                    assertEquals(valueAt(latest.timestamp()), latest.value());
+                                }
+                            }
+                            default -> buffer.scanRange(0, Long.MAX_VALUE,
+                                    (timestamp, value) -> assertEquals(valueAt(timestamp), value));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+
+        for (long t = 1; t <= samples; t++) {
+            buffer.add(t, valueAt(t));
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNoFailures(failures);
+
+        assertEquals(samples, buffer.getLatestPoint().timestamp());
+        assertTrue(buffer.getSize() >= 300);
+    }
+
+    @Test
+    void overlappingWritersDoNotCorruptTheBuffer() throws Exception {
+        CircularMetricBuffer buffer = new CircularMetricBuffer(100_000);
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+        // Two collection cycles overlapping on the same series; the write CAS serializes them
+        MetricRegistryTest.runConcurrently(2, thread -> {
+            for (int i = 0; i < 20_000; i++) {
+                buffer.add(thread, thread);
+            }
+        }, failures);
+
+        assertEquals(40_000, buffer.getSize());
+        long[] timestamps = new long[40_000];
+        double[] values = new double[40_000];
+        assertEquals(40_000, buffer.copyPoints(timestamps, values));
+        for (int i = 0; i < timestamps.length; i++) {
+            assertEquals(timestamps[i], values[i]);
+        }
+    }
+}
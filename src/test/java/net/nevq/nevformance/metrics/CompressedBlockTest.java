@@ -0,0 +1,157 @@
+package net.nevq.nevformance.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressedBlockTest {
+    private static final int POINTS = 120;
+
+    @Test
+    void constantValues() {
+        long[] timestamps = regularTimestamps(POINTS, 1_700_000_000_000L, 1000);
+        double[] values = new double[POINTS];
+        Arrays.fill(values, 20.0);
+        assertRoundTrip(timestamps, values, POINTS);
+    }
+
+    @Test
+    void slowlyDriftingValues() {
+        long[] timestamps = regularTimestamps(POINTS, 1_700_000_000_000L, 1000);
+        double[] values = new double[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            values[i] = 1000 + i * 3;
+        }
+        assertRoundTrip(timestamps, values, POINTS);
+    }
+
+    @Test
+    void randomValues() {
+        Random random = new Random(11);
+        long[] timestamps = regularTimestamps(POINTS, 1_700_000_000_000L, 1000);
+        double[] values = new double[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            values[i] = random.nextDouble() * Math.pow(10, random.nextInt(20) - 10) * (random.nextBoolean() ? 1 : -1);
+        }
+        assertRoundTrip(timestamps, values, POINTS);
+    }
+
+    @Test
+    void specialValues() {
+        double[] specials = {Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0.0, -0.0,
+                Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, Double.longBitsToDouble(0x7ff8_0000_0000_0001L),
+                1.0, Double.NaN, Double.NaN, Double.POSITIVE_INFINITY};
+        long[] timestamps = regularTimestamps(specials.length, 0, 1000);
+        assertRoundTrip(timestamps, specials, specials.length);
+    }
+
+    @Test
+    void irregularTimestampsHitEveryBucket() {
+        // Delta-of-deltas: 0, both ends of the 7, 9 and 12 bit buckets, just outside them, and the 64-bit escape
+        long[] deltaOfDeltas = {0, 1, -1, 64, -63, 65, -64, 256, -255, 257, -256, 2048, -2047, 2049, -2048,
+                1_000_000, -1_000_000, Long.MAX_VALUE / 4, -(Long.MAX_VALUE / 4), 0, 0};
+        long[] timestamps = new long[deltaOfDeltas.length + 1];
+        long delta = 1000;
+        timestamps[0] = 1_700_000_000_000L;
+        for (int i = 0; i < deltaOfDeltas.length; i++) {
+            delta += deltaOfDeltas[i];
+            timestamps[i + 1] = timestamps[i] + delta;
+        }
+        double[] values = new double[timestamps.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i * 0.25;
+        }
+        assertRoundTrip(timestamps, values, timestamps.length);
+
+        // Extremes of the first timestamp
+        assertRoundTrip(new long[]{Long.MIN_VALUE, 0, Long.MAX_VALUE}, new double[]{1, 2, 3}, 3);
+    }
+
+    @Test
+    void singlePoint() {
+        CompressedBlock block = assertRoundTrip(new long[]{123_456_789L}, new double[]{Double.NaN}, 1);
+        assertEquals(123_456_789L, block.getFirstTimestamp());
+        assertEquals(123_456_789L, block.getLastTimestamp());
+    }
+
+    @Test
+    void encodesOnlyTheRequestedPrefix() {
+        long[] timestamps = regularTimestamps(10, 5000, 1000);
+        double[] values = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        CompressedBlock block = assertRoundTrip(timestamps, values, 4);
+        assertEquals(8000, block.getLastTimestamp());
+
+        long[] timestampsOut = new long[2];
+        double[] valuesOut = new double[2];
+        assertEquals(2, block.decode(1, 2, timestampsOut, valuesOut, 0));
+        assertArrayEquals(new long[]{6000, 7000}, timestampsOut);
+        assertArrayEquals(new double[]{2, 3}, valuesOut);
+    }
+
+    /**
+     * Checks the sizes stated in the class comment for series sampled once per
+     * collection interval: about 0.4 bytes per point for a steady gauge, under
+     * 2 for a counter moving in whole steps, and about 3 for a gauge that
+     * jitters in hundredths a fifth of the time
+     */
+    @Test
+    void typicalSeriesTakeAFewBytesPerPoint() {
+        long[] timestamps = regularTimestamps(POINTS, 1_700_000_000_000L, 1000);
+        Random random = new Random(5);
+
+        double[] steady = new double[POINTS];
+        double[] counter = new double[POINTS];
+        double[] tps = new double[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            steady[i] = 20.0;
+            counter[i] = 4000 + i * 7;
+            tps[i] = random.nextInt(10) < 8 ? 20.0 : Math.round((19 + random.nextDouble()) * 100) / 100.0;
+        }
+
+        assertTrue(bytesPerPoint(timestamps, steady) <= 1, "Steady gauge: " + bytesPerPoint(timestamps, steady));
+        assertTrue(bytesPerPoint(timestamps, counter) <= 2, "Counter: " + bytesPerPoint(timestamps, counter));
+        assertTrue(bytesPerPoint(timestamps, tps) <= 3.5, "TPS-like gauge: " + bytesPerPoint(timestamps, tps));
+
+        // Even incompressible values stay below the 16 bytes of the raw columns
+        double[] noise = new double[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            noise[i] = random.nextDouble();
+        }
+        assertTrue(bytesPerPoint(timestamps, noise) < 16, "Random values: " + bytesPerPoint(timestamps, noise));
+    }
+
+    private static double bytesPerPoint(long[] timestamps, double[] values) {
+        CompressedBlock block = assertRoundTrip(timestamps, values, values.length);
+        return (double) block.getEncodedBytes() / values.length;
+    }
+
+    private static long[] regularTimestamps(int count, long start, long interval) {
+        long[] timestamps = new long[count];
+        for (int i = 0; i < count; i++) {
+            timestamps[i] = start + i * interval;
+        }
+        return timestamps;
+    }
+
+    private static CompressedBlock assertRoundTrip(long[] timestamps, double[] values, int count) {
+        CompressedBlock block = CompressedBlock.encode(timestamps, values, count);
+        assertEquals(count, block.getCount());
+        assertEquals(timestamps[0], block.getFirstTimestamp());
+        assertEquals(timestamps[count - 1], block.getLastTimestamp());
+
+        CompressedBlock.Decoder decoder = block.decoder();
+        for (int i = 0; i < count; i++) {
+            assertTrue(decoder.next(), "Decoder ended after " + i + " of " + count + " points");
+            assertEquals(i, decoder.index());
+            assertEquals(timestamps[i], decoder.timestamp(), "Timestamp of point " + i);
+            // Bit-exact, so NaN payloads and the sign of zero survive
+            assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(decoder.value()),
+                    "Value of point " + i);
+        }
+        assertFalse(decoder.next());
+        return block;
+    }
+}
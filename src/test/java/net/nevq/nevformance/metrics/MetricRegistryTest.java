@@ -0,0 +1,217 @@
+package net.nevq.nevformance.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hammers the registry with concurrent series creation, recording and
+ * iteration, the way collectors and web handlers use it
+ */
+class MetricRegistryTest {
+    private static final int THREADS = 8;
+    private static final int NAMES = 2000;
+    private static final int HISTORY = 600;
+
+    private static MetricRegistry newRegistry() {
+        return new MetricRegistry(name -> new CircularMetricBuffer(HISTORY));
+    }
+
+    @Test
+    void concurrentCreationYieldsOneHandlePerName() throws Exception {
+        MetricRegistry registry = newRegistry();
+        AtomicReferenceArray<MetricHandle> seen = new AtomicReferenceArray<>(NAMES);
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+        runConcurrently(THREADS, thread -> {
+            // Every thread creates every name, starting at a different offset to spread the races
+            for (int i = 0; i < NAMES; i++) {
+                int index = (i + thread * NAMES / THREADS) % NAMES;
+                MetricHandle handle = registry.getOrCreate("world.overworld.chunk." + index);
+                if (!seen.compareAndSet(index, null, handle) && seen.get(index) != handle) {
+                    failures.add(new AssertionError("Two handles for name " + index));
+                }
+            }
+        }, failures);
+
+        assertEquals(NAMES, registry.size());
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < NAMES; i++) {
+            MetricHandle handle = seen.get(i);
+            assertTrue(ids.add(handle.getId()), "Duplicate id " + handle.getId());
+            assertSame(handle, registry.get(handle.getId()));
+            assertSame(handle, registry.get(handle.getName()));
+        }
+    }
+
+    @Test
+    void recordAndReadFromManyThreads() throws Exception {
+        MetricRegistry registry = newRegistry();
+        int writers = THREADS / 2;
+        int samples = 5000;
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch writersDone = new CountDownLatch(writers);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            threads.add(new Thread(() -> {
+                try {
+                    // Each writer owns its series, but creates them while the others create theirs
+                    for (int t = 1; t <= samples; t++) {
+                        for (int s = 0; s < 10; s++) {
+                            registry.getOrCreate("writer." + writer + ".series." + s).record(t, valueAt(t));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                } finally {
+                    writersDone.countDown();
+                }
+            }));
+        }
+        for (int r = 0; r < THREADS - writers; r++) {
+            threads.add(new Thread(() -> {
+                long[] timestamps = new long[HISTORY];
+                double[] values = new double[HISTORY];
+                try {
+                    while (writing.get()) {
+                        for (MetricHandle handle : registry.getHandles()) {
+                            assertSame(handle, registry.get(handle.getId()));
+                            int count = handle.getBuffer().copyPoints(timestamps, values);
+                            assertConsistent(timestamps, values, count);
+                        }
+                        for (String name : registry.getNames()) {
+                            assertNotNull(name);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+
+        threads.forEach(Thread::start);
+        assertTrue(writersDone.await(60, TimeUnit.SECONDS), "Writers did not finish");
+        writing.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNoFailures(failures);
+
+        assertEquals(writers * 10, registry.size());
+        for (MetricHandle handle : registry.getHandles()) {
+            MetricPoint latest = handle.getBuffer().getLatestPoint();
+            assertEquals(samples, latest.timestamp());
+            assertTrue(handle.getBuffer().getSize() >= HISTORY);
+        }
+    }
+
+    @Test
+    void evictionWhileRecording() throws Exception {
+        MetricRegistry registry = newRegistry();
+        registry.setLimits(Integer.MAX_VALUE, List.of(new MetricRegistry.SeriesQuota("players.", 50)));
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+        runConcurrently(THREADS, thread -> {
+            for (int i = 0; i < 2000; i++) {
+                registry.getOrCreate("players.p" + thread + "_" + i + ".tick_cost").record(i, valueAt(i));
+                if (thread == 0 && i % 50 == 0) {
+                    registry.enforceLimits();
+                }
+            }
+        }, failures);
+
+        registry.enforceLimits();
+        assertEquals(50, registry.size());
+        for (MetricHandle handle : registry.getHandles()) {
+            assertFalse(handle.isEvicted());
+            assertSame(handle, registry.get(handle.getId()));
+        }
+    }
+
+    @Test
+    void evictedIdsAreReused() {
+        MetricRegistry registry = newRegistry();
+        registry.setLimits(Integer.MAX_VALUE, List.of(new MetricRegistry.SeriesQuota("players.", 10)));
+
+        // Names churn far beyond the quota, but the id space stays at the quota plus one batch
+        for (int round = 0; round < 1000; round++) {
+            for (int i = 0; i < 10; i++) {
+                registry.getOrCreate("players.p" + round + "_" + i).record(round, i);
+            }
+            registry.enforceLimits();
+        }
+
+        assertEquals(10, registry.size());
+        int maxId = 0;
+        for (MetricHandle handle : registry.getHandles()) {
+            assertSame(handle, registry.get(handle.getId()));
+            maxId = Math.max(maxId, handle.getId());
+        }
+        assertTrue(maxId < 20, "Ids were not reused, highest is " + maxId);
+        assertNull(registry.get(20));
+    }
+
+    /**
+     * Checks that a copy holds whole samples in order, so no read was torn
+     */
+    static void assertConsistent(long[] timestamps, double[] values, int count) {
+        for (int i = 0; i < count; i++) {
+            assertEquals(valueAt(timestamps[i]), values[i], "Torn sample at timestamp " + timestamps[i]);
+            if (i > 0) {
+                assertEquals(timestamps[i - 1] + 1, timestamps[i], "Gap or reordering in copied points");
+            }
+        }
+    }
+
+    static double valueAt(long timestamp) {
+        return timestamp * 0.5 + 1;
+    }
+
+    interface ThreadBody {
+        void run(int thread) throws Exception;
+    }
+
+    static void runConcurrently(int threadCount, ThreadBody body, ConcurrentLinkedQueue<Throwable> failures)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    body.run(thread);
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNoFailures(failures);
+    }
+
+    static void assertNoFailures(ConcurrentLinkedQueue<Throwable> failures) {
+        if (!failures.isEmpty()) {
+            AssertionError error = new AssertionError(failures.size() + " thread(s) failed");
+            failures.forEach(error::addSuppressed);
+            throw error;
+        }
+    }
+}
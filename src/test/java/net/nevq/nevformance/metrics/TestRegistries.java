@@ -0,0 +1,16 @@
+package net.nevq.nevformance.metrics;
+
+/**
+ * Creates registries for tests outside this package, which cannot reach the buffer types
+ */
+public final class TestRegistries {
+    private TestRegistries() {
+    }
+
+    /**
+     * @return A registry whose series keep their latest {@code historySize} points, without rollups
+     */
+    public static MetricRegistry create(int historySize) {
+        return new MetricRegistry(name -> new CircularMetricBuffer(historySize));
+    }
+}
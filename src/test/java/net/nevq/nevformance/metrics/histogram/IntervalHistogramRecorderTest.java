@@ -0,0 +1,61 @@
+package net.nevq.nevformance.metrics.histogram;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntervalHistogramRecorderTest {
+
+    @Test
+    void intervalsSplitTheRecordedValues() {
+        IntervalHistogramRecorder recorder = new IntervalHistogramRecorder();
+        recorder.record(5);
+        recorder.record(7);
+        LogLinearHistogram first = recorder.nextInterval();
+        assertEquals(2, first.getTotalCount());
+        assertEquals(7, first.getMax());
+
+        recorder.record(100);
+        LogLinearHistogram second = recorder.nextInterval();
+        assertEquals(1, second.getTotalCount());
+        assertEquals(100, second.getMin());
+
+        assertEquals(0, recorder.nextInterval().getTotalCount());
+    }
+
+    @Test
+    void phaseFlipsNeitherLoseNorDoubleCountSamples() throws Exception {
+        IntervalHistogramRecorder recorder = new IntervalHistogramRecorder();
+        int samples = 2_000_000;
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        // Single writer, as on the server thread
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < samples; i++) {
+                    recorder.record(i % 1000 + 1);
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        writer.start();
+
+        long count = 0;
+        int intervals = 0;
+        while (writer.isAlive()) {
+            LogLinearHistogram interval = recorder.nextInterval();
+            count += interval.getTotalCount();
+            intervals++;
+        }
+        writer.join();
+        LogLinearHistogram last = recorder.nextInterval();
+        count += last.getTotalCount();
+
+        assertNull(failure.get());
+        assertTrue(intervals > 1, "The reader never flipped during recording");
+        assertEquals(samples, count);
+    }
+}
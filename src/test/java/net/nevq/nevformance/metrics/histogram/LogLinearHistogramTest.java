@@ -0,0 +1,105 @@
+package net.nevq.nevformance.metrics.histogram;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogLinearHistogramTest {
+    // Stated resolution: every value is reported within 1/128 of itself
+    private static final double RELATIVE_ERROR = 1.0 / 128;
+
+    @Test
+    void valuesRoundTripThroughTheirBucket() {
+        Random random = new Random(42);
+        int previousIndex = -1;
+        for (long value = 0; value < 100_000; value++) {
+            int index = LogLinearHistogram.indexFor(value);
+            assertTrue(index >= previousIndex, "Bucket index must not decrease");
+            previousIndex = index;
+            assertRoundTrip(value);
+        }
+        for (int i = 0; i < 100_000; i++) {
+            assertRoundTrip((long) (random.nextDouble() * LogLinearHistogram.MAX_TRACKABLE));
+        }
+        for (int magnitude = 0; magnitude < 40; magnitude++) {
+            long power = 1L << magnitude;
+            assertRoundTrip(power - 1);
+            assertRoundTrip(power);
+            assertRoundTrip(power + 1);
+        }
+        assertEquals(LogLinearHistogram.BUCKET_COUNT - 1, LogLinearHistogram.indexFor(LogLinearHistogram.MAX_TRACKABLE));
+    }
+
+    private static void assertRoundTrip(long value) {
+        int index = LogLinearHistogram.indexFor(value);
+        assertTrue(index >= 0 && index < LogLinearHistogram.BUCKET_COUNT, "Index out of range for " + value);
+        long highest = LogLinearHistogram.highestValueFor(index);
+        assertTrue(highest >= value, "Bucket of " + value + " ends below it at " + highest);
+        assertTrue(highest - value <= value * RELATIVE_ERROR, "Bucket of " + value + " is too wide: " + highest);
+    }
+
+    @Test
+    void percentilesMatchASortedReference() {
+        Random random = new Random(7);
+        long[] values = new long[50_000];
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        for (int i = 0; i < values.length; i++) {
+            // Log-normal like tick times in nanoseconds: mostly ~10 ms with a long tail
+            values[i] = (long) (10_000_000 * Math.exp(random.nextGaussian() * 0.8));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[]{50, 95, 99, 100}) {
+            long reference = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long reported = histogram.getValueAtPercentile(percentile);
+            assertTrue(reported >= reference, "p" + percentile + " understated: " + reported + " < " + reference);
+            assertTrue(reported <= reference * (1 + RELATIVE_ERROR),
+                    "p" + percentile + " off by more than the resolution: " + reported + " vs " + reference);
+        }
+        assertEquals(values[values.length - 1], histogram.getValueAtPercentile(100));
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals(values[0], histogram.getMin());
+        assertEquals(values.length, histogram.getTotalCount());
+    }
+
+    @Test
+    void emptyAndClampedValues() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMin());
+
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(0, histogram.getMin());
+        assertEquals(LogLinearHistogram.MAX_TRACKABLE, histogram.getMax());
+        assertEquals(LogLinearHistogram.MAX_TRACKABLE, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void addMergesLikeRecordingDirectly() {
+        Random random = new Random(3);
+        LogLinearHistogram direct = new LogLinearHistogram();
+        LogLinearHistogram merged = new LogLinearHistogram();
+        LogLinearHistogram part = new LogLinearHistogram();
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextInt(1_000_000);
+            direct.record(value);
+            part.record(value);
+            if (i % 1000 == 999) {
+                merged.add(part);
+                part.reset();
+            }
+        }
+        assertEquals(direct.getTotalCount(), merged.getTotalCount());
+        assertEquals(direct.getMax(), merged.getMax());
+        assertEquals(direct.getMin(), merged.getMin());
+        assertEquals(direct.getMean(), merged.getMean(), 1e-6);
+        for (double percentile : new double[]{50, 95, 99, 100}) {
+            assertEquals(direct.getValueAtPercentile(percentile), merged.getValueAtPercentile(percentile));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package net.nevq.nevformance.metrics.query;
+
+import net.nevq.nevformance.metrics.MetricRegistry;
+import net.nevq.nevformance.metrics.TestRegistries;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryEngineTest {
+    private MetricRegistry registry;
+    private QueryEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        registry = TestRegistries.create(1000);
+        engine = new QueryEngine(registry);
+
+        // One point a second for 100 seconds
+        for (int i = 0; i < 100; i++) {
+            long time = i * 1000L;
+            registry.getOrCreate("server.tps").record(time, 20 - i % 2);
+            registry.getOrCreate("gc.young.count").record(time, i * 2);
+            registry.getOrCreate("world.overworld.entities.total").record(time, 100);
+            registry.getOrCreate("world.the_nether.entities.total").record(time, 40);
+        }
+    }
+
+    @Test
+    void instantSelectorReturnsTheLatestPoint() {
+        QueryResult result = engine.query("server.tps", 99_000);
+        assertEquals(1, result.series().size());
+        assertArrayEquals(new double[]{19}, result.series().get(0).values());
+
+        // Between two points, the earlier one is used
+        assertArrayEquals(new double[]{20}, engine.query("server.tps", 50_500).series().get(0).values());
+    }
+
+    @Test
+    void pointsOutsideTheLookbackAreIgnored() {
+        assertTrue(engine.query("server.tps", 99_000 + QueryContext.LOOKBACK_MS + 1).series().isEmpty());
+        assertTrue(engine.query("server.tps", -1).series().isEmpty());
+    }
+
+    @Test
+    void rangeFunctionsFoldTheWindow() {
+        assertEquals(2, single("rate(gc.young.count[10s])", 99_000), 1e-9);
+        assertEquals(20, single("delta(gc.young.count[10s])", 99_000), 1e-9);
+        assertEquals(11, single("count_over_time(server.tps[10s])", 99_000));
+        assertEquals(19, single("min_over_time(server.tps[10s])", 99_000));
+        assertEquals(20, single("max_over_time(server.tps[10s])", 99_000));
+        assertEquals(19, single("quantile_over_time(0.5, server.tps[10s])", 99_000));
+    }
+
+    @Test
+    void wildcardsBecomeLabelsForGroupingAndMatching() {
+        QueryResult grouped = engine.query("sum by ($1) (world.*.entities.total)", 99_000);
+        assertEquals(2, grouped.series().size());
+        assertEquals(List.of("overworld"), grouped.series().get(0).labels());
+        assertEquals(100, grouped.series().get(0).values()[0]);
+        assertEquals(List.of("the_nether"), grouped.series().get(1).labels());
+
+        assertEquals(140, single("sum(world.*.entities.total)", 99_000));
+        assertEquals(70, single("avg(world.*.entities.total)", 99_000));
+
+        QueryResult ratio = engine.query("world.*.entities.total / world.*.entities.total", 99_000);
+        assertEquals(2, ratio.series().size());
+        for (QueryResult.Series series : ratio.series()) {
+            assertEquals(1, series.values()[0]);
+        }
+    }
+
+    @Test
+    void rangeQueryEvaluatesEveryStepIncludingTheEnd() {
+        QueryResult result = engine.queryRange("server.tps", 10_000, 20_000, 5_000);
+        assertArrayEquals(new long[]{10_000, 15_000, 20_000}, result.series().get(0).timestamps());
+        assertArrayEquals(new double[]{20, 19, 20}, result.series().get(0).values());
+    }
+
+    @Test
+    void invalidRangesAreRejected() {
+        assertThrows(QueryException.class, () -> engine.queryRange("server.tps", 0, 1000, 0));
+        assertThrows(QueryException.class, () -> engine.queryRange("server.tps", 0, 1000, -5));
+        assertThrows(QueryException.class, () -> engine.queryRange("server.tps", 1000, 0, 1));
+        assertThrows(QueryException.class, () -> engine.queryRange("server.tps", 0, 1_000_000, 1));
+    }
+
+    @Test
+    @Timeout(10)
+    void rangesThatOverflowAreRejectedOrEnd() {
+        // end - start overflows to a negative number, which must not pass the step limit
+        assertThrows(QueryException.class, () -> engine.queryRange("server.tps", Long.MIN_VALUE, 0, 1000));
+        assertThrows(QueryException.class, () -> engine.queryRange("server.tps", Long.MIN_VALUE, Long.MAX_VALUE, Long.MAX_VALUE));
+
+        // Accumulating the time would wrap past Long.MAX_VALUE and never reach the end
+        QueryResult result = engine.queryRange("1", Long.MAX_VALUE - 7, Long.MAX_VALUE, 10);
+        assertArrayEquals(new long[]{Long.MAX_VALUE - 7}, result.series().get(0).timestamps());
+
+        result = engine.queryRange("1", Long.MAX_VALUE - 20, Long.MAX_VALUE, 10);
+        assertArrayEquals(new long[]{Long.MAX_VALUE - 20, Long.MAX_VALUE - 10, Long.MAX_VALUE},
+                result.series().get(0).timestamps());
+    }
+
+    private double single(String query, long time) {
+        QueryResult result = engine.query(query, time);
+        assertEquals(1, result.series().size(), "Expected one series from " + query);
+        return result.series().get(0).values()[0];
+    }
+}
@@ -0,0 +1,73 @@
+package net.nevq.nevformance.metrics.query;
+
+import net.nevq.nevformance.metrics.TestRegistries;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryParserTest {
+
+    private static double evaluate(String query) {
+        QueryContext context = new QueryContext(TestRegistries.create(16));
+        InstantVector result = QueryParser.parse(query).evaluate(context, 0);
+        assertTrue(result.scalar(), "Expected a scalar from " + query);
+        return result.scalarValue();
+    }
+
+    @Test
+    void arithmeticFollowsPrecedence() {
+        assertEquals(7, evaluate("1 + 2 * 3"));
+        assertEquals(9, evaluate("(1 + 2) * 3"));
+        assertEquals(-4, evaluate("-2 * 2"));
+        assertEquals(2.5, evaluate("10 / 4"));
+        assertEquals(1500, evaluate("1.5e3"));
+    }
+
+    @Test
+    void namesMayContainDashesAndWildcards() {
+        Expression selector = QueryParser.parse("world.the-nether.*.total");
+        Expression.Selector parsed = assertInstanceOf(Expression.Selector.class, selector);
+        assertEquals("world.the-nether.*.total", parsed.pattern);
+        assertEquals(0, parsed.rangeMs);
+    }
+
+    @Test
+    void rangeDurationsAreParsedInEveryUnit() {
+        assertEquals(500, rangeOf("server.tps[500ms]"));
+        assertEquals(30_000, rangeOf("server.tps[30s]"));
+        assertEquals(300_000, rangeOf("server.tps[5m]"));
+        assertEquals(3_600_000, rangeOf("server.tps[1h]"));
+        assertEquals(86_400_000, rangeOf("server.tps[1d]"));
+    }
+
+    private static long rangeOf(String query) {
+        return assertInstanceOf(Expression.Selector.class, QueryParser.parse(query)).rangeMs;
+    }
+
+    @Test
+    void aggregationsAndFunctionsParse() {
+        assertInstanceOf(Expression.Aggregation.class, QueryParser.parse("sum by ($1) (world.*.entities.total)"));
+        assertInstanceOf(Expression.Aggregation.class, QueryParser.parse("avg(world.*.entities.total) by ($1)"));
+        assertInstanceOf(Expression.RangeFunction.class, QueryParser.parse("quantile_over_time(0.95, server.tick_time[5m])"));
+        assertInstanceOf(Expression.BinaryOperation.class, QueryParser.parse("memory.heap.used / memory.heap.max"));
+    }
+
+    @Test
+    void invalidQueriesAreRejected() {
+        assertThrows(QueryException.class, () -> QueryParser.parse(""));
+        assertThrows(QueryException.class, () -> QueryParser.parse("1 +"));
+        assertThrows(QueryException.class, () -> QueryParser.parse("(1 + 2"));
+        assertThrows(QueryException.class, () -> QueryParser.parse("server.tps)"));
+        assertThrows(QueryException.class, () -> QueryParser.parse("unknown_function(server.tps[5m])"));
+        assertThrows(QueryException.class, () -> QueryParser.parse("rate(server.tps)"));
+        assertThrows(QueryException.class, () -> QueryParser.parse("server.tps[5]"));
+        assertThrows(QueryException.class, () -> QueryParser.parse("sum by (1) (server.tps)"));
+        assertThrows(QueryException.class, () -> QueryParser.parse("sum by ($0) (server.tps)"));
+    }
+
+    @Test
+    void errorsReportThePosition() {
+        QueryException error = assertThrows(QueryException.class, () -> QueryParser.parse("1 + )"));
+        assertTrue(error.getMessage().endsWith("at position 4"), error.getMessage());
+    }
+}
@@ -0,0 +1,101 @@
+package net.nevq.nevformance.metrics.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricSegmentStoreTest {
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void samplesSurviveAReplay() {
+        MetricSegmentStore store = new MetricSegmentStore(directory, SEGMENT_SIZE, Long.MAX_VALUE);
+        store.append(0, "server.tps", 1000, 20.0);
+        store.append(1, "server.tick_time", 1000, 12.5);
+        store.append(0, "server.tps", 2000, 19.5);
+        store.close();
+
+        assertEquals(List.of("server.tps@1000=20.0", "server.tick_time@1000=12.5", "server.tps@2000=19.5"),
+                replay());
+    }
+
+    @Test
+    void reusedIdIsDefinedAgainForTheNewName() {
+        MetricSegmentStore store = new MetricSegmentStore(directory, SEGMENT_SIZE, Long.MAX_VALUE);
+        store.append(3, "players.alice.chunks.loaded", 1000, 100);
+        // The registry evicted alice's series and gave its id to bob's
+        store.append(3, "players.bob.chunks.loaded", 2000, 200);
+        store.append(3, "players.bob.chunks.loaded", 3000, 300);
+        store.close();
+
+        assertEquals(List.of("players.alice.chunks.loaded@1000=100.0", "players.bob.chunks.loaded@2000=200.0",
+                "players.bob.chunks.loaded@3000=300.0"), replay());
+    }
+
+    @Test
+    void seriesAreDefinedAgainInEveryNewSegment() {
+        // Small segments, so the samples rotate through several files
+        MetricSegmentStore store = new MetricSegmentStore(directory, 256, Long.MAX_VALUE);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            store.append(i % 3, "series." + i % 3, 1000L + i, i);
+            expected.add("series." + i % 3 + "@" + (1000L + i) + "=" + (double) i);
+        }
+        store.close();
+
+        assertEquals(expected, replay());
+    }
+
+    @Test
+    void unusableSegmentSizeDisablesPersistence() {
+        // A segment too small for its header fails inside append, which must not throw into the collector
+        MetricSegmentStore store = new MetricSegmentStore(directory, 0, Long.MAX_VALUE);
+        assertDoesNotThrow(() -> store.append(0, "server.tps", 1000, 20.0));
+        assertDoesNotThrow(() -> store.append(0, "server.tps", 2000, 20.0));
+        store.close();
+
+        assertEquals(List.of(), replay());
+    }
+
+    @Test
+    void replaySkipsSamplesBeforeTheStartOrPastRetention() {
+        long now = System.currentTimeMillis();
+        long hour = 60 * 60 * 1000L;
+        // Small segments, so the old samples fill segments that are skipped whole
+        MetricSegmentStore store = new MetricSegmentStore(directory, 256, 3 * hour);
+        for (int i = 0; i < 50; i++) {
+            store.append(0, "server.tps", now - 4 * hour + i, 20.0);
+        }
+        for (int i = 0; i < 50; i++) {
+            store.append(0, "server.tps", now - 2 * hour + i, 19.0);
+        }
+        store.append(0, "server.tps", now - 1000, 18.0);
+        store.close();
+
+        List<String> retained = new ArrayList<>();
+        new MetricSegmentStore(directory, 256, 3 * hour)
+                .replay(Long.MIN_VALUE, (name, timestamp, value) -> retained.add(name + "=" + value));
+        assertEquals(51, retained.size());
+        assertFalse(retained.contains("server.tps=20.0"));
+
+        List<String> recent = new ArrayList<>();
+        new MetricSegmentStore(directory, 256, 3 * hour)
+                .replay(now - hour, (name, timestamp, value) -> recent.add(name + "=" + value));
+        assertEquals(List.of("server.tps=18.0"), recent);
+    }
+
+    private List<String> replay() {
+        List<String> samples = new ArrayList<>();
+        new MetricSegmentStore(directory, SEGMENT_SIZE, Long.MAX_VALUE)
+                .replay(Long.MIN_VALUE, (name, timestamp, value) -> samples.add(name + "@" + timestamp + "=" + value));
+        return samples;
+    }
+}